@@ -35,19 +35,26 @@ import org.kitteh.irc.client.library.command.WallopsCommand;
 import org.kitteh.irc.client.library.command.WhoisCommand;
 import org.kitteh.irc.client.library.element.Channel;
 import org.kitteh.irc.client.library.element.MessageReceiver;
+import org.kitteh.irc.client.library.element.ServerMessage;
 import org.kitteh.irc.client.library.element.User;
 import org.kitteh.irc.client.library.element.mode.ModeStatusList;
 import org.kitteh.irc.client.library.element.mode.UserMode;
 import org.kitteh.irc.client.library.event.channel.RequestedChannelJoinCompleteEvent;
 import org.kitteh.irc.client.library.event.client.ClientConnectedEvent;
+import org.kitteh.irc.client.library.event.helper.ClientReceiveServerMessageEvent;
 import org.kitteh.irc.client.library.event.helper.UnexpectedChannelLeaveEvent;
 import org.kitteh.irc.client.library.event.user.PrivateCTCPQueryEvent;
 import org.kitteh.irc.client.library.feature.AuthManager;
 import org.kitteh.irc.client.library.feature.CapabilityManager;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
 import org.kitteh.irc.client.library.feature.EventManager;
 import org.kitteh.irc.client.library.feature.ISupportManager;
+import org.kitteh.irc.client.library.feature.Lag;
+import org.kitteh.irc.client.library.feature.ListenerChannel;
 import org.kitteh.irc.client.library.feature.MessageTagManager;
+import org.kitteh.irc.client.library.feature.MonitorManager;
 import org.kitteh.irc.client.library.feature.ServerInfo;
+import org.kitteh.irc.client.library.feature.WhoisManager;
 import org.kitteh.irc.client.library.feature.defaultmessage.DefaultMessageMap;
 import org.kitteh.irc.client.library.feature.sending.MessageSendingQueue;
 import org.kitteh.irc.client.library.feature.sending.SingleDelaySender;
@@ -63,10 +70,15 @@ import javax.net.ssl.TrustManagerFactory;
 import java.io.File;
 import java.lang.reflect.Constructor;
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * An individual IRC connection, see {@link #builder()} to create one.
@@ -126,12 +138,46 @@ public interface Client {
         @Nonnull
         Builder defaultMessageMap(@Nonnull DefaultMessageMap defaultMessageMap);
 
+        /**
+         * Sets whether events are dispatched directly on the thread
+         * processing input, in a low-latency mode which skips the event
+         * bus. Handlers for each event class are resolved once into a
+         * list sorted by priority and invoked in order, with handlers
+         * marked {@code @Handler(delivery = Invoke.Asynchronously)} still
+         * offloaded to the runtime's threads.
+         * <p>
+         * Direct dispatch does not support handlers which are enveloped or
+         * use a custom invocation, and rejects them at registration.
+         * Unhandled events are not wrapped in a
+         * {@link net.engio.mbassy.bus.common.DeadMessage}.
+         * <p>
+         * By default, events are published through the event bus.
+         *
+         * @param direct true to dispatch events directly
+         * @return this builder
+         */
+        @Nonnull
+        Builder directEventDispatch(boolean direct);
+
+        /**
+         * Sets the runtime providing event handling threads, for sharing
+         * them within a group of clients.
+         * <p>
+         * By default, clients share {@link EventDispatchRuntime#getDefault()}.
+         *
+         * @param runtime runtime or null for the default
+         * @return this builder
+         */
+        @Nonnull
+        Builder eventDispatchRuntime(@Nullable EventDispatchRuntime runtime);
+
         /**
          * Sets a listener for all thrown exceptions on this client. By default,
          * a consumer exists which calls Throwable#printStackTrace() on all
          * received exceptions.
          * <p>
-         * All exceptions are passed from a single, separate thread.
+         * All exceptions are passed from the {@link #listenerChannel(ListenerChannel)
+         * listener channel's} thread.
          *
          * @param listener catcher of throwable objects or null to not listen
          * @return this builder
@@ -139,10 +185,22 @@ public interface Client {
         @Nonnull
         Builder listenException(@Nullable Consumer<Exception> listener);
 
+        /**
+         * Sets a listener for all thrown exceptions on this client, receiving
+         * them in batches as they are drained from the listener channel.
+         *
+         * @param listener catcher of throwable objects or null to not listen
+         * @return this builder
+         * @see #listenException(Consumer)
+         */
+        @Nonnull
+        Builder listenExceptionBatches(@Nullable Consumer<List<Exception>> listener);
+
         /**
          * Sets a listener for all incoming messages from the server.
          * <p>
-         * All messages are passed from a single, separate thread.
+         * All messages are passed from the {@link #listenerChannel(ListenerChannel)
+         * listener channel's} thread.
          *
          * @param listener input listener or null to not listen
          * @return this builder
@@ -150,10 +208,22 @@ public interface Client {
         @Nonnull
         Builder listenInput(@Nullable Consumer<String> listener);
 
+        /**
+         * Sets a listener for all incoming messages from the server, receiving them in
+         * batches as they are drained from the listener channel.
+         *
+         * @param listener input listener or null to not listen
+         * @return this builder
+         * @see #listenInput(Consumer)
+         */
+        @Nonnull
+        Builder listenInputBatches(@Nullable Consumer<List<String>> listener);
+
         /**
          * Sets a listener for all outgoing messages to the server.
          * <p>
-         * All messages are passed from a single, separate thread.
+         * All messages are passed from the {@link #listenerChannel(ListenerChannel)
+         * listener channel's} thread.
          *
          * @param listener output listener or null to not listen
          * @return this builder
@@ -161,6 +231,33 @@ public interface Client {
         @Nonnull
         Builder listenOutput(@Nullable Consumer<String> listener);
 
+        /**
+         * Sets a listener for all outgoing messages to the server, receiving them in
+         * batches as they are drained from the listener channel.
+         *
+         * @param listener output listener or null to not listen
+         * @return this builder
+         * @see #listenOutput(Consumer)
+         */
+        @Nonnull
+        Builder listenOutputBatches(@Nullable Consumer<List<String>> listener);
+
+        /**
+         * Sets the channel delivering exceptions, input and output to this
+         * client's listeners, for sharing one thread within a group of
+         * clients.
+         * <p>
+         * By default, clients share {@link ListenerChannel#getDefault()},
+         * which discards items rather than wait when full. Set a channel
+         * using {@link ListenerChannel.OverflowPolicy#BLOCK} to keep every
+         * item, at the cost of stalling network threads behind listeners.
+         *
+         * @param channel channel or null for the default
+         * @return this builder
+         */
+        @Nonnull
+        Builder listenerChannel(@Nullable ListenerChannel channel);
+
         /**
          * Sets the supplier of message sending queues.
          *
@@ -304,6 +401,37 @@ public interface Client {
         @Nonnull
         Builder serverPort(int port);
 
+        /**
+         * Records all lines sent and received to a compact binary log,
+         * replacing any existing file.
+         * <p>
+         * By default, no traffic is recorded.
+         *
+         * @param file file to record to, or null to not record
+         * @return this builder
+         * @see org.kitteh.irc.client.library.util.TrafficLog
+         * @see #trafficReplay(File, boolean)
+         */
+        @Nonnull
+        Builder trafficLog(@Nullable File file);
+
+        /**
+         * Replays the lines received in a traffic log instead of connecting
+         * to a server. Lines the client sends are passed only to the output
+         * listener, and the client fires a connection closed event without
+         * reconnecting once the log has been processed.
+         * <p>
+         * By default, the client connects to a server.
+         *
+         * @param file traffic log to replay, or null to connect normally
+         * @param originalSpeed true to keep the recorded timing between
+         * lines, false to replay as fast as the client processes them
+         * @return this builder
+         * @see #trafficLog(File)
+         */
+        @Nonnull
+        Builder trafficReplay(@Nullable File file, boolean originalSpeed);
+
         /**
          * Sets the user the client connects as.
          * <p>
@@ -470,7 +598,8 @@ public interface Client {
     /**
      * Adds channels to this client.
      * <p>
-     * Joins the channels if already connected.
+     * Joins the channels if already connected, and on each connection.
+     * Channels are packed into as few JOIN lines as the server allows.
      *
      * @param channels channel(s) to add
      * @throws IllegalArgumentException if null or invalid
@@ -536,10 +665,33 @@ public interface Client {
     @Nonnull
     Optional<Channel> getChannel(@Nonnull String name);
 
+    /**
+     * Gets the number of users in a channel, without creating a channel
+     * snapshot.
+     *
+     * @param name channel name
+     * @return member count if the channel is tracked by the client
+     * @throws IllegalArgumentException if name is null
+     */
+    @Nonnull
+    OptionalInt getChannelMemberCount(@Nonnull String name);
+
+    /**
+     * Gets the names of the channels in which the client is currently
+     * present, without creating channel snapshots.
+     *
+     * @return unmodifiable set of channel names
+     */
+    @Nonnull
+    Set<String> getChannelNames();
+
     /**
      * Gets the channels in which the client is currently present.
+     * <p>
+     * The returned set is reused until a channel changes, so frequent
+     * polling is cheap.
      *
-     * @return the client's current channels
+     * @return unmodifiable set of the client's current channels
      */
     @Nonnull
     Set<Channel> getChannels();
@@ -590,6 +742,16 @@ public interface Client {
     @Nonnull
     ISupportManager getISupportManager();
 
+    /**
+     * Gets the lag to the server, as measured by the most recent answered
+     * PING on this connection.
+     *
+     * @return lag if measured since connecting
+     * @see org.kitteh.irc.client.library.event.client.ClientLagEvent
+     */
+    @Nonnull
+    Optional<Lag> getLag();
+
     /**
      * Gets the current message cutter for multi-line messages.
      *
@@ -616,6 +778,15 @@ public interface Client {
     @Nonnull
     MessageTagManager getMessageTagManager();
 
+    /**
+     * Gets the manager of the MONITOR list, which keeps the server's list
+     * in line with the nicks wanted and tracks their presence.
+     *
+     * @return the monitor manager
+     */
+    @Nonnull
+    MonitorManager getMonitorManager();
+
     /**
      * Gets the client name. This name is just an internal name for reference
      * and is not visible from IRC.
@@ -665,6 +836,37 @@ public interface Client {
     @Nonnull
     Optional<ModeStatusList<UserMode>> getUserModes();
 
+    /**
+     * Gets the names of the tracked channels in which a nick is present,
+     * without creating snapshots.
+     *
+     * @param nick nick
+     * @return unmodifiable set of channel names
+     * @throws IllegalArgumentException if nick is null
+     */
+    @Nonnull
+    Set<String> getUserChannelNames(@Nonnull String nick);
+
+    /**
+     * Gets the manager of WHOIS lookups, which caches results and shares
+     * replies between concurrent lookups.
+     *
+     * @return the WHOIS manager
+     */
+    @Nonnull
+    WhoisManager getWhoisManager();
+
+    /**
+     * Gets if a nick is present in a tracked channel, without creating
+     * snapshots.
+     *
+     * @param channel channel name
+     * @param nick nick
+     * @return true if the channel is tracked and contains the nick
+     * @throws IllegalArgumentException if channel or nick is null
+     */
+    boolean isInChannel(@Nonnull String channel, @Nonnull String nick);
+
     /**
      * Checks to see if this client is the same as the given user.
      *
@@ -751,6 +953,18 @@ public interface Client {
         this.sendMessage(target.getMessagingName(), message);
     }
 
+    /**
+     * Sends a message to several target users or channels, packing as many
+     * targets into each line as the server's TARGMAX allows. Without
+     * TARGMAX, one line is sent per target.
+     *
+     * @param targets the destinations of the message
+     * @param message the message to send
+     * @throws IllegalArgumentException for null parameters or invalid
+     * targets
+     */
+    void sendMessage(@Nonnull Collection<String> targets, @Nonnull String message);
+
     /**
      * Sends a notice to a target user or channel.
      *
@@ -772,6 +986,18 @@ public interface Client {
         this.sendNotice(target.getMessagingName(), message);
     }
 
+    /**
+     * Sends a notice to several target users or channels, packing as many
+     * targets into each line as the server's TARGMAX allows. Without
+     * TARGMAX, one line is sent per target.
+     *
+     * @param targets the destinations of the notice
+     * @param message the message to send
+     * @throws IllegalArgumentException for null parameters or invalid
+     * targets
+     */
+    void sendNotice(@Nonnull Collection<String> targets, @Nonnull String message);
+
     /**
      * Sends a potentially multi-line message to a target user or channel
      * using the client's current {@link Cutter}.
@@ -833,6 +1059,34 @@ public interface Client {
         this.sendMultiLineMessage(target.getMessagingName(), message, cutter);
     }
 
+    /**
+     * Sends a potentially multi-line message to several target users or
+     * channels using the client's current {@link Cutter}, packing targets
+     * as in {@link #sendMessage(Collection, String)}.
+     *
+     * @param targets the destinations of the message
+     * @param message the message to send
+     * @throws IllegalArgumentException for null parameters or invalid
+     * targets
+     */
+    default void sendMultiLineMessage(@Nonnull Collection<String> targets, @Nonnull String message) {
+        this.sendMultiLineMessage(targets, message, this.getMessageCutter());
+    }
+
+    /**
+     * Sends a potentially multi-line message to several target users or
+     * channels using the defined {@link Cutter}, packing targets as in
+     * {@link #sendMessage(Collection, String)}. Lines are cut to fit the
+     * longest target.
+     *
+     * @param targets the destinations of the message
+     * @param message the message to send
+     * @param cutter cutter to utilize
+     * @throws IllegalArgumentException for null parameters or invalid
+     * targets
+     */
+    void sendMultiLineMessage(@Nonnull Collection<String> targets, @Nonnull String message, @Nonnull Cutter cutter);
+
     /**
      * Sends a potentially multi-line notice to a target user or channel
      * using the client's current {@link Cutter}.
@@ -894,6 +1148,34 @@ public interface Client {
         this.sendMultiLineNotice(target.getMessagingName(), message, cutter);
     }
 
+    /**
+     * Sends a potentially multi-line notice to several target users or
+     * channels using the client's current {@link Cutter}, packing targets
+     * as in {@link #sendNotice(Collection, String)}.
+     *
+     * @param targets the destinations of the notice
+     * @param message the message to send
+     * @throws IllegalArgumentException for null parameters or invalid
+     * targets
+     */
+    default void sendMultiLineNotice(@Nonnull Collection<String> targets, @Nonnull String message) {
+        this.sendMultiLineNotice(targets, message, this.getMessageCutter());
+    }
+
+    /**
+     * Sends a potentially multi-line notice to several target users or
+     * channels using the defined {@link Cutter}, packing targets as in
+     * {@link #sendNotice(Collection, String)}. Lines are cut to fit the
+     * longest target.
+     *
+     * @param targets the destinations of the notice
+     * @param message the message to send
+     * @param cutter cutter to utilize
+     * @throws IllegalArgumentException for null parameters or invalid
+     * targets
+     */
+    void sendMultiLineNotice(@Nonnull Collection<String> targets, @Nonnull String message, @Nonnull Cutter cutter);
+
     /**
      * Sends a raw IRC message.
      *
@@ -902,6 +1184,32 @@ public interface Client {
      */
     void sendRawLine(@Nonnull String message);
 
+    /**
+     * Sends a raw IRC message and collects the server's replies to it.
+     * <p>
+     * If the labeled-response capability is enabled, the message is tagged
+     * with a label and the replies are those carrying the same label,
+     * whether sent as one line or as a batch. Otherwise, replies are matched
+     * in order: each received message is given to the oldest outstanding
+     * request whose response predicate accepts it, and that request is
+     * complete once the last response predicate accepts a message.
+     * <p>
+     * Replies are still processed and fired as events as normal. The future
+     * completes exceptionally with a {@link
+     * java.util.concurrent.TimeoutException} if the last reply hasn't
+     * arrived within 30 seconds, and is cancelled if the connection is reset
+     * before it completes.
+     *
+     * @param message message to send, without tags
+     * @param isResponse tests if a message is a reply, when not labeled
+     * @param isLastResponse tests if a reply is the last, when not labeled
+     * @return future completed with the replies, in order
+     * @throws IllegalArgumentException if any argument is null or the
+     * message already has tags
+     */
+    @Nonnull
+    CompletableFuture<List<ServerMessage>> sendRawLineWithResponse(@Nonnull String message, @Nonnull Predicate<ClientReceiveServerMessageEvent> isResponse, @Nonnull Predicate<ClientReceiveServerMessageEvent> isLastResponse);
+
     /**
      * Sends a raw IRC message, unless the exact same message is already in
      * the queue of messages not yet sent.
@@ -924,7 +1232,7 @@ public interface Client {
     /**
      * Sets a listener for all thrown exceptions on this client.
      * <p>
-     * All exceptions are passed from a single, separate thread.
+     * All exceptions are passed from the listener channel's thread.
      *
      * @param listener catcher of throwable objects
      */
@@ -942,7 +1250,7 @@ public interface Client {
     /**
      * Sets a listener for all incoming messages from the server.
      * <p>
-     * All messages are passed from a single, separate thread.
+     * All messages are passed from the listener channel's thread.
      *
      * @param listener input listener
      */
@@ -973,7 +1281,7 @@ public interface Client {
     /**
      * Sets a listener for all outgoing messages to the server.
      * <p>
-     * All messages are passed from a single, separate thread.
+     * All messages are passed from the listener channel's thread.
      *
      * @param listener output listener
      */
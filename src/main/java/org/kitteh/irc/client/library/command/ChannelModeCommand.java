@@ -24,25 +24,45 @@
 package org.kitteh.irc.client.library.command;
 
 import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.element.Channel;
 import org.kitteh.irc.client.library.element.ISupportParameter;
+import org.kitteh.irc.client.library.element.ServerMessage;
 import org.kitteh.irc.client.library.element.User;
 import org.kitteh.irc.client.library.element.mode.ChannelMode;
 import org.kitteh.irc.client.library.element.mode.ChannelUserMode;
+import org.kitteh.irc.client.library.element.mode.ModeInfo;
 import org.kitteh.irc.client.library.element.mode.ModeStatus;
 import org.kitteh.irc.client.library.element.mode.ModeStatusList;
+import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
+import org.kitteh.irc.client.library.event.helper.ClientReceiveServerMessageEvent;
+import org.kitteh.irc.client.library.feature.CaseMapping;
 import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.StringUtil;
 import org.kitteh.irc.client.library.util.ToStringer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 
 /**
  * Commands a la MODE.
  */
 public class ChannelModeCommand extends ChannelCommand {
+    private static final int MAX_LINE_LENGTH = 510;
+    /**
+     * Errors a server may send in reply to changing channel modes.
+     */
+    private static final Set<Integer> MODE_ERRORS = new HashSet<>(Arrays.asList(401, 403, 441, 442, 467, 472, 478, 482, 696));
     private static final int PARAMETER_MODES_PER_LINE = 3;
 
     private final List<ModeStatus<ChannelMode>> changes = new ArrayList<>();
@@ -118,9 +138,77 @@ public class ChannelModeCommand extends ChannelCommand {
 
     @Override
     public synchronized void execute() {
+        this.getLines().forEach(this.getClient()::sendRawLine);
+    }
+
+    /**
+     * Executes the command, collecting the server's replies.
+     * <p>
+     * Without any mode changes, the replies are the channel's modes or an
+     * error. With changes, the replies are the server's confirmation or an
+     * error for each MODE line sent.
+     *
+     * @return future completed with all replies, in order
+     * @see Client#sendRawLineWithResponse
+     */
+    @Nonnull
+    public synchronized CompletableFuture<List<ServerMessage>> executeWithResponse() {
+        CompletableFuture<List<ServerMessage>> result = CompletableFuture.completedFuture(new ArrayList<>());
+        for (String line : this.getLines()) {
+            Predicate<ClientReceiveServerMessageEvent> isResponse;
+            Predicate<ClientReceiveServerMessageEvent> isLastResponse;
+            if (this.changes.isEmpty()) {
+                isResponse = event -> {
+                    int numeric = getNumeric(event);
+                    return ((numeric == 324) || (numeric == 329) || ((numeric >= 400) && (numeric < 500))) && this.isChannelParameter(event);
+                };
+                isLastResponse = event -> getNumeric(event) != 329;
+            } else {
+                List<String> parameters = Arrays.asList(line.split(" "));
+                isResponse = event -> ("MODE".equals(event.getCommand()) && (event.getActor() instanceof User) && this.getClient().isUser((User) event.getActor())
+                        && !event.getParameters().isEmpty() && this.getClient().getServerInfo().getCaseMapping().areEqualIgnoringCase(event.getParameters().get(0), this.getChannel()))
+                        || (MODE_ERRORS.contains(getNumeric(event)) && this.isErrorFor(event, parameters.subList(3, parameters.size())));
+                isLastResponse = event -> true;
+            }
+            CompletableFuture<List<ServerMessage>> lineResult = this.getClient().sendRawLineWithResponse(line, isResponse, isLastResponse);
+            result = result.thenCombine(lineResult, (all, replies) -> {
+                all.addAll(replies);
+                return all;
+            });
+        }
+        return result;
+    }
+
+    private static int getNumeric(@Nonnull ClientReceiveServerMessageEvent event) {
+        return (event instanceof ClientReceiveNumericEvent) ? ((ClientReceiveNumericEvent) event).getNumeric() : -1;
+    }
+
+    private boolean isChannelParameter(@Nonnull ClientReceiveServerMessageEvent event) {
+        return (event.getParameters().size() > 1) && this.getClient().getServerInfo().getCaseMapping().areEqualIgnoringCase(event.getParameters().get(1), this.getChannel());
+    }
+
+    private boolean isErrorFor(@Nonnull ClientReceiveServerMessageEvent event, @Nonnull List<String> lineParameters) {
+        if (getNumeric(event) == 472) {
+            return true; // Parameter is the unknown mode character
+        }
+        CaseMapping caseMapping = this.getClient().getServerInfo().getCaseMapping();
+        List<String> parameters = event.getParameters();
+        // Skip our own nick and the trailing description
+        for (int i = 1; i < (parameters.size() - 1); i++) {
+            String parameter = parameters.get(i);
+            if (caseMapping.areEqualIgnoringCase(parameter, this.getChannel()) || lineParameters.stream().anyMatch(lineParameter -> caseMapping.areEqualIgnoringCase(parameter, lineParameter))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private List<String> getLines() {
+        List<String> lines = new ArrayList<>();
         if (this.changes.isEmpty()) {
-            this.getClient().sendRawLine("MODE " + this.getChannel());
-            return;
+            lines.add("MODE " + this.getChannel());
+            return lines;
         }
         int parameterModesPerLine = -1;
         Optional<ISupportParameter.Modes> modes = this.getClient().getServerInfo().getISupportParameter("MODES", ISupportParameter.Modes.class);
@@ -130,25 +218,103 @@ public class ChannelModeCommand extends ChannelCommand {
         if (parameterModesPerLine < 1) {
             parameterModesPerLine = PARAMETER_MODES_PER_LINE;
         }
+        int prefixLength = 6 + StringUtil.utf8Length(this.getChannel());
         List<ModeStatus<ChannelMode>> queue = new ArrayList<>();
+        int length = prefixLength;
         int currentParamModes = 0;
-        for (ModeStatus<ChannelMode> modeChange : this.changes) {
-            if (modeChange.getParameter().isPresent()) {
-                if (++currentParamModes > parameterModesPerLine) {
-                    this.send(queue);
-                    currentParamModes = 0;
-                }
+        Boolean setting = null;
+        for (ModeStatus<ChannelMode> modeChange : this.plan()) {
+            Optional<String> parameter = modeChange.getParameter();
+            int parameterLength = parameter.map(p -> 1 + StringUtil.utf8Length(p)).orElse(0);
+            int added = 1 + parameterLength + (((setting == null) || (setting != modeChange.isSetting())) ? 1 : 0);
+            if (!queue.isEmpty() && ((parameter.isPresent() && (currentParamModes >= parameterModesPerLine)) || ((length + added) > MAX_LINE_LENGTH))) {
+                lines.add(this.getLine(queue));
+                length = prefixLength;
+                currentParamModes = 0;
+                added = 2 + parameterLength;
             }
             queue.add(modeChange);
+            length += added;
+            setting = modeChange.isSetting();
+            if (parameter.isPresent()) {
+                currentParamModes++;
+            }
         }
         if (!queue.isEmpty()) {
-            this.send(queue);
+            lines.add(this.getLine(queue));
         }
+        return lines;
     }
 
-    private void send(@Nonnull List<ModeStatus<ChannelMode>> queue) {
-        this.getClient().sendRawLine("MODE " + this.getChannel() + ' ' + ModeStatusList.of(new ArrayList<>(queue)).getStatusString());
+    /**
+     * Reduces the changes to those which would change the channel. Of
+     * several changes to the same mode, and parameter for list and user
+     * modes, only the last counts. Changes matching the channel's tracked
+     * state are dropped, but only where that state is known, and additions
+     * are ordered before removals so each line needs as few signs as
+     * possible.
+     *
+     * @return changes to send
+     */
+    @Nonnull
+    private List<ModeStatus<ChannelMode>> plan() {
+        Channel channel = this.getClient().getChannel(this.getChannel()).orElse(null);
+        CaseMapping caseMapping = this.getClient().getServerInfo().getCaseMapping();
+        Map<String, ModeStatus<ChannelMode>> net = new LinkedHashMap<>();
+        for (ModeStatus<ChannelMode> modeChange : this.changes) {
+            String key = String.valueOf(modeChange.getMode().getChar());
+            Optional<String> parameter = modeChange.getParameter();
+            if (parameter.isPresent()) {
+                if ((modeChange.getMode() instanceof ChannelUserMode) || (modeChange.getMode().getType() == ChannelMode.Type.A_MASK)) {
+                    key += ' ' + caseMapping.toLowerCase(parameter.get());
+                }
+            }
+            net.remove(key);
+            net.put(key, modeChange);
+        }
+        List<ModeStatus<ChannelMode>> planned = new ArrayList<>(net.size());
+        List<ModeStatus<ChannelMode>> removals = new ArrayList<>();
+        for (ModeStatus<ChannelMode> modeChange : net.values()) {
+            if ((channel == null) || !this.isNoOp(channel, caseMapping, modeChange)) {
+                (modeChange.isSetting() ? planned : removals).add(modeChange);
+            }
+        }
+        planned.addAll(removals);
+        return planned;
+    }
+
+    private boolean isNoOp(@Nonnull Channel channel, @Nonnull CaseMapping caseMapping, @Nonnull ModeStatus<ChannelMode> modeChange) {
+        ChannelMode mode = modeChange.getMode();
+        Optional<String> parameter = modeChange.getParameter();
+        if (mode instanceof ChannelUserMode) {
+            if (!parameter.isPresent()) {
+                return false;
+            }
+            Optional<SortedSet<ChannelUserMode>> userModes = channel.getUserModes(parameter.get());
+            return userModes.isPresent() && (userModes.get().stream().anyMatch(userMode -> userMode.getChar() == mode.getChar()) == modeChange.isSetting());
+        }
+        if (mode.getType() == ChannelMode.Type.A_MASK) {
+            if (!parameter.isPresent()) {
+                return false; // Listing
+            }
+            Optional<List<ModeInfo>> modeInfos = channel.getModeInfoList(mode);
+            return modeInfos.isPresent() && (modeInfos.get().stream().anyMatch(info -> caseMapping.areEqualIgnoringCase(info.getMask().asString(), parameter.get())) == modeChange.isSetting());
+        }
+        if (!channel.hasCompleteModeData()) {
+            return false;
+        }
+        Optional<ModeStatus<ChannelMode>> current = channel.getModes().getStatuses().stream().filter(status -> status.getMode().getChar() == mode.getChar()).findFirst();
+        if (!modeChange.isSetting()) {
+            return !current.isPresent();
+        }
+        return current.isPresent() && current.get().getParameter().equals(parameter);
+    }
+
+    @Nonnull
+    private String getLine(@Nonnull List<ModeStatus<ChannelMode>> queue) {
+        String line = "MODE " + this.getChannel() + ' ' + ModeStatusList.of(new ArrayList<>(queue)).getStatusString();
         queue.clear();
+        return line;
     }
 
     @Nonnull
@@ -24,16 +24,23 @@
 package org.kitteh.irc.client.library.command;
 
 import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
 import org.kitteh.irc.client.library.util.Sanity;
 import org.kitteh.irc.client.library.util.ToStringer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Sends a WHOIS request to the server.
  */
 public class WhoisCommand extends Command {
+    private static final int RPL_ENDOFWHOIS = 318;
+    private static final int ERR_NOSUCHSERVER = 402;
+
     private String server;
     private String target;
 
@@ -78,6 +85,31 @@ public class WhoisCommand extends Command {
 
     @Override
     public void execute() {
+        this.getClient().sendRawLine(this.getLine());
+    }
+
+    /**
+     * Executes the command, collecting the server's replies.
+     *
+     * @return future completed with the WHOIS replies, ending with the end
+     * of WHOIS or an error
+     * @throws IllegalStateException if target not defined
+     * @see Client#sendRawLineWithResponse
+     */
+    @Nonnull
+    public CompletableFuture<List<ServerMessage>> executeWithResponse() {
+        final String line = this.getLine();
+        final String target = this.target;
+        final String server = this.server;
+        return this.getClient().sendRawLineWithResponse(line,
+                event -> (event instanceof ClientReceiveNumericEvent) && (event.getParameters().size() > 1)
+                        && (this.getClient().getServerInfo().getCaseMapping().areEqualIgnoringCase(event.getParameters().get(1), target)
+                        || ((((ClientReceiveNumericEvent) event).getNumeric() == ERR_NOSUCHSERVER) && event.getParameters().get(1).equals(server))),
+                event -> (((ClientReceiveNumericEvent) event).getNumeric() == RPL_ENDOFWHOIS) || (((ClientReceiveNumericEvent) event).getNumeric() == ERR_NOSUCHSERVER));
+    }
+
+    @Nonnull
+    private String getLine() {
         if (this.target == null) {
             throw new IllegalStateException("Target not defined");
         }
@@ -87,7 +119,7 @@ public class WhoisCommand extends Command {
             builder.append(this.server).append(' ');
         }
         builder.append(this.target);
-        this.getClient().sendRawLine(builder.toString());
+        return builder.toString();
     }
 
     @Override
@@ -35,6 +35,7 @@ import org.kitteh.irc.client.library.element.mode.ModeStatusList;
 import org.kitteh.irc.client.library.event.channel.ChannelModeInfoListEvent;
 import org.kitteh.irc.client.library.event.channel.ChannelUsersUpdatedEvent;
 import org.kitteh.irc.client.library.event.channel.RequestedChannelJoinCompleteEvent;
+import org.kitteh.irc.client.library.util.MaskIndex;
 import org.kitteh.irc.client.library.util.Sanity;
 
 import javax.annotation.Nonnull;
@@ -126,6 +127,19 @@ public interface Channel extends MessageReceiver, Staleable {
     @Nonnull
     Optional<List<ModeInfo>> getModeInfoList(@Nonnull ChannelMode mode);
 
+    /**
+     * Gets an index over the tracked mode info for the channel, if tracked,
+     * for quickly finding the entries matching a user. The index is built
+     * once and shared until the mode info changes.
+     *
+     * @param mode type A mode to acquire
+     * @return index of mode info if tracked, empty if not tracked
+     * @throws IllegalArgumentException for null or non-type-A mode
+     * @see #getModeInfoList(ChannelMode)
+     */
+    @Nonnull
+    Optional<MaskIndex<ModeInfo>> getModeInfoIndex(@Nonnull ChannelMode mode);
+
     /**
      * Gets the channel's current known modes.
      *
@@ -207,6 +221,15 @@ public interface Channel extends MessageReceiver, Staleable {
      */
     boolean hasCompleteUserData();
 
+    /**
+     * Gets if this Channel's modes are known, only possible once the server
+     * has replied to a MODE query for the channel.
+     *
+     * @return true if the channel's modes have been received
+     * @see #getModes()
+     */
+    boolean hasCompleteModeData();
+
     /**
      * Joins the channel.
      *
@@ -158,6 +158,23 @@ public interface ISupportParameter extends ClientLinked {
         String getNetworkName();
     }
 
+    /**
+     * Represents support for MONITOR.
+     */
+    interface Monitor extends ISupportParameter {
+        /**
+         * Parameter name.
+         */
+        String NAME = "MONITOR";
+
+        /**
+         * Gets the number of nicks which may be monitored.
+         *
+         * @return limit, or {@link Integer#MAX_VALUE} if unlimited
+         */
+        int getLimit();
+    }
+
     /**
      * Represents the limit to nickname length.
      */
@@ -186,6 +203,26 @@ public interface ISupportParameter extends ClientLinked {
         List<ChannelUserMode> getModes();
     }
 
+    /**
+     * Represents the target limits of commands.
+     */
+    interface TargMax extends ISupportParameter {
+        /**
+         * Parameter name.
+         */
+        String NAME = "TARGMAX";
+
+        /**
+         * Gets the target limits by upper case command. Commands listed
+         * without a limit map to {@link Integer#MAX_VALUE}, and commands
+         * not listed are absent.
+         *
+         * @return limits by command
+         */
+        @Nonnull
+        Map<String, Integer> getLimits();
+    }
+
     /**
      * Represents support for WHOX.
      */
@@ -28,12 +28,11 @@ import org.kitteh.irc.client.library.element.Actor;
 import org.kitteh.irc.client.library.element.MessageTag;
 import org.kitteh.irc.client.library.element.ServerMessage;
 import org.kitteh.irc.client.library.event.helper.ClientReceiveServerMessageEvent;
+import org.kitteh.irc.client.library.util.ImmutableList;
 import org.kitteh.irc.client.library.util.Sanity;
 import org.kitteh.irc.client.library.util.ToStringer;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -55,8 +54,8 @@ public class ClientReceiveServerMessageEventBase extends ActorEventBase<Actor> i
      * @param parameters parameters
      */
     public ClientReceiveServerMessageEventBase(@Nonnull Client client, @Nonnull ServerMessage serverMessage, @Nonnull Actor server, @Nonnull String command, @Nonnull List<String> parameters) {
-        super(client, Collections.singletonList(Sanity.nullCheck(serverMessage, "Server message cannot be null")), server);
-        this.parameters = Collections.unmodifiableList(new ArrayList<>(Sanity.nullCheck(parameters, "Parameters cannot be null")));
+        super(client, ImmutableList.of(Sanity.nullCheck(serverMessage, "Server message cannot be null")), server);
+        this.parameters = ImmutableList.copyOf(Sanity.nullCheck(parameters, "Parameters cannot be null"));
         this.message = serverMessage;
         this.command = Sanity.nullCheck(command, "Command cannot be null");
     }
@@ -0,0 +1,118 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.event.abstractbase;
+
+import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.element.Channel;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.element.User;
+import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Abstract base class for a batch of users leaving or rejoining together
+ * through a server split.
+ */
+public abstract class NetsplitEventBase extends ServerMessageEventBase {
+    private final String uplink;
+    private final String splitServer;
+    private final List<User> users;
+    private final Map<Channel, List<User>> channelUsers;
+
+    /**
+     * Constructs the event.
+     *
+     * @param client the client
+     * @param originalMessages original messages
+     * @param uplink server still connected to the network
+     * @param splitServer server which split from the network
+     * @param users all users affected
+     * @param channelUsers affected users per channel
+     */
+    protected NetsplitEventBase(@Nonnull Client client, @Nonnull List<ServerMessage> originalMessages, @Nonnull String uplink, @Nonnull String splitServer, @Nonnull List<User> users, @Nonnull Map<Channel, List<User>> channelUsers) {
+        super(client, originalMessages);
+        this.uplink = Sanity.nullCheck(uplink, "Uplink cannot be null");
+        this.splitServer = Sanity.nullCheck(splitServer, "Split server cannot be null");
+        this.users = Collections.unmodifiableList(new ArrayList<>(Sanity.nullCheck(users, "Users cannot be null")));
+        Map<Channel, List<User>> map = new LinkedHashMap<>();
+        Sanity.nullCheck(channelUsers, "Channel users cannot be null").forEach((channel, list) -> map.put(channel, Collections.unmodifiableList(new ArrayList<>(list))));
+        this.channelUsers = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Gets the server which remained connected to the network, the first
+     * server named in the split.
+     *
+     * @return uplink server name
+     */
+    @Nonnull
+    public String getUplink() {
+        return this.uplink;
+    }
+
+    /**
+     * Gets the server which split from the network, the second server
+     * named in the split.
+     *
+     * @return split server name
+     */
+    @Nonnull
+    public String getSplitServer() {
+        return this.splitServer;
+    }
+
+    /**
+     * Gets all users affected, in the order the server sent them.
+     *
+     * @return affected users
+     */
+    @Nonnull
+    public List<User> getUsers() {
+        return this.users;
+    }
+
+    /**
+     * Gets the affected users of each tracked channel touched by this
+     * batch. Channels are snapshots taken after the batch was applied.
+     *
+     * @return affected users per channel
+     */
+    @Nonnull
+    public Map<Channel, List<User>> getChannelUsers() {
+        return this.channelUsers;
+    }
+
+    @Override
+    @Nonnull
+    protected ToStringer toStringer() {
+        return super.toStringer().add("uplink", this.uplink).add("splitServer", this.splitServer).add("users", this.users.size()).add("channels", this.channelUsers.size());
+    }
+}
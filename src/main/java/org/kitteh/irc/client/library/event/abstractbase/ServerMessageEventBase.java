@@ -26,12 +26,11 @@ package org.kitteh.irc.client.library.event.abstractbase;
 import org.kitteh.irc.client.library.Client;
 import org.kitteh.irc.client.library.element.ServerMessage;
 import org.kitteh.irc.client.library.event.helper.ServerMessageEvent;
+import org.kitteh.irc.client.library.util.ImmutableList;
 import org.kitteh.irc.client.library.util.Sanity;
 import org.kitteh.irc.client.library.util.ToStringer;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -51,7 +50,7 @@ public abstract class ServerMessageEventBase extends ClientEventBase implements
      */
     protected ServerMessageEventBase(@Nonnull Client client, @Nonnull List<ServerMessage> originalMessages) {
         super(client);
-        this.originalMessages = Collections.unmodifiableList(new ArrayList<>(Sanity.nullCheck(originalMessages, "Original messages cannot be null")));
+        this.originalMessages = ImmutableList.copyOf(Sanity.nullCheck(originalMessages, "Original messages cannot be null"));
     }
 
     @Nonnull
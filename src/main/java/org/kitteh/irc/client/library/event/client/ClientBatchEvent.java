@@ -0,0 +1,150 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.event.client;
+
+import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.event.abstractbase.ServerMessageEventBase;
+import org.kitteh.irc.client.library.util.ImmutableList;
+import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Fires when the server closes an IRCv3 batch, with all messages sent as
+ * part of it. The original messages are the lines opening and closing the
+ * batch.
+ * <p>
+ * Batch members are held back until this event. Unless disabled via
+ * {@link #setProcessingMessages(boolean)}, they are then processed one
+ * after another as if received normally, so state changes are applied
+ * together. By default this is disabled for chathistory batches, as those
+ * messages describe past activity.
+ * <p>
+ * A batch nested inside another fires its own event when closed.
+ */
+public class ClientBatchEvent extends ServerMessageEventBase implements Iterable<ServerMessage> {
+    private final String referenceId;
+    private final String type;
+    private final List<String> parameters;
+    private final List<ServerMessage> messages;
+    private boolean processingMessages;
+
+    /**
+     * Constructs the event.
+     *
+     * @param client the client
+     * @param originalMessages original messages
+     * @param referenceId batch reference id
+     * @param type batch type
+     * @param parameters batch parameters following the type
+     * @param messages messages in the batch
+     */
+    public ClientBatchEvent(@Nonnull Client client, @Nonnull List<ServerMessage> originalMessages, @Nonnull String referenceId, @Nonnull String type, @Nonnull List<String> parameters, @Nonnull List<ServerMessage> messages) {
+        super(client, originalMessages);
+        this.referenceId = Sanity.nullCheck(referenceId, "Reference id cannot be null");
+        this.type = Sanity.nullCheck(type, "Type cannot be null");
+        this.parameters = ImmutableList.copyOf(Sanity.nullCheck(parameters, "Parameters cannot be null"));
+        this.messages = ImmutableList.copyOf(Sanity.nullCheck(messages, "Messages cannot be null"));
+        this.processingMessages = !type.endsWith("chathistory");
+    }
+
+    /**
+     * Gets the reference id the server used for this batch.
+     *
+     * @return reference id
+     */
+    @Nonnull
+    public String getReferenceId() {
+        return this.referenceId;
+    }
+
+    /**
+     * Gets the batch type, such as netsplit or chathistory.
+     *
+     * @return batch type
+     */
+    @Nonnull
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the parameters following the batch type.
+     *
+     * @return batch parameters
+     */
+    @Nonnull
+    public List<String> getParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * Gets the messages sent in this batch, in order.
+     *
+     * @return batch messages
+     */
+    @Nonnull
+    public List<ServerMessage> getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * Iterates over the messages sent in this batch, in order.
+     *
+     * @return message iterator
+     */
+    @Nonnull
+    @Override
+    public Iterator<ServerMessage> iterator() {
+        return this.messages.iterator();
+    }
+
+    /**
+     * Gets if the messages will be processed as normal after this event.
+     *
+     * @return true if processing
+     */
+    public boolean isProcessingMessages() {
+        return this.processingMessages;
+    }
+
+    /**
+     * Sets if the messages will be processed as normal after this event.
+     *
+     * @param processingMessages true to process, false to drop them
+     */
+    public void setProcessingMessages(boolean processingMessages) {
+        this.processingMessages = processingMessages;
+    }
+
+    @Override
+    @Nonnull
+    protected ToStringer toStringer() {
+        return super.toStringer().add("referenceId", this.referenceId).add("type", this.type).add("parameters", this.parameters).add("messages", this.messages.size()).add("processingMessages", this.processingMessages);
+    }
+}
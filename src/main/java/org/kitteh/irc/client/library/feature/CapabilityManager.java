@@ -23,6 +23,7 @@
  */
 package org.kitteh.irc.client.library.feature;
 
+import org.kitteh.irc.client.library.Client;
 import org.kitteh.irc.client.library.command.CapabilityRequestCommand;
 import org.kitteh.irc.client.library.element.CapabilityState;
 import org.kitteh.irc.client.library.element.Channel;
@@ -30,6 +31,7 @@ import org.kitteh.irc.client.library.element.MessageTag;
 import org.kitteh.irc.client.library.element.ServerMessage;
 import org.kitteh.irc.client.library.element.User;
 import org.kitteh.irc.client.library.event.channel.ChannelInviteEvent;
+import org.kitteh.irc.client.library.event.client.ClientBatchEvent;
 import org.kitteh.irc.client.library.event.user.UserHostnameChangeEvent;
 import org.kitteh.irc.client.library.event.user.UserUserStringChangeEvent;
 import org.kitteh.irc.client.library.feature.auth.SaslECDSANIST256PChallenge;
@@ -80,6 +82,13 @@ public interface CapabilityManager {
          */
         public static final String AWAY_NOTIFY = "away-notify";
 
+        /**
+         * Batched messages.
+         *
+         * @see ClientBatchEvent
+         */
+        public static final String BATCH = "batch";
+
         /**
          * Self-sent message echoing, not utilized unless requested.
          */
@@ -99,6 +108,13 @@ public interface CapabilityManager {
          */
         public static final transient String INVITE_NOTIFY = "invite-notify";
 
+        /**
+         * Labels on replies, correlating them with the line sent.
+         *
+         * @see Client#sendRawLineWithResponse
+         */
+        public static final String LABELED_RESPONSE = "labeled-response";
+
         /**
          * Multiple prefixes sent in NAMES and WHO output.
          *
@@ -85,6 +85,16 @@ public enum CaseMapping {
         return this.toLowerCase(one).equals(this.toLowerCase(two));
     }
 
+    /**
+     * Converts a given char to lowercase per spec.
+     *
+     * @param c char to be lowercased
+     * @return lowercased char
+     */
+    public char toLowerCase(char c) {
+        return ((c >= 'A') && (c <= this.upperbound)) ? (char) (c + 32) : c;
+    }
+
     /**
      * Converts a given String to lowercase per spec.
      *
@@ -95,8 +105,15 @@ public enum CaseMapping {
     @Nonnull
     public String toLowerCase(@Nonnull String input) {
         Sanity.nullCheck(input, "Input cannot be null");
+        int first = 0;
+        while ((first < input.length()) && ((input.charAt(first) < 'A') || (input.charAt(first) > this.upperbound))) {
+            first++;
+        }
+        if (first == input.length()) {
+            return input;
+        }
         char[] arr = input.toCharArray();
-        for (int i = 0; i < arr.length; i++) {
+        for (int i = first; i < arr.length; i++) {
             char c = arr[i];
             if ((c >= 'A') && (c <= this.upperbound)) {
                 arr[i] += (char) 32;
@@ -0,0 +1,275 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.feature;
+
+import net.engio.mbassy.bus.IMessagePublication;
+import net.engio.mbassy.bus.config.BusConfiguration;
+import net.engio.mbassy.bus.config.Feature;
+import net.engio.mbassy.listener.MessageListener;
+import net.engio.mbassy.listener.MetadataReader;
+import net.engio.mbassy.subscription.SubscriptionFactory;
+import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads and listener metadata shared by the event managers of a group of
+ * clients.
+ * <p>
+ * Each client keeps its own subscriptions, so events only reach listeners
+ * registered on the client firing them, but the threads for asynchronous
+ * handlers and the analysis of listener classes are shared. Threads are
+ * daemons, started when needed and stopped after idling for a minute. Unless a client
+ * is built with its own runtime, it uses the {@link #getDefault() default}.
+ */
+public final class EventDispatchRuntime {
+    /**
+     * Caches listener class analysis, which does not depend on the bus.
+     * Analysis itself is serialized, as the reader's filter cache is not
+     * thread safe.
+     */
+    private final class CachingMetadataReader extends MetadataReader {
+        @Override
+        @SuppressWarnings("rawtypes") // Overridden signature is raw
+        public MessageListener<?> getMessageListener(Class target) {
+            MessageListener<?> listener = EventDispatchRuntime.this.listeners.get(target);
+            if (listener == null) {
+                synchronized (this) {
+                    listener = EventDispatchRuntime.this.listeners.computeIfAbsent(target, super::getMessageListener);
+                }
+            }
+            return listener;
+        }
+    }
+
+    /**
+     * Starts the dispatcher thread when an asynchronous publication is
+     * queued and no dispatcher is running. Publications are queued before
+     * the check, so a dispatcher stopping for idleness never strands one.
+     */
+    private final class DispatchQueue extends LinkedBlockingQueue<IMessagePublication> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void put(@Nonnull IMessagePublication publication) throws InterruptedException {
+            super.put(publication);
+            EventDispatchRuntime.this.startDispatcher();
+        }
+
+        @Override
+        public boolean offer(IMessagePublication publication, long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+            boolean offered = super.offer(publication, timeout, unit);
+            if (offered) {
+                EventDispatchRuntime.this.startDispatcher();
+            }
+            return offered;
+        }
+    }
+
+    /**
+     * Hands work to the shared executor, ignoring a bus shutting it down.
+     */
+    private final class SharedExecutor extends AbstractExecutorService {
+        @Override
+        public void execute(@Nonnull Runnable command) {
+            EventDispatchRuntime.this.handlerExecutor.execute(command);
+        }
+
+        @Override
+        public void shutdown() {
+            // Shared with other clients
+        }
+
+        @Nonnull
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) {
+            return false;
+        }
+    }
+
+    private static final long IDLE_TIMEOUT_MINUTES = 1;
+
+    private static EventDispatchRuntime defaultRuntime;
+
+    /**
+     * Gets the runtime shared by all clients not built with their own.
+     *
+     * @return the default runtime
+     */
+    @Nonnull
+    public static synchronized EventDispatchRuntime getDefault() {
+        if (defaultRuntime == null) {
+            defaultRuntime = new EventDispatchRuntime("KICL");
+        }
+        return defaultRuntime;
+    }
+
+    private final String name;
+    private final Map<Class<?>, MessageListener<?>> listeners = new ConcurrentHashMap<>();
+    private final MetadataReader metadataReader = new CachingMetadataReader();
+    private final ThreadPoolExecutor handlerExecutor;
+    private final SharedExecutor sharedExecutor = new SharedExecutor();
+    private final DispatchQueue dispatchQueue = new DispatchQueue();
+    private Thread dispatcher;
+
+    /**
+     * Creates a runtime, for a group of clients to share.
+     *
+     * @param name name used to label the runtime's threads
+     */
+    public EventDispatchRuntime(@Nonnull String name) {
+        this.name = Sanity.safeMessageCheck(name, "Name");
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.handlerExecutor = new ThreadPoolExecutor(threads, threads, IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), this.threadFactory("Event Handler"));
+        this.handlerExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates the configuration for a client's event bus, backed by this
+     * runtime.
+     *
+     * @param subscriptionFactory factory creating the client's subscriptions
+     * @return a new bus configuration
+     */
+    @Nonnull
+    public BusConfiguration createBusConfiguration(@Nonnull SubscriptionFactory subscriptionFactory) {
+        Sanity.nullCheck(subscriptionFactory, "Subscription factory cannot be null");
+        BusConfiguration configuration = new BusConfiguration();
+        configuration.addFeature(Feature.SyncPubSub.Default().setSubscriptionFactory(subscriptionFactory).setMetadataReader(this.metadataReader));
+        configuration.addFeature(Feature.AsynchronousHandlerInvocation.Default().setExecutor(this.sharedExecutor));
+        configuration.addFeature(Feature.AsynchronousMessageDispatch.Default().setNumberOfMessageDispatchers(0).setMessageQueue(this.dispatchQueue));
+        return configuration;
+    }
+
+    /**
+     * Gets the analysis of a listener class, performing it if this is the
+     * first time the class is seen.
+     *
+     * @param listenerClass class of listener
+     * @return listener metadata
+     */
+    @Nonnull
+    public MessageListener<?> getMessageListener(@Nonnull Class<?> listenerClass) {
+        return this.metadataReader.getMessageListener(Sanity.nullCheck(listenerClass, "Listener class cannot be null"));
+    }
+
+    /**
+     * Gets the executor for running asynchronous handlers. Shutting it
+     * down has no effect.
+     *
+     * @return handler executor
+     */
+    @Nonnull
+    public ExecutorService getHandlerExecutor() {
+        return this.sharedExecutor;
+    }
+
+    /**
+     * Gets the number of listener classes analyzed so far.
+     *
+     * @return number of listener classes
+     */
+    public int getListenerClassCount() {
+        return this.listeners.size();
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("name", this.name).add("listenerClasses", this.listeners.size()).add("handlerThreads", this.handlerExecutor.getPoolSize()).toString();
+    }
+
+    private synchronized void startDispatcher() {
+        if (this.dispatcher != null) {
+            return;
+        }
+        this.dispatcher = this.threadFactory("Event Dispatcher").newThread(() -> {
+            while (true) {
+                try {
+                    IMessagePublication publication = this.dispatchQueue.poll(IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+                    if (publication == null) {
+                        if (this.stopDispatcher()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    publication.execute();
+                } catch (InterruptedException e) {
+                    synchronized (this) {
+                        this.dispatcher = null;
+                    }
+                    return;
+                } catch (RuntimeException e) {
+                    // Handler failures are reported by the publishing bus, keep dispatching
+                }
+            }
+        });
+        this.dispatcher.start();
+    }
+
+    private synchronized boolean stopDispatcher() {
+        if (!this.dispatchQueue.isEmpty()) {
+            return false;
+        }
+        this.dispatcher = null;
+        return true;
+    }
+
+    @Nonnull
+    private ThreadFactory threadFactory(@Nonnull String purpose) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, this.name + ' ' + purpose + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
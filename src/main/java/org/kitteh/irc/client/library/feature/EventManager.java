@@ -25,18 +25,33 @@ package org.kitteh.irc.client.library.feature;
 
 import net.engio.mbassy.listener.Handler;
 import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.event.client.ClientReceiveCommandEvent;
+import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
 import org.kitteh.irc.client.library.feature.filter.FilterProcessor;
 
 import javax.annotation.Nonnull;
 import java.lang.annotation.Annotation;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Processes and registers events for a single {@link Client} instance. This
  * event manager utilizes MBassador, a lightweight event bus.
  */
 public interface EventManager {
+    /**
+     * A handler registered through {@link #on(Class, Consumer)} or its
+     * siblings.
+     */
+    @FunctionalInterface
+    interface Registration {
+        /**
+         * Unregisters the handler. Further calls do nothing.
+         */
+        void unregister();
+    }
+
     /**
      * Calls an event, triggering any registered methods for the event class.
      *
@@ -89,4 +104,98 @@ public interface EventManager {
      * @throws IllegalArgumentException for a null listener
      */
     void unregisterEventListener(@Nonnull Object listener);
+
+    /**
+     * Registers a handler for an event class and its subclasses, without
+     * any annotation scanning or reflective invocation.
+     * <p>
+     * Handlers registered this way are called synchronously, after all
+     * annotated listeners including the client's own, in descending
+     * priority order and then in order of registration.
+     *
+     * @param eventClass class of event to handle
+     * @param priority priority, higher being called first
+     * @param handler handler to call
+     * @param <E> event type
+     * @return registration, for unregistering the handler
+     * @throws IllegalArgumentException for a null class or handler
+     */
+    @Nonnull
+    <E> Registration on(@Nonnull Class<E> eventClass, int priority, @Nonnull Consumer<? super E> handler);
+
+    /**
+     * Registers a handler for an event class and its subclasses, at
+     * priority 0.
+     *
+     * @param eventClass class of event to handle
+     * @param handler handler to call
+     * @param <E> event type
+     * @return registration, for unregistering the handler
+     * @throws IllegalArgumentException for a null class or handler
+     * @see #on(Class, int, Consumer)
+     */
+    @Nonnull
+    default <E> Registration on(@Nonnull Class<E> eventClass, @Nonnull Consumer<? super E> handler) {
+        return this.on(eventClass, 0, handler);
+    }
+
+    /**
+     * Registers a handler for a single command, like a {@link
+     * ClientReceiveCommandEvent} listener with a {@link
+     * org.kitteh.irc.client.library.feature.filter.CommandFilter}. Only
+     * handlers for the received command are consulted.
+     *
+     * @param command command to handle, case insensitive
+     * @param priority priority, higher being called first
+     * @param handler handler to call
+     * @return registration, for unregistering the handler
+     * @throws IllegalArgumentException for a null command or handler
+     * @see #on(Class, int, Consumer)
+     */
+    @Nonnull
+    Registration onCommand(@Nonnull String command, int priority, @Nonnull Consumer<ClientReceiveCommandEvent> handler);
+
+    /**
+     * Registers a handler for a single command at priority 0.
+     *
+     * @param command command to handle, case insensitive
+     * @param handler handler to call
+     * @return registration, for unregistering the handler
+     * @throws IllegalArgumentException for a null command or handler
+     * @see #onCommand(String, int, Consumer)
+     */
+    @Nonnull
+    default Registration onCommand(@Nonnull String command, @Nonnull Consumer<ClientReceiveCommandEvent> handler) {
+        return this.onCommand(command, 0, handler);
+    }
+
+    /**
+     * Registers a handler for a single numeric, like a {@link
+     * ClientReceiveNumericEvent} listener with a {@link
+     * org.kitteh.irc.client.library.feature.filter.NumericFilter}. Only
+     * handlers for the received numeric are consulted.
+     *
+     * @param numeric numeric to handle
+     * @param priority priority, higher being called first
+     * @param handler handler to call
+     * @return registration, for unregistering the handler
+     * @throws IllegalArgumentException for a null handler
+     * @see #on(Class, int, Consumer)
+     */
+    @Nonnull
+    Registration onNumeric(int numeric, int priority, @Nonnull Consumer<ClientReceiveNumericEvent> handler);
+
+    /**
+     * Registers a handler for a single numeric at priority 0.
+     *
+     * @param numeric numeric to handle
+     * @param handler handler to call
+     * @return registration, for unregistering the handler
+     * @throws IllegalArgumentException for a null handler
+     * @see #onNumeric(int, int, Consumer)
+     */
+    @Nonnull
+    default Registration onNumeric(int numeric, @Nonnull Consumer<ClientReceiveNumericEvent> handler) {
+        return this.onNumeric(numeric, 0, handler);
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.feature;
+
+import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+
+/**
+ * Round-trip lag to the server, measured by matching the client's PINGs
+ * with their PONG replies.
+ */
+public final class Lag {
+    private final Duration current;
+    private final Duration average;
+    private final Duration max;
+    private final int samples;
+
+    /**
+     * Constructs a lag measurement.
+     *
+     * @param current most recently measured lag
+     * @param average moving average lag
+     * @param max highest lag measured on this connection
+     * @param samples number of measurements on this connection
+     * @throws IllegalArgumentException if a duration is null or samples is
+     * not positive
+     */
+    public Lag(@Nonnull Duration current, @Nonnull Duration average, @Nonnull Duration max, int samples) {
+        this.current = Sanity.nullCheck(current, "Current lag cannot be null");
+        this.average = Sanity.nullCheck(average, "Average lag cannot be null");
+        this.max = Sanity.nullCheck(max, "Max lag cannot be null");
+        Sanity.truthiness(samples > 0, "Samples must be positive");
+        this.samples = samples;
+    }
+
+    /**
+     * Gets the most recently measured lag.
+     *
+     * @return current lag
+     */
+    @Nonnull
+    public Duration getCurrent() {
+        return this.current;
+    }
+
+    /**
+     * Gets the moving average of measured lag, weighting recent
+     * measurements most heavily.
+     *
+     * @return average lag
+     */
+    @Nonnull
+    public Duration getAverage() {
+        return this.average;
+    }
+
+    /**
+     * Gets the highest lag measured on this connection.
+     *
+     * @return max lag
+     */
+    @Nonnull
+    public Duration getMax() {
+        return this.max;
+    }
+
+    /**
+     * Gets the number of measurements on this connection.
+     *
+     * @return sample count
+     */
+    public int getSamples() {
+        return this.samples;
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("current", this.current).add("average", this.average).add("max", this.max).add("samples", this.samples).toString();
+    }
+}
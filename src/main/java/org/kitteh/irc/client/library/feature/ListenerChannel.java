@@ -0,0 +1,375 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.feature;
+
+import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the exceptions, input and output of a group of clients to their
+ * listeners from one shared thread.
+ * <p>
+ * Items wait in a bounded ring buffer, which the thread drains in bulk,
+ * handing each listener a list of its items in the order queued. What
+ * happens when the buffer is full is set by the {@link OverflowPolicy}.
+ * The thread starts when the first {@link Endpoint} opens and finishes
+ * once all are closed and their items delivered. Unless a client is built
+ * with its own channel, it uses the {@link #getDefault() default}.
+ */
+public final class ListenerChannel {
+    /**
+     * What to do with an item queued while the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait for space, so no item is lost.
+         */
+        BLOCK,
+        /**
+         * Discard the item.
+         */
+        DROP,
+        /**
+         * Once the buffer is three quarters full, keep one in every
+         * {@link #SAMPLE_RATE} items and discard the rest.
+         */
+        SAMPLE
+    }
+
+    /**
+     * A listener's connection to the channel.
+     *
+     * @param <Type> type of items
+     */
+    public final class Endpoint<Type> {
+        private volatile Consumer<List<Type>> consumer;
+        private volatile boolean open = true;
+
+        private Endpoint(@Nonnull Consumer<List<Type>> consumer) {
+            this.consumer = consumer;
+        }
+
+        /**
+         * Queues an item for the listener. Ignored once closed.
+         *
+         * @param item item to queue
+         */
+        public void queue(@Nonnull Type item) {
+            Sanity.nullCheck(item, "Item cannot be null");
+            if (this.open) {
+                ListenerChannel.this.queue(this, item);
+            }
+        }
+
+        /**
+         * Sets the listener, which receives all items not yet delivered.
+         *
+         * @param consumer new listener
+         */
+        public void setConsumer(@Nonnull Consumer<List<Type>> consumer) {
+            this.consumer = Sanity.nullCheck(consumer, "Consumer cannot be null");
+        }
+
+        /**
+         * Closes the endpoint. Items already queued are still delivered.
+         */
+        public void close() {
+            if (this.open) {
+                this.open = false;
+                ListenerChannel.this.close();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliver(@Nonnull List<Object> items) {
+            try {
+                this.consumer.accept((List<Type>) Collections.unmodifiableList(items));
+            } catch (final Throwable thrown) {
+                // NOOP
+            }
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return new ToStringer(this).add("open", this.open).toString();
+        }
+    }
+
+    /**
+     * Default capacity of the ring buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+    /**
+     * Default maximum number of items drained at once.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    /**
+     * One in this many items is kept under {@link OverflowPolicy#SAMPLE}.
+     */
+    public static final int SAMPLE_RATE = 16;
+
+    private static ListenerChannel defaultChannel;
+
+    /**
+     * Gets the channel shared by all clients not built with their own.
+     * <p>
+     * Items are queued from the clients' network threads, so rather than
+     * letting one slow listener stall every client, the default channel
+     * samples items once nearly full. The number discarded is available
+     * from {@link #getDroppedCount()}. Build clients with a channel using
+     * {@link OverflowPolicy#BLOCK} if no item may be lost.
+     *
+     * @return the default channel
+     */
+    @Nonnull
+    public static synchronized ListenerChannel getDefault() {
+        if (defaultChannel == null) {
+            defaultChannel = new ListenerChannel("KICL", DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, OverflowPolicy.SAMPLE);
+        }
+        return defaultChannel;
+    }
+
+    private final String name;
+    private final int batchSize;
+    private final OverflowPolicy policy;
+    private final Endpoint<?>[] endpoints;
+    private final Object[] items;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+    private int head;
+    private int count;
+    private int openEndpoints;
+    private int sampleCount;
+    private volatile long dropped;
+    @Nullable
+    private Thread drainer;
+
+    /**
+     * Creates a channel, for a group of clients to share.
+     *
+     * @param name name used to label the channel's thread
+     * @param capacity number of items the buffer holds
+     * @param batchSize maximum number of items drained at once
+     * @param policy what to do with items queued while full
+     * @throws IllegalArgumentException if capacity or batch size is not
+     * positive
+     */
+    public ListenerChannel(@Nonnull String name, int capacity, int batchSize, @Nonnull OverflowPolicy policy) {
+        this.name = Sanity.safeMessageCheck(name, "Name");
+        Sanity.truthiness(capacity > 0, "Capacity must be positive");
+        Sanity.truthiness(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+        this.policy = Sanity.nullCheck(policy, "Policy cannot be null");
+        this.endpoints = new Endpoint<?>[capacity];
+        this.items = new Object[capacity];
+    }
+
+    /**
+     * Opens an endpoint for a listener, starting the channel's thread if
+     * not already running.
+     *
+     * @param consumer listener, receiving items in batches
+     * @param <Type> type of items
+     * @return a new endpoint
+     */
+    @Nonnull
+    public <Type> Endpoint<Type> open(@Nonnull Consumer<List<Type>> consumer) {
+        Endpoint<Type> endpoint = new Endpoint<>(Sanity.nullCheck(consumer, "Consumer cannot be null"));
+        this.lock.lock();
+        try {
+            this.openEndpoints++;
+            if (this.drainer == null) {
+                this.drainer = new Thread(this::drain, this.name + " Listener");
+                this.drainer.start();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return endpoint;
+    }
+
+    /**
+     * Gets the number of items the buffer holds.
+     *
+     * @return capacity
+     */
+    public int getCapacity() {
+        return this.items.length;
+    }
+
+    /**
+     * Gets the number of items discarded because the buffer was full.
+     *
+     * @return items discarded
+     */
+    public long getDroppedCount() {
+        return this.dropped;
+    }
+
+    /**
+     * Gets what is done with items queued while full.
+     *
+     * @return overflow policy
+     */
+    @Nonnull
+    public OverflowPolicy getPolicy() {
+        return this.policy;
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("name", this.name).add("capacity", this.items.length).add("policy", this.policy).add("dropped", this.dropped).toString();
+    }
+
+    private void queue(@Nonnull Endpoint<?> endpoint, @Nonnull Object item) {
+        this.lock.lock();
+        try {
+            if (this.count == this.items.length) {
+                if (this.policy != OverflowPolicy.BLOCK) {
+                    this.dropped++;
+                    return;
+                }
+                if (Thread.currentThread() == this.drainer) {
+                    // A listener queueing from this channel's thread would wait forever, so hand it over directly
+                    this.lock.unlock();
+                    try {
+                        endpoint.deliver(Collections.singletonList(item));
+                    } finally {
+                        this.lock.lock();
+                    }
+                    return;
+                }
+                if (!this.awaitSpace()) {
+                    this.dropped++;
+                    return;
+                }
+            } else if ((this.policy == OverflowPolicy.SAMPLE) && (this.count >= ((this.items.length / 4) * 3)) && ((this.sampleCount++ % SAMPLE_RATE) != 0)) {
+                this.dropped++;
+                return;
+            }
+            int tail = (this.head + this.count) % this.items.length;
+            this.endpoints[tail] = endpoint;
+            this.items[tail] = item;
+            // Only an empty buffer can have the thread waiting
+            if (this.count++ == 0) {
+                this.notEmpty.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private boolean awaitSpace() {
+        try {
+            while (this.count == this.items.length) {
+                this.notFull.await();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void close() {
+        this.lock.lock();
+        try {
+            if (--this.openEndpoints == 0) {
+                this.notEmpty.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void drain() {
+        Endpoint<?>[] batchEndpoints = new Endpoint<?>[Math.min(this.batchSize, this.items.length)];
+        Object[] batchItems = new Object[batchEndpoints.length];
+        while (true) {
+            int size;
+            this.lock.lock();
+            try {
+                while (this.count == 0) {
+                    if (this.openEndpoints == 0) {
+                        this.drainer = null;
+                        return;
+                    }
+                    this.notEmpty.awaitUninterruptibly();
+                }
+                size = Math.min(this.count, batchEndpoints.length);
+                for (int i = 0; i < size; i++) {
+                    int index = (this.head + i) % this.items.length;
+                    batchEndpoints[i] = this.endpoints[index];
+                    batchItems[i] = this.items[index];
+                    this.endpoints[index] = null;
+                    this.items[index] = null;
+                }
+                this.head = (this.head + size) % this.items.length;
+                this.count -= size;
+                this.notFull.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+            this.deliver(batchEndpoints, batchItems, size);
+        }
+    }
+
+    private void deliver(@Nonnull Endpoint<?>[] batchEndpoints, @Nonnull Object[] batchItems, int size) {
+        Endpoint<?> first = batchEndpoints[0];
+        int same = 1;
+        while ((same < size) && (batchEndpoints[same] == first)) {
+            same++;
+        }
+        if (same == size) {
+            // Common when one listener is busy, needing no grouping
+            List<Object> list = Arrays.asList(Arrays.copyOf(batchItems, size));
+            Arrays.fill(batchEndpoints, 0, size, null);
+            Arrays.fill(batchItems, 0, size, null);
+            first.deliver(list);
+            return;
+        }
+        Map<Endpoint<?>, List<Object>> grouped = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            grouped.computeIfAbsent(batchEndpoints[i], key -> new ArrayList<>()).add(batchItems[i]);
+            batchEndpoints[i] = null;
+            batchItems[i] = null;
+        }
+        grouped.forEach(Endpoint::deliver);
+    }
+}
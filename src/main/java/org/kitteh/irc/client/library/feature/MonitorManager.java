@@ -0,0 +1,121 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.feature;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Keeps the server's MONITOR list in line with the nicks the client wants
+ * monitored, and tracks whether they are online.
+ * <p>
+ * Changes are sent as few MONITOR lines as fit, and the whole list is sent
+ * again after reconnecting. If the server limits how many nicks may be
+ * monitored, nicks of higher priority are monitored first, with ties going
+ * to the nicks added earliest. The rest are {@link #getOverflowNicks()
+ * overflow}, monitored once there is room.
+ */
+public interface MonitorManager {
+    /**
+     * Priority of nicks added without one.
+     */
+    int DEFAULT_PRIORITY = 0;
+
+    /**
+     * Adds a nick to monitor, with the default priority.
+     *
+     * @param nick nick to monitor
+     * @throws IllegalArgumentException if nick is null or contains invalid
+     * characters
+     */
+    void addNick(@Nonnull String nick);
+
+    /**
+     * Adds a nick to monitor, or changes its priority if already added.
+     *
+     * @param nick nick to monitor
+     * @param priority priority, higher first when over the server's limit
+     * @throws IllegalArgumentException if nick is null or contains invalid
+     * characters
+     */
+    void addNick(@Nonnull String nick, int priority);
+
+    /**
+     * Adds nicks to monitor, with the default priority.
+     *
+     * @param nicks nicks to monitor
+     * @throws IllegalArgumentException if a nick is null or contains invalid
+     * characters
+     */
+    void addNicks(@Nonnull Collection<String> nicks);
+
+    /**
+     * Removes a nick from monitoring.
+     *
+     * @param nick nick to stop monitoring
+     */
+    void removeNick(@Nonnull String nick);
+
+    /**
+     * Removes nicks from monitoring.
+     *
+     * @param nicks nicks to stop monitoring
+     */
+    void removeNicks(@Nonnull Collection<String> nicks);
+
+    /**
+     * Gets the nicks the client wants monitored.
+     *
+     * @return nicks added
+     */
+    @Nonnull
+    Set<String> getNicks();
+
+    /**
+     * Gets the nicks added but not monitored, as the server's limit is
+     * reached.
+     *
+     * @return nicks over the limit
+     */
+    @Nonnull
+    Set<String> getOverflowNicks();
+
+    /**
+     * Gets the monitored nicks last reported online.
+     *
+     * @return online nicks
+     */
+    @Nonnull
+    Set<String> getOnlineNicks();
+
+    /**
+     * Gets if a monitored nick was last reported online.
+     *
+     * @param nick nick
+     * @return true if online, false if offline, not monitored or not yet
+     * reported
+     */
+    boolean isOnline(@Nonnull String nick);
+}
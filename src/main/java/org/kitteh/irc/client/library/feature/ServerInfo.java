@@ -187,6 +187,18 @@ public interface ServerInfo {
         return optional.isPresent() ? Optional.of(optional.get().getNetworkName()) : Optional.empty();
     }
 
+    /**
+     * Gets the number of nicks which may be monitored.
+     *
+     * @return monitor limit, {@link Integer#MAX_VALUE} if unlimited, or -1
+     * if MONITOR is not supported
+     * @see ISupportParameter.Monitor#getLimit()
+     */
+    default int getMonitorLimit() {
+        Optional<ISupportParameter.Monitor> optional = this.getISupportParameter(ISupportParameter.Monitor.NAME, ISupportParameter.Monitor.class);
+        return optional.isPresent() ? optional.get().getLimit() : -1;
+    }
+
     /**
      * Gets the maximum length of nicknames.
      *
@@ -197,6 +209,18 @@ public interface ServerInfo {
         return optional.isPresent() ? optional.get().getInteger() : -1;
     }
 
+    /**
+     * Gets the target limits of commands.
+     *
+     * @return a map of upper case commands to limits
+     * @see ISupportParameter.TargMax#getLimits()
+     */
+    @Nonnull
+    default Map<String, Integer> getTargetLimits() {
+        Optional<ISupportParameter.TargMax> optional = this.getISupportParameter(ISupportParameter.TargMax.NAME, ISupportParameter.TargMax.class);
+        return optional.isPresent() ? optional.get().getLimits() : Collections.emptyMap();
+    }
+
     /**
      * Gets the user modes available. If the server has not provided
      * information on user modes, defaults are used and returned here.
@@ -0,0 +1,95 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.feature;
+
+import org.kitteh.irc.client.library.element.WhoisData;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Looks up and caches WHOIS information.
+ * <p>
+ * Results are kept for the {@link #getTimeToLive() time to live}, and
+ * dropped early when the user changes nick, quits, or changes account or
+ * host, and all dropped when the connection closes. Lookups of a nick
+ * already awaiting a reply share that reply, and replies to any WHOIS sent
+ * by the client are cached.
+ */
+public interface WhoisManager {
+    /**
+     * Gets WHOIS information for a nick, from the cache if present or
+     * else from the server.
+     *
+     * @param nick nick to look up
+     * @return future completed with the information, or empty if the
+     * server has no such nick, completed exceptionally with a {@link
+     * java.util.concurrent.TimeoutException} if no reply arrives within 30
+     * seconds, or cancelled if the connection closes first
+     * @throws IllegalArgumentException if nick is null or contains
+     * invalid characters
+     */
+    @Nonnull
+    CompletableFuture<Optional<WhoisData>> getWhois(@Nonnull String nick);
+
+    /**
+     * Gets WHOIS information for a nick if cached.
+     *
+     * @param nick nick to look up
+     * @return cached information if present and not expired
+     */
+    @Nonnull
+    Optional<WhoisData> getCachedWhois(@Nonnull String nick);
+
+    /**
+     * Gets how long information is cached.
+     *
+     * @return time to live
+     */
+    @Nonnull
+    Duration getTimeToLive();
+
+    /**
+     * Sets how long information is cached. Zero disables caching, while
+     * concurrent lookups still share a reply.
+     *
+     * @param timeToLive time to live
+     * @throws IllegalArgumentException if null or negative
+     */
+    void setTimeToLive(@Nonnull Duration timeToLive);
+
+    /**
+     * Drops any cached information for a nick.
+     *
+     * @param nick nick
+     */
+    void invalidate(@Nonnull String nick);
+
+    /**
+     * Drops all cached information.
+     */
+    void invalidateAll();
+}
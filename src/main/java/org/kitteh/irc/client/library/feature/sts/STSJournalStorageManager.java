@@ -0,0 +1,458 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.feature.sts;
+
+import org.kitteh.irc.client.library.exception.KittehSTSException;
+import org.kitteh.irc.client.library.util.STSUtil;
+import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * An STSStorageManager keeping all policies in memory and persisting
+ * changes to an append-only journal file.
+ * <p>
+ * Lookups never touch the disk, and are safe to make from many clients at
+ * once. Changes are appended to the journal by a background thread shortly
+ * after being made, and the journal is compacted, by atomically replacing
+ * it with a file holding only the live policies, once it has grown to
+ * hold mostly stale records. Call {@link #flush()} to wait for pending
+ * changes to be written, or {@link #close()} when done with the manager.
+ * <p>
+ * Each record ends with a checksum of its contents. Records failing the
+ * check, or missing their line ending, are the remains of an interrupted
+ * write and are skipped, after which the journal is rewritten.
+ */
+public class STSJournalStorageManager implements STSStorageManager, AutoCloseable {
+    private static final class Entry {
+        private final String hostname;
+        private final long expiry;
+        private final STSPolicy policy;
+        private final String serialized;
+
+        private Entry(@Nonnull String hostname, long expiry, @Nonnull STSPolicy policy, @Nonnull String serialized) {
+            this.hostname = hostname;
+            this.expiry = expiry;
+            this.policy = policy;
+            this.serialized = serialized;
+        }
+
+        private boolean isExpired(long now) {
+            return this.expiry < now;
+        }
+
+        @Nonnull
+        private String toRecord() {
+            return seal(ADD + SEPARATOR + this.hostname + SEPARATOR + this.expiry + SEPARATOR + this.serialized);
+        }
+    }
+
+    private final class Writer extends Thread {
+        private Writer() {
+            this.setName("KICL STS Writer");
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (STSJournalStorageManager.this.pending) {
+                    while (STSJournalStorageManager.this.pending.isEmpty() && !STSJournalStorageManager.this.closed) {
+                        try {
+                            STSJournalStorageManager.this.pending.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (STSJournalStorageManager.this.closed && STSJournalStorageManager.this.pending.isEmpty()) {
+                        return;
+                    }
+                }
+                try {
+                    STSJournalStorageManager.this.write();
+                } catch (IOException e) {
+                    STSJournalStorageManager.this.failure = e;
+                }
+            }
+        }
+    }
+
+    private static final String HEADER = "# KICL STS journal";
+    private static final String ADD = "+";
+    private static final String REMOVE = "-";
+    private static final char SEPARATOR = '\t';
+    private static final int COMPACTION_MINIMUM = 64;
+
+    private final Path filePath;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final PriorityQueue<Entry> expiries = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.expiry));
+    private volatile long nextExpiry = Long.MAX_VALUE;
+    private final List<String> pending = new ArrayList<>();
+    private final Object diskLock = new Object();
+    private int journalRecords;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Creates a manager persisting to the given journal file, loading any
+     * policies already stored in it.
+     *
+     * @param filePath the path to the journal file
+     * @throws KittehSTSException if the file cannot be read or compacted
+     */
+    public STSJournalStorageManager(@Nonnull Path filePath) {
+        this.filePath = Sanity.nullCheck(filePath, "Must provide a valid path to the journal file to use.");
+        try {
+            boolean intact = this.readData();
+            synchronized (this.diskLock) {
+                if (!intact || this.needsCompaction()) {
+                    this.compact();
+                }
+            }
+        } catch (IOException e) {
+            throw new KittehSTSException(e.getMessage(), e);
+        }
+        new Writer().start();
+    }
+
+    /**
+     * Loads the journal.
+     *
+     * @return false if any record was torn or damaged
+     */
+    private boolean readData() throws IOException {
+        if (!Files.exists(this.filePath)) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        String data = new String(Files.readAllBytes(this.filePath), StandardCharsets.UTF_8);
+        int end = data.lastIndexOf('\n') + 1;
+        boolean intact = end == data.length(); // Anything after the last line ending is torn
+        for (String line : data.substring(0, end).split("\n")) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            this.journalRecords++;
+            int checksum = line.lastIndexOf(SEPARATOR);
+            if ((checksum < 0) || !line.equals(seal(line.substring(0, checksum)))) {
+                intact = false;
+                continue;
+            }
+            String[] components = line.substring(0, checksum).split(String.valueOf(SEPARATOR), -1);
+            if (components[0].equals(REMOVE) && (components.length == 2)) {
+                this.entries.remove(components[1]);
+            } else if (components[0].equals(ADD) && (components.length == 4)) {
+                long expiry;
+                try {
+                    expiry = Long.parseLong(components[2]);
+                } catch (NumberFormatException e) {
+                    intact = false;
+                    continue;
+                }
+                if (expiry < now) {
+                    this.entries.remove(components[1]);
+                } else {
+                    this.entries.put(components[1], new Entry(components[1], expiry, STSUtil.getSTSPolicyFromString(",", components[3]), components[3]));
+                }
+            } else {
+                intact = false;
+            }
+        }
+        synchronized (this.expiries) {
+            this.expiries.addAll(this.entries.values());
+            this.updateNextExpiry();
+        }
+        return intact;
+    }
+
+    /**
+     * Adds an entry to the store, queueing it to be written to the journal.
+     *
+     * @param hostname the hostname (as sent in the SNI by the client)
+     * @param duration the length (in seconds) until the expiry of this stored policy
+     * @param policy the STS policy instance, including all data sent from the server
+     */
+    @Override
+    public void addEntry(@Nonnull String hostname, long duration, @Nonnull STSPolicy policy) {
+        Sanity.nullCheck(hostname, "A valid hostname must be provided for this entry.");
+        Sanity.nullCheck(policy, "A valid policy must be provided to be inserted.");
+        Sanity.safeMessageCheck(hostname, "hostname");
+        Sanity.truthiness(hostname.indexOf(SEPARATOR) < 0, "Hostname cannot contain tabs.");
+        if (!policy.getOptions().containsKey(STSPolicy.POLICY_OPTION_KEY_DURATION)) {
+            policy.getOptions().put(STSPolicy.POLICY_OPTION_KEY_DURATION, String.valueOf(duration));
+        }
+        String serialized = this.reserializeData(policy);
+        Sanity.safeMessageCheck(serialized, "policy");
+        Sanity.truthiness(serialized.indexOf(SEPARATOR) < 0, "Policy cannot contain tabs.");
+        Entry entry = new Entry(hostname, System.currentTimeMillis() + (duration * 1000), this.copy(policy), serialized);
+        synchronized (this.expiries) {
+            Entry replaced = this.entries.put(hostname, entry);
+            if (replaced != null) {
+                this.expiries.remove(replaced);
+            }
+            this.expiries.add(entry);
+            this.updateNextExpiry();
+        }
+        this.queue(entry.toRecord());
+    }
+
+    /**
+     * Gets an STS policy from the store, looking it up via hostname.
+     *
+     * @param hostname the hostname (as sent in the SNI by the client)
+     * @return all data sent by the server in the CAP LS "sts" value when we connected securely
+     */
+    @Nonnull
+    @Override
+    public Optional<STSPolicy> getEntry(@Nonnull String hostname) {
+        Entry entry = this.getLiveEntry(hostname);
+        return (entry == null) ? Optional.empty() : Optional.of(this.copy(entry.policy));
+    }
+
+    /**
+     * Checks if a policy has been stored for the hostname.
+     *
+     * @param hostname the hostname to check
+     * @return whether the entry exists in the store
+     */
+    @Override
+    public boolean hasEntry(@Nonnull String hostname) {
+        return this.getLiveEntry(hostname) != null;
+    }
+
+    /**
+     * Deletes an entry from the store (used for 0 duration policies).
+     * <p>
+     * Implementers MUST ignore requests to remove entries that do not exist.
+     *
+     * @param hostname the hostname to remove the policy for
+     */
+    @Override
+    public void removeEntry(@Nonnull String hostname) {
+        Sanity.nullCheck(hostname, "A valid hostname must be provided for this entry.");
+        Entry removed;
+        synchronized (this.expiries) {
+            removed = this.entries.remove(hostname);
+            if (removed != null) {
+                this.expiries.remove(removed);
+                this.updateNextExpiry();
+            }
+        }
+        if (removed != null) {
+            this.queue(seal(REMOVE + SEPARATOR + hostname));
+        }
+    }
+
+    /**
+     * Writes all pending changes to the journal before returning.
+     *
+     * @throws KittehSTSException if writing failed, now or in the background
+     */
+    public void flush() {
+        try {
+            this.write();
+        } catch (IOException e) {
+            this.failure = e;
+        }
+        IOException failure = this.failure;
+        if (failure != null) {
+            this.failure = null;
+            throw new KittehSTSException(failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Writes all pending changes and stops the background writer. Further
+     * changes are only written by calling {@link #flush()}.
+     *
+     * @throws KittehSTSException if writing failed
+     */
+    @Override
+    public void close() {
+        synchronized (this.pending) {
+            this.closed = true;
+            this.pending.notifyAll();
+        }
+        this.flush();
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("filePath", this.filePath).add("entries", this.entries.size()).add("closed", this.closed).toString();
+    }
+
+    private Entry getLiveEntry(@Nonnull String hostname) {
+        Sanity.nullCheck(hostname, "A valid hostname must be provided for this entry.");
+        long now = System.currentTimeMillis();
+        if (now > this.nextExpiry) {
+            this.pruneEntries(now);
+        }
+        Entry entry = this.entries.get(hostname);
+        return ((entry == null) || entry.isExpired(now)) ? null : entry;
+    }
+
+    /**
+     * Drops expired entries from memory. They are left out of the journal
+     * at its next compaction, and ignored when reading it.
+     */
+    private void pruneEntries(long now) {
+        synchronized (this.expiries) {
+            Entry entry;
+            while (((entry = this.expiries.peek()) != null) && entry.isExpired(now)) {
+                this.expiries.poll();
+                this.entries.remove(entry.hostname, entry);
+            }
+            this.updateNextExpiry();
+        }
+    }
+
+    private void updateNextExpiry() {
+        Entry next = this.expiries.peek();
+        this.nextExpiry = (next == null) ? Long.MAX_VALUE : next.expiry;
+    }
+
+    private void queue(@Nonnull String record) {
+        synchronized (this.pending) {
+            this.pending.add(record);
+            this.pending.notifyAll();
+        }
+    }
+
+    private void write() throws IOException {
+        synchronized (this.diskLock) {
+            List<String> records;
+            synchronized (this.pending) {
+                if (this.pending.isEmpty()) {
+                    return;
+                }
+                records = new ArrayList<>(this.pending);
+                this.pending.clear();
+            }
+            StringBuilder builder = new StringBuilder();
+            if (!Files.exists(this.filePath) || (Files.size(this.filePath) == 0)) {
+                builder.append(HEADER).append('\n');
+            }
+            for (String record : records) {
+                builder.append(record).append('\n');
+            }
+            try (FileChannel channel = FileChannel.open(this.filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(builder.toString());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            this.journalRecords += records.size();
+            if (this.needsCompaction()) {
+                this.compact();
+            }
+        }
+    }
+
+    private boolean needsCompaction() {
+        return this.journalRecords > Math.max(COMPACTION_MINIMUM, this.entries.size() * 2);
+    }
+
+    /**
+     * Replaces the journal with one holding only the live entries. Must be
+     * called holding the disk lock.
+     */
+    private void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        List<String> records = this.entries.values().stream().filter(entry -> !entry.isExpired(now)).map(Entry::toRecord).collect(Collectors.toList());
+        Path temp = this.filePath.resolveSibling(this.filePath.getFileName() + ".tmp");
+        StringBuilder builder = new StringBuilder(HEADER).append('\n');
+        for (String record : records) {
+            builder.append(record).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(builder.toString());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        try {
+            Files.move(temp, this.filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, this.filePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.journalRecords = records.size();
+    }
+
+    /**
+     * Appends the checksum of a record's contents to it.
+     *
+     * @param record record contents
+     * @return the complete record
+     */
+    @Nonnull
+    private static String seal(@Nonnull String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return record + SEPARATOR + Long.toHexString(crc.getValue());
+    }
+
+    @Nonnull
+    private STSPolicy copy(@Nonnull STSPolicy policy) {
+        return new STSPolicy(policy.getOptions(), policy.getFlags());
+    }
+
+    /**
+     * Reserialize the STS policy in the same form as used in the spec.
+     *
+     * @param policy The map of keys -> optional string values
+     * @return a serialized string
+     */
+    @Nonnull
+    private String reserializeData(@Nonnull STSPolicy policy) {
+        StringBuilder sb = new StringBuilder((policy.getOptions().size() * 10) + (policy.getFlags().size() * 5));
+        sb.append(String.join(",", policy.getFlags()));
+        if (!policy.getFlags().isEmpty()) {
+            sb.append(',');
+        }
+        sb.append(policy.getOptions().entrySet().stream().map(e -> e.getKey() + '=' + e.getValue()).collect(Collectors.joining(",")));
+        return sb.toString();
+    }
+}
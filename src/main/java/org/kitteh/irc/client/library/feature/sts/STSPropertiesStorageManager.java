@@ -96,7 +96,7 @@ public class STSPropertiesStorageManager implements STSStorageManager {
      * Saves data using the provided Writer.
      */
     private void saveData() {
-        try (BufferedWriter bufferedWriter = Files.newBufferedWriter(this.filePath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        try (BufferedWriter bufferedWriter = Files.newBufferedWriter(this.filePath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
             this.properties.store(bufferedWriter, "This file contains all the gathered STS policies.");
         } catch (IOException e) {
             throw new KittehSTSException(e.getMessage());
@@ -154,8 +154,10 @@ public class STSPropertiesStorageManager implements STSStorageManager {
             }
         }
 
-        this.properties.keySet().removeAll(stagedRemovals);
-        this.saveData();
+        if (!stagedRemovals.isEmpty()) {
+            this.properties.keySet().removeAll(stagedRemovals);
+            this.saveData();
+        }
     }
 
     /**
@@ -170,7 +172,9 @@ public class STSPropertiesStorageManager implements STSStorageManager {
         Sanity.nullCheck(hostname, "A valid hostname must be provided for this entry.");
 
         this.pruneEntries();
-        this.properties.remove(hostname);
+        if (this.properties.remove(hostname) != null) {
+            this.saveData();
+        }
     }
 
     /**
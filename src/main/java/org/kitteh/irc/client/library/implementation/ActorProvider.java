@@ -39,8 +39,11 @@ import org.kitteh.irc.client.library.element.mode.ChannelUserMode;
 import org.kitteh.irc.client.library.element.mode.ModeInfo;
 import org.kitteh.irc.client.library.element.mode.ModeStatus;
 import org.kitteh.irc.client.library.element.mode.ModeStatusList;
+import org.kitteh.irc.client.library.feature.CaseMapping;
 import org.kitteh.irc.client.library.util.CIKeyMap;
+import org.kitteh.irc.client.library.util.MaskIndex;
 import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.StringUtil;
 import org.kitteh.irc.client.library.util.ToStringer;
 
 import javax.annotation.Nonnull;
@@ -51,8 +54,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -60,6 +62,9 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
@@ -105,6 +110,11 @@ class ActorProvider implements Resettable {
             this.name = actor.name;
         }
 
+        @Nonnull
+        final String getStoredName() {
+            return this.name;
+        }
+
         @Nonnull
         @Override
         public Client getClient() {
@@ -134,39 +144,101 @@ class ActorProvider implements Resettable {
         }
     }
 
+    /**
+     * A snapshot alongside the version of the state it was built from.
+     *
+     * @param <T> snapshot type
+     */
+    private static final class Published<T> {
+        private final T snapshot;
+        private final long version;
+
+        private Published(@Nonnull T snapshot, long version) {
+            this.snapshot = snapshot;
+            this.version = version;
+        }
+    }
+
+    /**
+     * An actor publishing immutable snapshots without locking. Changes are
+     * made by the processing thread, which bumps the version afterward.
+     * Any thread may build a snapshot on request, tagging it with the
+     * version read beforehand so a change racing the build leaves it stale.
+     * Such a build is retried a few times before giving up and returning
+     * the stale snapshot.
+     *
+     * @param <T> snapshot type
+     */
     private class IRCStaleable<T extends Staleable> extends IRCActor {
-        @Nullable
-        private T snapshot;
+        volatile Published<T> published; // Not private, for the field updater
+        private volatile long version;
 
         IRCStaleable(@Nonnull String name) {
             super(name);
         }
 
+        long getVersion() {
+            return this.version;
+        }
+
         boolean isStale(@Nonnull T potentiallyStale) {
-            return this.snapshot != potentiallyStale;
+            Published<T> published = this.published;
+            return (published == null) || (published.snapshot != potentiallyStale) || (published.version != this.version);
         }
 
         void markStale() {
-            this.snapshot = null;
+            this.version++; // Single writer
         }
 
         @Nonnull
-        synchronized T snapshot(@Nonnull Supplier<T> supplier) {
-            if (this.snapshot != null) {
-                return this.snapshot;
+        T snapshot(@Nonnull Supplier<T> supplier) {
+            Published<T> fresh = null;
+            for (int attempt = 0; attempt < MAX_SNAPSHOT_ATTEMPTS; attempt++) {
+                long version = this.version;
+                Published<T> current = this.published;
+                if ((current != null) && (current.version == version)) {
+                    return current.snapshot;
+                }
+                fresh = new Published<>(supplier.get(), version);
+                if (this.version == version) {
+                    break; // No change raced the build
+                }
+            }
+            long version = fresh.version;
+            while (true) {
+                Published<T> current = this.published;
+                if ((current != null) && (current.version >= version)) {
+                    // Someone published first; share theirs if it is the same version
+                    return (current.version == version) ? current.snapshot : fresh.snapshot;
+                }
+                if (PUBLISHED.compareAndSet(this, current, fresh)) {
+                    return fresh.snapshot;
+                }
             }
-            return this.snapshot = supplier.get();
+        }
+    }
+
+    private static final class ModeInfoIndex {
+        private final long version;
+        private final MaskIndex<ModeInfo> index;
+
+        private ModeInfoIndex(long version, @Nonnull MaskIndex<ModeInfo> index) {
+            this.version = version;
+            this.index = index;
         }
     }
 
     class IRCChannel extends IRCStaleable<IRCChannelSnapshot> {
-        private final Map<Character, ModeStatus<ChannelMode>> channelModes = new HashMap<>();
-        private final Map<Character, List<ModeInfo>> modeInfoLists = new HashMap<>();
-        private final Set<Character> trackedModes = new HashSet<>();
-        private final Map<String, Set<ChannelUserMode>> modes;
+        private final Map<Character, ModeStatus<ChannelMode>> channelModes = new ConcurrentHashMap<>();
+        private final Map<Character, List<ModeInfo>> modeInfoLists = new ConcurrentHashMap<>();
+        // Built on demand by snapshots and kept until the mode info lists change, as joins and parts don't affect them
+        private final Map<Character, ModeInfoIndex> modeInfoIndexes = new ConcurrentHashMap<>();
+        private volatile long modeInfoVersion;
+        private final Set<Character> trackedModes = ConcurrentHashMap.newKeySet();
+        private final Map<String, Long> modes;
         private final IRCChannelCommands commands;
         private volatile boolean fullListReceived;
-        private long lastWho = System.currentTimeMillis();
+        private volatile boolean modesReceived;
         private String topic;
         private Actor topicSetter;
         private Instant topicTime;
@@ -177,6 +249,13 @@ class ActorProvider implements Resettable {
             this.modes = new CIKeyMap<>(ActorProvider.this.client);
             this.commands = new IRCChannelCommands(channel);
             ActorProvider.this.trackedChannels.put(channel, this);
+            ActorProvider.this.channelStateVersion++;
+        }
+
+        @Override
+        void markStale() {
+            super.markStale();
+            ActorProvider.this.channelStateVersion++; // Single writer
         }
 
         void setListReceived() {
@@ -184,6 +263,21 @@ class ActorProvider implements Resettable {
             this.markStale();
         }
 
+        void setModesReceived() {
+            this.modesReceived = true;
+            this.markStale();
+        }
+
+        boolean hasUserDetails() {
+            for (String nick : this.modes.keySet()) {
+                IRCUser user = ActorProvider.this.trackedUsers.get(nick);
+                if ((user == null) || !user.hasDetails()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         private void setTracked(boolean tracked) {
             this.tracked = tracked;
             this.modes.keySet().forEach(ActorProvider.this::staleUser);
@@ -206,17 +300,6 @@ class ActorProvider implements Resettable {
         @Override
         @Nonnull
         IRCChannelSnapshot snapshot() {
-            if (ActorProvider.this.client.getConfig().getNotNull(Config.QUERY_CHANNEL_INFO)) {
-                synchronized (this.modes) {
-                    if (this.tracked && !this.fullListReceived) {
-                        long now = System.currentTimeMillis();
-                        if ((now - this.lastWho) > 5000) {
-                            this.lastWho = now;
-                            ActorProvider.this.client.sendRawLineAvoidingDuplication("WHO " + this.getName() + (ActorProvider.this.client.getServerInfo().hasWhoXSupport() ? " %cuhsnfar" : ""));
-                        }
-                    }
-                }
-            }
             return super.snapshot(() -> new IRCChannelSnapshot(IRCChannel.this, new IRCChannelTopicSnapshot(IRCChannel.this.topicTime, IRCChannel.this.topic, IRCChannel.this.topicSetter)));
         }
 
@@ -232,7 +315,8 @@ class ActorProvider implements Resettable {
             if (!this.trackedModes.contains(character)) {
                 return;
             }
-            this.modeInfoLists.put(character, modeInfoList);
+            this.modeInfoLists.put(character, new CopyOnWriteArrayList<>(modeInfoList));
+            this.modeInfoVersion++; // Single writer
             this.markStale();
         }
 
@@ -240,22 +324,27 @@ class ActorProvider implements Resettable {
             if (!this.trackedModes.contains(modeInfo.getMode().getChar())) {
                 return;
             }
+            List<ModeInfo> list = this.modeInfoLists.get(modeInfo.getMode().getChar());
+            if (list == null) {
+                return;
+            }
             if (add) {
-                this.modeInfoLists.get(modeInfo.getMode().getChar()).add(modeInfo);
+                list.add(modeInfo);
             } else {
-                Iterator<ModeInfo> iterator = this.modeInfoLists.get(modeInfo.getMode().getChar()).iterator();
-                while (iterator.hasNext()) {
-                    if (modeInfo.getMask().equals(iterator.next().getMask())) {
-                        iterator.remove();
-                        return;
+                for (ModeInfo info : list) {
+                    if (modeInfo.getMask().equals(info.getMask())) {
+                        list.remove(info);
+                        break;
                     }
                 }
             }
+            this.modeInfoVersion++; // Single writer
+            this.markStale();
         }
 
         void trackUser(@Nonnull IRCUser user, @Nonnull Set<ChannelUserMode> modes) {
             ActorProvider.this.trackUser(user);
-            this.setModes(user.getNick(), modes);
+            this.setModes(user.getNick(), ActorProvider.this.getUserModeBits(modes));
             this.markStale();
             user.markStale();
         }
@@ -273,24 +362,23 @@ class ActorProvider implements Resettable {
                     }
                 }
             }
-            if (!this.modes.containsKey(nickname) || this.modes.get(nickname).isEmpty()) {
-                this.setModes(nickname, modes);
+            Long current = this.modes.get(nickname);
+            if ((current == null) || (current == 0)) {
+                this.setModes(nickname, ActorProvider.this.getUserModeBits(modes));
             }
             this.markStale();
         }
 
         void trackUserModeAdd(@Nonnull String nick, @Nonnull ChannelUserMode mode) {
-            this.getModes(nick).add(mode);
-            this.markStale();
+            this.setModes(nick, this.modes.getOrDefault(nick, 0L) | ActorProvider.this.getUserModeBit(mode));
         }
 
         void trackUserModeRemove(@Nonnull String nick, @Nonnull ChannelUserMode mode) {
-            this.getModes(nick).remove(mode);
-            this.markStale();
+            this.setModes(nick, this.modes.getOrDefault(nick, 0L) & ~ActorProvider.this.getUserModeBit(mode));
         }
 
         private void trackUserNick(@Nonnull String oldNick, @Nonnull String newNick) {
-            Set<ChannelUserMode> modes = this.modes.remove(oldNick);
+            Long modes = this.modes.remove(oldNick);
             if (modes != null) {
                 this.setModes(newNick, modes);
             }
@@ -304,13 +392,8 @@ class ActorProvider implements Resettable {
             this.markStale();
         }
 
-        @Nonnull
-        private Set<ChannelUserMode> getModes(@Nonnull String nick) {
-            return this.modes.computeIfAbsent(nick, k -> new HashSet<>());
-        }
-
-        private void setModes(@Nonnull String nick, @Nonnull Set<ChannelUserMode> modes) {
-            this.modes.put(nick, new HashSet<>(modes));
+        private void setModes(@Nonnull String nick, long modes) {
+            this.modes.put(ActorProvider.this.strings.get(nick), modes);
             this.markStale();
         }
 
@@ -378,17 +461,23 @@ class ActorProvider implements Resettable {
     class IRCChannelSnapshot extends IRCActorSnapshot implements Channel {
         private final ModeStatusList<ChannelMode> channelModes;
         private final Map<Character, List<ModeInfo>> modeInfoLists;
+        private final IRCChannel channel;
+        private final long modeInfoVersion;
         private final Map<String, SortedSet<ChannelUserMode>> modes;
         private final List<String> names;
         private final Map<String, User> nickMap;
         private final List<User> users;
         private final boolean complete;
+        private final boolean modesComplete;
         private final Topic topic;
         private final IRCChannelCommands commands;
 
         private IRCChannelSnapshot(@Nonnull IRCChannel channel, @Nonnull Topic topic) {
             super(channel);
+            this.channel = channel;
+            this.modeInfoVersion = channel.modeInfoVersion;
             this.complete = channel.fullListReceived;
+            this.modesComplete = channel.modesReceived;
             this.channelModes = ModeStatusList.of(channel.channelModes.values());
             this.topic = topic;
             this.commands = channel.commands;
@@ -400,10 +489,13 @@ class ActorProvider implements Resettable {
             Map<String, SortedSet<ChannelUserMode>> newModes = new CIKeyMap<>(ActorProvider.this.client);
             Optional<ISupportParameter.Prefix> prefix = ActorProvider.this.client.getServerInfo().getISupportParameter("PREFIX", ISupportParameter.Prefix.class);
             Comparator<ChannelUserMode> comparator = prefix.isPresent() ? Comparator.comparingInt(prefix.get().getModes()::indexOf) : Comparator.comparing(ChannelUserMode::getChar);
-            for (Map.Entry<String, Set<ChannelUserMode>> entry : channel.modes.entrySet()) {
-                SortedSet<ChannelUserMode> newSet = new TreeSet<>(comparator);
-                newSet.addAll(entry.getValue());
-                newModes.put(entry.getKey(), newSet);
+            Map<Long, SortedSet<ChannelUserMode>> sets = new HashMap<>();
+            for (Map.Entry<String, Long> entry : channel.modes.entrySet()) {
+                newModes.put(entry.getKey(), sets.computeIfAbsent(entry.getValue(), bits -> {
+                    SortedSet<ChannelUserMode> newSet = new TreeSet<>(comparator);
+                    newSet.addAll(ActorProvider.this.getUserModes(bits));
+                    return Collections.unmodifiableSortedSet(newSet);
+                }));
             }
             this.modes = Collections.unmodifiableMap(newModes);
             this.names = Collections.unmodifiableList(new ArrayList<>(this.modes.keySet()));
@@ -431,6 +523,23 @@ class ActorProvider implements Resettable {
             return Optional.ofNullable(this.modeInfoLists.get(mode.getChar()));
         }
 
+        @Nonnull
+        @Override
+        public Optional<MaskIndex<ModeInfo>> getModeInfoIndex(@Nonnull ChannelMode mode) {
+            Optional<List<ModeInfo>> list = this.getModeInfoList(mode);
+            if (!list.isPresent()) {
+                return Optional.empty();
+            }
+            CaseMapping caseMapping = ActorProvider.this.client.getServerInfo().getCaseMapping();
+            ModeInfoIndex cached = this.channel.modeInfoIndexes.get(mode.getChar());
+            if ((cached != null) && (cached.version == this.modeInfoVersion) && (cached.index.getCaseMapping() == caseMapping)) {
+                return Optional.of(cached.index);
+            }
+            MaskIndex<ModeInfo> index = MaskIndex.of(list.get(), ModeInfo::getMask, caseMapping);
+            this.channel.modeInfoIndexes.merge(mode.getChar(), new ModeInfoIndex(this.modeInfoVersion, index), (old, fresh) -> (fresh.version >= old.version) ? fresh : old);
+            return Optional.of(index);
+        }
+
         @Override
         @Nonnull
         public ModeStatusList<ChannelMode> getModes() {
@@ -474,6 +583,11 @@ class ActorProvider implements Resettable {
             return this.complete;
         }
 
+        @Override
+        public boolean hasCompleteModeData() {
+            return this.modesComplete;
+        }
+
         @Override
         public void setModeInfoTracking(@Nonnull ChannelMode mode, boolean track) {
             Sanity.nullCheck(mode, "Mode cannot be null");
@@ -537,37 +651,69 @@ class ActorProvider implements Resettable {
         }
     }
 
+    /**
+     * A tracked user. The name held by the actor is the nick, with the full
+     * mask built on request. Hosts, idents and servers are pooled as they
+     * repeat across many users.
+     */
     class IRCUser extends IRCStaleable<IRCUserSnapshot> {
         private String account;
         private String host;
-        private String nick;
         private String user;
         private boolean isAway;
         private String realName;
         private String server;
+        private boolean hasDetails;
+
+        private IRCUser(@Nonnull String nick, @Nonnull String user, @Nonnull String host) {
+            super(nick);
+            this.user = ActorProvider.this.strings.get(user);
+            this.host = ActorProvider.this.strings.get(host);
+        }
 
-        private IRCUser(@Nonnull String mask, @Nonnull String nick, @Nonnull String user, @Nonnull String host) {
-            super(mask);
-            this.nick = nick;
-            this.user = user;
-            this.host = host;
+        @Nonnull
+        @Override
+        String getName() {
+            return this.getNick() + '!' + this.user + '@' + this.host;
         }
 
         @Nonnull
         String getNick() {
-            return this.nick;
+            return super.getName();
+        }
+
+        /**
+         * Gets the length of nick!user@host in UTF-8 bytes, without
+         * building the mask.
+         *
+         * @return mask length
+         */
+        int getMaskLength() {
+            return StringUtil.utf8Length(this.getNick()) + StringUtil.utf8Length(this.user) + StringUtil.utf8Length(this.host) + 2;
         }
 
         private void setNick(@Nonnull String newNick) {
-            this.nick = newNick;
-            this.updateName();
+            this.setName(newNick);
+            this.markStale();
         }
 
         void setAccount(@Nullable String account) {
-            this.account = account;
+            this.account = ActorProvider.this.strings.get(account);
             this.markStale();
         }
 
+        boolean hasDetails() {
+            return this.hasDetails;
+        }
+
+        /**
+         * Marks the account, away status and real name as known, such as
+         * from WHOX or extended-join.
+         */
+        void setHasDetails() {
+            this.hasDetails = true;
+        }
+
         void setAway(boolean isAway) {
             this.isAway = isAway;
             this.markStale();
@@ -579,22 +725,17 @@ class ActorProvider implements Resettable {
         }
 
         void setHost(@Nonnull String host) {
-            this.host = host;
-            this.updateName();
+            this.host = ActorProvider.this.strings.get(host);
+            this.markStale();
         }
 
         void setUser(@Nonnull String user) {
-            this.user = user;
-            this.updateName();
-        }
-
-        void setServer(@Nonnull String server) {
-            this.server = server;
+            this.user = ActorProvider.this.strings.get(user);
             this.markStale();
         }
 
-        private void updateName() {
-            this.setName(this.nick + '!' + this.user + '@' + this.host);
+        void setServer(@Nonnull String server) {
+            this.server = ActorProvider.this.strings.get(server);
             this.markStale();
         }
 
@@ -612,25 +753,24 @@ class ActorProvider implements Resettable {
     }
 
     class IRCUserSnapshot extends IRCActorSnapshot implements User {
-        private final Optional<String> account;
+        private final String account;
         private final Set<String> channels;
         private final boolean isAway;
         private final String host;
-        private final String nick;
-        private final Optional<String> realName;
-        private final Optional<String> server;
+        private final String realName;
+        private final String server;
         private final String user;
+        private String mask;
 
         private IRCUserSnapshot(@Nonnull IRCUser user) {
             super(user);
-            this.account = Optional.ofNullable(user.account);
+            this.account = user.account;
             this.isAway = user.isAway;
-            this.nick = user.nick;
             this.user = user.user;
             this.host = user.host;
-            this.realName = Optional.ofNullable(user.realName);
-            this.server = Optional.ofNullable(user.server);
-            this.channels = Collections.unmodifiableSet(ActorProvider.this.trackedChannels.values().stream().filter(channel -> channel.modes.containsKey(this.nick)).map(IRCChannel::getName).collect(Collectors.toSet()));
+            this.realName = user.realName;
+            this.server = user.server;
+            this.channels = ActorProvider.this.getChannelNames(this.getNick());
         }
 
         @Override
@@ -641,7 +781,7 @@ class ActorProvider implements Resettable {
         @Nonnull
         @Override
         public Optional<String> getAccount() {
-            return this.account;
+            return Optional.ofNullable(this.account);
         }
 
         @Nonnull
@@ -662,22 +802,33 @@ class ActorProvider implements Resettable {
             return this.getNick();
         }
 
+        @Nonnull
+        @Override
+        public String getName() {
+            // Built on first use, a race at worst building equal strings twice
+            String mask = this.mask;
+            if (mask == null) {
+                this.mask = mask = this.getNick() + '!' + this.user + '@' + this.host;
+            }
+            return mask;
+        }
+
         @Nonnull
         @Override
         public String getNick() {
-            return this.nick;
+            return this.getStoredName();
         }
 
         @Nonnull
         @Override
         public Optional<String> getRealName() {
-            return this.realName;
+            return Optional.ofNullable(this.realName);
         }
 
         @Nonnull
         @Override
         public Optional<String> getServer() {
-            return this.server;
+            return Optional.ofNullable(this.server);
         }
 
         @Nonnull
@@ -705,7 +856,7 @@ class ActorProvider implements Resettable {
         @Override
         @Nonnull
         public String toString() {
-            return new ToStringer(this).add("client", this.getClient()).add("nick", this.nick).add("user", this.user).add("host", this.host).add("channels", this.channels.size()).toString();
+            return new ToStringer(this).add("client", this.getClient()).add("nick", this.getNick()).add("user", this.user).add("host", this.host).add("channels", this.channels.size()).toString();
         }
     }
 
@@ -733,6 +884,10 @@ class ActorProvider implements Resettable {
         }
     }
 
+    private static final int MAX_SNAPSHOT_ATTEMPTS = 3;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<IRCStaleable, Published> PUBLISHED = AtomicReferenceFieldUpdater.newUpdater(IRCStaleable.class, Published.class, "published");
+
     // Valid nick chars: \w\[]^`{}|-_
     // Pattern unescaped: ([\w\\\[\]\^`\{\}\|\-_]+)!([~\w]+)@([\w\.\-:]+)
     // You know what? Screw it.
@@ -745,6 +900,11 @@ class ActorProvider implements Resettable {
 
     private final Map<String, IRCChannel> trackedChannels;
     private final Map<String, IRCUser> trackedUsers;
+    private final StringPool strings = new StringPool();
+    private volatile long channelStateVersion;
+    @Nullable
+    private volatile Published<Set<Channel>> channelSnapshots;
+    private final List<ChannelUserMode> userModes = new CopyOnWriteArrayList<>();
 
     ActorProvider(@Nonnull InternalClient client) {
         this.client = client;
@@ -777,7 +937,7 @@ class ActorProvider implements Resettable {
             if (user != null) {
                 return user;
             }
-            return new IRCUser(name, nick, nickMatcher.group(2), nickMatcher.group(3));
+            return new IRCUser(nick, nickMatcher.group(2), nickMatcher.group(3));
         }
         IRCChannel channel = this.getChannel(name);
         if (channel != null) {
@@ -813,6 +973,91 @@ class ActorProvider implements Resettable {
         return this.trackedChannels.values();
     }
 
+    /**
+     * Gets snapshots of all tracked channels, reusing the previous set until
+     * any tracked channel changes.
+     *
+     * @return unmodifiable set of channel snapshots
+     */
+    @Nonnull
+    Set<Channel> getTrackedChannelSnapshots() {
+        long version = this.channelStateVersion;
+        Published<Set<Channel>> current = this.channelSnapshots;
+        if ((current != null) && (current.version == version)) {
+            return current.snapshot;
+        }
+        Set<Channel> channels = Collections.unmodifiableSet(this.trackedChannels.values().stream().map(IRCChannel::snapshot).collect(Collectors.toSet()));
+        this.channelSnapshots = new Published<>(channels, version);
+        return channels;
+    }
+
+    /**
+     * Gets the names of the tracked channels containing a nick.
+     *
+     * @param nick nick
+     * @return unmodifiable set of channel names
+     */
+    @Nonnull
+    Set<String> getChannelNames(@Nonnull String nick) {
+        return Collections.unmodifiableSet(this.trackedChannels.values().stream().filter(channel -> channel.modes.containsKey(nick)).map(IRCChannel::getName).collect(Collectors.toSet()));
+    }
+
+    /**
+     * Gets the number of members in a tracked channel.
+     *
+     * @param channel channel name
+     * @return member count, or -1 if not tracked
+     */
+    int getMemberCount(@Nonnull String channel) {
+        IRCChannel tracked = this.trackedChannels.get(channel);
+        return (tracked == null) ? -1 : tracked.modes.size();
+    }
+
+    boolean isInChannel(@Nonnull String channel, @Nonnull String nick) {
+        IRCChannel tracked = this.trackedChannels.get(channel);
+        return (tracked != null) && tracked.modes.containsKey(nick);
+    }
+
+    /**
+     * Gets the bit representing a channel user mode in a channel's
+     * membership table, assigning the next free bit to unseen modes.
+     *
+     * @param mode mode
+     * @return mode bit
+     */
+    private synchronized long getUserModeBit(@Nonnull ChannelUserMode mode) {
+        for (int i = 0; i < this.userModes.size(); i++) {
+            if (this.userModes.get(i).getChar() == mode.getChar()) {
+                this.userModes.set(i, mode); // Latest PREFIX wins
+                return 1L << i;
+            }
+        }
+        if (this.userModes.size() == Long.SIZE) {
+            throw new IllegalStateException("Too many channel user modes");
+        }
+        this.userModes.add(mode);
+        return 1L << (this.userModes.size() - 1);
+    }
+
+    private long getUserModeBits(@Nonnull Set<ChannelUserMode> modes) {
+        long bits = 0;
+        for (ChannelUserMode mode : modes) {
+            bits |= this.getUserModeBit(mode);
+        }
+        return bits;
+    }
+
+    @Nonnull
+    private List<ChannelUserMode> getUserModes(long bits) {
+        List<ChannelUserMode> modes = new ArrayList<>(Long.bitCount(bits));
+        for (int i = 0; i < this.userModes.size(); i++) {
+            if ((bits & (1L << i)) != 0) {
+                modes.add(this.userModes.get(i));
+            }
+        }
+        return modes;
+    }
+
     @Nullable
     IRCUser getUser(@Nonnull String nick) {
         return this.trackedUsers.get(nick);
@@ -865,6 +1110,33 @@ class ActorProvider implements Resettable {
         this.checkUserForTracking(nick);
     }
 
+    @Nonnull
+    Map<IRCChannel, List<String>> trackUserQuits(@Nonnull Collection<String> nicks) {
+        Map<IRCChannel, List<String>> affected = new LinkedHashMap<>();
+        for (IRCChannel channel : this.trackedChannels.values()) {
+            List<String> removed = null;
+            for (String nick : nicks) {
+                if (channel.modes.remove(nick) != null) {
+                    if (removed == null) {
+                        removed = new ArrayList<>();
+                        affected.put(channel, removed);
+                    }
+                    removed.add(nick);
+                }
+            }
+            if (removed != null) {
+                channel.markStale();
+            }
+        }
+        for (String nick : nicks) {
+            IRCUser user = this.trackedUsers.remove(nick);
+            if (user != null) {
+                user.markStale();
+            }
+        }
+        return affected;
+    }
+
     private void checkUserForTracking(@Nonnull String nick) {
         if (!this.client.getServerInfo().getCaseMapping().areEqualIgnoringCase(nick, this.client.getNick())
                 && this.trackedChannels.values().stream().noneMatch(channel -> channel.modes.containsKey(nick))) {
@@ -0,0 +1,189 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.element.MessageTag;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.event.client.ClientBatchEvent;
+import org.kitteh.irc.client.library.exception.KittehServerMessageException;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Holds back the members of open IRCv3 batches until the batch closes. Only
+ * used from the input processing thread.
+ * <p>
+ * A batch nested in another is held as part of its enclosing batch, opening
+ * line, members and closing line alike, and only opens when the enclosing
+ * batch is processed. To bound memory, the oldest batch is given up on and
+ * its members processed if too many batches are open or too many messages
+ * are held.
+ */
+final class BatchHandler implements Resettable {
+    static final int MAX_OPEN_BATCHES = 64;
+    static final int MAX_HELD_MESSAGES = 8192;
+
+    private static final class Batch {
+        private final ServerMessage opening;
+        private final String type;
+        private final List<String> parameters;
+        private final List<ServerMessage> messages = new ArrayList<>();
+
+        private Batch(@Nonnull ServerMessage opening, @Nonnull String type, @Nonnull List<String> parameters) {
+            this.opening = opening;
+            this.type = type;
+            this.parameters = parameters;
+        }
+    }
+
+    private final InternalClient client;
+    private final Consumer<String> lineProcessor;
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+    private final Map<String, Batch> nested = new HashMap<>();
+    private int held;
+
+    BatchHandler(@Nonnull InternalClient client, @Nonnull Consumer<String> lineProcessor) {
+        this.client = client;
+        this.lineProcessor = lineProcessor;
+    }
+
+    /**
+     * Collects a message into its open batch, if any.
+     *
+     * @param message message
+     * @param command message command
+     * @param parameters message parameters
+     * @return true if collected, false if it should be processed now
+     */
+    boolean collect(@Nonnull ServerMessage message, @Nonnull String command, @Nonnull List<String> parameters) {
+        String nestedReference = null;
+        if ("BATCH".equals(command) && !parameters.isEmpty() && (parameters.get(0).length() > 1)) {
+            nestedReference = parameters.get(0).substring(1);
+        }
+        String reference = getBatchTag(message);
+        Batch batch = null;
+        if (reference != null) {
+            batch = this.batches.get(reference);
+            if (batch == null) {
+                batch = this.nested.get(reference);
+            }
+        } else if ((nestedReference != null) && (parameters.get(0).charAt(0) == '-')) {
+            batch = this.nested.get(nestedReference); // Untagged close of a held nested batch
+        }
+        if (batch == null) {
+            return false;
+        }
+        batch.messages.add(message);
+        if ((nestedReference != null) && (parameters.get(0).charAt(0) == '+')) {
+            this.nested.put(nestedReference, batch);
+        }
+        if (++this.held > MAX_HELD_MESSAGES) {
+            this.abandonOldest();
+        }
+        return true;
+    }
+
+    void open(@Nonnull ServerMessage message, @Nonnull String referenceId, @Nonnull String type, @Nonnull List<String> parameters) {
+        if (this.batches.size() >= MAX_OPEN_BATCHES) {
+            this.abandonOldest();
+        }
+        this.batches.put(referenceId, new Batch(message, type, parameters));
+    }
+
+    /**
+     * Closes a batch, firing its event and then processing its messages
+     * unless told otherwise.
+     *
+     * @param message closing message
+     * @param referenceId batch reference id
+     * @return false if no such batch was open
+     */
+    boolean close(@Nonnull ServerMessage message, @Nonnull String referenceId) {
+        Batch batch = this.remove(referenceId);
+        if (batch == null) {
+            return false;
+        }
+        List<ServerMessage> originalMessages = new ArrayList<>(2);
+        originalMessages.add(batch.opening);
+        originalMessages.add(message);
+        ClientBatchEvent event = new ClientBatchEvent(this.client, originalMessages, referenceId, batch.type, batch.parameters, batch.messages);
+        this.client.getEventManager().callEvent(event);
+        if (event.isProcessingMessages()) {
+            batch.messages.forEach(member -> this.lineProcessor.accept(member.getMessage()));
+        }
+        return true;
+    }
+
+    @Nullable
+    private Batch remove(@Nonnull String referenceId) {
+        Batch batch = this.batches.remove(referenceId);
+        if (batch != null) {
+            this.held -= batch.messages.size();
+            this.nested.values().removeIf(parent -> parent == batch);
+        }
+        return batch;
+    }
+
+    private void abandonOldest() {
+        Iterator<String> iterator = this.batches.keySet().iterator();
+        if (!iterator.hasNext()) {
+            return;
+        }
+        Batch batch = this.remove(iterator.next());
+        this.client.getExceptionListener().queue(new KittehServerMessageException(batch.opening, "BATCH not closed before hold limit reached"));
+        batch.messages.forEach(member -> this.lineProcessor.accept(member.getMessage()));
+    }
+
+    @Nullable
+    private static String getBatchTag(@Nonnull ServerMessage message) {
+        for (MessageTag tag : message.getTags()) {
+            if ("batch".equals(tag.getName())) {
+                return tag.getValue().orElse(null);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        this.batches.clear();
+        this.nested.clear();
+        this.held = 0;
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("client", this.client).add("open", this.batches.keySet()).add("held", this.held).toString();
+    }
+}
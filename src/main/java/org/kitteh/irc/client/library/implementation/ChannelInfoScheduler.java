@@ -0,0 +1,283 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.feature.CapabilityManager;
+import org.kitteh.irc.client.library.util.StringUtil;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries MODE and WHO for joined channels in the background, keeping at
+ * most a couple of queries outstanding so the send queue stays free for
+ * everything else. Channels the application looks at jump the line, and
+ * WHO targets are packed where TARGMAX allows.
+ * <p>
+ * WHO is skipped for a channel whose members' details are all already
+ * known by the time its WHO would be sent, such as from extended-join or
+ * from the WHO of another channel they share, provided the tracking
+ * capabilities keep those details current. Whether a channel can skip is
+ * decided as late as possible, so in a bulk join the replies to earlier
+ * channels' WHOs count towards later channels.
+ */
+final class ChannelInfoScheduler implements Resettable {
+    private static final int MAX_OUTSTANDING = 2;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private enum Query {
+        MODE,
+        WHO
+    }
+
+    private final InternalClient client;
+    // Lower case channel name to channel name, in order of joining
+    private final Map<String, String> awaitingNames = new HashMap<>();
+    private final Map<String, String> pendingModes = new LinkedHashMap<>();
+    private final Map<String, String> pendingWhos = new LinkedHashMap<>();
+    private final Map<String, String> prioritized = new LinkedHashMap<>();
+    // Outstanding query target to time sent
+    private final Map<String, Long> outstanding = new HashMap<>();
+    private volatile boolean idle = true;
+
+    ChannelInfoScheduler(@Nonnull InternalClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Schedules queries for a channel the client just joined.
+     *
+     * @param channel channel name
+     */
+    synchronized void joined(@Nonnull String channel) {
+        String key = this.key(channel);
+        this.pendingModes.put(key, channel);
+        this.awaitingNames.put(key, channel);
+        this.idle = false;
+        this.fill();
+    }
+
+    /**
+     * Handles the end of NAMES, scheduling WHO unless it can be skipped.
+     *
+     * @param channel channel
+     */
+    synchronized void namesComplete(@Nonnull ActorProvider.IRCChannel channel) {
+        String key = this.key(channel.getName());
+        if (this.awaitingNames.remove(key) == null) {
+            return;
+        }
+        if (!this.skipWho(channel)) {
+            this.pendingWhos.put(key, channel.getName());
+        }
+        this.fill();
+    }
+
+    /**
+     * Moves a channel's pending queries to the front of the line.
+     *
+     * @param channel channel name
+     */
+    void prioritize(@Nonnull String channel) {
+        if (this.idle) {
+            return;
+        }
+        synchronized (this) {
+            String key = this.key(channel);
+            if (this.pendingModes.containsKey(key) || this.pendingWhos.containsKey(key)) {
+                this.prioritized.remove(key);
+                this.prioritized.put(key, channel);
+            }
+        }
+    }
+
+    /**
+     * Handles the channel mode reply.
+     *
+     * @param target channel name
+     */
+    void modeComplete(@Nonnull String target) {
+        this.complete(target, Query.MODE);
+    }
+
+    /**
+     * Handles the end of WHO.
+     *
+     * @param target WHO target, possibly comma separated
+     */
+    void whoComplete(@Nonnull String target) {
+        this.complete(target, Query.WHO);
+    }
+
+    /**
+     * Handles an error about a channel, ending any query for it.
+     *
+     * @param target channel name
+     */
+    void failed(@Nonnull String target) {
+        this.complete(target, Query.values());
+    }
+
+    private void complete(@Nonnull String target, @Nonnull Query... queries) {
+        if (this.idle) {
+            return;
+        }
+        synchronized (this) {
+            for (String channel : target.split(",")) {
+                String key = this.key(channel);
+                for (Query query : queries) {
+                    this.outstanding.remove(query.name() + ' ' + key);
+                }
+            }
+            this.fill();
+        }
+    }
+
+    /**
+     * Gives up on queries that went unanswered and sends more if there is
+     * room.
+     */
+    void tick() {
+        if (this.idle) {
+            return;
+        }
+        synchronized (this) {
+            long expired = System.currentTimeMillis() - TIMEOUT;
+            this.outstanding.values().removeIf(sent -> sent < expired);
+            this.fill();
+        }
+    }
+
+    private void fill() {
+        while (this.outstanding.size() < MAX_OUTSTANDING) {
+            if (!this.prioritized.isEmpty()) {
+                Iterator<Map.Entry<String, String>> iterator = this.prioritized.entrySet().iterator();
+                Map.Entry<String, String> next = iterator.next();
+                iterator.remove();
+                if (this.pendingModes.containsKey(next.getKey())) {
+                    this.sendMode(next.getKey());
+                } else if (this.pendingWhos.containsKey(next.getKey())) {
+                    this.sendWho(next.getKey());
+                }
+            } else if (!this.pendingModes.isEmpty()) {
+                this.sendMode(this.pendingModes.keySet().iterator().next());
+            } else if (!this.pendingWhos.isEmpty()) {
+                this.sendWho(this.pendingWhos.keySet().iterator().next());
+            } else {
+                this.idle = this.awaitingNames.isEmpty() && this.outstanding.isEmpty();
+                return;
+            }
+        }
+    }
+
+    private void sendMode(@Nonnull String key) {
+        String channel = this.pendingModes.remove(key);
+        if (this.pendingWhos.containsKey(key)) {
+            this.prioritized.put(key, channel); // Keep its WHO ahead
+        }
+        if (this.client.getActorProvider().getTrackedChannel(channel) != null) {
+            this.outstanding.put(Query.MODE.name() + ' ' + key, System.currentTimeMillis());
+            this.client.sendRawLine("MODE " + channel);
+        }
+    }
+
+    private void sendWho(@Nonnull String firstKey) {
+        String suffix = this.client.getServerInfo().hasWhoXSupport() ? " %cuhsnfar" : "";
+        int maxTargets = this.client.getServerInfo().getTargetLimits().getOrDefault(Query.WHO.name(), 1);
+        StringBuilder targets = new StringBuilder();
+        int count = 0;
+        int length = 4 + StringUtil.utf8Length(suffix);
+        String key = firstKey;
+        while (key != null) {
+            String channel = this.pendingWhos.remove(key);
+            this.prioritized.remove(key);
+            ActorProvider.IRCChannel tracked = this.client.getActorProvider().getTrackedChannel(channel);
+            if ((tracked != null) && !this.skipWho(tracked)) {
+                if (count > 0) {
+                    targets.append(',');
+                    length++;
+                }
+                targets.append(channel);
+                length += StringUtil.utf8Length(channel);
+                count++;
+                this.outstanding.put(Query.WHO.name() + ' ' + key, System.currentTimeMillis());
+            }
+            key = null;
+            if (count < maxTargets) {
+                for (Map.Entry<String, String> entry : this.pendingWhos.entrySet()) {
+                    if ((length + 1 + StringUtil.utf8Length(entry.getValue())) <= 510) {
+                        key = entry.getKey();
+                    }
+                    break;
+                }
+            }
+        }
+        if (count > 0) {
+            this.client.sendRawLine(Query.WHO.name() + ' ' + targets + suffix);
+        }
+    }
+
+    private boolean skipWho(@Nonnull ActorProvider.IRCChannel channel) {
+        if (this.canSkipWho() && channel.hasUserDetails()) {
+            channel.setListReceived();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean canSkipWho() {
+        CapabilityManager capabilities = this.client.getCapabilityManager();
+        return capabilities.getCapability(CapabilityManager.Defaults.USERHOST_IN_NAMES).isPresent() &&
+                capabilities.getCapability(CapabilityManager.Defaults.MULTI_PREFIX).isPresent() &&
+                capabilities.getCapability(CapabilityManager.Defaults.EXTENDED_JOIN).isPresent() &&
+                capabilities.getCapability(CapabilityManager.Defaults.ACCOUNT_NOTIFY).isPresent() &&
+                capabilities.getCapability(CapabilityManager.Defaults.AWAY_NOTIFY).isPresent();
+    }
+
+    @Nonnull
+    private String key(@Nonnull String channel) {
+        return this.client.getServerInfo().getCaseMapping().toLowerCase(channel);
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.awaitingNames.clear();
+        this.pendingModes.clear();
+        this.pendingWhos.clear();
+        this.prioritized.clear();
+        this.outstanding.clear();
+        this.idle = true;
+    }
+
+    @Nonnull
+    @Override
+    public synchronized String toString() {
+        return new ToStringer(this).add("pendingModes", this.pendingModes.size()).add("pendingWhos", this.pendingWhos.size()).add("outstanding", this.outstanding.size()).toString();
+    }
+}
@@ -25,6 +25,8 @@ package org.kitteh.irc.client.library.implementation;
 
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
+import org.kitteh.irc.client.library.feature.ListenerChannel;
 import org.kitteh.irc.client.library.feature.defaultmessage.DefaultMessageMap;
 import org.kitteh.irc.client.library.feature.sending.MessageSendingQueue;
 import org.kitteh.irc.client.library.feature.sts.STSStorageManager;
@@ -38,6 +40,7 @@ import javax.net.ssl.TrustManagerFactory;
 import java.io.File;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -84,9 +87,29 @@ final class ClientBuilder implements Client.Builder, Cloneable {
         return this;
     }
 
+    @Nonnull
+    @Override
+    public ClientBuilder directEventDispatch(boolean direct) {
+        this.config.set(Config.EVENT_DISPATCH_DIRECT, direct);
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public ClientBuilder eventDispatchRuntime(@Nullable EventDispatchRuntime runtime) {
+        this.config.set(Config.EVENT_DISPATCH_RUNTIME, runtime);
+        return this;
+    }
+
     @Nonnull
     @Override
     public ClientBuilder listenException(@Nullable Consumer<Exception> listener) {
+        return this.listenExceptionBatches((listener == null) ? null : Listener.each(listener));
+    }
+
+    @Nonnull
+    @Override
+    public ClientBuilder listenExceptionBatches(@Nullable Consumer<List<Exception>> listener) {
         this.config.set(Config.LISTENER_EXCEPTION, (listener == null) ? null : new Config.ExceptionConsumerWrapper(listener));
         return this;
     }
@@ -94,6 +117,12 @@ final class ClientBuilder implements Client.Builder, Cloneable {
     @Nonnull
     @Override
     public ClientBuilder listenInput(@Nullable Consumer<String> listener) {
+        return this.listenInputBatches((listener == null) ? null : Listener.each(listener));
+    }
+
+    @Nonnull
+    @Override
+    public ClientBuilder listenInputBatches(@Nullable Consumer<List<String>> listener) {
         this.config.set(Config.LISTENER_INPUT, (listener == null) ? null : new Config.StringConsumerWrapper(listener));
         return this;
     }
@@ -101,10 +130,23 @@ final class ClientBuilder implements Client.Builder, Cloneable {
     @Nonnull
     @Override
     public ClientBuilder listenOutput(@Nullable Consumer<String> listener) {
+        return this.listenOutputBatches((listener == null) ? null : Listener.each(listener));
+    }
+
+    @Nonnull
+    @Override
+    public ClientBuilder listenOutputBatches(@Nullable Consumer<List<String>> listener) {
         this.config.set(Config.LISTENER_OUTPUT, (listener == null) ? null : new Config.StringConsumerWrapper(listener));
         return this;
     }
 
+    @Nonnull
+    @Override
+    public ClientBuilder listenerChannel(@Nullable ListenerChannel channel) {
+        this.config.set(Config.LISTENER_CHANNEL, channel);
+        return this;
+    }
+
     @Nonnull
     @Override
     public ClientBuilder messageSendingQueueSupplier(@Nonnull Function<Client, ? extends MessageSendingQueue> supplier) {
@@ -198,6 +240,21 @@ final class ClientBuilder implements Client.Builder, Cloneable {
         return this;
     }
 
+    @Nonnull
+    @Override
+    public ClientBuilder trafficLog(@Nullable File file) {
+        this.config.set(Config.TRAFFIC_LOG, file);
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public ClientBuilder trafficReplay(@Nullable File file, boolean originalSpeed) {
+        this.config.set(Config.TRAFFIC_REPLAY, file);
+        this.config.set(Config.TRAFFIC_REPLAY_ORIGINAL_SPEED, originalSpeed);
+        return this;
+    }
+
     @Nonnull
     @Override
     public ClientBuilder user(@Nonnull String user) {
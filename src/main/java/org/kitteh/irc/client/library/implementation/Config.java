@@ -24,6 +24,8 @@
 package org.kitteh.irc.client.library.implementation;
 
 import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
+import org.kitteh.irc.client.library.feature.ListenerChannel;
 import org.kitteh.irc.client.library.feature.defaultmessage.DefaultMessageMap;
 import org.kitteh.irc.client.library.feature.sending.SingleDelaySender;
 import org.kitteh.irc.client.library.feature.sts.STSStorageManager;
@@ -38,6 +40,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
@@ -97,20 +100,20 @@ final class Config {
     }
 
     abstract static class Wrapper<Type> {
-        private final Consumer<Type> consumer;
+        private final Consumer<List<Type>> consumer;
 
-        Wrapper(@Nonnull Consumer<Type> consumer) {
+        Wrapper(@Nonnull Consumer<List<Type>> consumer) {
             this.consumer = consumer;
         }
 
         @Nonnull
-        Consumer<Type> getConsumer() {
+        Consumer<List<Type>> getConsumer() {
             return this.consumer;
         }
     }
 
     static final class ExceptionConsumerWrapper extends Wrapper<Exception> {
-        ExceptionConsumerWrapper(@Nonnull Consumer<Exception> consumer) {
+        ExceptionConsumerWrapper(@Nonnull Consumer<List<Exception>> consumer) {
             super(consumer);
         }
 
@@ -122,7 +125,7 @@ final class Config {
     }
 
     static final class StringConsumerWrapper extends Wrapper<String> {
-        StringConsumerWrapper(@Nonnull Consumer<String> consumer) {
+        StringConsumerWrapper(@Nonnull Consumer<List<String>> consumer) {
             super(consumer);
         }
 
@@ -136,7 +139,10 @@ final class Config {
     static final Entry<String> NAME = new Entry<>("Unnamed", String.class);
     static final Entry<InetSocketAddress> BIND_ADDRESS = new Entry<>(null, InetSocketAddress.class);
     static final Entry<DefaultMessageMap> DEFAULT_MESSAGE_MAP = new Entry<>(null, DefaultMessageMap.class);
-    static final Entry<ExceptionConsumerWrapper> LISTENER_EXCEPTION = new Entry<>(new ExceptionConsumerWrapper(Throwable::printStackTrace), ExceptionConsumerWrapper.class);
+    static final Entry<Boolean> EVENT_DISPATCH_DIRECT = new Entry<>(false, Boolean.class);
+    static final Entry<EventDispatchRuntime> EVENT_DISPATCH_RUNTIME = new Entry<>(null, EventDispatchRuntime.class);
+    static final Entry<ListenerChannel> LISTENER_CHANNEL = new Entry<>(null, ListenerChannel.class);
+    static final Entry<ExceptionConsumerWrapper> LISTENER_EXCEPTION = new Entry<>(new ExceptionConsumerWrapper(Listener.each(Throwable::printStackTrace)), ExceptionConsumerWrapper.class);
     static final Entry<StringConsumerWrapper> LISTENER_INPUT = new Entry<>(null, StringConsumerWrapper.class);
     static final Entry<StringConsumerWrapper> LISTENER_OUTPUT = new Entry<>(null, StringConsumerWrapper.class);
     static final Entry<Function> MESSAGE_DELAY = new Entry<>(SingleDelaySender.getSupplier(SingleDelaySender.DEFAULT_MESSAGE_DELAY), Function.class);
@@ -151,6 +157,9 @@ final class Config {
     static final Entry<String> SSL_KEY_PASSWORD = new Entry<>(null, String.class, true);
     static final Entry<TrustManagerFactory> SSL_TRUST_MANAGER_FACTORY = new Entry<>(null, TrustManagerFactory.class);
     static final Entry<STSStorageManager> STS_STORAGE_MANAGER = new Entry<>(null, STSStorageManager.class);
+    static final Entry<File> TRAFFIC_LOG = new Entry<>(null, File.class);
+    static final Entry<File> TRAFFIC_REPLAY = new Entry<>(null, File.class);
+    static final Entry<Boolean> TRAFFIC_REPLAY_ORIGINAL_SPEED = new Entry<>(false, Boolean.class);
     static final Entry<String> USER = new Entry<>("Kitteh", String.class);
     static final Entry<String> WEBIRC_HOST = new Entry<>(null, String.class);
     static final Entry<InetAddress> WEBIRC_IP = new Entry<>(null, InetAddress.class);
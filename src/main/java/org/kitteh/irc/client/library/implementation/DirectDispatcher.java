@@ -0,0 +1,214 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import net.engio.mbassy.bus.BusRuntime;
+import net.engio.mbassy.dispatch.ReflectiveHandlerInvocation;
+import net.engio.mbassy.listener.IMessageFilter;
+import net.engio.mbassy.listener.MessageHandler;
+import net.engio.mbassy.subscription.SubscriptionContext;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
+import org.kitteh.irc.client.library.feature.filter.FilterProcessor;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Calls annotated handlers directly on the calling thread, bypassing the
+ * event bus. Each listener's handlers are analyzed once at registration
+ * into method handles, and the handlers for each event class resolved
+ * once into an array sorted by priority.
+ */
+final class DirectDispatcher {
+    private static final class FilterWrapper {
+        private final FilterProcessor<Object, Annotation> filterProcessor;
+        private final Annotation[] annotations;
+
+        @SuppressWarnings("unchecked") // Processor is only handed its own annotations and the handler's events
+        private FilterWrapper(@Nonnull FilterProcessor<?, ? extends Annotation> filterProcessor, @Nonnull Annotation[] annotations) {
+            this.filterProcessor = (FilterProcessor<Object, Annotation>) filterProcessor;
+            this.annotations = annotations;
+        }
+    }
+
+    private static final class Target {
+        private final Object listener;
+        private final MessageHandler handler;
+        private final MethodHandle invoker;
+        private final long order;
+        private final FilterWrapper[] filters;
+        private final IMessageFilter<Object>[] busFilters;
+        private final SubscriptionContext context;
+
+        @SuppressWarnings("unchecked") // Bus filters are declared for the handler's events
+        private Target(@Nonnull Object listener, @Nonnull MessageHandler handler, @Nonnull MethodHandle invoker, long order, @Nonnull FilterWrapper[] filters, @Nonnull SubscriptionContext context) {
+            this.listener = listener;
+            this.handler = handler;
+            this.invoker = invoker;
+            this.order = order;
+            this.filters = filters;
+            this.busFilters = handler.getFilter();
+            this.context = context;
+        }
+
+        private boolean accepts(@Nonnull Object event) {
+            for (FilterWrapper filter : this.filters) {
+                if (!filter.filterProcessor.accepts(event, filter.annotations)) {
+                    return false;
+                }
+            }
+            for (IMessageFilter<Object> filter : this.busFilters) {
+                if (!filter.accepts(event, this.context)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final Comparator<Target> ORDER = Comparator.<Target>comparingInt(target -> -target.handler.getPriority()).thenComparingLong(target -> target.order);
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class);
+
+    private final EventDispatchRuntime runtime;
+    private final BusRuntime busRuntime;
+    private final Map<Class<? extends Annotation>, FilterProcessor<?, ? extends Annotation>> filters;
+    private final List<Target> targets = new ArrayList<>();
+    private volatile Map<Class<?>, Target[]> resolved = new ConcurrentHashMap<>();
+    private long nextOrder;
+
+    DirectDispatcher(@Nonnull EventDispatchRuntime runtime, @Nonnull BusRuntime busRuntime, @Nonnull Map<Class<? extends Annotation>, FilterProcessor<?, ? extends Annotation>> filters) {
+        this.runtime = runtime;
+        this.busRuntime = busRuntime;
+        this.filters = filters;
+    }
+
+    /**
+     * Registers a listener's handlers.
+     *
+     * @param listener listener
+     * @throws IllegalArgumentException if a handler uses a feature not
+     * supported in direct dispatch
+     */
+    synchronized void register(@Nonnull Object listener) {
+        List<Target> newTargets = new ArrayList<>();
+        for (MessageHandler handler : this.runtime.getMessageListener(listener.getClass()).getHandlers()) {
+            Method method = handler.getMethod();
+            if (handler.isEnveloped() || (handler.getHandlerInvocation() != ReflectiveHandlerInvocation.class)) {
+                throw new IllegalArgumentException("Handler " + method + " uses an envelope or custom invocation, which direct event dispatch does not support");
+            }
+            MethodHandle invoker;
+            try {
+                method.setAccessible(true);
+                invoker = MethodHandles.lookup().unreflect(method).bindTo(listener).asType(INVOKER_TYPE);
+            } catch (IllegalAccessException | SecurityException e) {
+                throw new IllegalArgumentException("Cannot access handler " + method, e);
+            }
+            List<FilterWrapper> filterWrappers = new ArrayList<>();
+            for (Map.Entry<Class<? extends Annotation>, FilterProcessor<?, ? extends Annotation>> entry : this.filters.entrySet()) {
+                Annotation[] annotations = method.getAnnotationsByType(entry.getKey());
+                if (annotations.length > 0) {
+                    filterWrappers.add(new FilterWrapper(entry.getValue(), annotations));
+                }
+            }
+            SubscriptionContext context = new SubscriptionContext(this.busRuntime, handler, Collections.emptyList());
+            newTargets.add(new Target(listener, handler, invoker, this.nextOrder++, filterWrappers.toArray(new FilterWrapper[filterWrappers.size()]), context));
+        }
+        this.targets.addAll(newTargets);
+        this.resolved = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Unregisters a listener's handlers.
+     *
+     * @param listener listener
+     */
+    synchronized void unregister(@Nonnull Object listener) {
+        if (this.targets.removeIf(target -> target.listener == listener)) {
+            this.resolved = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Calls the handlers for an event.
+     *
+     * @param event event
+     * @param failure receives anything thrown by a handler
+     */
+    void dispatch(@Nonnull Object event, @Nonnull Consumer<Throwable> failure) {
+        for (Target target : this.resolved.computeIfAbsent(event.getClass(), this::resolve)) {
+            if (!target.accepts(event)) {
+                continue;
+            }
+            if (target.handler.isAsynchronous()) {
+                this.runtime.getHandlerExecutor().execute(() -> this.invoke(target, event, failure));
+            } else {
+                this.invoke(target, event, failure);
+            }
+        }
+    }
+
+    private void invoke(@Nonnull Target target, @Nonnull Object event, @Nonnull Consumer<Throwable> failure) {
+        try {
+            if (target.handler.isSynchronized()) {
+                synchronized (target.listener) {
+                    target.invoker.invokeExact(event);
+                }
+            } else {
+                target.invoker.invokeExact(event);
+            }
+        } catch (Throwable thrown) {
+            failure.accept(thrown);
+        }
+    }
+
+    @Nonnull
+    private synchronized Target[] resolve(@Nonnull Class<?> eventClass) {
+        List<Target> list = new ArrayList<>();
+        for (Target target : this.targets) {
+            if (target.handler.handlesMessage(eventClass)) {
+                list.add(target);
+            }
+        }
+        list.sort(ORDER);
+        return list.toArray(new Target[list.size()]);
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("targets", this.targets.size()).toString();
+    }
+}
@@ -93,6 +93,7 @@ import org.kitteh.irc.client.library.exception.KittehServerMessageException;
 import org.kitteh.irc.client.library.feature.CapabilityManager;
 import org.kitteh.irc.client.library.feature.filter.CommandFilter;
 import org.kitteh.irc.client.library.feature.filter.NumericFilter;
+import org.kitteh.irc.client.library.util.CIKeyMap;
 import org.kitteh.irc.client.library.util.StringUtil;
 import org.kitteh.irc.client.library.util.ToStringer;
 
@@ -105,6 +106,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -112,9 +114,37 @@ import java.util.stream.Collectors;
 @net.engio.mbassy.listener.Listener(references = References.Strong)
 class EventListener {
     private final InternalClient client;
+    private final NetsplitHandler netsplitHandler;
+    private final ChannelInfoScheduler channelInfoScheduler;
 
     EventListener(InternalClient client) {
         this.client = client;
+        this.netsplitHandler = new NetsplitHandler(client);
+        this.channelInfoScheduler = new ChannelInfoScheduler(client);
+    }
+
+    @Nonnull
+    NetsplitHandler getNetsplitHandler() {
+        return this.netsplitHandler;
+    }
+
+    @Nonnull
+    ChannelInfoScheduler getChannelInfoScheduler() {
+        return this.channelInfoScheduler;
+    }
+
+    @Handler(priority = Integer.MAX_VALUE)
+    public void netsplitFlush(ClientReceiveCommandEvent event) {
+        if (event.getCommand().isEmpty()) { // Connection reset
+            this.netsplitHandler.reset();
+        } else if (!"QUIT".equals(event.getCommand()) && !"JOIN".equals(event.getCommand())) {
+            this.netsplitHandler.flush();
+        }
+    }
+
+    @Handler(priority = Integer.MAX_VALUE)
+    public void netsplitFlush(ClientReceiveNumericEvent event) {
+        this.netsplitHandler.flush();
     }
 
     @NumericFilter(1)
@@ -192,13 +222,13 @@ class EventListener {
         this.fire(new ClientAwayStatusChangeEvent(this.client, event.getOriginalMessages(), event.getNumeric() == 306));
     }
 
-    private WhoisBuilder whoisBuilder;
+    private Map<String, WhoisBuilder> whoisBuilders;
 
     private WhoisBuilder getWhoisBuilder(String nick) {
-        if ((this.whoisBuilder == null) || !this.client.getServerInfo().getCaseMapping().areEqualIgnoringCase(this.whoisBuilder.getNick(), nick)) {
-            this.whoisBuilder = new WhoisBuilder(this.client, nick);
+        if (this.whoisBuilders == null) {
+            this.whoisBuilders = new CIKeyMap<>(this.client);
         }
-        return this.whoisBuilder;
+        return this.whoisBuilders.computeIfAbsent(nick, k -> new WhoisBuilder(this.client, nick));
     }
 
     @NumericFilter(301) // WHOISAWAY
@@ -318,15 +348,24 @@ class EventListener {
             this.trackException(event, "WHOIS END response of incorrect length");
             return;
         }
-        WhoisData whois = this.getWhoisBuilder(event.getParameters().get(1)).build();
+        WhoisBuilder whoisBuilder = this.getWhoisBuilder(event.getParameters().get(1));
+        WhoisData whois = whoisBuilder.build();
+        this.whoisBuilders.remove(event.getParameters().get(1));
+        this.client.getWhoisManager().complete(event.getParameters().get(1), whoisBuilder.hasUser() ? whois : null);
         if (this.client.getServerInfo().getCaseMapping().areEqualIgnoringCase(whois.getNick(), this.client.getNick()) && (this.client.getActorProvider().getUser(whois.getNick()) == null)) {
             this.client.getActorProvider().trackUser((ActorProvider.IRCUser) this.client.getActorProvider().getActor(whois.getName()));
         }
         this.fire(new WhoisEvent(this.client, whois));
-        this.whoisBuilder = null;
     }
 
-    private final List<ServerMessage> whoMessages = new ArrayList<>();
+    private Map<String, List<ServerMessage>> whoMessages;
+
+    private List<ServerMessage> getWhoMessages(String channel) {
+        if (this.whoMessages == null) {
+            this.whoMessages = new CIKeyMap<>(this.client);
+        }
+        return this.whoMessages.computeIfAbsent(channel, k -> new ArrayList<>());
+    }
 
     @NumericFilter(352) // WHO
     @NumericFilter(354) // WHOX
@@ -355,6 +394,7 @@ class EventListener {
                     String account = event.getParameters().get(7);
                     user.setAccount("0".equals(account) ? null : account);
                     realName = event.getParameters().get(8);
+                    user.setHasDetails();
                     break;
             }
             user.setRealName(realName);
@@ -372,7 +412,7 @@ class EventListener {
                 }
             }
             channel.trackUser(user, modes);
-            this.whoMessages.add(event.getServerMessage());
+            this.getWhoMessages(channel.getName()).add(event.getServerMessage());
         } // No else, server might send other WHO information about non-channels.
     }
 
@@ -383,13 +423,17 @@ class EventListener {
             this.trackException(event, "WHO response of incorrect length");
             return;
         }
-        ActorProvider.IRCChannel whoChannel = this.client.getActorProvider().getChannel(event.getParameters().get(1));
-        if (whoChannel != null) {
-            whoChannel.setListReceived();
-            this.whoMessages.add(event.getServerMessage());
-            this.fire(new ChannelUsersUpdatedEvent(this.client, this.whoMessages, whoChannel.snapshot()));
-            this.whoMessages.clear();
-        } // No else, server might send other WHO information about non-channels.
+        for (String target : event.getParameters().get(1).split(",")) {
+            ActorProvider.IRCChannel whoChannel = this.client.getActorProvider().getChannel(target);
+            if (whoChannel != null) {
+                whoChannel.setListReceived();
+                List<ServerMessage> whoMessages = this.getWhoMessages(whoChannel.getName());
+                this.whoMessages.remove(whoChannel.getName());
+                whoMessages.add(event.getServerMessage());
+                this.fire(new ChannelUsersUpdatedEvent(this.client, whoMessages, whoChannel.snapshot()));
+            } // No else, server might send other WHO information about non-channels.
+        }
+        this.channelInfoScheduler.whoComplete(event.getParameters().get(1));
     }
 
     @NumericFilter(324)
@@ -409,6 +453,8 @@ class EventListener {
                 return;
             }
             channel.updateChannelModes(statusList);
+            channel.setModesReceived();
+            this.channelInfoScheduler.modeComplete(channel.getName());
         } else {
             this.trackException(event, "Channel mode info message sent for invalid channel name");
         }
@@ -488,6 +534,7 @@ class EventListener {
             this.namesMessages.add(event.getServerMessage());
             this.fire(new ChannelNamesUpdatedEvent(this.client, this.namesMessages, channel.snapshot()));
             this.namesMessages.clear();
+            this.channelInfoScheduler.namesComplete(channel);
         } else {
             this.trackException(event, "NAMES response sent for invalid channel name");
         }
@@ -636,6 +683,23 @@ class EventListener {
         this.motdMessages.add(event.getServerMessage());
         this.client.getServerInfo().setMOTD(new ArrayList<>(this.motd));
         this.fire(new ClientReceiveMOTDEvent(this.client, this.motdMessages));
+        this.client.getMonitorManager().registered();
+    }
+
+    @NumericFilter(422) // No MOTD
+    @Handler(priority = Integer.MAX_VALUE - 1)
+    public void motdMissing(ClientReceiveNumericEvent event) {
+        this.client.getMonitorManager().registered();
+    }
+
+    @NumericFilter(403) // No such channel
+    @NumericFilter(442) // Not on channel
+    @NumericFilter(477) // Channel doesn't support modes
+    @Handler(priority = Integer.MAX_VALUE - 1)
+    public void channelError(ClientReceiveNumericEvent event) {
+        if (event.getParameters().size() > 1) {
+            this.channelInfoScheduler.failed(event.getParameters().get(1));
+        }
     }
 
     @NumericFilter(431) // No nick given
@@ -674,6 +738,7 @@ class EventListener {
         }
         List<ServerMessage> originalMessages = event.getOriginalMessages();
         for (String nick : event.getParameters().get(1).split(",")) {
+            this.client.getMonitorManager().setOnline(nick, event.getNumeric() == 730);
             MonitoredNickStatusEvent monitorEvent;
             if (event.getNumeric() == 730) {
                 monitorEvent = new MonitoredNickOnlineEvent(this.client, originalMessages, nick);
@@ -720,7 +785,9 @@ class EventListener {
             this.trackException(event, "MONITOR list full message using non-int limit");
             return;
         }
-        this.fire(new MonitoredNickListFullEvent(this.client, event.getOriginalMessages(), limit, Arrays.stream(event.getParameters().get(2).split(",")).collect(Collectors.toList())));
+        List<String> nicks = Arrays.stream(event.getParameters().get(2).split(",")).collect(Collectors.toList());
+        this.client.getMonitorManager().listFull(limit, nicks);
+        this.fire(new MonitoredNickListFullEvent(this.client, event.getOriginalMessages(), limit, nicks));
     }
 
     private final List<CapabilityState> capList = new ArrayList<>();
@@ -847,6 +914,7 @@ class EventListener {
         }
 
         User user = (User) event.getActor();
+        this.client.getWhoisManager().invalidate(user.getNick());
         ActorProvider.IRCUser ircUser = this.client.getActorProvider().getUser(user.getNick());
 
         if (ircUser == null) {
@@ -878,6 +946,7 @@ class EventListener {
             return;
         }
         String account = event.getParameters().get(0);
+        this.client.getWhoisManager().invalidate(((User) event.getActor()).getNick());
         this.client.getActorProvider().setUserAccount(((User) event.getActor()).getNick(), "*".equals(account) ? null : account);
     }
 
@@ -1039,6 +1108,10 @@ class EventListener {
             this.trackException(event, "JOIN message of incorrect length");
             return;
         }
+        if (this.netsplitHandler.join(event)) {
+            return;
+        }
+        this.netsplitHandler.flush();
         ActorProvider.IRCChannel channel = this.client.getActorProvider().getChannel(event.getParameters().get(0));
         if (channel != null) {
             if (event.getActor() instanceof User) {
@@ -1048,8 +1121,7 @@ class EventListener {
                 if (user.getNick().equals(this.client.getNick())) {
                     this.client.getActorProvider().trackChannel(channel);
                     if (this.client.getConfig().getNotNull(Config.QUERY_CHANNEL_INFO)) {
-                        this.client.sendRawLine("MODE " + channel.getName());
-                        this.client.sendRawLine("WHO " + channel.getName() + (this.client.getServerInfo().hasWhoXSupport() ? " %cuhsnfar" : ""));
+                        this.channelInfoScheduler.joined(channel.getName());
                     }
                     if (this.client.getIntendedChannels().contains(channel.getName())) {
                         joinEvent = new RequestedChannelJoinCompleteEvent(this.client, event.getOriginalMessages(), channel.snapshot(), user.snapshot());
@@ -1060,6 +1132,7 @@ class EventListener {
                         user.setAccount(event.getParameters().get(1));
                     }
                     user.setRealName(event.getParameters().get(2));
+                    user.setHasDetails();
                 }
                 if (joinEvent == null) {
                     joinEvent = new ChannelJoinEvent(this.client, event.getOriginalMessages(), channel.snapshot(), user.snapshot());
@@ -1108,6 +1181,13 @@ class EventListener {
     @CommandFilter("QUIT")
     @Handler(priority = Integer.MAX_VALUE - 1)
     public void quit(ClientReceiveCommandEvent event) {
+        if (event.getActor() instanceof User) {
+            this.client.getWhoisManager().invalidate(((User) event.getActor()).getNick());
+        }
+        if (this.netsplitHandler.quit(event)) {
+            return;
+        }
+        this.netsplitHandler.flush();
         if (event.getActor() instanceof User) {
             this.fire(new UserQuitEvent(this.client, event.getOriginalMessages(), (User) event.getActor(), (event.getParameters().isEmpty()) ? "" : event.getParameters().get(0)));
             this.client.getActorProvider().trackUserQuit(((User) event.getActor()).getNick());
@@ -1116,6 +1196,33 @@ class EventListener {
         }
     }
 
+    @CommandFilter("BATCH")
+    @Handler(priority = Integer.MAX_VALUE - 1)
+    public void batch(ClientReceiveCommandEvent event) {
+        if (event.getParameters().isEmpty() || (event.getParameters().get(0).length() < 2)) {
+            this.trackException(event, "BATCH message of incorrect length");
+            return;
+        }
+        String reference = event.getParameters().get(0);
+        String referenceId = reference.substring(1);
+        switch (reference.charAt(0)) {
+            case '+':
+                if (event.getParameters().size() < 2) {
+                    this.trackException(event, "BATCH message of incorrect length");
+                    return;
+                }
+                this.client.getBatchHandler().open(event.getServerMessage(), referenceId, event.getParameters().get(1), event.getParameters().subList(2, event.getParameters().size()));
+                break;
+            case '-':
+                if (!this.client.getBatchHandler().close(event.getServerMessage(), referenceId)) {
+                    this.trackException(event, "BATCH closed for unknown reference");
+                }
+                break;
+            default:
+                this.trackException(event, "BATCH message with invalid reference");
+        }
+    }
+
     @CommandFilter("KICK")
     @Handler(priority = Integer.MAX_VALUE - 1)
     public void kick(ClientReceiveCommandEvent event) {
@@ -1156,6 +1263,8 @@ class EventListener {
             return;
         }
         if (event.getActor() instanceof User) {
+            this.client.getWhoisManager().invalidate(((User) event.getActor()).getNick());
+            this.client.getWhoisManager().invalidate(event.getParameters().get(0));
             boolean isSelf = ((User) event.getActor()).getNick().equals(this.client.getNick());
             ActorProvider.IRCUser user = this.client.getActorProvider().getUser(((User) event.getActor()).getNick());
             if (user == null) {
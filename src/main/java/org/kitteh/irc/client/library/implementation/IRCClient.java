@@ -35,17 +35,24 @@ import org.kitteh.irc.client.library.command.WallopsCommand;
 import org.kitteh.irc.client.library.command.WhoisCommand;
 import org.kitteh.irc.client.library.element.Channel;
 import org.kitteh.irc.client.library.element.MessageTag;
+import org.kitteh.irc.client.library.element.ServerMessage;
 import org.kitteh.irc.client.library.element.User;
 import org.kitteh.irc.client.library.element.mode.ModeStatus;
 import org.kitteh.irc.client.library.element.mode.ModeStatusList;
 import org.kitteh.irc.client.library.element.mode.UserMode;
+import org.kitteh.irc.client.library.event.client.ClientConnectionClosedEvent;
+import org.kitteh.irc.client.library.event.client.ClientLagEvent;
 import org.kitteh.irc.client.library.event.client.ClientReceiveCommandEvent;
 import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
+import org.kitteh.irc.client.library.event.helper.ClientReceiveServerMessageEvent;
 import org.kitteh.irc.client.library.exception.KittehNagException;
 import org.kitteh.irc.client.library.exception.KittehServerMessageException;
 import org.kitteh.irc.client.library.exception.KittehServerMessageTagException;
 import org.kitteh.irc.client.library.feature.AuthManager;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
 import org.kitteh.irc.client.library.feature.EventManager;
+import org.kitteh.irc.client.library.feature.Lag;
+import org.kitteh.irc.client.library.feature.ListenerChannel;
 import org.kitteh.irc.client.library.feature.MessageTagManager;
 import org.kitteh.irc.client.library.feature.defaultmessage.DefaultMessageMap;
 import org.kitteh.irc.client.library.feature.defaultmessage.DefaultMessageType;
@@ -53,28 +60,54 @@ import org.kitteh.irc.client.library.feature.defaultmessage.SimpleDefaultMessage
 import org.kitteh.irc.client.library.feature.sending.MessageSendingQueue;
 import org.kitteh.irc.client.library.feature.sending.QueueProcessingThreadSender;
 import org.kitteh.irc.client.library.feature.sts.STSMachine;
+import org.kitteh.irc.client.library.util.CIKeyMap;
 import org.kitteh.irc.client.library.util.CISet;
 import org.kitteh.irc.client.library.util.Cutter;
+import org.kitteh.irc.client.library.util.ImmutableList;
 import org.kitteh.irc.client.library.util.Pair;
 import org.kitteh.irc.client.library.util.QueueProcessingThread;
 import org.kitteh.irc.client.library.util.Sanity;
 import org.kitteh.irc.client.library.util.StringUtil;
 import org.kitteh.irc.client.library.util.ToStringer;
+import org.kitteh.irc.client.library.util.TrafficLog;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 final class IRCClient extends InternalClient {
+    /**
+     * The client's own nick!user@host length, valid while the tracked user
+     * is unchanged.
+     */
+    private static final class SelfMaskLength {
+        private final ActorProvider.IRCUser user;
+        private final long version;
+        private final int length;
+
+        private SelfMaskLength(@Nonnull ActorProvider.IRCUser user) {
+            this.user = user;
+            this.version = user.getVersion();
+            this.length = user.getMaskLength();
+        }
+    }
+
     private final class ClientCommands implements Commands {
         @Nonnull
         @Override
@@ -144,8 +177,16 @@ final class IRCClient extends InternalClient {
 
         @Override
         protected void processElement(@Nonnull String element) {
+            if (element == IRCClient.this.replayEnd) { // Identity, queued after the last replayed line
+                IRCClient.this.eventManager.callEvent(new ClientConnectionClosedEvent(IRCClient.this, false));
+                return;
+            }
             try {
                 IRCClient.this.handleLine(element);
+                if (this.isQueueEmpty()) {
+                    IRCClient.this.eventListener.getNetsplitHandler().flush();
+                    IRCClient.this.eventListener.getChannelInfoScheduler().tick();
+                }
             } catch (final Exception thrown) {
                 IRCClient.this.exceptionListener.queue(thrown);
             }
@@ -154,6 +195,7 @@ final class IRCClient extends InternalClient {
 
     private final String[] pingPurr = new String[]{"MEOW", "MEOW!", "PURR", "PURRRRRRR", "MEOWMEOW", ":3", "HISS"};
     private int pingPurrCount;
+    private final LagTracker lagTracker = new LagTracker();
 
     private final Config config;
     private final InputProcessor processor;
@@ -164,14 +206,21 @@ final class IRCClient extends InternalClient {
     private String requestedNick;
 
     private final Set<String> channelsIntended = new CISet(this);
+    private final Map<String, String> channelKeys = new CIKeyMap<>(this);
+    private boolean channelsJoinable;
 
     private NettyManager.ClientConnection connection;
+    private TrafficReplayer replayer;
+    private final String replayEnd = new String("REPLAY END");
+    private TrafficLog.Writer trafficLog;
 
     private Cutter messageCutter = new Cutter.DefaultWordCutter();
 
     private final AuthManager authManager = new ManagerAuth(this);
+    private final ManagerMonitor monitorManager = new ManagerMonitor(this);
+    private final ManagerWhois whoisManager = new ManagerWhois(this);
     private final ManagerCapability capabilityManager = new ManagerCapability(this);
-    private final EventManager eventManager = new ManagerEvent(this);
+    private final EventManager eventManager;
     private final ManagerISupport iSupportManager = new ManagerISupport(this);
     private final ManagerMessageTag messageTagManager = new ManagerMessageTag(this);
 
@@ -187,10 +236,15 @@ final class IRCClient extends InternalClient {
     private STSMachine stsMachine;
 
     private final ClientCommands commands = new ClientCommands();
+    private final EventListener eventListener;
+    private final BatchHandler batchHandler = new BatchHandler(this, this::handleBatchMember);
+    private final ResponseTracker responseTracker = new ResponseTracker(this);
 
     private final MessageSendingQueue messageSendingImmediate;
     private MessageSendingQueue messageSendingScheduled;
     private final Object messageSendingLock = new Object();
+    @Nullable
+    private volatile SelfMaskLength selfMaskLength;
 
     IRCClient(@Nonnull Config config) {
         this.config = config;
@@ -199,12 +253,19 @@ final class IRCClient extends InternalClient {
 
         final String name = this.config.getNotNull(Config.NAME);
 
+        EventDispatchRuntime eventDispatchRuntime = this.config.get(Config.EVENT_DISPATCH_RUNTIME);
+        this.eventManager = new ManagerEvent(this, (eventDispatchRuntime == null) ? EventDispatchRuntime.getDefault() : eventDispatchRuntime, this.config.getNotNull(Config.EVENT_DISPATCH_DIRECT));
+
+        ListenerChannel listenerChannel = this.config.get(Config.LISTENER_CHANNEL);
+        if (listenerChannel == null) {
+            listenerChannel = ListenerChannel.getDefault();
+        }
         Config.ExceptionConsumerWrapper exceptionListenerWrapper = this.config.get(Config.LISTENER_EXCEPTION);
-        this.exceptionListener = new Listener<>(name, (exceptionListenerWrapper == null) ? null : exceptionListenerWrapper.getConsumer());
+        this.exceptionListener = new Listener<>(listenerChannel, (exceptionListenerWrapper == null) ? null : exceptionListenerWrapper.getConsumer());
         Config.StringConsumerWrapper inputListenerWrapper = this.config.get(Config.LISTENER_INPUT);
-        this.inputListener = new Listener<>(name, (inputListenerWrapper == null) ? null : inputListenerWrapper.getConsumer());
+        this.inputListener = new Listener<>(listenerChannel, (inputListenerWrapper == null) ? null : inputListenerWrapper.getConsumer());
         Config.StringConsumerWrapper outputListenerWrapper = this.config.get(Config.LISTENER_OUTPUT);
-        this.outputListener = new Listener<>(name, (outputListenerWrapper == null) ? null : outputListenerWrapper.getConsumer());
+        this.outputListener = new Listener<>(listenerChannel, (outputListenerWrapper == null) ? null : outputListenerWrapper.getConsumer());
 
         if (this.config.get(Config.STS_STORAGE_MANAGER) != null) {
             this.configureSts();
@@ -215,8 +276,18 @@ final class IRCClient extends InternalClient {
             ));
         }
 
+        File trafficLogFile = this.config.get(Config.TRAFFIC_LOG);
+        if (trafficLogFile != null) {
+            try {
+                this.trafficLog = TrafficLog.write(trafficLogFile.toPath());
+            } catch (IOException e) {
+                this.exceptionListener.queue(e);
+            }
+        }
+
         this.processor = new InputProcessor();
-        this.eventManager.registerEventListener(new EventListener(this));
+        this.eventListener = new EventListener(this);
+        this.eventManager.registerEventListener(this.eventListener);
 
 
         DefaultMessageMap defaultMessageMap = this.config.get(Config.DEFAULT_MESSAGE_MAP);
@@ -241,9 +312,14 @@ final class IRCClient extends InternalClient {
         for (String channelName : channels) {
             Sanity.truthiness(this.serverInfo.isValidChannel(channelName), "Invalid channel name " + channelName);
         }
-        for (String channelName : channels) {
-            this.channelsIntended.add(channelName);
-            this.sendRawLine("JOIN :" + channelName);
+        synchronized (this.messageSendingLock) {
+            for (String channelName : channels) {
+                this.channelsIntended.add(channelName);
+                this.channelKeys.remove(channelName);
+            }
+            if (this.channelsJoinable) {
+                this.joinChannels(Arrays.asList(channels), false);
+            }
         }
     }
 
@@ -252,8 +328,7 @@ final class IRCClient extends InternalClient {
         Sanity.nullCheck(channel, "Channel cannot be null");
         Sanity.nullCheck(key, "Key cannot be null");
         Sanity.truthiness(this.serverInfo.isValidChannel(channel), "Invalid channel name " + channel);
-        this.channelsIntended.add(channel);
-        this.sendRawLine("JOIN :" + channel + ' ' + key);
+        this.addKeyProtectedChannels(Collections.singletonList(new Pair<>(channel, key)));
     }
 
     @Override
@@ -262,12 +337,91 @@ final class IRCClient extends InternalClient {
         Sanity.truthiness(channelsAndKeys.length > 0, "Channel/key pairs cannot be empty array");
         for (Pair<String, String> channelAndKey : channelsAndKeys) {
             String channelName = channelAndKey.getLeft();
-            Sanity.truthiness(channelName == null, "Channel/key pairs cannot contain null channel name");
+            Sanity.nullCheck(channelName, "Channel/key pairs cannot contain null channel name");
             Sanity.truthiness(this.serverInfo.isValidChannel(channelName), "Channel/key pairs cannot contain invalid channel name " + channelName);
         }
-        for (Pair<String, String> channelAndKey : channelsAndKeys) {
-            this.channelsIntended.add(channelAndKey.getLeft());
-            this.sendRawLine("JOIN :" + channelAndKey.getLeft() + (channelAndKey.getRight() == null ? "" : (' ' + channelAndKey.getRight())));
+        this.addKeyProtectedChannels(Arrays.asList(channelsAndKeys));
+    }
+
+    private void addKeyProtectedChannels(@Nonnull List<Pair<String, String>> channelsAndKeys) {
+        List<String> channels = new ArrayList<>(channelsAndKeys.size());
+        synchronized (this.messageSendingLock) {
+            for (Pair<String, String> channelAndKey : channelsAndKeys) {
+                channels.add(channelAndKey.getLeft());
+                this.channelsIntended.add(channelAndKey.getLeft());
+                if (channelAndKey.getRight() == null) {
+                    this.channelKeys.remove(channelAndKey.getLeft());
+                } else {
+                    this.channelKeys.put(channelAndKey.getLeft(), channelAndKey.getRight());
+                }
+            }
+            if (this.channelsJoinable) {
+                this.joinChannels(channels, false);
+            }
+        }
+    }
+
+    /**
+     * Sends JOIN for the given channels, packing as many channels and keys
+     * into each line as the line length and the server's TARGMAX for JOIN
+     * allow. Keyed channels go first, as keys pair up with the
+     * channels in order.
+     *
+     * @param channels channels to join
+     * @param immediately true to skip the scheduled queue
+     */
+    private void joinChannels(@Nonnull Collection<String> channels, boolean immediately) {
+        int maxTargets = this.serverInfo.getTargetLimits().getOrDefault("JOIN", Integer.MAX_VALUE);
+        List<String> ordered = new ArrayList<>(channels.size());
+        channels.stream().filter(this.channelKeys::containsKey).forEach(ordered::add);
+        channels.stream().filter(channel -> !this.channelKeys.containsKey(channel)).forEach(ordered::add);
+
+        StringBuilder targets = new StringBuilder();
+        StringBuilder keys = new StringBuilder();
+        int targetBytes = 0;
+        int keyBytes = 0;
+        int count = 0;
+        for (String channel : ordered) {
+            String key = this.channelKeys.get(channel);
+            int channelLength = StringUtil.utf8Length(channel);
+            int keyLength = (key == null) ? 0 : StringUtil.utf8Length(key);
+            int newTargetBytes = targetBytes + ((count == 0) ? 0 : 1) + channelLength;
+            int newKeyBytes = (key == null) ? keyBytes : (keyBytes + ((keyBytes == 0) ? 0 : 1) + keyLength);
+            // "JOIN " + targets + " " + keys
+            int lineBytes = 5 + newTargetBytes + ((newKeyBytes == 0) ? 0 : (1 + newKeyBytes));
+            if ((count > 0) && ((lineBytes > 510) || (count >= maxTargets))) {
+                this.sendJoin(targets, keys, immediately);
+                targets.setLength(0);
+                keys.setLength(0);
+                count = 0;
+                newTargetBytes = channelLength;
+                newKeyBytes = keyLength;
+            }
+            if (count > 0) {
+                targets.append(',');
+            }
+            targets.append(channel);
+            if (key != null) {
+                if (keys.length() > 0) {
+                    keys.append(',');
+                }
+                keys.append(key);
+            }
+            targetBytes = newTargetBytes;
+            keyBytes = newKeyBytes;
+            count++;
+        }
+        if (count > 0) {
+            this.sendJoin(targets, keys, immediately);
+        }
+    }
+
+    private void sendJoin(@Nonnull StringBuilder targets, @Nonnull StringBuilder keys, boolean immediately) {
+        String line = "JOIN " + targets + ((keys.length() == 0) ? "" : (' ' + keys.toString()));
+        if (immediately) {
+            this.sendRawLineImmediately(line);
+        } else {
+            this.sendRawLine(line);
         }
     }
 
@@ -288,13 +442,31 @@ final class IRCClient extends InternalClient {
     public Optional<Channel> getChannel(@Nonnull String name) {
         Sanity.nullCheck(name, "Channel name cannot be null");
         ActorProvider.IRCChannel channel = this.actorProvider.getTrackedChannel(name);
-        return (channel == null) ? Optional.empty() : Optional.of(channel.snapshot());
+        if (channel == null) {
+            return Optional.empty();
+        }
+        this.eventListener.getChannelInfoScheduler().prioritize(channel.getName());
+        return Optional.of(channel.snapshot());
+    }
+
+    @Nonnull
+    @Override
+    public OptionalInt getChannelMemberCount(@Nonnull String name) {
+        Sanity.nullCheck(name, "Channel name cannot be null");
+        int count = this.actorProvider.getMemberCount(name);
+        return (count < 0) ? OptionalInt.empty() : OptionalInt.of(count);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getChannelNames() {
+        return Collections.unmodifiableSet(this.actorProvider.getTrackedChannelNames());
     }
 
     @Nonnull
     @Override
     public Set<Channel> getChannels() {
-        return this.actorProvider.getTrackedChannels().stream().map(ActorProvider.IRCChannel::snapshot).collect(Collectors.toSet());
+        return this.actorProvider.getTrackedChannelSnapshots();
     }
 
     @Nonnull
@@ -321,6 +493,12 @@ final class IRCClient extends InternalClient {
         return this.iSupportManager;
     }
 
+    @Nonnull
+    @Override
+    public Optional<Lag> getLag() {
+        return Optional.ofNullable(this.lagTracker.getLag());
+    }
+
     @Nonnull
     @Override
     public Optional<STSMachine> getSTSMachine() {
@@ -345,6 +523,12 @@ final class IRCClient extends InternalClient {
         return this.messageTagManager;
     }
 
+    @Nonnull
+    @Override
+    public ManagerMonitor getMonitorManager() {
+        return this.monitorManager;
+    }
+
     @Nonnull
     @Override
     public String getName() {
@@ -379,6 +563,25 @@ final class IRCClient extends InternalClient {
         return (this.userModes == null) ? Optional.empty() : Optional.of(ModeStatusList.of(this.userModes.values()));
     }
 
+    @Nonnull
+    @Override
+    public Set<String> getUserChannelNames(@Nonnull String nick) {
+        return this.actorProvider.getChannelNames(Sanity.nullCheck(nick, "Nick cannot be null"));
+    }
+
+    @Nonnull
+    @Override
+    public ManagerWhois getWhoisManager() {
+        return this.whoisManager;
+    }
+
+    @Override
+    public boolean isInChannel(@Nonnull String channel, @Nonnull String nick) {
+        Sanity.nullCheck(channel, "Channel cannot be null");
+        Sanity.nullCheck(nick, "Nick cannot be null");
+        return this.actorProvider.isInChannel(channel, nick);
+    }
+
     @Override
     public void knockChannel(@Nonnull String channelName) {
         this.sendRawLine("KNOCK " + Sanity.nullCheck(channelName, "Channel cannot be null"));
@@ -400,23 +603,27 @@ final class IRCClient extends InternalClient {
             Sanity.safeMessageCheck(reason, "Part reason");
         }
         this.channelsIntended.remove(channelName);
+        this.channelKeys.remove(channelName);
         this.sendRawLine("PART " + channelName + (reason != null ? (" :" + reason) : ""));
     }
 
     @Override
     public void sendCTCPMessage(@Nonnull String target, @Nonnull String message) {
-        Sanity.safeMessageCheck(target, "Target");
+        this.checkTarget(target);
         Sanity.safeMessageCheck(message);
-        Sanity.truthiness(target.indexOf(' ') == -1, "Target cannot have spaces");
-        this.sendRawLine("PRIVMSG " + target + " :" + CTCPUtil.toCTCP(message));
+        this.queueTargeted("PRIVMSG", target, CTCPUtil.toCTCP(message));
     }
 
     @Override
     public void sendMessage(@Nonnull String target, @Nonnull String message) {
-        Sanity.safeMessageCheck(target, "Target");
+        this.checkTarget(target);
         Sanity.safeMessageCheck(message);
-        Sanity.truthiness(target.indexOf(' ') == -1, "Target cannot have spaces");
-        this.sendRawLine("PRIVMSG " + target + " :" + message);
+        this.queueTargeted("PRIVMSG", target, message);
+    }
+
+    @Override
+    public void sendMessage(@Nonnull Collection<String> targets, @Nonnull String message) {
+        this.sendToTargets("PRIVMSG", targets, message, null);
     }
 
     @Override
@@ -424,7 +631,8 @@ final class IRCClient extends InternalClient {
         Sanity.nullCheck(target, "Target cannot be null");
         Sanity.nullCheck(message, "Message cannot be null");
         Sanity.nullCheck(cutter, "Cutter cannot be null");
-        cutter.split(message, this.getRemainingLength("PRIVMSG", target)).forEach(line -> this.sendMessage(target, line));
+        this.checkTarget(target);
+        cutter.split(message, this.getRemainingLength("PRIVMSG", target), line -> this.queueTargeted("PRIVMSG", target, Sanity.safeMessageCheck(line)));
     }
 
     @Override
@@ -432,26 +640,161 @@ final class IRCClient extends InternalClient {
         Sanity.nullCheck(target, "Target cannot be null");
         Sanity.nullCheck(message, "Message cannot be null");
         Sanity.nullCheck(cutter, "Cutter cannot be null");
-        cutter.split(message, this.getRemainingLength("NOTICE", target)).forEach(line -> this.sendNotice(target, line));
+        this.checkTarget(target);
+        cutter.split(message, this.getRemainingLength("NOTICE", target), line -> this.queueTargeted("NOTICE", target, Sanity.safeMessageCheck(line)));
+    }
+
+    @Override
+    public void sendMultiLineMessage(@Nonnull Collection<String> targets, @Nonnull String message, @Nonnull Cutter cutter) {
+        Sanity.nullCheck(cutter, "Cutter cannot be null");
+        this.sendToTargets("PRIVMSG", targets, message, cutter);
+    }
+
+    @Override
+    public void sendMultiLineNotice(@Nonnull Collection<String> targets, @Nonnull String message, @Nonnull Cutter cutter) {
+        Sanity.nullCheck(cutter, "Cutter cannot be null");
+        this.sendToTargets("NOTICE", targets, message, cutter);
+    }
+
+    private void sendToTargets(@Nonnull String type, @Nonnull Collection<String> targets, @Nonnull String message, @Nullable Cutter cutter) {
+        Sanity.nullCheck(targets, "Targets cannot be null");
+        Sanity.nullCheck(message, "Message cannot be null");
+        String longestTarget = "";
+        int longestTargetLength = 0;
+        int targetBytes = 0;
+        for (String target : targets) {
+            Sanity.safeMessageCheck(target, "Target");
+            Sanity.truthiness((target.indexOf(' ') == -1) && (target.indexOf(',') == -1), "Target cannot have spaces or commas");
+            int targetLength = StringUtil.utf8Length(target);
+            if (targetLength > longestTargetLength) {
+                longestTarget = target;
+                longestTargetLength = targetLength;
+            }
+            targetBytes += targetLength + 1;
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
+        int maxTargets = this.serverInfo.getTargetLimits().getOrDefault(type, 1);
+        List<String> lines;
+        if (cutter == null) {
+            Sanity.safeMessageCheck(message);
+            lines = Collections.singletonList(message);
+        } else {
+            int remaining = this.getRemainingLength(type, longestTarget);
+            int cutLength = remaining;
+            if ((targets.size() > 1) && (maxTargets > 1)) {
+                // Shorter lines leave room for more targets per line, so pick the length needing the fewest lines
+                // All measured in UTF-8 bytes, as the cutter and the line limit are
+                int messageBytes = StringUtil.utf8Length(message);
+                long fewestLines = Long.MAX_VALUE;
+                for (int length = remaining; length >= 100; length -= 10) {
+                    int lineLength = Math.min(length, messageBytes);
+                    int room = 510 - type.length() - 3 - lineLength;
+                    long groups = Math.max((targetBytes + room - 1) / room, (targets.size() + (long) maxTargets - 1) / maxTargets);
+                    long total = ((messageBytes + length - 1) / length) * groups;
+                    if (total < fewestLines) {
+                        fewestLines = total;
+                        cutLength = length;
+                    }
+                }
+            }
+            lines = cutter.split(message, cutLength);
+        }
+        for (String line : lines) {
+            // TYPE targets :line
+            int fixedLength = type.length() + 3 + StringUtil.utf8Length(line);
+            StringBuilder builder = new StringBuilder();
+            int length = fixedLength;
+            int count = 0;
+            for (String target : targets) {
+                int targetLength = StringUtil.utf8Length(target);
+                if ((count > 0) && ((count >= maxTargets) || ((length + 1 + targetLength) > 510))) {
+                    this.sendRawLine(type + ' ' + builder + " :" + line);
+                    builder.setLength(0);
+                    length = fixedLength;
+                    count = 0;
+                }
+                if (count > 0) {
+                    builder.append(',');
+                    length++;
+                }
+                builder.append(target);
+                length += targetLength;
+                count++;
+            }
+            this.sendRawLine(type + ' ' + builder + " :" + line);
+        }
     }
 
     private int getRemainingLength(@Nonnull String type, @Nonnull String target) {
         // :nick!name@host PRIVMSG/NOTICE TARGET :MESSAGE\r\n
-        // So that's two colons, three spaces, CR, and LF. 7 chars.
+        // So that's two colons, three spaces, CR, and LF. 7 bytes.
         // 512 - 7 = 505
         // Then, drop the user's full name (nick!name@host) and target
         // If self name is unknown, let's just do 100 for now
         // This will only happen for messages prior to getting a self WHOIS
         // Lastly drop the PRIVMSG or NOTICE length
-        return 505 - this.getUser().map(user -> user.getName().length()).orElse(100) - target.length() - type.length();
+        // All measured in UTF-8 bytes, as that is what the limit counts
+        return 505 - this.getSelfMaskLength() - StringUtil.utf8Length(target) - type.length();
+    }
+
+    private int getSelfMaskLength() {
+        SelfMaskLength cached = this.selfMaskLength;
+        if ((cached != null) && (cached.version == cached.user.getVersion())) {
+            return cached.length;
+        }
+        ActorProvider.IRCUser user = this.actorProvider.getUser(this.getNick());
+        if (user == null) {
+            return 100;
+        }
+        this.selfMaskLength = cached = new SelfMaskLength(user);
+        return cached.length;
+    }
+
+    /**
+     * Checks a single target in one pass, for CR, LF, NUL, and spaces.
+     *
+     * @param target target
+     * @throws IllegalArgumentException if null or invalid
+     */
+    private void checkTarget(@Nullable String target) {
+        Sanity.nullCheck(target, "Target cannot be null");
+        for (int i = 0; i < target.length(); i++) {
+            char ch = target.charAt(i);
+            if ((ch == '\n') || (ch == '\r') || (ch == '\0')) {
+                throw new IllegalArgumentException("Target cannot contain CR, LF, or NUL");
+            }
+            if (ch == ' ') {
+                throw new IllegalArgumentException("Target cannot have spaces");
+            }
+        }
+    }
+
+    /**
+     * Builds and queues TYPE target :message, where both target and
+     * message have already been checked.
+     *
+     * @param type command
+     * @param target checked target
+     * @param message checked message
+     */
+    private void queueTargeted(@Nonnull String type, @Nonnull String target, @Nonnull String message) {
+        String line = new StringBuilder(type.length() + target.length() + message.length() + 3)
+                .append(type).append(' ').append(target).append(" :").append(message).toString();
+        this.queueLine(line, false, false);
     }
 
     @Override
     public void sendNotice(@Nonnull String target, @Nonnull String message) {
-        Sanity.safeMessageCheck(target, "Target");
+        this.checkTarget(target);
         Sanity.safeMessageCheck(message);
-        Sanity.truthiness(target.indexOf(' ') == -1, "Target cannot have spaces");
-        this.sendRawLine("NOTICE " + target + " :" + message);
+        this.queueTargeted("NOTICE", target, message);
+    }
+
+    @Override
+    public void sendNotice(@Nonnull Collection<String> targets, @Nonnull String message) {
+        this.sendToTargets("NOTICE", targets, message, null);
     }
 
     @Override
@@ -459,6 +802,16 @@ final class IRCClient extends InternalClient {
         this.sendRawLine(message, false, false);
     }
 
+    @Nonnull
+    @Override
+    public CompletableFuture<List<ServerMessage>> sendRawLineWithResponse(@Nonnull String message, @Nonnull Predicate<ClientReceiveServerMessageEvent> isResponse, @Nonnull Predicate<ClientReceiveServerMessageEvent> isLastResponse) {
+        Sanity.safeMessageCheck(message);
+        Sanity.truthiness(message.isEmpty() || (message.charAt(0) != '@'), "Message cannot already have tags");
+        Sanity.nullCheck(isResponse, "Response predicate cannot be null");
+        Sanity.nullCheck(isLastResponse, "Last response predicate cannot be null");
+        return this.responseTracker.send(message, isResponse, isLastResponse);
+    }
+
     @Override
     public void sendRawLineAvoidingDuplication(@Nonnull String message) {
         this.sendRawLine(message, false, true);
@@ -471,6 +824,10 @@ final class IRCClient extends InternalClient {
 
     private void sendRawLine(@Nonnull String message, boolean priority, boolean avoidDuplicates) {
         Sanity.safeMessageCheck(message);
+        this.queueLine(message, priority, avoidDuplicates);
+    }
+
+    private void queueLine(@Nonnull String message, boolean priority, boolean avoidDuplicates) {
         if (!message.isEmpty() && (message.length() > ((message.charAt(0) == '@') ? 1022 : 510))) {
             throw new IllegalArgumentException("Message too long: " + message.length());
         }
@@ -488,7 +845,7 @@ final class IRCClient extends InternalClient {
         if (listener == null) {
             this.exceptionListener.removeConsumer();
         } else {
-            this.exceptionListener.setConsumer(listener);
+            this.exceptionListener.setConsumer(Listener.each(listener));
         }
     }
 
@@ -503,7 +860,7 @@ final class IRCClient extends InternalClient {
         if (listener == null) {
             this.inputListener.removeConsumer();
         } else {
-            this.inputListener.setConsumer(listener);
+            this.inputListener.setConsumer(Listener.each(listener));
         }
     }
 
@@ -536,7 +893,7 @@ final class IRCClient extends InternalClient {
         if (listener == null) {
             this.outputListener.removeConsumer();
         } else {
-            this.outputListener.setConsumer(listener);
+            this.outputListener.setConsumer(Listener.each(listener));
         }
     }
 
@@ -562,6 +919,16 @@ final class IRCClient extends InternalClient {
         if (this.connection != null) { // In case shutdown is called while building.
             this.connection.shutdown(reason, false);
         }
+        if (this.replayer != null) {
+            this.replayer.interrupt();
+        }
+        if (this.trafficLog != null) {
+            try {
+                this.trafficLog.close();
+            } catch (IOException e) {
+                this.exceptionListener.queue(e);
+            }
+        }
 
         // Shut these down last, so they get any last firings
         this.exceptionListener.shutdown();
@@ -582,6 +949,10 @@ final class IRCClient extends InternalClient {
      */
     @Override
     void processLine(@Nonnull String line) {
+        Lag lag = this.lagTracker.onInput(line, System.nanoTime());
+        if (lag != null) {
+            this.eventManager.callEvent(new ClientLagEvent(this, lag));
+        }
         if (line.startsWith("PING ")) {
             this.sendRawLineImmediately("PONG " + line.substring(5));
         } else if (!line.isEmpty()) {
@@ -595,6 +966,12 @@ final class IRCClient extends InternalClient {
         return this.actorProvider;
     }
 
+    @Nonnull
+    @Override
+    BatchHandler getBatchHandler() {
+        return this.batchHandler;
+    }
+
     @Nonnull
     @Override
     Config getConfig() {
@@ -633,7 +1010,13 @@ final class IRCClient extends InternalClient {
 
     @Override
     void connect() {
-        this.connection = NettyManager.connect(this);
+        File replay = this.config.get(Config.TRAFFIC_REPLAY);
+        if (replay == null) {
+            this.connection = NettyManager.connect(this);
+        } else {
+            this.replayer = new TrafficReplayer(this, replay, this.config.getNotNull(Config.TRAFFIC_REPLAY_ORIGINAL_SPEED), () -> this.processor.queue(this.replayEnd));
+            this.beginMessageSendingImmediate(this.outputListener::queue);
+        }
         this.processor.queue("");
 
         this.sendRawLineImmediately("CAP LS 302");
@@ -652,6 +1035,10 @@ final class IRCClient extends InternalClient {
         // Initial USER and NICK messages. Let's just assume we want +iw (send 8)
         this.sendRawLineImmediately("USER " + this.config.get(Config.USER) + " 8 * :" + this.config.get(Config.REAL_NAME));
         this.sendNickChange(this.goalNick);
+
+        if (this.replayer != null) {
+            this.replayer.start();
+        }
     }
 
     @Override
@@ -671,14 +1058,27 @@ final class IRCClient extends InternalClient {
     @Override
     void pauseMessageSending() {
         synchronized (this.messageSendingLock) {
+            this.channelsJoinable = false;
             this.messageSendingImmediate.pause();
             this.messageSendingScheduled.pause();
         }
     }
 
     @Override
-    void ping() {
-        this.sendRawLine("PING " + this.pingPurr[this.pingPurrCount++ % this.pingPurr.length]); // Connection's asleep, post cat sounds
+    boolean keepAlive() {
+        long now = System.nanoTime();
+        this.responseTracker.expire(now);
+        this.whoisManager.expire(now);
+        if (this.lagTracker.isTimedOut(now)) {
+            return false;
+        }
+        if (this.lagTracker.isPingDue(now)) {
+            // Connection's asleep, post cat sounds. Timestamped so the PONG can't be confused with an old one.
+            String token = this.pingPurr[this.pingPurrCount++ % this.pingPurr.length] + '.' + Long.toString(now, 36);
+            this.lagTracker.pingSent(token, now);
+            this.sendRawLineImmediately("PING :" + token);
+        }
+        return true;
     }
 
     @Override
@@ -704,8 +1104,16 @@ final class IRCClient extends InternalClient {
 
     @Override
     void startSending() {
-        this.connection.startSending();
+        this.lagTracker.reset(System.nanoTime());
+        if (this.connection != null) { // Not connected when replaying
+            this.connection.startSending();
+        }
         synchronized (this.messageSendingLock) {
+            // Join ahead of anything queued while disconnected
+            this.channelsJoinable = true;
+            if (!this.channelsIntended.isEmpty()) {
+                this.joinChannels(new ArrayList<>(this.channelsIntended), true);
+            }
             this.messageSendingScheduled.beginSending(this.messageSendingImmediate::queue);
         }
     }
@@ -726,7 +1134,20 @@ final class IRCClient extends InternalClient {
 
     @Override
     void reconnect() {
-        this.connection.shutdown(DefaultMessageType.RECONNECT, true);
+        if (this.connection != null) {
+            this.connection.shutdown(DefaultMessageType.RECONNECT, true);
+        }
+    }
+
+    @Override
+    void recordTraffic(@Nonnull TrafficLog.Direction direction, @Nonnull String line) {
+        if (this.trafficLog != null) {
+            try {
+                this.trafficLog.append(direction, line);
+            } catch (IOException e) {
+                this.exceptionListener.queue(e);
+            }
+        }
     }
 
     @Override
@@ -735,19 +1156,25 @@ final class IRCClient extends InternalClient {
     }
 
     private List<String> handleArgs(@Nonnull String[] split, int start) {
-        final List<String> argsList = new ArrayList<>();
-
-        int index = start;
-        for (; index < split.length; index++) {
-            if (split[index].startsWith(":")) {
-                split[index] = split[index].substring(1);
-                argsList.add(StringUtil.combineSplit(split, index));
-                break;
-            }
-            argsList.add(split[index]);
+        int end = start;
+        while ((end < split.length) && !split[end].startsWith(":")) {
+            end++;
         }
+        final String[] args = new String[Math.min(end + 1, split.length) - start];
+        System.arraycopy(split, start, args, 0, end - start);
+        if (end < split.length) {
+            split[end] = split[end].substring(1);
+            args[end - start] = StringUtil.combineSplit(split, end);
+        }
+        return ImmutableList.of(args);
+    }
 
-        return argsList;
+    private void handleBatchMember(@Nonnull String line) {
+        try {
+            this.handleLine(line);
+        } catch (final Exception thrown) {
+            this.exceptionListener.queue(thrown);
+        }
     }
 
     private void handleLine(@Nonnull final String line) {
@@ -755,6 +1182,9 @@ final class IRCClient extends InternalClient {
             this.actorProvider.reset();
             this.capabilityManager.reset();
             this.serverInfo.reset();
+            this.batchHandler.reset();
+            this.eventListener.getChannelInfoScheduler().reset();
+            this.responseTracker.reset();
         }
 
         final String[] split = line.split(" ");
@@ -773,7 +1203,7 @@ final class IRCClient extends InternalClient {
             tags = this.messageTagManager.getTags(tagSection.substring(1));
             index++;
         } else {
-            tags = Collections.unmodifiableList(new ArrayList<>());
+            tags = ImmutableList.of();
         }
 
         final String actorName;
@@ -783,22 +1213,33 @@ final class IRCClient extends InternalClient {
         } else {
             actorName = "";
         }
-        final ActorProvider.IRCActor actor = this.actorProvider.getActor(actorName);
 
         if (split.length <= index) {
             throw new KittehServerMessageException(new IRCServerMessage(line, tags), "Server sent a message without a command");
         }
 
         final String commandString = split[index++];
-
         final List<String> args = this.handleArgs(split, index);
 
+        if (!tags.isEmpty() || "BATCH".equals(commandString)) {
+            IRCServerMessage message = new IRCServerMessage(line, tags);
+            if (this.batchHandler.collect(message, commandString, args)) {
+                this.responseTracker.offerBatchMember(message);
+                return;
+            }
+        }
+
+        final ActorProvider.IRCActor actor = this.actorProvider.getActor(actorName);
+
+        ClientReceiveServerMessageEvent event;
         try {
             int numeric = Integer.parseInt(commandString);
-            this.eventManager.callEvent(new ClientReceiveNumericEvent(this, new IRCServerMessage.IRCNumericCommandServerMessage(numeric, line, tags), actor.snapshot(), commandString, numeric, args));
+            event = new ClientReceiveNumericEvent(this, new IRCServerMessage.IRCNumericCommandServerMessage(numeric, line, tags), actor.snapshot(), commandString, numeric, args);
         } catch (NumberFormatException exception) {
-            this.eventManager.callEvent(new ClientReceiveCommandEvent(this, new IRCServerMessage.IRCStringCommandServerMessage(commandString, line, tags), actor.snapshot(), commandString, args));
+            event = new ClientReceiveCommandEvent(this, new IRCServerMessage.IRCStringCommandServerMessage(commandString, line, tags), actor.snapshot(), commandString, args);
         }
+        this.responseTracker.offer(event);
+        this.eventManager.callEvent(event);
     }
 
     @Nonnull
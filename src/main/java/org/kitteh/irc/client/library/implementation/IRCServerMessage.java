@@ -25,12 +25,11 @@ package org.kitteh.irc.client.library.implementation;
 
 import org.kitteh.irc.client.library.element.MessageTag;
 import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.util.ImmutableList;
 import org.kitteh.irc.client.library.util.Sanity;
 import org.kitteh.irc.client.library.util.ToStringer;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 class IRCServerMessage implements ServerMessage {
@@ -70,7 +69,7 @@ class IRCServerMessage implements ServerMessage {
         Sanity.nullCheck(message, "Message cannot be null");
         Sanity.nullCheck(tags, "Tags cannot be null");
         this.message = message;
-        this.tags = Collections.unmodifiableList(new ArrayList<>(tags));
+        this.tags = ImmutableList.copyOf(tags);
     }
 
     @Nonnull
@@ -26,6 +26,7 @@ package org.kitteh.irc.client.library.implementation;
 import org.kitteh.irc.client.library.Client;
 import org.kitteh.irc.client.library.element.mode.ModeStatusList;
 import org.kitteh.irc.client.library.element.mode.UserMode;
+import org.kitteh.irc.client.library.util.TrafficLog;
 
 import javax.annotation.Nonnull;
 import java.util.Set;
@@ -41,6 +42,9 @@ abstract class InternalClient implements Client {
     @Nonnull
     abstract ActorProvider getActorProvider();
 
+    @Nonnull
+    abstract BatchHandler getBatchHandler();
+
     @Nonnull
     @Override
     public abstract ManagerCapability getCapabilityManager();
@@ -61,6 +65,10 @@ abstract class InternalClient implements Client {
     @Nonnull
     public abstract ManagerISupport getISupportManager();
 
+    @Nonnull
+    @Override
+    public abstract ManagerMonitor getMonitorManager();
+
     @Nonnull
     abstract Listener<String> getOutputListener();
 
@@ -71,9 +79,18 @@ abstract class InternalClient implements Client {
     @Nonnull
     public abstract IRCServerInfo getServerInfo();
 
+    @Nonnull
+    @Override
+    public abstract ManagerWhois getWhoisManager();
+
     abstract void pauseMessageSending();
 
-    abstract void ping();
+    /**
+     * Sends a PING if one is due, called every second once registered.
+     *
+     * @return false if the server has stopped answering
+     */
+    abstract boolean keepAlive();
 
     abstract void processLine(@Nonnull String line);
 
@@ -91,5 +108,7 @@ abstract class InternalClient implements Client {
 
     abstract void reconnect();
 
+    abstract void recordTraffic(@Nonnull TrafficLog.Direction direction, @Nonnull String line);
+
     abstract boolean isSSL();
 }
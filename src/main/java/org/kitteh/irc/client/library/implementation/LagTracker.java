@@ -0,0 +1,155 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.feature.Lag;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks input activity and outstanding PINGs for a connection, deciding
+ * when to ping and when the connection is dead.
+ * <p>
+ * A PING is sent once the connection has been quiet for
+ * {@link #IDLE_PING_NANOS}, or {@link #MEASURE_PING_NANOS} after the last,
+ * so lag is also measured on busy connections. A PING unanswered for
+ * five times the average lag, bounded by {@link #MIN_TIMEOUT_NANOS} and
+ * {@link #MAX_TIMEOUT_NANOS}, times out the connection. All times are
+ * from {@link System#nanoTime()}.
+ */
+final class LagTracker {
+    static final long IDLE_PING_NANOS = TimeUnit.SECONDS.toNanos(15);
+    static final long MEASURE_PING_NANOS = TimeUnit.SECONDS.toNanos(60);
+    static final long MIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    static final long MAX_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+    private static final int TIMEOUT_LAG_MULTIPLE = 5;
+
+    private volatile long lastInput;
+    private volatile long lastPing;
+    @Nullable
+    private volatile String outstanding;
+    private volatile long averageNanos;
+    private volatile long maxNanos;
+    private volatile int samples;
+    @Nullable
+    private volatile Lag lag;
+
+    /**
+     * Resets for a new connection.
+     *
+     * @param now current time
+     */
+    void reset(long now) {
+        this.lastInput = now;
+        this.lastPing = now;
+        this.outstanding = null;
+        this.averageNanos = 0;
+        this.maxNanos = 0;
+        this.samples = 0;
+        this.lag = null;
+    }
+
+    /**
+     * Records a line of input, matching a PONG for an outstanding PING.
+     *
+     * @param line line received
+     * @param now current time
+     * @return the new lag if the line answered the outstanding PING
+     */
+    @Nullable
+    Lag onInput(@Nonnull String line, long now) {
+        this.lastInput = now;
+        String token = this.outstanding;
+        if ((token == null) || !line.endsWith(token) || !line.contains(" PONG ")) {
+            return null;
+        }
+        this.outstanding = null;
+        long current = now - this.lastPing;
+        int samples = this.samples + 1;
+        // Same weighting as TCP's smoothed round-trip time
+        long average = (samples == 1) ? current : (this.averageNanos + ((current - this.averageNanos) / 8));
+        long max = Math.max(this.maxNanos, current);
+        this.samples = samples;
+        this.averageNanos = average;
+        this.maxNanos = max;
+        Lag lag = new Lag(Duration.ofNanos(current), Duration.ofNanos(average), Duration.ofNanos(max), samples);
+        this.lag = lag;
+        return lag;
+    }
+
+    /**
+     * Gets if a PING should be sent now.
+     *
+     * @param now current time
+     * @return true if a PING is due
+     */
+    boolean isPingDue(long now) {
+        return (this.outstanding == null) && (((now - this.lastInput) >= IDLE_PING_NANOS) || ((now - this.lastPing) >= MEASURE_PING_NANOS));
+    }
+
+    /**
+     * Records a PING being sent.
+     *
+     * @param token the PING's token, expected at the end of the PONG
+     * @param now current time
+     */
+    void pingSent(@Nonnull String token, long now) {
+        this.lastPing = now;
+        this.outstanding = token;
+    }
+
+    /**
+     * Gets if the outstanding PING has gone unanswered too long.
+     *
+     * @param now current time
+     * @return true if the connection should be considered dead
+     */
+    boolean isTimedOut(long now) {
+        return (this.outstanding != null) && ((now - this.lastPing) > this.getTimeoutNanos());
+    }
+
+    /**
+     * Gets how long a PING may go unanswered, adapting to observed lag.
+     *
+     * @return timeout in nanoseconds
+     */
+    long getTimeoutNanos() {
+        return Math.min(MAX_TIMEOUT_NANOS, Math.max(MIN_TIMEOUT_NANOS, this.averageNanos * TIMEOUT_LAG_MULTIPLE));
+    }
+
+    @Nullable
+    Lag getLag() {
+        return this.lag;
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("lag", this.lag).add("outstanding", this.outstanding).toString();
+    }
+}
@@ -23,81 +23,75 @@
  */
 package org.kitteh.irc.client.library.implementation;
 
-import org.kitteh.irc.client.library.util.QueueProcessingThread;
+import org.kitteh.irc.client.library.feature.ListenerChannel;
 import org.kitteh.irc.client.library.util.ToStringer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.Queue;
+import java.util.List;
 import java.util.function.Consumer;
 
 class Listener<Type> {
-    private final class ListenerThread extends QueueProcessingThread<Type> {
-        private volatile Consumer<Type> consumer;
-
-        private ListenerThread(@Nonnull String clientName, @Nonnull Consumer<Type> consumer) {
-            super("Kitteh IRC Client Listener (" + clientName + ')');
-            this.consumer = consumer;
-        }
-
-        @Override
-        protected void processElement(@Nonnull Type element) {
-            try {
-                this.consumer.accept(element);
-            } catch (final Throwable thrown) {
-                // NOOP
-            }
-        }
-
-        @Override
-        protected void cleanup(@Nonnull Queue<Type> remainingQueue) {
-            while (!remainingQueue.isEmpty()) {
+    /**
+     * Adapts a listener of single items to receive batches.
+     *
+     * @param consumer listener of single items
+     * @param <Type> type of items
+     * @return listener of batches
+     */
+    @Nonnull
+    static <Type> Consumer<List<Type>> each(@Nonnull Consumer<Type> consumer) {
+        return batch -> {
+            for (Type item : batch) {
                 try {
-                    this.consumer.accept(remainingQueue.poll());
+                    consumer.accept(item);
                 } catch (final Throwable thrown) {
                     // NOOP
                 }
             }
-        }
+        };
     }
 
-    private final String clientName;
+    private final ListenerChannel channel;
     @Nullable
-    private ListenerThread thread;
+    private volatile ListenerChannel.Endpoint<Type> endpoint;
 
-    Listener(@Nonnull String clientName, @Nullable Consumer<Type> consumer) {
-        this.clientName = clientName;
-        this.thread = (consumer == null) ? null : new ListenerThread(clientName, consumer);
+    Listener(@Nonnull ListenerChannel channel, @Nullable Consumer<List<Type>> consumer) {
+        this.channel = channel;
+        this.endpoint = (consumer == null) ? null : channel.open(consumer);
     }
 
     void queue(@Nonnull Type item) {
-        if (this.thread != null) {
-            this.thread.queue(item);
+        ListenerChannel.Endpoint<Type> endpoint = this.endpoint;
+        if (endpoint != null) {
+            endpoint.queue(item);
         }
     }
 
     void removeConsumer() {
         this.shutdown();
-        this.thread = null;
     }
 
-    void setConsumer(@Nonnull Consumer<Type> consumer) {
-        if (this.thread == null) {
-            this.thread = new ListenerThread(this.clientName, consumer);
+    synchronized void setConsumer(@Nonnull Consumer<List<Type>> consumer) {
+        ListenerChannel.Endpoint<Type> endpoint = this.endpoint;
+        if (endpoint == null) {
+            this.endpoint = this.channel.open(consumer);
         } else {
-            this.thread.consumer = consumer;
+            endpoint.setConsumer(consumer);
         }
     }
 
-    void shutdown() {
-        if (this.thread != null) {
-            this.thread.interrupt();
+    synchronized void shutdown() {
+        ListenerChannel.Endpoint<Type> endpoint = this.endpoint;
+        if (endpoint != null) {
+            endpoint.close();
+            this.endpoint = null;
         }
     }
 
     @Nonnull
     @Override
     public String toString() {
-        return new ToStringer(this).toString();
+        return new ToStringer(this).add("channel", this.channel).toString();
     }
 }
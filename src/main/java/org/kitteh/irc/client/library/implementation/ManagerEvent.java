@@ -25,15 +25,17 @@ package org.kitteh.irc.client.library.implementation;
 
 import net.engio.mbassy.bus.MBassador;
 import net.engio.mbassy.bus.config.BusConfiguration;
-import net.engio.mbassy.bus.config.Feature;
 import net.engio.mbassy.bus.error.IPublicationErrorHandler;
 import net.engio.mbassy.bus.error.PublicationError;
 import net.engio.mbassy.listener.Handler;
 import org.kitteh.irc.client.library.event.client.ClientConnectionClosedEvent;
+import org.kitteh.irc.client.library.event.client.ClientReceiveCommandEvent;
+import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
 import org.kitteh.irc.client.library.event.helper.ClientEvent;
 import org.kitteh.irc.client.library.exception.KittehEventException;
 import org.kitteh.irc.client.library.exception.KittehNagException;
 import org.kitteh.irc.client.library.exception.KittehServerMessageException;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
 import org.kitteh.irc.client.library.feature.EventManager;
 import org.kitteh.irc.client.library.feature.filter.CommandFilter;
 import org.kitteh.irc.client.library.feature.filter.FilterProcessor;
@@ -44,29 +46,24 @@ import org.kitteh.irc.client.library.util.Sanity;
 import org.kitteh.irc.client.library.util.ToStringer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 class ManagerEvent implements EventManager {
     private class Exceptional implements IPublicationErrorHandler {
         @Override
         public void handleError(@Nonnull PublicationError publicationError) {
-            Exception exceptional;
             Throwable thrown = publicationError.getCause();
-            if ((thrown instanceof InvocationTargetException) && (thrown.getCause() instanceof KittehServerMessageException)) {
-                exceptional = (KittehServerMessageException) thrown.getCause();
-            } else if ((thrown instanceof InvocationTargetException) && (thrown.getCause() instanceof KittehNagException)) {
-                exceptional = (KittehNagException) thrown.getCause();
-            } else {
-                exceptional = new KittehEventException(thrown);
-            }
-            ManagerEvent.this.client.getExceptionListener().queue(exceptional);
+            ManagerEvent.this.handleException((thrown instanceof InvocationTargetException) ? thrown.getCause() : thrown, thrown);
         }
 
         @Nonnull
@@ -80,15 +77,16 @@ class ManagerEvent implements EventManager {
     private final InternalClient client;
     private final Map<Class<? extends Annotation>, FilterProcessor<?, ? extends Annotation>> filters = new ConcurrentHashMap<>();
     private final Set<Object> listeners = new HashSet<>();
+    private final TypedListenerRegistry typedListeners = new TypedListenerRegistry();
+    @Nullable
+    private final DirectDispatcher directDispatcher;
 
-    ManagerEvent(@Nonnull InternalClient client) {
-        BusConfiguration configuration = new BusConfiguration()
-                .addFeature(Feature.SyncPubSub.Default().setSubscriptionFactory(new FilteringSubscriptionFactory(this.filters)))
-                .addFeature(Feature.AsynchronousHandlerInvocation.Default())
-                .addFeature(Feature.AsynchronousMessageDispatch.Default())
-                .addPublicationErrorHandler(new Exceptional());
+    ManagerEvent(@Nonnull InternalClient client, @Nonnull EventDispatchRuntime runtime, boolean direct) {
+        BusConfiguration configuration = runtime.createBusConfiguration(new FilteringSubscriptionFactory(this.filters));
+        configuration.addPublicationErrorHandler(new Exceptional());
         this.bus = new MBassador<>(configuration);
         this.client = client;
+        this.directDispatcher = direct ? new DirectDispatcher(runtime, this.bus.getRuntime(), this.filters) : null;
         // Defaults!
         this.registerAnnotationFilter(CommandFilter.class, new CommandFilter.Processor());
         this.registerAnnotationFilter(NumericFilter.class, new NumericFilter.Processor());
@@ -103,7 +101,24 @@ class ManagerEvent implements EventManager {
         if (event instanceof ClientEvent) {
             Sanity.truthiness(((ClientEvent) event).getClient() == this.client, "Event cannot be from another client!");
         }
-        this.bus.publish(event);
+        if (this.directDispatcher == null) {
+            this.bus.publish(event);
+        } else {
+            this.directDispatcher.dispatch(event, thrown -> this.handleException(thrown, thrown));
+        }
+        this.typedListeners.dispatch(event, thrown -> this.handleException(thrown, thrown));
+    }
+
+    private void handleException(@Nullable Throwable cause, @Nonnull Throwable thrown) {
+        Exception exceptional;
+        if (cause instanceof KittehServerMessageException) {
+            exceptional = (KittehServerMessageException) cause;
+        } else if (cause instanceof KittehNagException) {
+            exceptional = (KittehNagException) cause;
+        } else {
+            exceptional = new KittehEventException(thrown);
+        }
+        this.client.getExceptionListener().queue(exceptional);
     }
 
     @Nonnull
@@ -126,15 +141,46 @@ class ManagerEvent implements EventManager {
     @Override
     public synchronized void registerEventListener(@Nonnull Object listener) {
         Sanity.nullCheck(listener, "Listener cannot be null");
+        if (this.directDispatcher == null) {
+            this.bus.subscribe(listener);
+        } else {
+            this.directDispatcher.register(listener);
+        }
         this.listeners.add(listener);
-        this.bus.subscribe(listener);
+    }
+
+    @Nonnull
+    @Override
+    public <E> Registration on(@Nonnull Class<E> eventClass, int priority, @Nonnull Consumer<? super E> handler) {
+        Sanity.nullCheck(eventClass, "Event class cannot be null");
+        Sanity.nullCheck(handler, "Handler cannot be null");
+        return this.typedListeners.add(eventClass, null, priority, handler);
+    }
+
+    @Nonnull
+    @Override
+    public Registration onCommand(@Nonnull String command, int priority, @Nonnull Consumer<ClientReceiveCommandEvent> handler) {
+        Sanity.nullCheck(command, "Command cannot be null");
+        Sanity.nullCheck(handler, "Handler cannot be null");
+        return this.typedListeners.add(ClientReceiveCommandEvent.class, command.toUpperCase(Locale.ENGLISH), priority, handler);
+    }
+
+    @Nonnull
+    @Override
+    public Registration onNumeric(int numeric, int priority, @Nonnull Consumer<ClientReceiveNumericEvent> handler) {
+        Sanity.nullCheck(handler, "Handler cannot be null");
+        return this.typedListeners.add(ClientReceiveNumericEvent.class, numeric, priority, handler);
     }
 
     @Override
     public synchronized void unregisterEventListener(@Nonnull Object listener) {
         Sanity.nullCheck(listener, "Listener cannot be null");
         this.listeners.remove(listener);
-        this.bus.unsubscribe(listener);
+        if (this.directDispatcher == null) {
+            this.bus.unsubscribe(listener);
+        } else {
+            this.directDispatcher.unregister(listener);
+        }
     }
 
     @Handler(priority = Integer.MIN_VALUE)
@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Matcher;
@@ -238,6 +239,24 @@ final class ManagerISupport extends AbstractNameValueProcessor<ISupportParameter
         }
     }
 
+    private static final class ISupportMonitor extends IRCISupportParameter implements ISupportParameter.Monitor {
+        private final int limit;
+
+        private ISupportMonitor(@Nonnull Client client, @Nonnull String name, @Nonnull Optional<String> value) {
+            super(client, name, value);
+            try {
+                this.limit = value.isPresent() ? Integer.parseInt(value.get()) : Integer.MAX_VALUE;
+            } catch (NumberFormatException e) {
+                throw new KittehServerISupportException(name, "Could not parse value", e);
+            }
+        }
+
+        @Override
+        public int getLimit() {
+            return this.limit;
+        }
+    }
+
     private static final class ISupportNetwork extends IRCISupportParameterValueRequired implements ISupportParameter.Network {
         private final String networkName;
 
@@ -295,6 +314,42 @@ final class ManagerISupport extends AbstractNameValueProcessor<ISupportParameter
         }
     }
 
+    private static final class ISupportTargMax extends IRCISupportParameterValueRequired implements ISupportParameter.TargMax {
+        private final Map<String, Integer> limits;
+
+        private ISupportTargMax(@Nonnull Client client, @Nonnull String name, @Nonnull Optional<String> value) {
+            super(client, name, value);
+            if (!value.isPresent()) {
+                throw new KittehServerISupportException(name, "No limits defined");
+            }
+            Map<String, Integer> limits = new HashMap<>();
+            for (String p : value.get().split(",")) {
+                int colon = p.indexOf(':');
+                if (colon < 1) {
+                    throw new KittehServerISupportException(name, "Invalid format");
+                }
+                int limit;
+                if (colon == (p.length() - 1)) {
+                    limit = Integer.MAX_VALUE;
+                } else {
+                    try {
+                        limit = Integer.parseInt(p.substring(colon + 1));
+                    } catch (Exception e) {
+                        throw new KittehServerISupportException(name, "Non-integer limit", e);
+                    }
+                }
+                limits.put(p.substring(0, colon).toUpperCase(Locale.ENGLISH), limit);
+            }
+            this.limits = Collections.unmodifiableMap(limits);
+        }
+
+        @Nonnull
+        @Override
+        public Map<String, Integer> getLimits() {
+            return this.limits;
+        }
+    }
+
     private static final class ISupportWHOX extends IRCISupportParameter implements ISupportParameter.WHOX {
         private ISupportWHOX(@Nonnull Client client, @Nonnull String name, @Nonnull Optional<String> value) {
             super(client, name, value);
@@ -315,9 +370,11 @@ final class ManagerISupport extends AbstractNameValueProcessor<ISupportParameter
         this.registerParameter(ISupportParameter.ChanModes.NAME, ISupportChanModes::new);
         this.registerParameter(ISupportParameter.ChanTypes.NAME, ISupportChanTypes::new);
         this.registerParameter(ISupportParameter.Modes.NAME, ISupportModes::new);
+        this.registerParameter(ISupportParameter.Monitor.NAME, ISupportMonitor::new);
         this.registerParameter(ISupportParameter.Network.NAME, ISupportNetwork::new);
         this.registerParameter(ISupportParameter.NickLen.NAME, ISupportNickLen::new);
         this.registerParameter(ISupportParameter.Prefix.NAME, ISupportPrefix::new);
+        this.registerParameter(ISupportParameter.TargMax.NAME, ISupportTargMax::new);
         this.registerParameter(ISupportParameter.WHOX.NAME, ISupportWHOX::new);
         this.registerParameter(ISupportParameter.TopicLen.NAME, ISupportTopicLen::new);
     }
@@ -27,6 +27,7 @@ import org.kitteh.irc.client.library.Client;
 import org.kitteh.irc.client.library.element.MessageTag;
 import org.kitteh.irc.client.library.exception.KittehServerMessageTagException;
 import org.kitteh.irc.client.library.feature.MessageTagManager;
+import org.kitteh.irc.client.library.util.ImmutableList;
 import org.kitteh.irc.client.library.util.ToStringer;
 import org.kitteh.irc.client.library.util.TriFunction;
 
@@ -141,7 +142,7 @@ final class ManagerMessageTag extends AbstractNameValueProcessor<MessageTag> imp
     @Nonnull
     List<MessageTag> getTags(@Nonnull String tagList) {
         String[] tags = tagList.split(";"); // Split up by semicolon
-        List<MessageTag> list = new ArrayList<>();
+        List<MessageTag> list = new ArrayList<>(tags.length);
         int index;
         TagCreator tagCreator;
         for (String tag : tags) {
@@ -169,7 +170,7 @@ final class ManagerMessageTag extends AbstractNameValueProcessor<MessageTag> imp
             }
             list.add(messageTag);
         }
-        return Collections.unmodifiableList(list);
+        return ImmutableList.copyOf(list);
     }
 
     @Nonnull
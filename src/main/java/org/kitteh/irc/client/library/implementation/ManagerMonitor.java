@@ -0,0 +1,288 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.feature.MonitorManager;
+import org.kitteh.irc.client.library.util.CIKeyMap;
+import org.kitteh.irc.client.library.util.CISet;
+import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.StringUtil;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+final class ManagerMonitor implements MonitorManager {
+    private static final class Target {
+        private static final Comparator<Target> RANKING = Comparator.<Target>comparingInt(target -> target.priority).reversed().thenComparingLong(target -> target.order);
+
+        private final String nick;
+        private final int priority;
+        private final long order;
+
+        private Target(@Nonnull String nick, int priority, long order) {
+            this.nick = nick;
+            this.priority = priority;
+            this.order = order;
+        }
+    }
+
+    private static final int MAX_LINE_BYTES = 510;
+
+    private final InternalClient client;
+    private final Map<String, Target> targets;
+    private final Set<String> serverNicks;
+    private final Map<String, Boolean> online;
+    private long nextOrder;
+    private int reportedLimit = Integer.MAX_VALUE;
+    private boolean registered;
+
+    ManagerMonitor(@Nonnull InternalClient client) {
+        this.client = client;
+        this.targets = new CIKeyMap<>(client);
+        this.serverNicks = new CISet(client);
+        this.online = new CIKeyMap<>(client);
+    }
+
+    @Override
+    public void addNick(@Nonnull String nick) {
+        this.addNick(nick, DEFAULT_PRIORITY);
+    }
+
+    @Override
+    public void addNick(@Nonnull String nick, int priority) {
+        this.checkNick(nick);
+        synchronized (this) {
+            Target existing = this.targets.get(nick);
+            if ((existing != null) && (existing.priority == priority)) {
+                return;
+            }
+            this.targets.put(nick, new Target(nick, priority, (existing == null) ? this.nextOrder++ : existing.order));
+        }
+        this.sync();
+    }
+
+    @Override
+    public void addNicks(@Nonnull Collection<String> nicks) {
+        Sanity.nullCheck(nicks, "Nicks cannot be null");
+        nicks.forEach(this::checkNick);
+        synchronized (this) {
+            for (String nick : nicks) {
+                if (!this.targets.containsKey(nick)) {
+                    this.targets.put(nick, new Target(nick, DEFAULT_PRIORITY, this.nextOrder++));
+                }
+            }
+        }
+        this.sync();
+    }
+
+    @Override
+    public void removeNick(@Nonnull String nick) {
+        this.removeNicks(Collections.singleton(Sanity.nullCheck(nick, "Nick cannot be null")));
+    }
+
+    @Override
+    public void removeNicks(@Nonnull Collection<String> nicks) {
+        Sanity.nullCheck(nicks, "Nicks cannot be null");
+        synchronized (this) {
+            nicks.forEach(this.targets::remove);
+        }
+        this.sync();
+    }
+
+    @Nonnull
+    @Override
+    public synchronized Set<String> getNicks() {
+        return Collections.unmodifiableSet(this.targets.values().stream().map(target -> target.nick).collect(Collectors.toSet()));
+    }
+
+    @Nonnull
+    @Override
+    public synchronized Set<String> getOverflowNicks() {
+        if (!this.registered) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(this.targets.values().stream().map(target -> target.nick).filter(nick -> !this.serverNicks.contains(nick)).collect(Collectors.toSet()));
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getOnlineNicks() {
+        return Collections.unmodifiableSet(this.online.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).collect(Collectors.toSet()));
+    }
+
+    @Override
+    public boolean isOnline(@Nonnull String nick) {
+        return Boolean.TRUE.equals(this.online.get(Sanity.nullCheck(nick, "Nick cannot be null")));
+    }
+
+    /**
+     * Sends the whole list once registered with a server, which starts
+     * with an empty list.
+     */
+    void registered() {
+        synchronized (this) {
+            if (this.registered) {
+                return;
+            }
+            this.registered = true;
+            this.serverNicks.clear();
+            this.online.clear();
+            this.reportedLimit = Integer.MAX_VALUE;
+        }
+        this.sync();
+    }
+
+    /**
+     * Forgets the server's list and presence, no longer known once
+     * disconnected.
+     */
+    synchronized void disconnected() {
+        this.registered = false;
+        this.serverNicks.clear();
+        this.online.clear();
+    }
+
+    /**
+     * Records a monitored nick being reported online or offline.
+     *
+     * @param target nick or, as sent when online, mask
+     * @param online true if online
+     */
+    synchronized void setOnline(@Nonnull String target, boolean online) {
+        int bang = target.indexOf('!');
+        String nick = (bang == -1) ? target : target.substring(0, bang);
+        if (this.serverNicks.contains(nick)) {
+            this.online.put(nick, online);
+        }
+    }
+
+    /**
+     * Records the server refusing nicks as its list is full. If this lowers
+     * the known limit, the list is planned again so the highest priority
+     * nicks make it in, otherwise the refused nicks are overflow.
+     *
+     * @param limit limit reported by the server
+     * @param nicks nicks refused
+     */
+    synchronized void listFull(int limit, @Nonnull Collection<String> nicks) {
+        for (String nick : nicks) {
+            this.serverNicks.remove(nick);
+            this.online.remove(nick);
+        }
+        if (limit < this.reportedLimit) {
+            this.reportedLimit = limit;
+            this.sync();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public synchronized String toString() {
+        return new ToStringer(this).add("client", this.client).add("nicks", this.targets.size()).add("monitored", this.serverNicks.size()).add("registered", this.registered).toString();
+    }
+
+    private void checkNick(@Nonnull String nick) {
+        Sanity.safeMessageCheck(nick, "Nick");
+        Sanity.truthiness((nick.indexOf(',') == -1) && (nick.indexOf(' ') == -1), "Nick cannot contain a comma or space");
+    }
+
+    // Sent while holding the lock so concurrent changes reach the server in the order they were planned
+    private synchronized void sync() {
+        this.plan().forEach(this.client::sendRawLine);
+    }
+
+    /**
+     * Diffs the wanted list against the server's, updating the server's to
+     * match what is about to be sent.
+     *
+     * @return MONITOR lines to send
+     */
+    @Nonnull
+    private List<String> plan() {
+        int serverLimit = this.registered ? this.client.getServerInfo().getMonitorLimit() : -1;
+        if (serverLimit < 0) {
+            return Collections.emptyList();
+        }
+        int limit = Math.min(serverLimit, this.reportedLimit);
+        Set<String> wanted = new CISet(this.client);
+        List<Target> ranked = new ArrayList<>(this.targets.values());
+        ranked.sort(Target.RANKING);
+        if (ranked.size() > limit) {
+            ranked = ranked.subList(0, limit);
+        }
+        List<String> add = new ArrayList<>();
+        for (Target target : ranked) {
+            wanted.add(target.nick);
+            if (!this.serverNicks.contains(target.nick)) {
+                add.add(target.nick);
+            }
+        }
+        List<String> remove = new ArrayList<>();
+        for (String nick : this.serverNicks) {
+            if (!wanted.contains(nick)) {
+                remove.add(nick);
+            }
+        }
+        remove.forEach(nick -> {
+            this.serverNicks.remove(nick);
+            this.online.remove(nick);
+        });
+        this.serverNicks.addAll(add);
+        List<String> lines = new ArrayList<>();
+        this.pack(lines, '-', remove);
+        this.pack(lines, '+', add);
+        return lines;
+    }
+
+    private void pack(@Nonnull List<String> lines, char action, @Nonnull List<String> nicks) {
+        String prefix = "MONITOR " + action + ' ';
+        StringBuilder builder = new StringBuilder(MAX_LINE_BYTES);
+        int bytes = 0;
+        for (String nick : nicks) {
+            int length = StringUtil.utf8Length(nick);
+            if ((bytes > 0) && ((prefix.length() + bytes + 1 + length) > MAX_LINE_BYTES)) {
+                lines.add(prefix + builder);
+                builder.setLength(0);
+                bytes = 0;
+            }
+            if (bytes > 0) {
+                builder.append(',');
+                bytes++;
+            }
+            builder.append(nick);
+            bytes += length;
+        }
+        if (bytes > 0) {
+            lines.add(prefix + builder);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.element.WhoisData;
+import org.kitteh.irc.client.library.feature.WhoisManager;
+import org.kitteh.irc.client.library.util.CIKeyMap;
+import org.kitteh.irc.client.library.util.Sanity;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+final class ManagerWhois implements WhoisManager {
+    private static final class Cached {
+        private final WhoisData whois;
+        private final long expiry;
+
+        private Cached(@Nonnull WhoisData whois, long expiry) {
+            this.whois = whois;
+            this.expiry = expiry;
+        }
+    }
+
+    private static final class Pending {
+        private final CompletableFuture<Optional<WhoisData>> future;
+        private final long sent;
+        private boolean stale;
+
+        private Pending(@Nonnull CompletableFuture<Optional<WhoisData>> future, long sent) {
+            this.future = future;
+            this.sent = sent;
+        }
+    }
+
+    static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(1);
+    // A lookup unanswered this long fails, rather than waiting forever on a lost reply
+    static final long REQUEST_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final InternalClient client;
+    private final Map<String, Cached> cache;
+    private final Map<String, Pending> pending;
+    private volatile Duration timeToLive = DEFAULT_TIME_TO_LIVE;
+    private long nextPrune = System.nanoTime();
+
+    ManagerWhois(@Nonnull InternalClient client) {
+        this.client = client;
+        this.cache = new CIKeyMap<>(client);
+        this.pending = new CIKeyMap<>(client);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Optional<WhoisData>> getWhois(@Nonnull String nick) {
+        Sanity.safeMessageCheck(nick, "Nick");
+        Sanity.truthiness(nick.indexOf(' ') == -1, "Nick cannot contain spaces");
+        long now = System.nanoTime();
+        Pending request;
+        synchronized (this) {
+            Cached cached = this.cache.get(nick);
+            if (cached != null) {
+                if ((now - cached.expiry) < 0) {
+                    return CompletableFuture.completedFuture(Optional.of(cached.whois));
+                }
+                this.cache.remove(nick);
+            }
+            Pending existing = this.pending.get(nick);
+            if (existing != null) {
+                return existing.future;
+            }
+            request = new Pending(new CompletableFuture<>(), now);
+            this.pending.put(nick, request);
+        }
+        this.client.sendRawLine("WHOIS " + nick);
+        return request.future;
+    }
+
+    @Nonnull
+    @Override
+    public synchronized Optional<WhoisData> getCachedWhois(@Nonnull String nick) {
+        Sanity.nullCheck(nick, "Nick cannot be null");
+        Cached cached = this.cache.get(nick);
+        if ((cached == null) || ((System.nanoTime() - cached.expiry) >= 0)) {
+            return Optional.empty();
+        }
+        return Optional.of(cached.whois);
+    }
+
+    @Nonnull
+    @Override
+    public Duration getTimeToLive() {
+        return this.timeToLive;
+    }
+
+    @Override
+    public void setTimeToLive(@Nonnull Duration timeToLive) {
+        Sanity.nullCheck(timeToLive, "Time to live cannot be null");
+        Sanity.truthiness(!timeToLive.isNegative(), "Time to live cannot be negative");
+        this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public synchronized void invalidate(@Nonnull String nick) {
+        Sanity.nullCheck(nick, "Nick cannot be null");
+        this.cache.remove(nick);
+        Pending request = this.pending.get(nick);
+        if (request != null) {
+            // The reply may describe the user as they were before the change
+            request.stale = true;
+        }
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        this.cache.clear();
+        this.pending.values().forEach(request -> request.stale = true);
+    }
+
+    /**
+     * Fails lookups unanswered for too long and drops expired results.
+     *
+     * @param now current {@link System#nanoTime()}
+     */
+    void expire(long now) {
+        List<Pending> expired = new ArrayList<>();
+        synchronized (this) {
+            // CIKeyMap views are copies, so remove by key
+            if ((now - this.nextPrune) >= 0) {
+                this.nextPrune = now + PRUNE_INTERVAL_NANOS;
+                for (Map.Entry<String, Cached> entry : this.cache.entrySet()) {
+                    if ((now - entry.getValue().expiry) >= 0) {
+                        this.cache.remove(entry.getKey());
+                    }
+                }
+            }
+            for (Map.Entry<String, Pending> entry : this.pending.entrySet()) {
+                if ((now - entry.getValue().sent) >= REQUEST_TIMEOUT_NANOS) {
+                    expired.add(this.pending.remove(entry.getKey()));
+                }
+            }
+        }
+        expired.forEach(request -> request.future.completeExceptionally(new TimeoutException("No WHOIS reply received")));
+    }
+
+    /**
+     * Cancels outstanding lookups and forgets cached results, which may not
+     * hold by the time the client reconnects.
+     */
+    void disconnected() {
+        List<Pending> cancelled;
+        synchronized (this) {
+            this.cache.clear();
+            cancelled = new ArrayList<>(this.pending.values());
+            this.pending.clear();
+        }
+        cancelled.forEach(request -> request.future.cancel(false));
+    }
+
+    /**
+     * Records the end of a WHOIS reply, answering any lookups of the nick.
+     *
+     * @param nick nick looked up
+     * @param whois information or null if there is no such nick
+     */
+    void complete(@Nonnull String nick, @Nullable WhoisData whois) {
+        Pending request;
+        synchronized (this) {
+            request = this.pending.remove(nick);
+            long timeToLive = this.timeToLive.toNanos();
+            if ((whois != null) && (timeToLive > 0) && ((request == null) || !request.stale)) {
+                this.cache.put(nick, new Cached(whois, System.nanoTime() + timeToLive));
+            }
+        }
+        if (request != null) {
+            request.future.complete(Optional.ofNullable(whois));
+        }
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("client", this.client).add("timeToLive", this.timeToLive).toString();
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.element.Channel;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.element.User;
+import org.kitteh.irc.client.library.event.client.ClientReceiveCommandEvent;
+import org.kitteh.irc.client.library.event.user.NetjoinEvent;
+import org.kitteh.irc.client.library.event.user.NetsplitEvent;
+import org.kitteh.irc.client.library.util.CIKeyMap;
+import org.kitteh.irc.client.library.util.CISet;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the QUIT and JOIN bursts of a netsplit so the actor tables are
+ * updated, and one event fired, per batch rather than per line. Only used
+ * from the input processing thread.
+ */
+final class NetsplitHandler {
+    private static final Pattern SPLIT_PATTERN = Pattern.compile("([a-zA-Z0-9*-]+(?:\\.[a-zA-Z0-9*-]+)+) ([a-zA-Z0-9*-]+(?:\\.[a-zA-Z0-9*-]+)+)");
+    private static final long REJOIN_WINDOW = TimeUnit.HOURS.toMillis(1);
+
+    private static final class Split {
+        private final String uplink;
+        private final String splitServer;
+        private final long time = System.currentTimeMillis();
+
+        private Split(@Nonnull String uplink, @Nonnull String splitServer) {
+            this.uplink = uplink;
+            this.splitServer = splitServer;
+        }
+
+        private boolean matches(@Nonnull String uplink, @Nonnull String splitServer) {
+            return this.uplink.equals(uplink) && this.splitServer.equals(splitServer);
+        }
+    }
+
+    private static final class SplitUser {
+        private final Split split;
+        private final Set<String> channels;
+
+        private SplitUser(@Nonnull Split split, @Nonnull Set<String> channels) {
+            this.split = split;
+            this.channels = channels;
+        }
+    }
+
+    private static final class Join {
+        private final ClientReceiveCommandEvent event;
+        private final ActorProvider.IRCChannel channel;
+
+        private Join(@Nonnull ClientReceiveCommandEvent event, @Nonnull ActorProvider.IRCChannel channel) {
+            this.event = event;
+            this.channel = channel;
+        }
+    }
+
+    private final InternalClient client;
+    private final Map<String, SplitUser> splitNicks;
+
+    @Nullable
+    private Split batchSplit;
+    private boolean batchJoining;
+    private final List<ServerMessage> batchMessages = new ArrayList<>();
+    private final Map<String, User> batchQuits;
+    private final List<User> batchQuitUsers = new ArrayList<>();
+    private final List<Join> batchJoins = new ArrayList<>();
+
+    NetsplitHandler(@Nonnull InternalClient client) {
+        this.client = client;
+        this.splitNicks = new CIKeyMap<>(client);
+        this.batchQuits = new CIKeyMap<>(client);
+    }
+
+    /**
+     * Takes a QUIT into the current batch if its reason names two servers.
+     *
+     * @param event quit
+     * @return true if batched, false if it should be handled normally
+     */
+    boolean quit(@Nonnull ClientReceiveCommandEvent event) {
+        if (!(event.getActor() instanceof User) || event.getParameters().isEmpty()) {
+            return false;
+        }
+        Matcher matcher = SPLIT_PATTERN.matcher(event.getParameters().get(0));
+        if (!matcher.matches() || matcher.group(1).equals(matcher.group(2))) {
+            return false;
+        }
+        User user = (User) event.getActor();
+        if (this.batchJoining || (this.batchSplit == null) || !this.batchSplit.matches(matcher.group(1), matcher.group(2))) {
+            this.flush();
+            this.batchSplit = new Split(matcher.group(1), matcher.group(2));
+            this.batchJoining = false;
+        }
+        this.batchMessages.add(event.getServerMessage());
+        if (this.batchQuits.put(user.getNick(), user) == null) {
+            this.batchQuitUsers.add(user);
+        }
+        return true;
+    }
+
+    /**
+     * Takes a JOIN into the current batch if the user left in a recent
+     * split.
+     *
+     * @param event join
+     * @return true if batched, false if it should be handled normally
+     */
+    boolean join(@Nonnull ClientReceiveCommandEvent event) {
+        if (!(event.getActor() instanceof User) || event.getParameters().isEmpty()) {
+            return false;
+        }
+        String nick = ((User) event.getActor()).getNick();
+        SplitUser splitUser = this.splitNicks.get(nick);
+        if ((splitUser == null) || !splitUser.channels.contains(event.getParameters().get(0)) || this.client.getServerInfo().getCaseMapping().areEqualIgnoringCase(nick, this.client.getNick())) {
+            return false;
+        }
+        ActorProvider.IRCChannel channel = this.client.getActorProvider().getTrackedChannel(event.getParameters().get(0));
+        if (channel == null) {
+            return false;
+        }
+        if (!this.batchJoining || (this.batchSplit != splitUser.split)) {
+            this.flush();
+            this.batchSplit = splitUser.split;
+            this.batchJoining = true;
+        }
+        this.batchMessages.add(event.getServerMessage());
+        this.batchJoins.add(new Join(event, channel));
+        return true;
+    }
+
+    /**
+     * Applies and fires the current batch, if any.
+     */
+    void flush() {
+        if (this.batchSplit == null) {
+            return;
+        }
+        if (this.batchJoining) {
+            this.flushJoins(this.batchSplit);
+        } else {
+            this.flushQuits(this.batchSplit);
+        }
+        this.batchSplit = null;
+        this.batchMessages.clear();
+        this.batchQuits.clear();
+        this.batchQuitUsers.clear();
+        this.batchJoins.clear();
+    }
+
+    /**
+     * Forgets the current batch and all remembered splits.
+     */
+    void reset() {
+        this.batchSplit = null;
+        this.batchMessages.clear();
+        this.batchQuits.clear();
+        this.batchQuitUsers.clear();
+        this.batchJoins.clear();
+        this.splitNicks.clear();
+    }
+
+    private void flushQuits(@Nonnull Split split) {
+        long expired = System.currentTimeMillis() - REJOIN_WINDOW;
+        this.splitNicks.entrySet().stream().filter(entry -> entry.getValue().split.time < expired).forEach(entry -> this.splitNicks.remove(entry.getKey()));
+
+        Map<ActorProvider.IRCChannel, List<String>> affected = this.client.getActorProvider().trackUserQuits(this.batchQuits.keySet());
+        Map<Channel, List<User>> channelUsers = new LinkedHashMap<>();
+        affected.forEach((channel, nicks) -> {
+            List<User> users = new ArrayList<>(nicks.size());
+            nicks.forEach(nick -> {
+                users.add(this.batchQuits.get(nick));
+                SplitUser splitUser = this.splitNicks.get(nick);
+                if ((splitUser == null) || (splitUser.split != split)) {
+                    splitUser = new SplitUser(split, new CISet(this.client));
+                    this.splitNicks.put(nick, splitUser);
+                }
+                splitUser.channels.add(channel.getName());
+            });
+            channelUsers.put(channel.snapshot(), users);
+        });
+        this.client.getEventManager().callEvent(new NetsplitEvent(this.client, this.batchMessages, split.uplink, split.splitServer, this.batchQuitUsers, channelUsers));
+    }
+
+    private void flushJoins(@Nonnull Split split) {
+        Map<ActorProvider.IRCChannel, List<ActorProvider.IRCUser>> joined = new LinkedHashMap<>();
+        List<ActorProvider.IRCUser> users = new ArrayList<>();
+        Set<String> seen = new CISet(this.client);
+        for (Join join : this.batchJoins) {
+            ActorProvider.IRCUser user = (ActorProvider.IRCUser) this.client.getActorProvider().getActor(join.event.getActor().getName());
+            join.channel.trackUser(user, new HashSet<>());
+            if (join.event.getParameters().size() > 2) {
+                if (!"*".equals(join.event.getParameters().get(1))) {
+                    user.setAccount(join.event.getParameters().get(1));
+                }
+                user.setRealName(join.event.getParameters().get(2));
+            }
+            joined.computeIfAbsent(join.channel, k -> new ArrayList<>()).add(user);
+            if (seen.add(user.getNick())) {
+                users.add(user);
+            }
+            SplitUser splitUser = this.splitNicks.get(user.getNick());
+            if (splitUser != null) {
+                splitUser.channels.remove(join.channel.getName());
+                if (splitUser.channels.isEmpty()) {
+                    this.splitNicks.remove(user.getNick());
+                }
+            }
+        }
+        Map<String, User> snapshots = new CIKeyMap<>(this.client);
+        List<User> userList = new ArrayList<>(users.size());
+        users.forEach(user -> {
+            User snapshot = user.snapshot();
+            snapshots.put(user.getNick(), snapshot);
+            userList.add(snapshot);
+        });
+        Map<Channel, List<User>> channelUsers = new LinkedHashMap<>();
+        joined.forEach((channel, list) -> {
+            List<User> channelList = new ArrayList<>(list.size());
+            list.forEach(user -> channelList.add(snapshots.get(user.getNick())));
+            channelUsers.put(channel.snapshot(), channelList);
+        });
+        this.client.getEventManager().callEvent(new NetjoinEvent(this.client, this.batchMessages, split.uplink, split.splitServer, userList, channelUsers));
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("client", this.client).add("splitNicks", this.splitNicks.size()).toString();
+    }
+}
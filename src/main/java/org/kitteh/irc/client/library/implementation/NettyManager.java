@@ -58,6 +58,7 @@ import org.kitteh.irc.client.library.feature.sts.STSClientState;
 import org.kitteh.irc.client.library.feature.sts.STSMachine;
 import org.kitteh.irc.client.library.feature.sts.STSPolicy;
 import org.kitteh.irc.client.library.util.ToStringer;
+import org.kitteh.irc.client.library.util.TrafficLog;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -78,6 +79,7 @@ import java.util.concurrent.TimeUnit;
 final class NettyManager {
     static final class ClientConnection {
         private static final int MAX_LINE_LENGTH = 2048;
+        private static final int REGISTRATION_TIMEOUT_SECONDS = 120;
 
         private final InternalClient client;
         private final Channel channel;
@@ -107,6 +109,7 @@ final class NettyManager {
                 @Override
                 protected void encode(ChannelHandlerContext ctx, String msg, List<Object> out) throws Exception {
                     ClientConnection.this.client.getOutputListener().queue(msg);
+                    ClientConnection.this.client.recordTraffic(TrafficLog.Direction.OUTPUT, msg);
                     out.add(msg);
                 }
             });
@@ -118,8 +121,8 @@ final class NettyManager {
             });
             this.channel.pipeline().addFirst("[OUTPUT] String encoder", new StringEncoder(CharsetUtil.UTF_8));
 
-            // Handle timeout
-            this.channel.pipeline().addLast("[INPUT] Idle state handler", new IdleStateHandler(250, 0, 0));
+            // Handle timeout before registration, after which the client's keep-alive detects it sooner
+            this.channel.pipeline().addLast("[INPUT] Idle state handler", new IdleStateHandler(REGISTRATION_TIMEOUT_SECONDS, 0, 0));
             this.channel.pipeline().addLast("[INPUT] Catch idle", new ChannelDuplexHandler() {
                 @Override
                 public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
@@ -142,6 +145,7 @@ final class NettyManager {
                         return;
                     }
                     ClientConnection.this.client.getInputListener().queue(msg);
+                    ClientConnection.this.client.recordTraffic(TrafficLog.Direction.INPUT, msg);
                     ClientConnection.this.client.processLine(msg);
                 }
             });
@@ -199,6 +203,10 @@ final class NettyManager {
 
             // Clean up on disconnect
             this.channel.closeFuture().addListener(futureListener -> {
+                // Hold anything queued until the next connection is ready, rather than writing to a dead channel
+                ClientConnection.this.client.pauseMessageSending();
+                ClientConnection.this.client.getMonitorManager().disconnected();
+                ClientConnection.this.client.getWhoisManager().disconnected();
                 if (ClientConnection.this.reconnect) {
                     this.scheduleReconnect();
                 }
@@ -222,7 +230,12 @@ final class NettyManager {
         }
 
         void startSending() {
-            this.ping = this.channel.eventLoop().scheduleWithFixedDelay(this.client::ping, 60, 60, TimeUnit.SECONDS);
+            this.ping = this.channel.eventLoop().scheduleWithFixedDelay(() -> {
+                if (!this.client.keepAlive()) {
+                    this.ping.cancel(false);
+                    this.shutdown(DefaultMessageType.QUIT_PING_TIMEOUT, true);
+                }
+            }, 1, 1, TimeUnit.SECONDS);
         }
 
         void shutdown(DefaultMessageType messageType, boolean reconnect) {
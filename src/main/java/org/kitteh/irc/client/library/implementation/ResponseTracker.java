@@ -0,0 +1,227 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.element.MessageTag;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.event.helper.ClientReceiveServerMessageEvent;
+import org.kitteh.irc.client.library.feature.CapabilityManager;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Correlates sent lines with their replies, by label when the server
+ * supports labeled-response and by the order of matching replies
+ * otherwise.
+ */
+final class ResponseTracker implements Resettable {
+    static final long REQUEST_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final class Request {
+        private final CompletableFuture<List<ServerMessage>> future = new CompletableFuture<>();
+        private final List<ServerMessage> responses = new ArrayList<>();
+        private final String message;
+        private final Predicate<ClientReceiveServerMessageEvent> isResponse;
+        private final Predicate<ClientReceiveServerMessageEvent> isLastResponse;
+        private final long deadline;
+
+        private Request(@Nonnull String message, @Nonnull Predicate<ClientReceiveServerMessageEvent> isResponse, @Nonnull Predicate<ClientReceiveServerMessageEvent> isLastResponse, long deadline) {
+            this.message = message;
+            this.isResponse = isResponse;
+            this.isLastResponse = isLastResponse;
+            this.deadline = deadline;
+        }
+
+        private void complete() {
+            this.future.complete(new ArrayList<>(this.responses));
+        }
+
+        private boolean expire(long now) {
+            if ((now - this.deadline) < 0) {
+                return false;
+            }
+            this.future.completeExceptionally(new TimeoutException("No complete response to '" + this.message + "'"));
+            return true;
+        }
+    }
+
+    private final InternalClient client;
+    private final long timeoutNanos;
+    private final Map<String, Request> labeled = new HashMap<>();
+    private final Map<String, Request> labeledBatches = new HashMap<>();
+    private final List<Request> ordered = new LinkedList<>();
+    private long nextLabel;
+
+    ResponseTracker(@Nonnull InternalClient client) {
+        this(client, REQUEST_TIMEOUT_NANOS);
+    }
+
+    ResponseTracker(@Nonnull InternalClient client, long timeoutNanos) {
+        this.client = client;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    @Nonnull
+    CompletableFuture<List<ServerMessage>> send(@Nonnull String message, @Nonnull Predicate<ClientReceiveServerMessageEvent> isResponse, @Nonnull Predicate<ClientReceiveServerMessageEvent> isLastResponse) {
+        Request request = new Request(message, isResponse, isLastResponse, System.nanoTime() + this.timeoutNanos);
+        String line;
+        synchronized (this) {
+            if (this.client.getCapabilityManager().getCapability(CapabilityManager.Defaults.LABELED_RESPONSE).isPresent()) {
+                String label = Long.toString(this.nextLabel++, 36);
+                this.labeled.put(label, request);
+                line = "@label=" + label + ' ' + message;
+            } else {
+                this.ordered.add(request);
+                line = message;
+            }
+        }
+        this.client.sendRawLine(line);
+        return request.future;
+    }
+
+    /**
+     * Offers a batch member held back until its batch closes.
+     *
+     * @param message batch member
+     */
+    synchronized void offerBatchMember(@Nonnull ServerMessage message) {
+        if (this.labeledBatches.isEmpty()) {
+            return;
+        }
+        String batch = getTag(message, "batch");
+        Request request = (batch == null) ? null : this.labeledBatches.get(batch);
+        if (request != null) {
+            request.responses.add(message);
+        }
+    }
+
+    /**
+     * Offers a message as it is processed.
+     *
+     * @param event message
+     */
+    synchronized void offer(@Nonnull ClientReceiveServerMessageEvent event) {
+        String label = getTag(event.getServerMessage(), "label");
+        if (label != null) {
+            Request request = this.labeled.remove(label);
+            if (request == null) {
+                return;
+            }
+            if ("BATCH".equals(event.getCommand()) && !event.getParameters().isEmpty() && event.getParameters().get(0).startsWith("+")) {
+                this.labeledBatches.put(event.getParameters().get(0).substring(1), request);
+                return;
+            }
+            if (!"ACK".equals(event.getCommand())) {
+                request.responses.add(event.getServerMessage());
+            }
+            request.complete();
+            return;
+        }
+        if ("BATCH".equals(event.getCommand()) && !this.labeledBatches.isEmpty() && !event.getParameters().isEmpty() && event.getParameters().get(0).startsWith("-")) {
+            Request request = this.labeledBatches.remove(event.getParameters().get(0).substring(1));
+            if (request != null) {
+                request.complete();
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        Iterator<Request> iterator = this.ordered.iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next();
+            if (request.expire(now)) {
+                iterator.remove();
+                continue;
+            }
+            boolean isResponse;
+            boolean isLastResponse;
+            try {
+                isResponse = request.isResponse.test(event);
+                isLastResponse = isResponse && request.isLastResponse.test(event);
+            } catch (Exception e) {
+                // A broken predicate fails its own request, not the line's processing
+                iterator.remove();
+                request.future.completeExceptionally(e);
+                continue;
+            }
+            if (isResponse) {
+                request.responses.add(event.getServerMessage());
+                if (isLastResponse) {
+                    iterator.remove();
+                    request.complete();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fails requests which have waited too long for their replies, so an
+     * unrecognized or missing reply can't hold up later requests.
+     *
+     * @param now current {@link System#nanoTime()}
+     */
+    synchronized void expire(long now) {
+        this.labeled.values().removeIf(request -> request.expire(now));
+        this.labeledBatches.values().removeIf(request -> request.expire(now));
+        this.ordered.removeIf(request -> request.expire(now));
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.labeled.values().forEach(request -> request.future.cancel(false));
+        this.labeledBatches.values().forEach(request -> request.future.cancel(false));
+        this.ordered.forEach(request -> request.future.cancel(false));
+        this.labeled.clear();
+        this.labeledBatches.clear();
+        this.ordered.clear();
+    }
+
+    @Nullable
+    private static String getTag(@Nonnull ServerMessage message, @Nonnull String name) {
+        for (MessageTag tag : message.getTags()) {
+            if (name.equals(tag.getName())) {
+                return tag.getValue().orElse(null);
+            }
+        }
+        return null;
+    }
+
+    @Nonnull
+    @Override
+    public synchronized String toString() {
+        return new ToStringer(this).add("client", this.client).add("labeled", this.labeled.size()).add("ordered", this.ordered.size()).toString();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Deduplicates strings which repeat across many users, such as hosts,
+ * idents and servers. Entries are weakly held, so strings no longer used
+ * by any user are collected.
+ */
+final class StringPool {
+    private final Map<String, WeakReference<String>> pool = new WeakHashMap<>();
+
+    /**
+     * Gets the pooled instance equal to the given string, pooling it if
+     * none exists.
+     *
+     * @param string string
+     * @return pooled equal string, or null if given null
+     */
+    @Nullable
+    synchronized String get(@Nullable String string) {
+        if (string == null) {
+            return null;
+        }
+        WeakReference<String> reference = this.pool.get(string);
+        String pooled = (reference == null) ? null : reference.get();
+        if (pooled == null) {
+            this.pool.put(string, new WeakReference<>(string));
+            pooled = string;
+        }
+        return pooled;
+    }
+
+    synchronized int size() {
+        return this.pool.size();
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("size", this.size()).toString();
+    }
+}
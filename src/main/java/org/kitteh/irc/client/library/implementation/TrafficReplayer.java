@@ -0,0 +1,84 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.exception.KittehConnectionException;
+import org.kitteh.irc.client.library.util.ToStringer;
+import org.kitteh.irc.client.library.util.TrafficLog;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+final class TrafficReplayer extends Thread {
+    private final InternalClient client;
+    private final File file;
+    private final boolean originalSpeed;
+    private final Runnable onEnd;
+
+    TrafficReplayer(@Nonnull InternalClient client, @Nonnull File file, boolean originalSpeed, @Nonnull Runnable onEnd) {
+        super("Kitteh IRC Client Traffic Replay (" + client.getName() + ')');
+        this.client = client;
+        this.file = file;
+        this.originalSpeed = originalSpeed;
+        this.onEnd = onEnd;
+        this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        try {
+            TrafficLog.Reader reader = TrafficLog.read(this.file.toPath());
+            long start = System.nanoTime();
+            for (TrafficLog.Entry entry : reader) {
+                if (this.isInterrupted()) {
+                    return;
+                }
+                if (entry.getDirection() != TrafficLog.Direction.INPUT) {
+                    continue;
+                }
+                if (this.originalSpeed) {
+                    long wait = entry.getTime(TimeUnit.NANOSECONDS) - (System.nanoTime() - start);
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+                this.client.getInputListener().queue(entry.getLine());
+                this.client.processLine(entry.getLine());
+            }
+        } catch (IOException e) {
+            this.client.getExceptionListener().queue(new KittehConnectionException(e, true));
+        } catch (InterruptedException ignored) {
+            return;
+        }
+        this.onEnd.run();
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("client", this.client).add("file", this.file).add("originalSpeed", this.originalSpeed).toString();
+    }
+}
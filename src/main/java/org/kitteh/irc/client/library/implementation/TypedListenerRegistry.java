@@ -0,0 +1,180 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.event.client.ClientReceiveCommandEvent;
+import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
+import org.kitteh.irc.client.library.feature.EventManager;
+import org.kitteh.irc.client.library.util.ToStringer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Handlers registered by event class, dispatched by direct calls. The
+ * handlers applying to each event class, and to each command or numeric,
+ * are resolved once into a sorted array and reused until registrations
+ * change.
+ */
+final class TypedListenerRegistry {
+    private final class Registered implements EventManager.Registration {
+        private final Class<?> eventClass;
+        private final Object key;
+        private final int priority;
+        private final long order;
+        private final Consumer<Object> handler;
+        private volatile boolean active = true;
+
+        private Registered(@Nonnull Class<?> eventClass, @Nullable Object key, int priority, long order, @Nonnull Consumer<Object> handler) {
+            this.eventClass = eventClass;
+            this.key = key;
+            this.priority = priority;
+            this.order = order;
+            this.handler = handler;
+        }
+
+        @Override
+        public void unregister() {
+            TypedListenerRegistry.this.remove(this);
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return new ToStringer(this).add("eventClass", this.eventClass).add("key", this.key).add("priority", this.priority).add("active", this.active).toString();
+        }
+    }
+
+    private static final class Resolved {
+        private final Registered[] unkeyed;
+        private final List<Registered> keyed;
+        private final Map<Object, Registered[]> byKey = new ConcurrentHashMap<>();
+
+        private Resolved(@Nonnull Registered[] unkeyed, @Nonnull List<Registered> keyed) {
+            this.unkeyed = unkeyed;
+            this.keyed = keyed;
+        }
+
+        @Nonnull
+        private Registered[] get(@Nullable Object key) {
+            if ((key == null) || this.keyed.isEmpty()) {
+                return this.unkeyed;
+            }
+            return this.byKey.computeIfAbsent(key, k -> {
+                List<Registered> list = new ArrayList<>();
+                for (Registered registered : this.unkeyed) {
+                    list.add(registered);
+                }
+                for (Registered registered : this.keyed) {
+                    if (registered.key.equals(k)) {
+                        list.add(registered);
+                    }
+                }
+                list.sort(ORDER);
+                return list.toArray(new Registered[list.size()]);
+            });
+        }
+    }
+
+    private static final Comparator<Registered> ORDER = Comparator.<Registered>comparingInt(registered -> -registered.priority).thenComparingLong(registered -> registered.order);
+
+    private final List<Registered> registered = new ArrayList<>();
+    private volatile Map<Class<?>, Resolved> resolved = new ConcurrentHashMap<>();
+    private volatile boolean empty = true;
+    private long nextOrder;
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    synchronized EventManager.Registration add(@Nonnull Class<?> eventClass, @Nullable Object key, int priority, @Nonnull Consumer<?> handler) {
+        Registered registered = new Registered(eventClass, key, priority, this.nextOrder++, (Consumer<Object>) handler);
+        this.registered.add(registered);
+        this.changed();
+        return registered;
+    }
+
+    private synchronized void remove(@Nonnull Registered registered) {
+        registered.active = false;
+        if (this.registered.remove(registered)) {
+            this.changed();
+        }
+    }
+
+    private void changed() {
+        this.resolved = new ConcurrentHashMap<>();
+        this.empty = this.registered.isEmpty();
+    }
+
+    /**
+     * Calls the handlers applying to an event.
+     *
+     * @param event event
+     * @param failure receives anything thrown by a handler
+     */
+    void dispatch(@Nonnull Object event, @Nonnull Consumer<Throwable> failure) {
+        if (this.empty) {
+            return;
+        }
+        Object key = null;
+        if (event instanceof ClientReceiveNumericEvent) {
+            key = ((ClientReceiveNumericEvent) event).getNumeric();
+        } else if (event instanceof ClientReceiveCommandEvent) {
+            key = ((ClientReceiveCommandEvent) event).getCommand().toUpperCase(Locale.ENGLISH);
+        }
+        for (Registered registered : this.resolved.computeIfAbsent(event.getClass(), this::resolve).get(key)) {
+            if (registered.active) {
+                try {
+                    registered.handler.accept(event);
+                } catch (Throwable thrown) {
+                    failure.accept(thrown);
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    private synchronized Resolved resolve(@Nonnull Class<?> eventClass) {
+        List<Registered> unkeyed = new ArrayList<>();
+        List<Registered> keyed = new ArrayList<>();
+        for (Registered registered : this.registered) {
+            if (registered.eventClass.isAssignableFrom(eventClass)) {
+                ((registered.key == null) ? unkeyed : keyed).add(registered);
+            }
+        }
+        unkeyed.sort(ORDER);
+        return new Resolved(unkeyed.toArray(new Registered[unkeyed.size()]), keyed);
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("registered", this.registered.size()).toString();
+    }
+}
@@ -216,6 +216,10 @@ class WhoisBuilder {
         return this.nick;
     }
 
+    boolean hasUser() {
+        return (this.userString != null) && (this.host != null);
+    }
+
     void setAccount(@Nonnull String account) {
         this.account = account;
     }
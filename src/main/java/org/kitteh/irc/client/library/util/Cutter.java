@@ -26,6 +26,7 @@ package org.kitteh.irc.client.library.util;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * It slices, it dices, it breaks apart a message into a list of items
@@ -34,46 +35,154 @@ import java.util.List;
 @FunctionalInterface
 public interface Cutter {
     /**
-     * Cuts by words, unless word is too long.
+     * Receives a fragment of a message as offsets into it.
+     */
+    @FunctionalInterface
+    interface FragmentConsumer {
+        /**
+         * Accepts a fragment.
+         *
+         * @param message the whole message
+         * @param start fragment start, inclusive
+         * @param end fragment end, exclusive
+         */
+        void accept(@Nonnull String message, int start, int end);
+    }
+
+    /**
+     * Cuts by words, unless word is too long. Sizes are measured in UTF-8
+     * encoded bytes, and cuts never fall inside a surrogate pair or before
+     * a combining mark.
      */
     class DefaultWordCutter implements Cutter {
         @Nonnull
         @Override
         public List<String> split(@Nonnull String message, int size) {
+            List<String> list = new ArrayList<>();
+            this.split(message, size, list::add);
+            return list;
+        }
+
+        @Override
+        public void split(@Nonnull String message, int size, @Nonnull Consumer<String> consumer) {
+            Sanity.nullCheck(consumer, "Consumer cannot be null");
+            this.cut(message, size, (string, start, end) -> consumer.accept(((start == 0) && (end == string.length())) ? string : string.substring(start, end)));
+        }
+
+        /**
+         * Cuts a message without copying it, handing each fragment over as
+         * offsets into the message. Spaces at either end of a fragment are
+         * not included, unless the message is short enough to not need
+         * cutting.
+         *
+         * @param message message to cut
+         * @param size size limit per fragment, in UTF-8 bytes
+         * @param consumer fragment consumer
+         * @throws IllegalArgumentException if size is less than 1 or if
+         * message or consumer is null
+         */
+        public void cut(@Nonnull String message, int size, @Nonnull FragmentConsumer consumer) {
             Sanity.nullCheck(message, "Message cannot be null");
             Sanity.truthiness(size > 0, "Size must be positive");
-            List<String> list = new ArrayList<>();
-            if (message.length() <= size) {
-                list.add(message);
-                return list;
+            Sanity.nullCheck(consumer, "Consumer cannot be null");
+            int length = message.length();
+            if ((length <= (size / 3)) || (StringUtil.utf8Length(message) <= size)) {
+                consumer.accept(message, 0, length);
+                return;
             }
-            StringBuilder builder = new StringBuilder(size);
-            for (String word : message.split(" ")) {
-                if ((builder.length() + word.length() + ((builder.length() == 0) ? 0 : 1)) > size) {
-                    if ((word.length() > size) && ((builder.length() + 1) < size)) {
-                        if (builder.length() > 0) {
-                            builder.append(' ');
-                        }
-                        int cut = size - builder.length();
-                        builder.append(word.substring(0, cut));
-                        word = word.substring(cut);
+            int position = 0;
+            while (true) {
+                while ((position < length) && (message.charAt(position) == ' ')) {
+                    position++;
+                }
+                if (position >= length) {
+                    return;
+                }
+                int lineStart = position;
+                int lastSpace = -1;
+                int bytes = 0;
+                int index = position;
+                while (index < length) {
+                    char c = message.charAt(index);
+                    if (c == ' ') {
+                        lastSpace = index;
+                    }
+                    int units = (Character.isHighSurrogate(c) && ((index + 1) < length) && Character.isLowSurrogate(message.charAt(index + 1))) ? 2 : 1;
+                    int charBytes = (c < 0x80) ? 1 : ((c < 0x800) ? 2 : ((units == 2) ? 4 : 3));
+                    if ((bytes + charBytes) > size) {
+                        break;
                     }
-                    list.add(builder.toString().trim());
-                    builder.setLength(0);
-                    while (word.length() > size) {
-                        list.add(word.substring(0, size));
-                        word = word.substring(size);
+                    bytes += charBytes;
+                    index += units;
+                }
+                if (index == lineStart) { // Size smaller than one character
+                    index += Character.charCount(message.codePointAt(index));
+                }
+                if ((index >= length) || (message.charAt(index) == ' ')) {
+                    consumer.accept(message, lineStart, trimEnd(message, lineStart, index));
+                    position = index;
+                    continue;
+                }
+                int wordStart = (lastSpace < 0) ? lineStart : (lastSpace + 1);
+                if ((wordStart > lineStart) && ((wordStart == index) || fits(message, wordStart, size))) {
+                    // Word fits on a line of its own
+                    consumer.accept(message, lineStart, trimEnd(message, lineStart, lastSpace));
+                    position = wordStart;
+                    continue;
+                }
+                int cut = index;
+                while ((cut > wordStart) && isExtending(message.charAt(cut))) {
+                    cut--;
+                }
+                if (Character.isLowSurrogate(message.charAt(cut)) && (cut > wordStart)) {
+                    cut--;
+                }
+                if (cut == wordStart) {
+                    if (wordStart > lineStart) {
+                        consumer.accept(message, lineStart, trimEnd(message, lineStart, lastSpace));
+                        position = wordStart;
+                        continue;
                     }
+                    cut = index; // Nothing better, one enormous cluster
+                }
+                consumer.accept(message, lineStart, cut);
+                position = cut;
+            }
+        }
+
+        private static boolean fits(@Nonnull String message, int wordStart, int size) {
+            int bytes = 0;
+            for (int index = wordStart; (index < message.length()) && (message.charAt(index) != ' '); index++) {
+                char c = message.charAt(index);
+                if (Character.isHighSurrogate(c) && ((index + 1) < message.length()) && Character.isLowSurrogate(message.charAt(index + 1))) {
+                    bytes += 4;
+                    index++;
+                } else {
+                    bytes += (c < 0x80) ? 1 : ((c < 0x800) ? 2 : 3);
                 }
-                if (builder.length() > 0) {
-                    builder.append(' ');
+                if (bytes > size) {
+                    return false;
                 }
-                builder.append(word);
             }
-            if (builder.length() > 0) {
-                list.add(builder.toString().trim());
+            return true;
+        }
+
+        private static boolean isExtending(char c) {
+            switch (Character.getType(c)) {
+                case Character.NON_SPACING_MARK:
+                case Character.ENCLOSING_MARK:
+                case Character.COMBINING_SPACING_MARK:
+                    return true;
+                default:
+                    return (c == '\u200D') || ((c >= '\uFE00') && (c <= '\uFE0F'));
             }
-            return list;
+        }
+
+        private static int trimEnd(@Nonnull String message, int start, int end) {
+            while ((end > start) && (message.charAt(end - 1) == ' ')) {
+                end--;
+            }
+            return end;
         }
     }
 
@@ -88,4 +197,19 @@ public interface Cutter {
      */
     @Nonnull
     List<String> split(@Nonnull String message, int size);
+
+    /**
+     * Splits a message into items no longer than the size limit, handing
+     * each to the consumer as it is cut.
+     *
+     * @param message message to split
+     * @param size size limit per item
+     * @param consumer item consumer
+     * @throws IllegalArgumentException if size is less than 1 or if
+     * message or consumer is null
+     */
+    default void split(@Nonnull String message, int size, @Nonnull Consumer<String> consumer) {
+        Sanity.nullCheck(consumer, "Consumer cannot be null");
+        this.split(message, size).forEach(consumer);
+    }
 }
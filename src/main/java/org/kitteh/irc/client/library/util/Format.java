@@ -24,7 +24,6 @@
 package org.kitteh.irc.client.library.util;
 
 import javax.annotation.Nonnull;
-import java.util.regex.Pattern;
 
 /**
  * Represents various formatting available in IRC.
@@ -80,6 +79,10 @@ public enum Format {
      * Magenta.
      */
     MAGENTA(13),
+    /**
+     * Monospace.
+     */
+    MONOSPACE('\u0011'),
     /**
      * Reset formatting.
      */
@@ -100,6 +103,10 @@ public enum Format {
      * esreveR.
      */
     REVERSE('\u0016'),
+    /**
+     * Strikethrough.
+     */
+    STRIKETHROUGH('\u001e'),
     /**
      * Teal.
      */
@@ -137,8 +144,10 @@ public enum Format {
      * Character indicating color.
      */
     public static final char COLOR_CHAR = '\u0003';
-    private static final Pattern COLOR_REGEX = Pattern.compile(COLOR_CHAR + "[0-9]{1,2}(?:,[0-9]{1,2})?");
-    private static final Pattern FORMAT_REGEX = Pattern.compile("[" + BOLD + RESET + REVERSE + UNDERLINE + ']');
+    /**
+     * Character indicating hex color, followed by RRGGBB.
+     */
+    public static final char HEX_COLOR_CHAR = '\u0004';
 
     /**
      * Strips color and formatting from a given input.
@@ -147,34 +156,33 @@ public enum Format {
      * @return stripped input
      * @see #stripColor(String)
      * @see #stripFormatting(String)
+     * @see FormatCodec#strip(String)
      */
     @Nonnull
     public static String stripAll(@Nonnull String input) {
-        return stripColor(stripFormatting(input));
+        return FormatCodec.strip(input, true, true);
     }
 
     /**
-     * Strips color from a given input.
+     * Strips color, including hex color, from a given input.
      *
      * @param input input to strip
      * @return stripped input
      */
     @Nonnull
     public static String stripColor(@Nonnull String input) {
-        Sanity.nullCheck(input, "Input cannot be null");
-        return COLOR_REGEX.matcher(input).replaceAll("");
+        return FormatCodec.strip(input, true, false);
     }
 
     /**
-     * Strips formatting from a given input.
+     * Strips formatting other than color from a given input.
      *
      * @param input input to strip
      * @return stripped input
      */
     @Nonnull
     public static String stripFormatting(@Nonnull String input) {
-        Sanity.nullCheck(input, "Input cannot be null");
-        return FORMAT_REGEX.matcher(input).replaceAll("");
+        return FormatCodec.strip(input, false, true);
     }
 
     /**
@@ -0,0 +1,774 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.util;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes IRC formatting codes in a single pass, covering the mIRC
+ * color and style codes as well as hex colors, italics, strikethrough and
+ * monospace.
+ */
+public final class FormatCodec {
+    /**
+     * Receives a run of text sharing one style, as offsets into the input.
+     */
+    @FunctionalInterface
+    public interface SpanConsumer {
+        /**
+         * Accepts a span.
+         *
+         * @param input the whole input
+         * @param start span start, inclusive
+         * @param end span end, exclusive
+         * @param style style of the span
+         */
+        void accept(@Nonnull String input, int start, int end, @Nonnull Style style);
+    }
+
+    /**
+     * The formatting state applying to a span of text.
+     */
+    public static final class Style {
+        private static final int BOLD = 1;
+        private static final int ITALIC = 1 << 1;
+        private static final int UNDERLINE = 1 << 2;
+        private static final int STRIKETHROUGH = 1 << 3;
+        private static final int MONOSPACE = 1 << 4;
+        private static final int REVERSE = 1 << 5;
+
+        /**
+         * Unformatted text.
+         */
+        public static final Style PLAIN = new Style(0, -1, -1, -1, -1);
+
+        private final int flags;
+        private final int foreground;
+        private final int background;
+        private final int hexForeground;
+        private final int hexBackground;
+
+        private Style(int flags, int foreground, int background, int hexForeground, int hexBackground) {
+            this.flags = flags;
+            this.foreground = foreground;
+            this.background = background;
+            this.hexForeground = hexForeground;
+            this.hexBackground = hexBackground;
+        }
+
+        /**
+         * Gets if bold.
+         *
+         * @return true if bold
+         */
+        public boolean isBold() {
+            return (this.flags & BOLD) != 0;
+        }
+
+        /**
+         * Gets if italic.
+         *
+         * @return true if italic
+         */
+        public boolean isItalic() {
+            return (this.flags & ITALIC) != 0;
+        }
+
+        /**
+         * Gets if underlined.
+         *
+         * @return true if underlined
+         */
+        public boolean isUnderline() {
+            return (this.flags & UNDERLINE) != 0;
+        }
+
+        /**
+         * Gets if struck through.
+         *
+         * @return true if struck through
+         */
+        public boolean isStrikethrough() {
+            return (this.flags & STRIKETHROUGH) != 0;
+        }
+
+        /**
+         * Gets if monospace.
+         *
+         * @return true if monospace
+         */
+        public boolean isMonospace() {
+            return (this.flags & MONOSPACE) != 0;
+        }
+
+        /**
+         * Gets if foreground and background are reversed.
+         *
+         * @return true if reversed
+         */
+        public boolean isReverse() {
+            return (this.flags & REVERSE) != 0;
+        }
+
+        /**
+         * Gets the mIRC foreground color number.
+         *
+         * @return color number 0-99 or -1 if not set
+         * @see Format#getColorChar()
+         */
+        public int getForeground() {
+            return this.foreground;
+        }
+
+        /**
+         * Gets the mIRC background color number.
+         *
+         * @return color number 0-99 or -1 if not set
+         * @see Format#getColorChar()
+         */
+        public int getBackground() {
+            return this.background;
+        }
+
+        /**
+         * Gets the hex foreground color.
+         *
+         * @return 0xRRGGBB color or -1 if not set
+         */
+        public int getHexForeground() {
+            return this.hexForeground;
+        }
+
+        /**
+         * Gets the hex background color.
+         *
+         * @return 0xRRGGBB color or -1 if not set
+         */
+        public int getHexBackground() {
+            return this.hexBackground;
+        }
+
+        /**
+         * Gets if this style carries no formatting.
+         *
+         * @return true if plain
+         */
+        public boolean isPlain() {
+            return this == PLAIN;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Style)) {
+                return false;
+            }
+            Style style = (Style) o;
+            return (this.flags == style.flags) && (this.foreground == style.foreground) && (this.background == style.background) && (this.hexForeground == style.hexForeground) && (this.hexBackground == style.hexBackground);
+        }
+
+        @Override
+        public int hashCode() {
+            return (((((((this.flags * 31) + this.foreground) * 31) + this.background) * 31) + this.hexForeground) * 31) + this.hexBackground;
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return new ToStringer(this).add("bold", this.isBold()).add("italic", this.isItalic()).add("underline", this.isUnderline()).add("strikethrough", this.isStrikethrough()).add("monospace", this.isMonospace()).add("reverse", this.isReverse()).add("foreground", this.foreground).add("background", this.background).add("hexForeground", this.hexForeground).add("hexBackground", this.hexBackground).toString();
+        }
+
+        @Nonnull
+        private static Style of(int flags, int foreground, int background, int hexForeground, int hexBackground) {
+            if ((flags == 0) && (foreground < 0) && (background < 0) && (hexForeground < 0) && (hexBackground < 0)) {
+                return PLAIN;
+            }
+            return new Style(flags, foreground, background, hexForeground, hexBackground);
+        }
+    }
+
+    /**
+     * A run of text sharing one style. The text is only copied out of the
+     * input when requested.
+     */
+    public static final class Span {
+        private final String input;
+        private final int start;
+        private final int end;
+        private final Style style;
+
+        private Span(@Nonnull String input, int start, int end, @Nonnull Style style) {
+            this.input = input;
+            this.start = start;
+            this.end = end;
+            this.style = style;
+        }
+
+        /**
+         * Gets the text of this span.
+         *
+         * @return text
+         */
+        @Nonnull
+        public String getText() {
+            return ((this.start == 0) && (this.end == this.input.length())) ? this.input : this.input.substring(this.start, this.end);
+        }
+
+        /**
+         * Gets the start of this span in the input.
+         *
+         * @return start offset, inclusive
+         */
+        public int getStart() {
+            return this.start;
+        }
+
+        /**
+         * Gets the end of this span in the input.
+         *
+         * @return end offset, exclusive
+         */
+        public int getEnd() {
+            return this.end;
+        }
+
+        /**
+         * Gets the style of this span.
+         *
+         * @return style
+         */
+        @Nonnull
+        public Style getStyle() {
+            return this.style;
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return new ToStringer(this).add("text", this.getText()).add("style", this.style).toString();
+        }
+    }
+
+    /**
+     * Writes formatted text into a reusable buffer.
+     * <p>
+     * Color codes are always written with two digits, and a comma directly
+     * following a color is escaped so it is not read as a background.
+     */
+    public static final class Builder {
+        private final StringBuilder buffer;
+        private boolean afterColor;
+        private boolean afterBareColor;
+
+        private Builder(int capacity) {
+            this.buffer = new StringBuilder(capacity);
+        }
+
+        /**
+         * Appends text.
+         *
+         * @param text text to append
+         * @return this builder
+         */
+        @Nonnull
+        public Builder append(@Nonnull CharSequence text) {
+            Sanity.nullCheck(text, "Text cannot be null");
+            if (this.afterColor && (text.length() > 0)) {
+                this.escapeAfterColor(text.charAt(0));
+            }
+            this.buffer.append(text);
+            return this;
+        }
+
+        /**
+         * Appends a character.
+         *
+         * @param c character to append
+         * @return this builder
+         */
+        @Nonnull
+        public Builder append(char c) {
+            if (this.afterColor) {
+                this.escapeAfterColor(c);
+            }
+            this.buffer.append(c);
+            return this;
+        }
+
+        /**
+         * Toggles bold.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder bold() {
+            return this.code(Format.BOLD);
+        }
+
+        /**
+         * Toggles italics.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder italic() {
+            return this.code(Format.ITALIC);
+        }
+
+        /**
+         * Toggles underline.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder underline() {
+            return this.code(Format.UNDERLINE);
+        }
+
+        /**
+         * Toggles strikethrough.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder strikethrough() {
+            return this.code(Format.STRIKETHROUGH);
+        }
+
+        /**
+         * Toggles monospace.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder monospace() {
+            return this.code(Format.MONOSPACE);
+        }
+
+        /**
+         * Toggles reversed colors.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder reverse() {
+            return this.code(Format.REVERSE);
+        }
+
+        /**
+         * Resets all formatting.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder reset() {
+            return this.code(Format.RESET);
+        }
+
+        /**
+         * Sets the foreground color.
+         *
+         * @param foreground foreground color
+         * @return this builder
+         * @throws IllegalArgumentException if using a non-color
+         */
+        @Nonnull
+        public Builder color(@Nonnull Format foreground) {
+            Sanity.nullCheck(foreground, "Foreground cannot be null");
+            Sanity.truthiness(foreground.isColor(), "Cannot use non-color foreground");
+            this.buffer.append(Format.COLOR_CHAR);
+            this.appendColorNumber(foreground.getColorChar());
+            this.afterColor = true;
+            this.afterBareColor = false;
+            return this;
+        }
+
+        /**
+         * Sets the foreground and background colors.
+         *
+         * @param foreground foreground color
+         * @param background background color
+         * @return this builder
+         * @throws IllegalArgumentException if using a non-color
+         */
+        @Nonnull
+        public Builder color(@Nonnull Format foreground, @Nonnull Format background) {
+            Sanity.nullCheck(background, "Background cannot be null");
+            Sanity.truthiness(background.isColor(), "Cannot use non-color background");
+            this.color(foreground);
+            this.buffer.append(',');
+            this.appendColorNumber(background.getColorChar());
+            return this;
+        }
+
+        /**
+         * Sets the foreground color by hex value.
+         *
+         * @param foreground 0xRRGGBB color
+         * @return this builder
+         * @throws IllegalArgumentException if not a 24-bit color
+         */
+        @Nonnull
+        public Builder hexColor(int foreground) {
+            Sanity.truthiness((foreground & 0xFFFFFF) == foreground, "Color must be 0xRRGGBB");
+            this.buffer.append(Format.HEX_COLOR_CHAR);
+            this.appendHex(foreground);
+            this.afterColor = true;
+            this.afterBareColor = false;
+            return this;
+        }
+
+        /**
+         * Sets the foreground and background colors by hex value.
+         *
+         * @param foreground 0xRRGGBB foreground color
+         * @param background 0xRRGGBB background color
+         * @return this builder
+         * @throws IllegalArgumentException if not a 24-bit color
+         */
+        @Nonnull
+        public Builder hexColor(int foreground, int background) {
+            Sanity.truthiness((background & 0xFFFFFF) == background, "Color must be 0xRRGGBB");
+            this.hexColor(foreground);
+            this.buffer.append(',');
+            this.appendHex(background);
+            return this;
+        }
+
+        /**
+         * Clears all colors, leaving other formatting in place.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder clearColor() {
+            this.buffer.append(Format.COLOR_CHAR);
+            this.afterColor = true;
+            this.afterBareColor = true;
+            return this;
+        }
+
+        /**
+         * Gets the length of the text built so far.
+         *
+         * @return length in chars
+         */
+        public int length() {
+            return this.buffer.length();
+        }
+
+        /**
+         * Empties the buffer for reuse, keeping its capacity.
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder clear() {
+            this.buffer.setLength(0);
+            this.afterColor = false;
+            this.afterBareColor = false;
+            return this;
+        }
+
+        /**
+         * Gets the text built so far.
+         *
+         * @return formatted text
+         */
+        @Nonnull
+        @Override
+        public String toString() {
+            return this.buffer.toString();
+        }
+
+        @Nonnull
+        private Builder code(@Nonnull Format format) {
+            this.buffer.append(format.toString());
+            this.afterColor = false;
+            this.afterBareColor = false;
+            return this;
+        }
+
+        private void escapeAfterColor(char next) {
+            // A comma would read as a background color, and a digit after a bare color code as a color
+            if ((next == ',') || (this.afterBareColor && (next >= '0') && (next <= '9'))) {
+                this.buffer.append(Format.BOLD.toString()).append(Format.BOLD.toString());
+            }
+            this.afterColor = false;
+            this.afterBareColor = false;
+        }
+
+        private void appendColorNumber(int color) {
+            if (color < 10) {
+                this.buffer.append('0');
+            }
+            this.buffer.append(color);
+        }
+
+        private void appendHex(int color) {
+            for (int shift = 20; shift >= 0; shift -= 4) {
+                this.buffer.append(Character.toUpperCase(Character.forDigit((color >> shift) & 0xF, 16)));
+            }
+        }
+    }
+
+    private static final int HEX_LENGTH = 6;
+    private static final char RESET_CHAR = '\u000f';
+
+    private FormatCodec() {
+    }
+
+    /**
+     * Creates a builder for formatted text.
+     *
+     * @return a new builder
+     */
+    @Nonnull
+    public static Builder builder() {
+        return new Builder(64);
+    }
+
+    /**
+     * Strips all colors and formatting from the input in one pass. If the
+     * input holds no codes, it is returned as-is.
+     *
+     * @param input input to strip
+     * @return stripped input
+     */
+    @Nonnull
+    public static String strip(@Nonnull String input) {
+        return strip(input, true, true);
+    }
+
+    /**
+     * Strips colors, formatting or both from the input in one pass.
+     *
+     * @param input input to strip
+     * @param color true to strip colors
+     * @param formatting true to strip other formatting codes
+     * @return stripped input
+     */
+    @Nonnull
+    static String strip(@Nonnull String input, boolean color, boolean formatting) {
+        Sanity.nullCheck(input, "Input cannot be null");
+        int length = input.length();
+        StringBuilder builder = null;
+        int from = 0;
+        int i = 0;
+        while (i < length) {
+            char c = input.charAt(i);
+            int end;
+            if (c == Format.COLOR_CHAR) {
+                end = color ? skipColor(input, i + 1) : -1;
+            } else if (c == Format.HEX_COLOR_CHAR) {
+                end = color ? skipHexColor(input, i + 1) : -1;
+            } else {
+                end = (formatting && isFormatting(c)) ? (i + 1) : -1;
+            }
+            if (end < 0) {
+                i++;
+                continue;
+            }
+            if (builder == null) {
+                builder = new StringBuilder(length);
+            }
+            builder.append(input, from, i);
+            from = i = end;
+        }
+        if (builder == null) {
+            return input;
+        }
+        return builder.append(input, from, length).toString();
+    }
+
+    /**
+     * Splits the input into styled spans.
+     *
+     * @param input input to read
+     * @return spans, in order, not including empty spans
+     */
+    @Nonnull
+    public static List<Span> tokenize(@Nonnull String input) {
+        List<Span> spans = new ArrayList<>();
+        scan(input, (string, start, end, style) -> spans.add(new Span(string, start, end, style)));
+        return spans;
+    }
+
+    /**
+     * Reads the input in one pass, handing each run of text sharing one
+     * style to the consumer without copying it.
+     *
+     * @param input input to read
+     * @param consumer span consumer
+     */
+    public static void scan(@Nonnull String input, @Nonnull SpanConsumer consumer) {
+        Sanity.nullCheck(input, "Input cannot be null");
+        Sanity.nullCheck(consumer, "Consumer cannot be null");
+        int length = input.length();
+        int flags = 0;
+        int foreground = -1;
+        int background = -1;
+        int hexForeground = -1;
+        int hexBackground = -1;
+        Style style = Style.PLAIN;
+        boolean changed = false;
+        int from = 0;
+        int i = 0;
+        while (i < length) {
+            char c = input.charAt(i);
+            if ((c != Format.COLOR_CHAR) && (c != Format.HEX_COLOR_CHAR) && !isFormatting(c)) {
+                i++;
+                continue;
+            }
+            if (i > from) {
+                if (changed) {
+                    style = Style.of(flags, foreground, background, hexForeground, hexBackground);
+                    changed = false;
+                }
+                consumer.accept(input, from, i, style);
+            }
+            int end;
+            if (c == Format.COLOR_CHAR) {
+                end = skipColor(input, i + 1);
+                int digitsEnd = skipDigits(input, i + 1);
+                if (digitsEnd == (i + 1)) {
+                    foreground = background = hexForeground = hexBackground = -1;
+                } else {
+                    foreground = parse(input, i + 1, digitsEnd, 10);
+                    hexForeground = -1;
+                    if (digitsEnd < end) {
+                        background = parse(input, digitsEnd + 1, end, 10);
+                        hexBackground = -1;
+                    }
+                }
+            } else if (c == Format.HEX_COLOR_CHAR) {
+                end = skipHexColor(input, i + 1);
+                if (end == (i + 1)) {
+                    foreground = background = hexForeground = hexBackground = -1;
+                } else {
+                    hexForeground = parse(input, i + 1, i + 1 + HEX_LENGTH, 16);
+                    foreground = -1;
+                    if (end > (i + 1 + HEX_LENGTH)) {
+                        hexBackground = parse(input, end - HEX_LENGTH, end, 16);
+                        background = -1;
+                    }
+                }
+            } else if (c == RESET_CHAR) {
+                end = i + 1;
+                flags = 0;
+                foreground = background = hexForeground = hexBackground = -1;
+            } else {
+                end = i + 1;
+                flags ^= flag(c);
+            }
+            changed = true;
+            from = i = end;
+        }
+        if (from < length) {
+            if (changed) {
+                style = Style.of(flags, foreground, background, hexForeground, hexBackground);
+            }
+            consumer.accept(input, from, length, style);
+        }
+    }
+
+    private static int parse(@Nonnull String input, int start, int end, int radix) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = (value * radix) + Character.digit(input.charAt(i), radix);
+        }
+        return value;
+    }
+
+    private static int flag(char c) {
+        switch (c) {
+            case '\u0002':
+                return Style.BOLD;
+            case '\u001d':
+                return Style.ITALIC;
+            case '\u001f':
+                return Style.UNDERLINE;
+            case '\u001e':
+                return Style.STRIKETHROUGH;
+            case '\u0011':
+                return Style.MONOSPACE;
+            case '\u0016':
+                return Style.REVERSE;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean isFormatting(char c) {
+        return (c == RESET_CHAR) || (flag(c) != 0);
+    }
+
+    private static int skipColor(@Nonnull String input, int start) {
+        int end = skipDigits(input, start);
+        if ((end > start) && (end < (input.length() - 1)) && (input.charAt(end) == ',')) {
+            int backgroundEnd = skipDigits(input, end + 1);
+            if (backgroundEnd > (end + 1)) {
+                return backgroundEnd;
+            }
+        }
+        return end;
+    }
+
+    private static int skipDigits(@Nonnull String input, int start) {
+        int end = start;
+        int max = Math.min(input.length(), start + 2);
+        while ((end < max) && (input.charAt(end) >= '0') && (input.charAt(end) <= '9')) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int skipHexColor(@Nonnull String input, int start) {
+        if (!isHex(input, start)) {
+            return start;
+        }
+        int end = start + HEX_LENGTH;
+        if ((end < input.length()) && (input.charAt(end) == ',') && isHex(input, end + 1)) {
+            return end + 1 + HEX_LENGTH;
+        }
+        return end;
+    }
+
+    private static boolean isHex(@Nonnull String input, int start) {
+        if ((start + HEX_LENGTH) > input.length()) {
+            return false;
+        }
+        for (int i = start; i < (start + HEX_LENGTH); i++) {
+            char c = input.charAt(i);
+            if (!(((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'f')) || ((c >= 'A') && (c <= 'F')))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
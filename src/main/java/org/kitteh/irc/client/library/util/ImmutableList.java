@@ -0,0 +1,136 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.util;
+
+import javax.annotation.Nonnull;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * An array-backed list which cannot be modified, so it can be handed from
+ * one event to the next without copying.
+ *
+ * @param <E> type of element
+ */
+public final class ImmutableList<E> extends AbstractList<E> implements RandomAccess {
+    private static final ImmutableList<Object> EMPTY = new ImmutableList<>(new Object[0]);
+
+    /**
+     * Gets an empty list.
+     *
+     * @param <E> type of element
+     * @return empty list
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <E> ImmutableList<E> of() {
+        return (ImmutableList<E>) EMPTY;
+    }
+
+    /**
+     * Creates a list of one element.
+     *
+     * @param element element
+     * @param <E> type of element
+     * @return list of the element
+     * @throws IllegalArgumentException if element is null
+     */
+    @Nonnull
+    public static <E> ImmutableList<E> of(@Nonnull E element) {
+        return new ImmutableList<>(new Object[]{Sanity.nullCheck(element, "Element cannot be null")});
+    }
+
+    /**
+     * Creates a list of the given elements.
+     *
+     * @param elements elements
+     * @param <E> type of element
+     * @return list of the elements
+     * @throws IllegalArgumentException if any element is null
+     */
+    @Nonnull
+    @SafeVarargs
+    public static <E> ImmutableList<E> of(@Nonnull E... elements) {
+        Sanity.truthiness(elements != null, "Elements cannot be null");
+        if (elements.length == 0) {
+            return of();
+        }
+        // Copied element by element, so the array itself never escapes
+        Object[] array = new Object[elements.length];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = Sanity.nullCheck(elements[i], "Elements cannot be null");
+        }
+        return new ImmutableList<>(array);
+    }
+
+    /**
+     * Gets an immutable list of the given elements, returning the
+     * collection itself if it is already an immutable list.
+     *
+     * @param elements elements
+     * @param <E> type of element
+     * @return list of the elements
+     * @throws IllegalArgumentException if any element is null
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public static <E> ImmutableList<E> copyOf(@Nonnull Collection<? extends E> elements) {
+        if (Sanity.nullCheck(elements, "Elements cannot be null") instanceof ImmutableList) {
+            return (ImmutableList<E>) elements;
+        }
+        if (elements.isEmpty()) {
+            return of();
+        }
+        Object[] array = elements.toArray();
+        for (Object element : array) {
+            Sanity.nullCheck(element, "Elements cannot be null");
+        }
+        return new ImmutableList<>(array);
+    }
+
+    private final Object[] elements;
+
+    private ImmutableList(@Nonnull Object[] elements) {
+        this.elements = elements;
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) this.elements[index];
+    }
+
+    @Override
+    public int size() {
+        return this.elements.length;
+    }
+
+    @Nonnull
+    @Override
+    public Object[] toArray() {
+        return this.elements.clone();
+    }
+}
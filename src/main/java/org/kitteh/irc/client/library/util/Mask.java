@@ -24,11 +24,21 @@
 package org.kitteh.irc.client.library.util;
 
 import org.kitteh.irc.client.library.element.User;
+import org.kitteh.irc.client.library.feature.CaseMapping;
 
 import javax.annotation.Nonnull;
 
 /**
  * Represents a mask that can match a {@link User}.
+ * <p>
+ * Matching supports the <code>*</code> and <code>?</code> wildcards and
+ * compares case insensitively using the server's {@link CaseMapping}. A
+ * mask of the form <code>nick!user@host</code> is matched part by part,
+ * while any other mask is matched against the whole
+ * <code>nick!user@host</code> string. Extbans, which start with
+ * <code>~</code> or <code>$</code> or have a <code>:</code> before any
+ * <code>!</code>, are never treated as <code>nick!user@host</code> masks
+ * even if they contain one, as in <code>~q:*!*@host</code>.
  */
 public class Mask {
     /**
@@ -42,10 +52,40 @@ public class Mask {
         return new Mask(Sanity.nullCheck(string, "String cannot be null"));
     }
 
+    private static final class Compiled {
+        private final CaseMapping caseMapping;
+        private final char[] pattern;
+
+        private Compiled(@Nonnull CaseMapping caseMapping, @Nonnull String string) {
+            this.caseMapping = caseMapping;
+            this.pattern = caseMapping.toLowerCase(string).toCharArray();
+        }
+    }
+
     private final String string;
+    private final int userStart;
+    private final int hostStart;
+    private volatile Compiled compiled;
 
     private Mask(@Nonnull String string) {
         this.string = string;
+        int bang = string.indexOf('!');
+        int at = ((bang < 0) || isExtban(string, bang)) ? -1 : string.indexOf('@', bang + 1);
+        this.userStart = (at < 0) ? -1 : (bang + 1);
+        this.hostStart = (at < 0) ? -1 : (at + 1);
+    }
+
+    // Nicks can't contain ':' or start with '~' or '$'
+    private static boolean isExtban(@Nonnull String string, int bang) {
+        if (string.isEmpty()) {
+            return false;
+        }
+        char first = string.charAt(0);
+        if ((first == '~') || (first == '$')) {
+            return true;
+        }
+        int colon = string.indexOf(':');
+        return (colon >= 0) && (colon < bang);
     }
 
     /**
@@ -58,6 +98,133 @@ public class Mask {
         return this.string;
     }
 
+    /**
+     * Gets if this mask is of the form <code>nick!user@host</code>.
+     *
+     * @return true if a nick!user@host mask
+     */
+    public boolean isHostmask() {
+        return this.hostStart >= 0;
+    }
+
+    /**
+     * Gets the nick part of a <code>nick!user@host</code> mask.
+     *
+     * @return nick part, or the whole mask if not a hostmask
+     */
+    @Nonnull
+    public String getNickPart() {
+        return this.isHostmask() ? this.string.substring(0, this.userStart - 1) : this.string;
+    }
+
+    /**
+     * Gets the host part of a <code>nick!user@host</code> mask.
+     *
+     * @return host part, or the whole mask if not a hostmask
+     */
+    @Nonnull
+    public String getHostPart() {
+        return this.isHostmask() ? this.string.substring(this.hostStart) : this.string;
+    }
+
+    /**
+     * Gets if this mask matches a given user, using the case mapping of the
+     * user's server.
+     *
+     * @param user user to test
+     * @return true if matching
+     */
+    public boolean matches(@Nonnull User user) {
+        Sanity.nullCheck(user, "User cannot be null");
+        return this.matches(user.getNick(), user.getUserString(), user.getHost(), user.getClient().getServerInfo().getCaseMapping());
+    }
+
+    /**
+     * Gets if this mask matches a given <code>nick!user@host</code> string.
+     *
+     * @param hostmask string to test
+     * @param caseMapping case mapping to compare with
+     * @return true if matching
+     */
+    public boolean matches(@Nonnull String hostmask, @Nonnull CaseMapping caseMapping) {
+        Sanity.nullCheck(hostmask, "Hostmask cannot be null");
+        int bang = hostmask.indexOf('!');
+        int at = (bang < 0) ? -1 : hostmask.indexOf('@', bang + 1);
+        if (!this.isHostmask() || (at < 0)) {
+            char[] pattern = this.getPattern(caseMapping);
+            return glob(pattern, 0, pattern.length, hostmask, caseMapping);
+        }
+        return this.matches(hostmask.substring(0, bang), hostmask.substring(bang + 1, at), hostmask.substring(at + 1), caseMapping);
+    }
+
+    /**
+     * Gets if this mask matches the given parts of a user.
+     *
+     * @param nick nickname
+     * @param userString user string
+     * @param host host
+     * @param caseMapping case mapping to compare with
+     * @return true if matching
+     */
+    public boolean matches(@Nonnull String nick, @Nonnull String userString, @Nonnull String host, @Nonnull CaseMapping caseMapping) {
+        Sanity.nullCheck(nick, "Nick cannot be null");
+        Sanity.nullCheck(userString, "User string cannot be null");
+        Sanity.nullCheck(host, "Host cannot be null");
+        char[] pattern = this.getPattern(caseMapping);
+        if (!this.isHostmask()) {
+            return glob(pattern, 0, pattern.length, nick + '!' + userString + '@' + host, caseMapping);
+        }
+        return glob(pattern, this.hostStart, pattern.length, host, caseMapping) &&
+                glob(pattern, 0, this.userStart - 1, nick, caseMapping) &&
+                glob(pattern, this.userStart, this.hostStart - 1, userString, caseMapping);
+    }
+
+    @Nonnull
+    private char[] getPattern(@Nonnull CaseMapping caseMapping) {
+        Sanity.nullCheck(caseMapping, "Case mapping cannot be null");
+        Compiled compiled = this.compiled;
+        if ((compiled == null) || (compiled.caseMapping != caseMapping)) {
+            this.compiled = compiled = new Compiled(caseMapping, this.string);
+        }
+        return compiled.pattern;
+    }
+
+    /**
+     * Matches a lowercased glob pattern region against a subject, without
+     * backtracking further than the most recent star.
+     */
+    private static boolean glob(@Nonnull char[] pattern, int start, int end, @Nonnull String subject, @Nonnull CaseMapping caseMapping) {
+        int p = start;
+        int s = 0;
+        int star = -1;
+        int starMatch = 0;
+        int length = subject.length();
+        while (s < length) {
+            if (p < end) {
+                char c = pattern[p];
+                if (c == '*') {
+                    star = p++;
+                    starMatch = s;
+                    continue;
+                }
+                if ((c == '?') || (c == caseMapping.toLowerCase(subject.charAt(s)))) {
+                    p++;
+                    s++;
+                    continue;
+                }
+            }
+            if (star < 0) {
+                return false;
+            }
+            p = star + 1;
+            s = ++starMatch;
+        }
+        while ((p < end) && (pattern[p] == '*')) {
+            p++;
+        }
+        return p == end;
+    }
+
     @Override
     public int hashCode() {
         return (2 * this.string.hashCode()) + 5;
@@ -0,0 +1,284 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.util;
+
+import org.kitteh.irc.client.library.element.User;
+import org.kitteh.irc.client.library.feature.CaseMapping;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An immutable index over a collection of masked items, such as a channel's
+ * ban list, answering which items match a user without testing every mask.
+ * <p>
+ * Masks with a literal host are bucketed by host, masks with a literal host
+ * ending, like <code>*!*@*.example.com</code>, sit in a suffix trie, and
+ * masks with a literal host beginning, like <code>*!*@192.168.*</code>, sit
+ * in a prefix trie. Masks not of the form <code>nick!user@host</code>, such
+ * as extbans, cannot be evaluated by the client and are passed through via
+ * {@link #getUnindexed()}.
+ *
+ * @param <T> type of item indexed
+ */
+public final class MaskIndex<T> {
+    private static final class Entry<T> {
+        private final int ordinal;
+        private final T item;
+        private final Mask mask;
+
+        private Entry(int ordinal, @Nonnull T item, @Nonnull Mask mask) {
+            this.ordinal = ordinal;
+            this.item = item;
+            this.mask = mask;
+        }
+    }
+
+    private static final class Node<T> {
+        private Map<Character, Node<T>> children;
+        private List<Entry<T>> entries;
+
+        @Nonnull
+        private Node<T> getOrCreate(char c) {
+            if (this.children == null) {
+                this.children = new HashMap<>();
+            }
+            return this.children.computeIfAbsent(c, k -> new Node<>());
+        }
+
+        private Node<T> get(char c) {
+            return (this.children == null) ? null : this.children.get(c);
+        }
+
+        private void add(@Nonnull Entry<T> entry) {
+            if (this.entries == null) {
+                this.entries = new ArrayList<>(1);
+            }
+            this.entries.add(entry);
+        }
+    }
+
+    /**
+     * Creates an index of masks.
+     *
+     * @param masks masks to index
+     * @param caseMapping case mapping to compare with
+     * @return index
+     */
+    @Nonnull
+    public static MaskIndex<Mask> of(@Nonnull Collection<Mask> masks, @Nonnull CaseMapping caseMapping) {
+        return of(masks, Function.identity(), caseMapping);
+    }
+
+    /**
+     * Creates an index of items by their masks.
+     *
+     * @param items items to index
+     * @param maskFunction function acquiring an item's mask
+     * @param caseMapping case mapping to compare with
+     * @param <T> type of item
+     * @return index
+     */
+    @Nonnull
+    public static <T> MaskIndex<T> of(@Nonnull Collection<T> items, @Nonnull Function<T, Mask> maskFunction, @Nonnull CaseMapping caseMapping) {
+        Sanity.nullCheck(items, "Items cannot be null");
+        Sanity.nullCheck(maskFunction, "Mask function cannot be null");
+        Sanity.nullCheck(caseMapping, "Case mapping cannot be null");
+        return new MaskIndex<>(items, maskFunction, caseMapping);
+    }
+
+    private final CaseMapping caseMapping;
+    private final Map<String, List<Entry<T>>> hosts = new HashMap<>();
+    private final Node<T> suffixes = new Node<>();
+    private final Node<T> prefixes = new Node<>();
+    private final Map<String, List<Entry<T>>> nicks = new HashMap<>();
+    private final List<Entry<T>> wild = new ArrayList<>();
+    private final List<T> unindexed = new ArrayList<>();
+    private final int size;
+
+    private MaskIndex(@Nonnull Collection<T> items, @Nonnull Function<T, Mask> maskFunction, @Nonnull CaseMapping caseMapping) {
+        this.caseMapping = caseMapping;
+        int ordinal = 0;
+        for (T item : items) {
+            Mask mask = Sanity.nullCheck(maskFunction.apply(Sanity.nullCheck(item, "Items cannot contain null")), "Mask cannot be null");
+            if (!mask.isHostmask()) {
+                this.unindexed.add(item);
+                continue;
+            }
+            Entry<T> entry = new Entry<>(ordinal++, item, mask);
+            String host = caseMapping.toLowerCase(mask.getHostPart());
+            int firstWild = firstWildcard(host);
+            int lastWild = lastWildcard(host);
+            if (firstWild < 0) {
+                this.hosts.computeIfAbsent(host, k -> new ArrayList<>(1)).add(entry);
+            } else if (lastWild < (host.length() - 1)) {
+                Node<T> node = this.suffixes;
+                for (int i = host.length() - 1; i > lastWild; i--) {
+                    node = node.getOrCreate(host.charAt(i));
+                }
+                node.add(entry);
+            } else if (firstWild > 0) {
+                Node<T> node = this.prefixes;
+                for (int i = 0; i < firstWild; i++) {
+                    node = node.getOrCreate(host.charAt(i));
+                }
+                node.add(entry);
+            } else {
+                String nick = caseMapping.toLowerCase(mask.getNickPart());
+                if (firstWildcard(nick) < 0) {
+                    this.nicks.computeIfAbsent(nick, k -> new ArrayList<>(1)).add(entry);
+                } else {
+                    this.wild.add(entry);
+                }
+            }
+        }
+        this.size = ordinal + this.unindexed.size();
+    }
+
+    /**
+     * Gets the indexed items matching a given user, in their original
+     * order, using this index's case mapping.
+     *
+     * @param user user to test
+     * @return matching items
+     */
+    @Nonnull
+    public List<T> getMatches(@Nonnull User user) {
+        Sanity.nullCheck(user, "User cannot be null");
+        return this.getMatches(user.getNick(), user.getUserString(), user.getHost());
+    }
+
+    /**
+     * Gets the indexed items matching the given parts of a user, in their
+     * original order.
+     *
+     * @param nick nickname
+     * @param userString user string
+     * @param host host
+     * @return matching items
+     */
+    @Nonnull
+    public List<T> getMatches(@Nonnull String nick, @Nonnull String userString, @Nonnull String host) {
+        Sanity.nullCheck(nick, "Nick cannot be null");
+        Sanity.nullCheck(userString, "User string cannot be null");
+        Sanity.nullCheck(host, "Host cannot be null");
+        String lowerHost = this.caseMapping.toLowerCase(host);
+        List<Entry<T>> matches = new ArrayList<>();
+        this.check(this.hosts.get(lowerHost), nick, userString, host, matches);
+        Node<T> node = this.suffixes;
+        for (int i = lowerHost.length() - 1; (i >= 0) && ((node = node.get(lowerHost.charAt(i))) != null); i--) {
+            this.check(node.entries, nick, userString, host, matches);
+        }
+        node = this.prefixes;
+        for (int i = 0; (i < lowerHost.length()) && ((node = node.get(lowerHost.charAt(i))) != null); i++) {
+            this.check(node.entries, nick, userString, host, matches);
+        }
+        this.check(this.nicks.get(this.caseMapping.toLowerCase(nick)), nick, userString, host, matches);
+        this.check(this.wild, nick, userString, host, matches);
+        if (matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        matches.sort(Comparator.comparingInt(entry -> entry.ordinal));
+        List<T> items = new ArrayList<>(matches.size());
+        for (Entry<T> entry : matches) {
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    /**
+     * Gets the items whose masks are not of the form
+     * <code>nick!user@host</code>, such as extbans, which are not evaluated
+     * by {@link #getMatches}.
+     *
+     * @return unindexed items, in their original order
+     */
+    @Nonnull
+    public List<T> getUnindexed() {
+        return Collections.unmodifiableList(this.unindexed);
+    }
+
+    /**
+     * Gets the case mapping used by this index.
+     *
+     * @return case mapping
+     */
+    @Nonnull
+    public CaseMapping getCaseMapping() {
+        return this.caseMapping;
+    }
+
+    /**
+     * Gets the number of items in this index, including unindexed items.
+     *
+     * @return size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return new ToStringer(this).add("size", this.size).add("unindexed", this.unindexed.size()).add("caseMapping", this.caseMapping).toString();
+    }
+
+    private void check(List<Entry<T>> entries, @Nonnull String nick, @Nonnull String userString, @Nonnull String host, @Nonnull List<Entry<T>> matches) {
+        if (entries == null) {
+            return;
+        }
+        for (Entry<T> entry : entries) {
+            if (entry.mask.matches(nick, userString, host, this.caseMapping)) {
+                matches.add(entry);
+            }
+        }
+    }
+
+    private static int firstWildcard(@Nonnull String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if ((c == '*') || (c == '?')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastWildcard(@Nonnull String string) {
+        for (int i = string.length() - 1; i >= 0; i--) {
+            char c = string.charAt(i);
+            if ((c == '*') || (c == '?')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -101,6 +101,15 @@ public abstract class QueueProcessingThread<Type> extends Thread {
         return new ArrayDeque<>(this.queue);
     }
 
+    /**
+     * Gets if the queue is currently empty.
+     *
+     * @return true if no items are queued
+     */
+    protected boolean isQueueEmpty() {
+        return this.queue.isEmpty();
+    }
+
     /**
      * Queues an item.
      *
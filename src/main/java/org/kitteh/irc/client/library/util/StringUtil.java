@@ -125,6 +125,33 @@ public final class StringUtil {
         return builder.toString();
     }
 
+    /**
+     * Gets the length of a String when encoded as UTF-8, without encoding
+     * it.
+     *
+     * @param input string to measure
+     * @return length in bytes
+     * @throws IllegalArgumentException if input is null
+     */
+    public static int utf8Length(@Nonnull String input) {
+        Sanity.nullCheck(input, "Input cannot be null");
+        int length = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && ((i + 1) < input.length()) && Character.isLowSurrogate(input.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3; // Also lone surrogates, erring long
+            }
+        }
+        return length;
+    }
+
     /**
      * Converts a given String to lowercase per spec.
      *
@@ -0,0 +1,353 @@
+/*
+ * * Copyright (C) 2013-2016 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.irc.client.library.util;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A compact, append-only binary log of the lines sent and received by a
+ * client, suitable for deterministic replay.
+ * <p>
+ * The file begins with an eight byte magic value and the epoch millisecond
+ * time the log was started. Each record is a direction byte, the time in
+ * microseconds since the previous record as a variable length integer, the
+ * length of the line in UTF-8 bytes as a variable length integer, the line
+ * itself and a line feed. Reading stops at a zero direction byte, which
+ * marks the end of the log, or at the first record cut short or missing its
+ * line feed, so a log cut short by a crash remains readable up to the last
+ * complete record.
+ */
+public final class TrafficLog {
+    /**
+     * Direction of a recorded line.
+     */
+    public enum Direction {
+        /**
+         * Received from the server.
+         */
+        INPUT((byte) 1),
+        /**
+         * Sent to the server.
+         */
+        OUTPUT((byte) 2);
+
+        private final byte id;
+
+        Direction(byte id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * A single recorded line.
+     */
+    public static final class Entry {
+        private final Direction direction;
+        private final long time;
+        private final String line;
+
+        private Entry(@Nonnull Direction direction, long time, @Nonnull String line) {
+            this.direction = direction;
+            this.time = time;
+            this.line = line;
+        }
+
+        /**
+         * Gets the direction of the line.
+         *
+         * @return direction
+         */
+        @Nonnull
+        public Direction getDirection() {
+            return this.direction;
+        }
+
+        /**
+         * Gets the line, without line ending.
+         *
+         * @return line
+         */
+        @Nonnull
+        public String getLine() {
+            return this.line;
+        }
+
+        /**
+         * Gets the time of the line relative to the start of the log.
+         *
+         * @param unit unit of the returned time
+         * @return time since the log started
+         */
+        public long getTime(@Nonnull TimeUnit unit) {
+            return unit.convert(this.time, TimeUnit.MICROSECONDS);
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return new ToStringer(this).add("direction", this.direction).add("time", this.time).add("line", this.line).toString();
+        }
+    }
+
+    /**
+     * Appends lines to a log file through a memory mapped region which is
+     * extended as needed. Any existing file at the path is replaced.
+     */
+    public static final class Writer implements Closeable {
+        private static final int REGION_SIZE = 1 << 20;
+
+        private final FileChannel channel;
+        private final long startNanos = System.nanoTime();
+        private MappedByteBuffer buffer;
+        private long regionStart;
+        private long lastMicros;
+        private boolean closed;
+
+        private Writer(@Nonnull Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+            this.buffer.put(MAGIC);
+            this.buffer.putLong(System.currentTimeMillis());
+        }
+
+        /**
+         * Appends a line, timestamped now. Does nothing once closed.
+         *
+         * @param direction direction of the line
+         * @param line line, without line ending
+         * @throws IOException if the log could not be extended
+         */
+        public synchronized void append(@Nonnull Direction direction, @Nonnull String line) throws IOException {
+            if (this.closed) {
+                return;
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - this.startNanos);
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            // Record, plus the zero marking the end
+            int needed = 1 + 10 + 5 + bytes.length + 1 + 1;
+            if (this.buffer.remaining() < needed) {
+                this.regionStart += this.buffer.position();
+                this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, this.regionStart, Math.max(REGION_SIZE, needed));
+            }
+            this.buffer.put(direction.id);
+            putVarLong(this.buffer, Math.max(0, micros - this.lastMicros));
+            putVarLong(this.buffer, bytes.length);
+            this.buffer.put(bytes);
+            this.buffer.put(END_OF_RECORD);
+            this.lastMicros = micros;
+        }
+
+        /**
+         * Flushes and closes the log, trimming the unused mapped tail. The
+         * tail is left in place on Windows, which cannot truncate a file
+         * while it is mapped, and is skipped by readers.
+         *
+         * @throws IOException if the file could not be trimmed or closed
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.buffer.force();
+            if (!WINDOWS) {
+                this.channel.truncate(this.regionStart + this.buffer.position());
+            }
+            this.channel.close();
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return new ToStringer(this).add("closed", this.closed).toString();
+        }
+    }
+
+    /**
+     * Reads a log written by a {@link Writer}.
+     */
+    public static final class Reader implements Iterable<Entry> {
+        private final ByteBuffer data;
+        private final long startTime;
+
+        private Reader(@Nonnull ByteBuffer data) throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            try {
+                data.get(magic);
+                this.startTime = data.getLong();
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Not a traffic log", e);
+            }
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a traffic log");
+            }
+            this.data = data.slice();
+        }
+
+        /**
+         * Gets the time the log was started.
+         *
+         * @return epoch milliseconds
+         */
+        public long getStartTime() {
+            return this.startTime;
+        }
+
+        /**
+         * Iterates over the complete records in the log, stopping at the
+         * end of the log or the first incomplete record.
+         *
+         * @return iterator of entries
+         */
+        @Nonnull
+        @Override
+        public Iterator<Entry> iterator() {
+            final ByteBuffer buffer = this.data.duplicate();
+            return new Iterator<Entry>() {
+                private long time;
+                private Entry next = this.read();
+
+                private Entry read() {
+                    if (!buffer.hasRemaining()) {
+                        return null;
+                    }
+                    try {
+                        byte id = buffer.get();
+                        Direction direction;
+                        if (id == Direction.INPUT.id) {
+                            direction = Direction.INPUT;
+                        } else if (id == Direction.OUTPUT.id) {
+                            direction = Direction.OUTPUT;
+                        } else {
+                            return null;
+                        }
+                        long time = this.time + getVarLong(buffer);
+                        long length = getVarLong(buffer);
+                        if ((length < 0) || (length >= buffer.remaining())) {
+                            return null;
+                        }
+                        byte[] bytes = new byte[(int) length];
+                        buffer.get(bytes);
+                        if (buffer.get() != END_OF_RECORD) {
+                            return null;
+                        }
+                        this.time = time;
+                        return new Entry(direction, time, new String(bytes, StandardCharsets.UTF_8));
+                    } catch (BufferUnderflowException e) {
+                        return null;
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return this.next != null;
+                }
+
+                @Override
+                public Entry next() {
+                    if (this.next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry entry = this.next;
+                    this.next = this.read();
+                    return entry;
+                }
+            };
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return new ToStringer(this).add("startTime", this.startTime).toString();
+        }
+    }
+
+    private static final byte[] MAGIC = {'K', 'I', 'C', 'L', 'L', 'O', 'G', 1};
+    private static final byte END_OF_RECORD = '\n';
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private TrafficLog() {
+    }
+
+    /**
+     * Starts a new log, replacing any existing file.
+     *
+     * @param path file to write
+     * @return log writer
+     * @throws IOException if the file cannot be created or mapped
+     */
+    @Nonnull
+    public static Writer write(@Nonnull Path path) throws IOException {
+        return new Writer(Sanity.nullCheck(path, "Path cannot be null"));
+    }
+
+    /**
+     * Reads an existing log.
+     *
+     * @param path file to read
+     * @return log reader
+     * @throws IOException if the file cannot be read or is not a log
+     */
+    @Nonnull
+    public static Reader read(@Nonnull Path path) throws IOException {
+        Sanity.nullCheck(path, "Path cannot be null");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static void putVarLong(@Nonnull ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(@Nonnull ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+}
@@ -0,0 +1,257 @@
+package org.kitteh.irc.client.library;
+
+import net.engio.mbassy.listener.Handler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kitteh.irc.client.library.event.channel.ChannelJoinEvent;
+import org.kitteh.irc.client.library.event.client.ClientConnectedEvent;
+import org.kitteh.irc.client.library.event.client.ClientConnectionClosedEvent;
+import org.kitteh.irc.client.library.event.user.PrivateMessageEvent;
+import org.kitteh.irc.client.library.exception.KittehNagException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs real clients against a {@link FakeServer}, exercising the full
+ * Netty pipeline, registration, CAP negotiation and sending queues.
+ */
+public class EndToEndLoadTest {
+    /**
+     * Records connection and latency data for a client.
+     */
+    public static class Recorder {
+        private final AtomicInteger connects = new AtomicInteger();
+        private final AtomicInteger closes = new AtomicInteger();
+        private final AtomicInteger joins = new AtomicInteger();
+        private final AtomicInteger messages = new AtomicInteger();
+        private final AtomicLong maxLatency = new AtomicLong();
+        private final List<Long> latencies = new CopyOnWriteArrayList<>();
+
+        @Handler
+        public void connected(ClientConnectedEvent event) {
+            this.connects.incrementAndGet();
+        }
+
+        @Handler
+        public void closed(ClientConnectionClosedEvent event) {
+            if (!event.isReconnecting()) {
+                this.closes.incrementAndGet();
+            }
+        }
+
+        @Handler
+        public void join(ChannelJoinEvent event) {
+            if (event.getClient().isUser(event.getUser())) {
+                this.joins.incrementAndGet();
+            }
+        }
+
+        @Handler
+        public void message(PrivateMessageEvent event) {
+            String[] split = event.getMessage().split(" ");
+            if ((split.length == 3) && "LOAD".equals(split[0])) {
+                long latency = System.nanoTime() - Long.parseLong(split[2]);
+                this.latencies.add(latency);
+                this.maxLatency.accumulateAndGet(latency, Math::max);
+            }
+            this.messages.incrementAndGet();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeServer server;
+    private final List<Client> clients = new ArrayList<>();
+    private final List<Exception> exceptions = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        this.server = FakeServer.start();
+    }
+
+    @After
+    public void after() {
+        this.clients.forEach(Client::shutdown);
+        this.server.close();
+        Assert.assertTrue("Clients threw " + this.exceptions, this.exceptions.isEmpty());
+    }
+
+    private void addException(Exception exception) {
+        // Nags about the plaintext connections are expected
+        if (!(exception instanceof KittehNagException)) {
+            this.exceptions.add(exception);
+        }
+    }
+
+    private Recorder connect(FakeServer server, String nick) {
+        Recorder recorder = new Recorder();
+        this.clients.add(server.clientBuilder(nick)
+                .listenException(this::addException)
+                .afterBuildConsumer(client -> client.getEventManager().registerEventListener(recorder))
+                .build());
+        return recorder;
+    }
+
+    /**
+     * Connects many clients at once and checks each completes registration
+     * and CAP negotiation.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testManyClientsRegister() throws Exception {
+        List<Recorder> recorders = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            recorders.add(this.connect(this.server, "Kitteh" + i));
+        }
+        Assert.assertTrue("Not all clients registered", this.server.await(s -> s.getRegisteredConnections().size() == 25, 15, TimeUnit.SECONDS));
+        Assert.assertTrue("Not all clients saw 004", this.server.await(s -> recorders.stream().allMatch(r -> r.connects.get() == 1), 15, TimeUnit.SECONDS));
+        Assert.assertTrue("Not all clients ended CAP negotiation", this.server.await(s -> s.getConnections().stream().allMatch(c -> c.getReceived().contains("CAP END")), 15, TimeUnit.SECONDS));
+        for (FakeServer.Connection connection : this.server.getConnections()) {
+            Assert.assertTrue("CAP REQ missing", connection.getReceived().stream().anyMatch(line -> line.startsWith("CAP REQ")));
+        }
+    }
+
+    /**
+     * Replays a message burst to many clients and checks throughput and
+     * end-to-end latency.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testMessageBurstLatency() throws Exception {
+        final int clientCount = 10;
+        final int lineCount = 500;
+        List<Recorder> recorders = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            recorders.add(this.connect(this.server, "Kitteh" + i));
+        }
+        Assert.assertTrue("Not all clients registered", this.server.await(s -> s.getRegisteredConnections().size() == clientCount, 15, TimeUnit.SECONDS));
+
+        List<String> lines = Collections.nCopies(lineCount, ":Cat!meow@kitteh.test PRIVMSG Kitteh :LOAD {n} {t}");
+        long start = System.nanoTime();
+        this.server.replay(this.server.getRegisteredConnections(), lines, 0);
+        Assert.assertTrue("Not all messages delivered", this.server.await(s -> recorders.stream().allMatch(r -> r.latencies.size() == lineCount), 30, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+
+        double linesPerSecond = (clientCount * lineCount) / (elapsed / 1_000_000_000D);
+        List<Long> all = new ArrayList<>();
+        recorders.forEach(recorder -> all.addAll(recorder.latencies));
+        Collections.sort(all);
+        long p99 = all.get((int) (all.size() * 0.99) - 1);
+        Assert.assertTrue("Throughput too low: " + linesPerSecond, linesPerSecond > 500);
+        Assert.assertTrue("p99 latency too high: " + TimeUnit.NANOSECONDS.toMillis(p99) + "ms", p99 < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    /**
+     * Joins a channel, then relays a channel message from one client to
+     * another through the scheduled sending queue.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testChannelRelay() throws Exception {
+        Recorder first = this.connect(this.server, "Kitteh");
+        Recorder second = this.connect(this.server, "Purr");
+        Assert.assertTrue("Not all clients registered", this.server.await(s -> s.getRegisteredConnections().size() == 2, 15, TimeUnit.SECONDS));
+        this.clients.forEach(client -> client.addChannel("#kicl"));
+        Assert.assertTrue("Not all clients joined", this.server.await(s -> (first.joins.get() == 1) && (second.joins.get() == 1), 15, TimeUnit.SECONDS));
+        Assert.assertTrue("WHO not sent", this.server.await(s -> s.getConnections().stream().allMatch(c -> c.getReceived().contains("WHO #kicl")), 15, TimeUnit.SECONDS));
+
+        this.clients.get(0).sendMessage("Purr", "LOAD 0 " + System.nanoTime());
+        Assert.assertTrue("Message not relayed", this.server.await(s -> second.latencies.size() == 1, 15, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Drops a client's connection and checks that it reconnects, registers
+     * again and rejoins its channels.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testReconnect() throws Exception {
+        final int channelCount = 100;
+        Recorder recorder = this.connect(this.server, "Kitteh");
+        Client client = this.clients.get(0);
+        String[] channels = new String[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            channels[i] = "#kicl-channel-" + i;
+        }
+        client.addChannel(channels);
+        Assert.assertTrue("Channels not joined", this.server.await(s -> recorder.joins.get() == channelCount, 15, TimeUnit.SECONDS));
+        this.server.getConnections().forEach(FakeServer.Connection::drop);
+        Assert.assertTrue("Client did not reconnect", this.server.await(s -> recorder.connects.get() == 2, 20, TimeUnit.SECONDS));
+        Assert.assertTrue("Channels not rejoined", this.server.await(s -> recorder.joins.get() == (2 * channelCount), 20, TimeUnit.SECONDS));
+        Assert.assertEquals(2, this.server.getTotalConnectionCount());
+        Assert.assertEquals(channelCount, client.getChannels().size());
+    }
+
+    /**
+     * Connects over TLS using the server's self-signed certificate.
+     *
+     * @throws Exception if the secure server cannot start
+     */
+    @Test
+    public void testSecure() throws Exception {
+        try (FakeServer secureServer = FakeServer.start(true)) {
+            Recorder recorder = this.connect(secureServer, "Kitteh");
+            Assert.assertTrue("Client not registered", secureServer.await(s -> recorder.connects.get() == 1, 15, TimeUnit.SECONDS));
+            secureServer.replay(secureServer.getRegisteredConnections(), Collections.nCopies(50, ":Cat!meow@kitteh.test PRIVMSG Kitteh :LOAD {n} {t}"), 1000);
+            Assert.assertTrue("Not all messages delivered", secureServer.await(s -> recorder.latencies.size() == 50, 15, TimeUnit.SECONDS));
+            this.clients.forEach(Client::shutdown);
+            this.clients.clear();
+        }
+    }
+
+    /**
+     * Records a session to a traffic log, then replays it without a
+     * server and checks the same events fire.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testTrafficReplay() throws Exception {
+        File log = this.folder.newFile();
+        Recorder recorder = new Recorder();
+        this.clients.add(this.server.clientBuilder("Kitteh")
+                .trafficLog(log)
+                .listenException(this::addException)
+                .afterBuildConsumer(client -> client.getEventManager().registerEventListener(recorder))
+                .build());
+        Assert.assertTrue("Client not registered", this.server.await(s -> recorder.connects.get() == 1, 15, TimeUnit.SECONDS));
+        this.clients.get(0).addChannel("#kicl");
+        Assert.assertTrue("Client not joined", this.server.await(s -> recorder.joins.get() == 1, 15, TimeUnit.SECONDS));
+        this.server.replay(this.server.getRegisteredConnections(), Collections.nCopies(100, ":Cat!meow@kitteh.test PRIVMSG Kitteh :LOAD {n} {t}"), 0);
+        Assert.assertTrue("Not all messages delivered", this.server.await(s -> recorder.messages.get() == 100, 15, TimeUnit.SECONDS));
+        this.clients.get(0).shutdown();
+        this.clients.clear();
+
+        Recorder replayed = new Recorder();
+        List<String> output = new CopyOnWriteArrayList<>();
+        this.clients.add(Client.builder()
+                .nick("Kitteh")
+                .trafficReplay(log, false)
+                .listenOutput(output::add)
+                .listenException(this::addException)
+                .afterBuildConsumer(client -> client.getEventManager().registerEventListener(replayed))
+                .build());
+        Assert.assertTrue("Replay did not finish", this.server.await(s -> replayed.closes.get() == 1, 15, TimeUnit.SECONDS));
+        Assert.assertEquals(1, replayed.connects.get());
+        Assert.assertEquals(1, replayed.joins.get());
+        Assert.assertEquals(100, replayed.messages.get());
+        Assert.assertTrue("Replay did not answer CAP", output.contains("CAP END"));
+        Assert.assertEquals(1, this.server.getTotalConnectionCount());
+    }
+}
@@ -0,0 +1,564 @@
+package org.kitteh.irc.client.library;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.CharsetUtil;
+import org.kitteh.irc.client.library.feature.sending.SingleDelaySender;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A small in-process IRC server for end-to-end tests of real clients.
+ * <p>
+ * Handles enough of registration, CAP negotiation, channels and messaging
+ * for a {@link Client} built via {@link Client#builder()} to run its full
+ * Netty pipeline and sending queues against it. Additional behaviour can be
+ * scripted by registering command handlers, and traffic can be replayed
+ * to connected clients at a chosen rate.
+ */
+public final class FakeServer implements AutoCloseable {
+    /**
+     * A connected client, from the server's point of view.
+     */
+    public final class Connection {
+        private final Channel channel;
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+        private volatile String nick = "*";
+        private volatile String user = "user";
+        private volatile boolean negotiating;
+        private volatile boolean registered;
+
+        private Connection(@Nonnull Channel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Gets the current nick of the connection.
+         *
+         * @return nick, or * prior to NICK
+         */
+        @Nonnull
+        public String getNick() {
+            return this.nick;
+        }
+
+        /**
+         * Gets the full hostmask of the connection.
+         *
+         * @return nick!user@host
+         */
+        @Nonnull
+        public String getMask() {
+            return this.nick + '!' + this.user + "@kitteh.test";
+        }
+
+        /**
+         * Gets all lines received from the client so far.
+         *
+         * @return received lines
+         */
+        @Nonnull
+        public List<String> getReceived() {
+            return Collections.unmodifiableList(this.received);
+        }
+
+        /**
+         * Gets if registration has completed.
+         *
+         * @return true if welcomed
+         */
+        public boolean isRegistered() {
+            return this.registered;
+        }
+
+        /**
+         * Sends a line to the client.
+         *
+         * @param line line without line ending
+         */
+        public void send(@Nonnull String line) {
+            this.channel.writeAndFlush(line + "\r\n");
+        }
+
+        /**
+         * Sends a numeric reply prefixed with the server name and nick.
+         *
+         * @param numeric numeric, formatted with three digits
+         * @param rest parameters following the nick
+         */
+        public void numeric(@Nonnull String numeric, @Nonnull String rest) {
+            this.send(':' + SERVER_NAME + ' ' + numeric + ' ' + this.nick + ' ' + rest);
+        }
+
+        /**
+         * Drops the connection without warning.
+         */
+        public void drop() {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Name the server uses as its prefix.
+     */
+    public static final String SERVER_NAME = "irc.kitteh.test";
+
+    private final boolean secure;
+    private final EventLoopGroup bossGroup = new NioEventLoopGroup(1);
+    private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final Map<String, Set<Connection>> channels = new ConcurrentHashMap<>();
+    private final Map<String, BiConsumer<Connection, List<String>>> handlers = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private volatile List<String> capabilities = Arrays.asList("multi-prefix", "away-notify", "account-notify", "extended-join");
+    private volatile List<String> iSupport = Arrays.asList("CHANTYPES=#", "PREFIX=(ov)@+", "CHANMODES=beI,k,l,imnpst", "MODES=4", "NETWORK=KittehNet", "CASEMAPPING=rfc1459");
+    private final Channel serverChannel;
+    @Nullable
+    private final SelfSignedCertificate certificate;
+
+    private FakeServer(boolean secure) throws Exception {
+        this.secure = secure;
+        final SslContext sslContext;
+        if (secure) {
+            this.certificate = new SelfSignedCertificate("localhost");
+            sslContext = SslContextBuilder.forServer(this.certificate.certificate(), this.certificate.privateKey()).build();
+        } else {
+            this.certificate = null;
+            sslContext = null;
+        }
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(this.bossGroup, this.workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) throws Exception {
+                        if (sslContext != null) {
+                            channel.pipeline().addLast(sslContext.newHandler(channel.alloc()));
+                        }
+                        channel.pipeline().addLast(new DelimiterBasedFrameDecoder(4096, Unpooled.wrappedBuffer(new byte[]{(byte) '\r', (byte) '\n'})));
+                        channel.pipeline().addLast(new StringDecoder(CharsetUtil.UTF_8));
+                        channel.pipeline().addLast(new StringEncoder(CharsetUtil.UTF_8));
+                        final Connection connection = new Connection(channel);
+                        FakeServer.this.connections.add(connection);
+                        FakeServer.this.connectionCount.incrementAndGet();
+                        channel.closeFuture().addListener(future -> FakeServer.this.disconnected(connection));
+                        channel.pipeline().addLast(new SimpleChannelInboundHandler<String>() {
+                            @Override
+                            protected void channelRead0(ChannelHandlerContext ctx, String msg) throws Exception {
+                                FakeServer.this.handle(connection, msg);
+                            }
+                        });
+                    }
+                });
+        this.serverChannel = bootstrap.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).sync().channel();
+    }
+
+    /**
+     * Starts a plaintext server on a random loopback port.
+     *
+     * @return running server
+     * @throws Exception if the server cannot bind
+     */
+    @Nonnull
+    public static FakeServer start() throws Exception {
+        return new FakeServer(false);
+    }
+
+    /**
+     * Starts a server on a random loopback port.
+     *
+     * @param secure true to serve TLS with a self-signed certificate
+     * @return running server
+     * @throws Exception if the server cannot bind
+     */
+    @Nonnull
+    public static FakeServer start(boolean secure) throws Exception {
+        return new FakeServer(secure);
+    }
+
+    /**
+     * Gets a client builder already pointed at this server, with no message
+     * delay and an accepting trust manager when running TLS.
+     *
+     * @param nick nick for the client
+     * @return builder
+     */
+    @Nonnull
+    public Client.Builder clientBuilder(@Nonnull String nick) {
+        Client.Builder builder = Client.builder()
+                .name(nick)
+                .nick(nick)
+                .serverHost(this.getAddress().getHostString())
+                .serverPort(this.getAddress().getPort())
+                .secure(this.secure)
+                .messageSendingQueueSupplier(client -> new SingleDelaySender(client, "Test", 0));
+        if (this.secure) {
+            builder.secureTrustManagerFactory(InsecureTrustManagerFactory.INSTANCE);
+        }
+        return builder;
+    }
+
+    /**
+     * Gets the bound address.
+     *
+     * @return address clients should connect to
+     */
+    @Nonnull
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) this.serverChannel.localAddress();
+    }
+
+    /**
+     * Sets the capabilities advertised in CAP LS.
+     *
+     * @param capabilities capability names
+     */
+    public void setCapabilities(@Nonnull String... capabilities) {
+        this.capabilities = Arrays.asList(capabilities);
+    }
+
+    /**
+     * Sets the ISUPPORT tokens sent during registration.
+     *
+     * @param tokens tokens such as TARGMAX=PRIVMSG:4
+     */
+    public void setISupport(@Nonnull String... tokens) {
+        this.iSupport = Arrays.asList(tokens);
+    }
+
+    /**
+     * Scripts the reply to a command, replacing any built-in handling.
+     *
+     * @param command command, upper case
+     * @param handler handler receiving the connection and parameters
+     */
+    public void on(@Nonnull String command, @Nonnull BiConsumer<Connection, List<String>> handler) {
+        this.handlers.put(command, handler);
+    }
+
+    /**
+     * Gets the currently open connections.
+     *
+     * @return connections
+     */
+    @Nonnull
+    public List<Connection> getConnections() {
+        return Collections.unmodifiableList(this.connections);
+    }
+
+    /**
+     * Gets the number of connections accepted since start, including closed
+     * ones.
+     *
+     * @return total accepted connections
+     */
+    public int getTotalConnectionCount() {
+        return this.connectionCount.get();
+    }
+
+    /**
+     * Gets the open connections which have completed registration.
+     *
+     * @return registered connections
+     */
+    @Nonnull
+    public List<Connection> getRegisteredConnections() {
+        return this.connections.stream().filter(Connection::isRegistered).collect(Collectors.toList());
+    }
+
+    /**
+     * Waits until a condition on the server holds.
+     *
+     * @param condition condition to check
+     * @param timeout timeout
+     * @param unit timeout unit
+     * @return true if the condition held before timing out
+     * @throws InterruptedException if interrupted
+     */
+    public boolean await(@Nonnull Predicate<FakeServer> condition, long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        long end = System.nanoTime() + unit.toNanos(timeout);
+        while (!condition.test(this)) {
+            if (System.nanoTime() > end) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Replays lines to a connection at a fixed rate. Each line has the
+     * sequence {@code {n}} replaced with its index and {@code {t}} replaced
+     * with {@link System#nanoTime()} at the moment of sending, allowing
+     * end-to-end latency to be measured in the same process.
+     *
+     * @param connection target connection
+     * @param lines lines to send
+     * @param linesPerSecond rate, or 0 or less for as fast as possible
+     * @throws InterruptedException if interrupted while pacing
+     */
+    public void replay(@Nonnull Connection connection, @Nonnull List<String> lines, int linesPerSecond) throws InterruptedException {
+        this.replay(Collections.singletonList(connection), lines, linesPerSecond);
+    }
+
+    /**
+     * Replays lines to each of the given connections at a fixed rate per
+     * connection. See {@link #replay(Connection, List, int)}.
+     *
+     * @param targets target connections
+     * @param lines lines to send
+     * @param linesPerSecond rate, or 0 or less for as fast as possible
+     * @throws InterruptedException if interrupted while pacing
+     */
+    public void replay(@Nonnull List<Connection> targets, @Nonnull List<String> lines, int linesPerSecond) throws InterruptedException {
+        long interval = (linesPerSecond > 0) ? (TimeUnit.SECONDS.toNanos(1) / linesPerSecond) : 0;
+        long next = System.nanoTime();
+        for (int i = 0; i < lines.size(); i++) {
+            if (interval > 0) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                next += interval;
+            }
+            String line = lines.get(i).replace("{n}", Integer.toString(i));
+            for (Connection connection : targets) {
+                connection.send(line.replace("{t}", Long.toString(System.nanoTime())));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.serverChannel.close().syncUninterruptibly();
+        this.connections.forEach(connection -> connection.channel.close());
+        this.workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        this.bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        if (this.certificate != null) {
+            this.certificate.delete();
+        }
+    }
+
+    private void disconnected(@Nonnull Connection connection) {
+        this.connections.remove(connection);
+        for (String channel : connection.channels) {
+            this.part(connection, channel, "QUIT :Connection closed");
+        }
+    }
+
+    private void handle(@Nonnull Connection connection, @Nonnull String line) {
+        connection.received.add(line);
+        if (line.startsWith("@") && line.contains(" ")) {
+            line = line.substring(line.indexOf(' ') + 1);
+        }
+        String[] split = line.split(" ");
+        String command = split[0].toUpperCase();
+        List<String> params = new ArrayList<>();
+        for (int i = 1; i < split.length; i++) {
+            if (split[i].startsWith(":")) {
+                params.add(String.join(" ", Arrays.asList(split).subList(i, split.length)).substring(1));
+                break;
+            }
+            params.add(split[i]);
+        }
+        BiConsumer<Connection, List<String>> handler = this.handlers.get(command);
+        if (handler != null) {
+            handler.accept(connection, params);
+            return;
+        }
+        switch (command) {
+            case "CAP":
+                this.cap(connection, params);
+                break;
+            case "NICK":
+                if (!params.isEmpty()) {
+                    String oldMask = connection.getMask();
+                    connection.nick = params.get(0);
+                    if (connection.registered) {
+                        this.toChannelsAndSelf(connection, ':' + oldMask + " NICK :" + connection.nick);
+                    } else {
+                        this.tryRegister(connection);
+                    }
+                }
+                break;
+            case "USER":
+                if (!params.isEmpty()) {
+                    connection.user = params.get(0);
+                    this.tryRegister(connection);
+                }
+                break;
+            case "PING":
+                connection.send(':' + SERVER_NAME + " PONG " + SERVER_NAME + " :" + (params.isEmpty() ? "" : params.get(params.size() - 1)));
+                break;
+            case "JOIN":
+                if (!params.isEmpty()) {
+                    for (String channel : params.get(0).split(",")) {
+                        this.join(connection, channel);
+                    }
+                }
+                break;
+            case "PART":
+                if (!params.isEmpty()) {
+                    for (String channel : params.get(0).split(",")) {
+                        this.part(connection, channel, "PART " + channel + (params.size() > 1 ? " :" + params.get(1) : ""));
+                        connection.channels.remove(channel.toLowerCase());
+                    }
+                }
+                break;
+            case "PRIVMSG":
+            case "NOTICE":
+                if (params.size() > 1) {
+                    for (String target : params.get(0).split(",")) {
+                        this.message(connection, command, target, params.get(1));
+                    }
+                }
+                break;
+            case "MODE":
+                if (!params.isEmpty() && params.get(0).startsWith("#") && (params.size() == 1)) {
+                    connection.numeric("324", params.get(0) + " +nt");
+                }
+                break;
+            case "WHO":
+                if (!params.isEmpty()) {
+                    this.who(connection, params.get(0));
+                }
+                break;
+            case "WHOIS":
+                if (!params.isEmpty()) {
+                    this.whois(connection, params.get(params.size() - 1));
+                }
+                break;
+            case "QUIT":
+                connection.channel.close();
+                break;
+        }
+    }
+
+    private void cap(@Nonnull Connection connection, @Nonnull List<String> params) {
+        if (params.isEmpty()) {
+            return;
+        }
+        switch (params.get(0).toUpperCase()) {
+            case "LS":
+                connection.negotiating = !connection.registered;
+                connection.send(':' + SERVER_NAME + " CAP " + connection.nick + " LS :" + String.join(" ", this.capabilities));
+                break;
+            case "REQ":
+                if (params.size() > 1) {
+                    boolean acceptable = Arrays.stream(params.get(1).split(" ")).map(cap -> cap.startsWith("-") ? cap.substring(1) : cap).allMatch(this.capabilities::contains);
+                    connection.send(':' + SERVER_NAME + " CAP " + connection.nick + ' ' + (acceptable ? "ACK" : "NAK") + " :" + params.get(1));
+                }
+                break;
+            case "END":
+                connection.negotiating = false;
+                this.tryRegister(connection);
+                break;
+        }
+    }
+
+    private void tryRegister(@Nonnull Connection connection) {
+        if (connection.registered || connection.negotiating || "*".equals(connection.nick) || !connection.received.stream().anyMatch(line -> line.startsWith("USER "))) {
+            return;
+        }
+        connection.registered = true;
+        connection.numeric("001", ":Welcome to the KittehNet IRC Network " + connection.getMask());
+        connection.numeric("004", SERVER_NAME + " fakeircd-1.0 iowx beIklmnopstv");
+        for (int i = 0; i < this.iSupport.size(); i += 12) {
+            connection.numeric("005", String.join(" ", this.iSupport.subList(i, Math.min(i + 12, this.iSupport.size()))) + " :are supported by this server");
+        }
+        connection.numeric("375", ":- " + SERVER_NAME + " Message of the day -");
+        connection.numeric("372", ":- Meow");
+        connection.numeric("376", ":End of /MOTD command.");
+    }
+
+    private void join(@Nonnull Connection connection, @Nonnull String channel) {
+        String key = channel.toLowerCase();
+        Set<Connection> members = this.channels.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+        members.add(connection);
+        connection.channels.add(key);
+        String joinLine = ':' + connection.getMask() + " JOIN " + channel;
+        members.forEach(member -> member.send(joinLine));
+        connection.numeric("353", "= " + channel + " :" + members.stream().map(Connection::getNick).collect(Collectors.joining(" ")));
+        connection.numeric("366", channel + " :End of /NAMES list.");
+    }
+
+    private void part(@Nonnull Connection connection, @Nonnull String channel, @Nonnull String partSuffix) {
+        Set<Connection> members = this.channels.get(channel.toLowerCase());
+        if ((members != null) && members.remove(connection)) {
+            String line = ':' + connection.getMask() + ' ' + partSuffix;
+            members.forEach(member -> member.send(line));
+            if (connection.channel.isActive()) {
+                connection.send(line);
+            }
+        }
+    }
+
+    private void message(@Nonnull Connection from, @Nonnull String command, @Nonnull String target, @Nonnull String message) {
+        String line = ':' + from.getMask() + ' ' + command + ' ' + target + " :" + message;
+        if (target.startsWith("#")) {
+            Set<Connection> members = this.channels.get(target.toLowerCase());
+            if (members != null) {
+                members.stream().filter(member -> member != from).forEach(member -> member.send(line));
+            }
+        } else {
+            this.connections.stream().filter(connection -> connection.nick.equalsIgnoreCase(target)).forEach(connection -> connection.send(line));
+        }
+    }
+
+    private void who(@Nonnull Connection connection, @Nonnull String channel) {
+        Set<Connection> members = this.channels.get(channel.toLowerCase());
+        if (members != null) {
+            for (Connection member : members) {
+                connection.numeric("352", channel + ' ' + member.user + " kitteh.test " + SERVER_NAME + ' ' + member.nick + " H :0 Kitteh");
+            }
+        }
+        connection.numeric("315", channel + " :End of /WHO list.");
+    }
+
+    private void whois(@Nonnull Connection connection, @Nonnull String nick) {
+        this.connections.stream().filter(target -> target.nick.equalsIgnoreCase(nick)).findFirst().ifPresent(target ->
+                connection.numeric("311", target.nick + ' ' + target.user + " kitteh.test * :Kitteh"));
+        connection.numeric("318", nick + " :End of /WHOIS list.");
+    }
+
+    private void toChannelsAndSelf(@Nonnull Connection connection, @Nonnull String line) {
+        Set<Connection> targets = ConcurrentHashMap.newKeySet();
+        targets.add(connection);
+        connection.channels.stream().map(this.channels::get).filter(set -> set != null).forEach(targets::addAll);
+        targets.forEach(target -> target.send(line));
+    }
+}
@@ -8,12 +8,31 @@ import org.kitteh.irc.client.library.element.ISupportParameter;
 import org.kitteh.irc.client.library.element.User;
 import org.kitteh.irc.client.library.element.mode.ChannelMode;
 import org.kitteh.irc.client.library.element.mode.ChannelUserMode;
+import org.kitteh.irc.client.library.element.mode.ModeInfo;
+import org.kitteh.irc.client.library.element.mode.ModeStatus;
+import org.kitteh.irc.client.library.element.mode.ModeStatusList;
+import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
+import org.kitteh.irc.client.library.event.helper.ClientReceiveServerMessageEvent;
+import org.kitteh.irc.client.library.feature.CaseMapping;
 import org.kitteh.irc.client.library.feature.ServerInfo;
+import org.kitteh.irc.client.library.util.Mask;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 
 /**
  * @see ChannelModeCommand
@@ -22,10 +41,19 @@ public class ChannelModeCommandTest {
     private static final String CHANNEL = "#targetchannel";
 
     private Client getClient() {
+        return this.getClient(Mockito.mock(Channel.class), null);
+    }
+
+    private Client getClient(Channel channel, @Nullable List<ModeStatus<ChannelMode>> channelModes) {
         Client client = Mockito.mock(Client.class);
-        Mockito.when(client.getChannel(CHANNEL)).thenReturn(Optional.of(Mockito.mock(Channel.class)));
+        Mockito.when(client.getChannel(CHANNEL)).thenReturn(Optional.of(channel));
+        Mockito.when(channel.hasCompleteModeData()).thenReturn(channelModes != null);
+        Mockito.when(channel.getModes()).thenAnswer(invocation -> ModeStatusList.of((channelModes == null) ? new ArrayList<>() : channelModes));
+        Mockito.when(channel.getUserModes(Mockito.anyString())).thenReturn(Optional.empty());
+        Mockito.when(channel.getModeInfoList(Mockito.any())).thenReturn(Optional.empty());
         ServerInfo serverInfo = Mockito.mock(ServerInfo.class);
         Mockito.when(client.getServerInfo()).thenReturn(serverInfo);
+        Mockito.when(serverInfo.getCaseMapping()).thenReturn(CaseMapping.ASCII);
         ISupportParameter.Modes modes = Mockito.mock(ISupportParameter.Modes.class);
         Mockito.when(serverInfo.getISupportParameter("MODES", ISupportParameter.Modes.class)).thenReturn(Optional.of(modes));
         Mockito.when(modes.getInteger()).thenReturn(3);
@@ -180,6 +208,158 @@ public class ChannelModeCommandTest {
         Mockito.verify(clientMock, Mockito.times(1)).sendRawLine("MODE " + CHANNEL + " -A foo");
     }
 
+    @Test
+    public void testNoOpChangesDropped() {
+        List<ModeStatus<ChannelMode>> channelModes = new ArrayList<>();
+        Channel channel = Mockito.mock(Channel.class);
+        Client clientMock = this.getClient(channel, channelModes);
+        ChannelUserMode op = this.getChannelUserMode('o', clientMock, ChannelMode.Type.B_PARAMETER_ALWAYS);
+        ChannelUserMode voice = this.getChannelUserMode('v', clientMock, ChannelMode.Type.B_PARAMETER_ALWAYS);
+        ChannelMode moderated = this.getChannelMode('m', clientMock, ChannelMode.Type.D_PARAMETER_NEVER);
+        ChannelMode limit = this.getChannelMode('l', clientMock, ChannelMode.Type.C_PARAMETER_ON_SET);
+        channelModes.add(new ModeStatus<>(true, moderated));
+        channelModes.add(new ModeStatus<>(true, limit, "10"));
+        SortedSet<ChannelUserMode> opped = new TreeSet<>(Comparator.comparing(ChannelUserMode::getChar));
+        opped.add(op);
+        Mockito.when(channel.getUserModes("kitteh")).thenReturn(Optional.of(opped));
+        Mockito.when(channel.getUserModes("purr")).thenReturn(Optional.of(new TreeSet<>(Comparator.comparing(ChannelUserMode::getChar))));
+        Mockito.when(channel.getUserModes("PURR")).thenReturn(Optional.of(new TreeSet<>(Comparator.comparing(ChannelUserMode::getChar))));
+
+        ChannelModeCommand sut = new ChannelModeCommand(clientMock, CHANNEL);
+        sut.add(true, op, "kitteh");
+        sut.add(true, op, "purr");
+        sut.add(true, op, "hiss");
+        sut.add(true, moderated);
+        sut.add(true, limit, "10");
+        sut.add(true, voice, "purr");
+        sut.add(false, voice, "PURR");
+        sut.execute();
+        Mockito.verify(clientMock, Mockito.times(1)).sendRawLine("MODE " + CHANNEL + " +oo purr hiss");
+        Mockito.verify(clientMock, Mockito.times(1)).sendRawLine(Mockito.anyString());
+    }
+
+    @Test
+    public void testMaskChangesCaseMapped() {
+        Channel channel = Mockito.mock(Channel.class);
+        Client clientMock = this.getClient(channel, new ArrayList<>());
+        ChannelMode ban = this.getChannelMode('b', clientMock, ChannelMode.Type.A_MASK);
+        ModeInfo info = Mockito.mock(ModeInfo.class);
+        Mockito.when(info.getMask()).thenReturn(Mask.fromString("*!*@Kitteh.org"));
+        Mockito.when(channel.getModeInfoList(ban)).thenReturn(Optional.of(Collections.singletonList(info)));
+
+        ChannelModeCommand sut = new ChannelModeCommand(clientMock, CHANNEL);
+        sut.add(true, ban, "*!*@kitteh.ORG");
+        sut.add(true, ban, "*!*@purr");
+        sut.add(false, ban, "*!*@PURR");
+        sut.add(true, ban, "*!*@Purr");
+        sut.execute();
+        Mockito.verify(clientMock, Mockito.times(1)).sendRawLine("MODE " + CHANNEL + " +b *!*@Purr");
+        Mockito.verify(clientMock, Mockito.times(1)).sendRawLine(Mockito.anyString());
+    }
+
+    @Test
+    public void testOnlyNoOpChanges() {
+        List<ModeStatus<ChannelMode>> channelModes = new ArrayList<>();
+        Client clientMock = this.getClient(Mockito.mock(Channel.class), channelModes);
+        ChannelMode moderated = this.getChannelMode('m', clientMock, ChannelMode.Type.D_PARAMETER_NEVER);
+        channelModes.add(new ModeStatus<>(true, moderated));
+
+        ChannelModeCommand sut = new ChannelModeCommand(clientMock, CHANNEL);
+        sut.add(true, moderated);
+        sut.execute();
+        Mockito.verify(clientMock, Mockito.never()).sendRawLine(Mockito.anyString());
+    }
+
+    @Test
+    public void testUnknownModesNotDropped() {
+        Client clientMock = this.getClient();
+        ChannelMode moderated = this.getChannelMode('m', clientMock, ChannelMode.Type.D_PARAMETER_NEVER);
+        ChannelMode limit = this.getChannelMode('l', clientMock, ChannelMode.Type.C_PARAMETER_ON_SET);
+
+        ChannelModeCommand sut = new ChannelModeCommand(clientMock, CHANNEL);
+        sut.add(false, moderated);
+        sut.add(false, limit);
+        sut.execute();
+        Mockito.verify(clientMock, Mockito.times(1)).sendRawLine("MODE " + CHANNEL + " -ml");
+    }
+
+    @Test
+    public void testLinePacking() {
+        Client clientMock = this.getClient();
+        ISupportParameter.Modes modes = Mockito.mock(ISupportParameter.Modes.class);
+        Mockito.when(clientMock.getServerInfo().getISupportParameter("MODES", ISupportParameter.Modes.class)).thenReturn(Optional.of(modes));
+        Mockito.when(modes.getInteger()).thenReturn(100);
+        ChannelUserMode op = this.getChannelUserMode('o', clientMock, ChannelMode.Type.B_PARAMETER_ALWAYS);
+
+        ChannelModeCommand sut = new ChannelModeCommand(clientMock, CHANNEL);
+        for (int i = 0; i < 100; i++) {
+            sut.add(true, op, String.format("kitten%024d", i));
+        }
+        sut.execute();
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(clientMock, Mockito.atLeastOnce()).sendRawLine(captor.capture());
+        int total = 0;
+        for (String line : captor.getAllValues()) {
+            Assert.assertTrue(line.length() <= 510);
+            total += line.split(" ").length - 3;
+        }
+        Assert.assertEquals(100, total);
+        Assert.assertEquals(7, captor.getAllValues().size());
+    }
+
+    @Test
+    public void testLinePackingMultiByte() {
+        Client clientMock = this.getClient();
+        ISupportParameter.Modes modes = Mockito.mock(ISupportParameter.Modes.class);
+        Mockito.when(clientMock.getServerInfo().getISupportParameter("MODES", ISupportParameter.Modes.class)).thenReturn(Optional.of(modes));
+        Mockito.when(modes.getInteger()).thenReturn(100);
+        ChannelUserMode op = this.getChannelUserMode('o', clientMock, ChannelMode.Type.B_PARAMETER_ALWAYS);
+
+        ChannelModeCommand sut = new ChannelModeCommand(clientMock, CHANNEL);
+        for (int i = 0; i < 100; i++) {
+            sut.add(true, op, String.format("\u00fc\u00fc\u00fc\u00fc\u00fc%025d", i));
+        }
+        sut.execute();
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(clientMock, Mockito.atLeastOnce()).sendRawLine(captor.capture());
+        for (String line : captor.getAllValues()) {
+            Assert.assertTrue(line.getBytes(StandardCharsets.UTF_8).length <= 510);
+        }
+        Assert.assertEquals(8, captor.getAllValues().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResponseMatching() {
+        Client clientMock = this.getClient();
+        Mockito.when(clientMock.sendRawLineWithResponse(Mockito.anyString(), Mockito.any(), Mockito.any())).thenReturn(new CompletableFuture<>());
+        ArgumentCaptor<Predicate<ClientReceiveServerMessageEvent>> isResponse = ArgumentCaptor.forClass((Class) Predicate.class);
+
+        new ChannelModeCommand(clientMock, CHANNEL).executeWithResponse();
+        Mockito.verify(clientMock).sendRawLineWithResponse(Mockito.eq("MODE " + CHANNEL), isResponse.capture(), Mockito.any());
+        Assert.assertTrue(isResponse.getValue().test(this.getNumericEvent(324, "me", CHANNEL, "+nt")));
+        Assert.assertTrue(isResponse.getValue().test(this.getNumericEvent(403, "me", CHANNEL, "No such channel")));
+        Assert.assertFalse(isResponse.getValue().test(this.getNumericEvent(352, "me", CHANNEL, "kitteh", "host", "server", "kitteh", "H", "0 Kitteh")));
+        Assert.assertFalse(isResponse.getValue().test(this.getNumericEvent(366, "me", CHANNEL, "End of /NAMES list.")));
+
+        ChannelModeCommand sut = new ChannelModeCommand(clientMock, CHANNEL);
+        sut.add(true, this.getChannelUserMode('o', clientMock, ChannelMode.Type.B_PARAMETER_ALWAYS), "ghost");
+        sut.executeWithResponse();
+        Mockito.verify(clientMock).sendRawLineWithResponse(Mockito.eq("MODE " + CHANNEL + " +o ghost"), isResponse.capture(), Mockito.any());
+        Assert.assertTrue(isResponse.getValue().test(this.getNumericEvent(401, "me", "ghost", "No such nick/channel")));
+        Assert.assertTrue(isResponse.getValue().test(this.getNumericEvent(482, "me", CHANNEL, "You're not channel operator")));
+        Assert.assertFalse(isResponse.getValue().test(this.getNumericEvent(401, "me", "other", "No such nick/channel")));
+        Assert.assertFalse(isResponse.getValue().test(this.getNumericEvent(366, "me", CHANNEL, "End of /NAMES list.")));
+    }
+
+    private ClientReceiveNumericEvent getNumericEvent(int numeric, String... parameters) {
+        ClientReceiveNumericEvent event = Mockito.mock(ClientReceiveNumericEvent.class);
+        Mockito.when(event.getNumeric()).thenReturn(numeric);
+        Mockito.when(event.getCommand()).thenReturn(String.valueOf(numeric));
+        Mockito.when(event.getParameters()).thenReturn(Arrays.asList(parameters));
+        return event;
+    }
+
     private ChannelMode getChannelMode(char c, Client client, ChannelMode.Type type) {
         return new ChannelMode() {
             @Override
@@ -0,0 +1,169 @@
+package org.kitteh.irc.client.library.feature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the ListenerChannel.
+ */
+public class ListenerChannelTest {
+    /**
+     * Tests items being delivered in order, in batches, to their listeners.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testBatches() throws InterruptedException {
+        ListenerChannel channel = new ListenerChannel("Test", 1024, 1024, ListenerChannel.OverflowPolicy.BLOCK);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(201);
+        AtomicInteger batches = new AtomicInteger();
+        List<Integer> a = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> b = Collections.synchronizedList(new ArrayList<>());
+        ListenerChannel.Endpoint<Integer> endpointA = channel.open(batch -> {
+            started.countDown();
+            await(release);
+            batches.incrementAndGet();
+            a.addAll(batch);
+            batch.forEach(item -> done.countDown());
+        });
+        ListenerChannel.Endpoint<Integer> endpointB = channel.open(batch -> {
+            batches.incrementAndGet();
+            b.addAll(batch);
+            batch.forEach(item -> done.countDown());
+        });
+        endpointA.queue(-1);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            endpointA.queue(i);
+            endpointB.queue(i);
+        }
+        endpointA.close();
+        endpointB.close();
+        endpointB.queue(1000); // Ignored once closed
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i);
+        }
+        Assert.assertEquals(expected, b);
+        expected.add(0, -1);
+        Assert.assertEquals(expected, a);
+        Assert.assertEquals(3, batches.get());
+        Assert.assertEquals(0, channel.getDroppedCount());
+    }
+
+    /**
+     * Tests dropping items when full.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testDrop() throws InterruptedException {
+        List<Integer> received = this.fillBlocked(ListenerChannel.OverflowPolicy.DROP, 4, 10);
+        Assert.assertEquals(5, received.size());
+    }
+
+    /**
+     * Checks the shared default channel never blocks the clients queueing
+     * to it.
+     */
+    @Test
+    public void testDefaultDoesNotBlock() {
+        Assert.assertNotEquals(ListenerChannel.OverflowPolicy.BLOCK, ListenerChannel.getDefault().getPolicy());
+    }
+
+    /**
+     * Tests sampling items when nearly full.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testSample() throws InterruptedException {
+        List<Integer> received = this.fillBlocked(ListenerChannel.OverflowPolicy.SAMPLE, 8, 46);
+        // First item, six until three quarters full, then one in sixteen until full
+        Assert.assertEquals(9, received.size());
+        Assert.assertEquals(Integer.valueOf(7), received.get(7));
+        Assert.assertEquals(Integer.valueOf(23), received.get(8));
+    }
+
+    /**
+     * Tests a listener queueing items from the channel's thread while full.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testQueueFromListener() throws InterruptedException {
+        ListenerChannel channel = new ListenerChannel("Test", 1, 1, ListenerChannel.OverflowPolicy.BLOCK);
+        CountDownLatch done = new CountDownLatch(5);
+        ListenerChannel.Endpoint<String> echo = channel.open(batch -> batch.forEach(item -> done.countDown()));
+        ListenerChannel.Endpoint<String> source = channel.open(batch -> {
+            for (int i = 0; i < 5; i++) {
+                echo.queue("echo");
+            }
+        });
+        source.queue("go");
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        source.close();
+        echo.close();
+        Assert.assertEquals(0, channel.getDroppedCount());
+    }
+
+    private List<Integer> fillBlocked(ListenerChannel.OverflowPolicy policy, int capacity, int extra) throws InterruptedException {
+        ListenerChannel channel = new ListenerChannel("Test", capacity, capacity, policy);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        ListenerChannel.Endpoint<Integer> endpoint = channel.open(batch -> {
+            started.countDown();
+            await(release);
+            received.addAll(batch);
+        });
+        endpoint.queue(0);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= extra; i++) {
+            endpoint.queue(i);
+        }
+        int expectedDropped = extra - (this.countKept(policy, capacity, extra));
+        Assert.assertEquals(expectedDropped, channel.getDroppedCount());
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((received.size() <= (extra - expectedDropped)) && (System.nanoTime() < deadline)) {
+            Thread.sleep(10);
+        }
+        endpoint.close();
+        return received;
+    }
+
+    private int countKept(ListenerChannel.OverflowPolicy policy, int capacity, int extra) {
+        if (policy == ListenerChannel.OverflowPolicy.DROP) {
+            return Math.min(extra, capacity);
+        }
+        int kept = 0;
+        int sample = 0;
+        for (int i = 0; (i < extra) && (kept < capacity); i++) {
+            if ((kept < ((capacity / 4) * 3)) || ((sample++ % ListenerChannel.SAMPLE_RATE) == 0)) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.kitteh.irc.client.library.implementation;
+
+import org.kitteh.irc.client.library.element.mode.ChannelUserMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures the heap retained per tracked user. Not run as part of the
+ * test suite, run it by hand after changing how users or channel
+ * membership are stored:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) \
+ *     org.kitteh.irc.client.library.implementation.ActorProviderFootprint
+ * </pre>
+ * <p>
+ * Tracks {@value #USERS} users across {@value #CHANNELS} channels, each
+ * user in two of them and every tenth an op, with {@value #HOSTS} hosts,
+ * {@value #IDENTS} idents and {@value #SERVERS} servers, every string
+ * freshly built as if parsed off the wire. Heap use is read after
+ * repeated garbage collection, first with the users tracked and then
+ * while also holding a snapshot of every user and channel.
+ * <p>
+ * Results on JDK 8 (64-bit, compressed oops), bytes per user:
+ * <table summary="Results">
+ * <tr><th></th><th>Tracked</th><th>Tracked and snapshotted</th></tr>
+ * <tr><td>Before compacting</td><td>1115</td><td>2048</td></tr>
+ * <tr><td>After compacting</td><td>622</td><td>1242</td></tr>
+ * </table>
+ */
+final class ActorProviderFootprint {
+    private static final int USERS = 50000;
+    private static final int CHANNELS = 5;
+    private static final int HOSTS = 500;
+    private static final int IDENTS = 200;
+    private static final int SERVERS = 10;
+
+    public static void main(String[] args) throws InterruptedException {
+        FakeClient client = new FakeClient();
+        long baseline = usedMemory();
+
+        ActorProvider provider = new ActorProvider(client);
+        populate(provider, client.getServerInfo().getChannelUserModes());
+        long tracked = usedMemory() - baseline;
+
+        List<Object> snapshots = new ArrayList<>(USERS + CHANNELS);
+        for (int i = 0; i < USERS; i++) {
+            snapshots.add(provider.getUser("user" + i).snapshot());
+        }
+        for (ActorProvider.IRCChannel channel : provider.getTrackedChannels()) {
+            snapshots.add(channel.snapshot());
+        }
+        long snapshotted = usedMemory() - baseline;
+
+        System.out.println("Tracked:                 " + (tracked / USERS) + " bytes per user");
+        System.out.println("Tracked and snapshotted: " + (snapshotted / USERS) + " bytes per user");
+        // Keep everything measured reachable until here
+        System.out.println("(" + provider.getTrackedChannels().size() + " channels, " + snapshots.size() + " snapshots)");
+    }
+
+    private static void populate(ActorProvider provider, List<ChannelUserMode> prefixes) {
+        ChannelUserMode op = prefixes.stream().filter(mode -> mode.getChar() == 'o').findFirst().orElseThrow(IllegalStateException::new);
+        List<ActorProvider.IRCChannel> channels = new ArrayList<>(CHANNELS);
+        for (int i = 0; i < CHANNELS; i++) {
+            ActorProvider.IRCChannel channel = provider.getChannel("#channel" + i);
+            provider.trackChannel(channel);
+            channels.add(channel);
+        }
+        for (int i = 0; i < USERS; i++) {
+            String mask = "user" + i + "!ident" + (i % IDENTS) + "@host" + (i % HOSTS) + ".example.com";
+            ActorProvider.IRCUser user = (ActorProvider.IRCUser) provider.getActor(mask);
+            Set<ChannelUserMode> modes = ((i % 10) == 0) ? Collections.singleton(op) : Collections.emptySet();
+            channels.get(i % CHANNELS).trackUser(user, modes);
+            channels.get((i + 1) % CHANNELS).trackUser(user, Collections.emptySet());
+            user.setServer("server" + (i % SERVERS) + ".example.com");
+            user.setRealName("Real Name " + i);
+            user.setAccount("account" + i);
+        }
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,199 @@
+package org.kitteh.irc.client.library.implementation;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitteh.irc.client.library.element.Channel;
+import org.kitteh.irc.client.library.element.User;
+import org.kitteh.irc.client.library.element.mode.ChannelMode;
+import org.kitteh.irc.client.library.element.mode.ChannelUserMode;
+import org.kitteh.irc.client.library.element.mode.ModeInfo;
+import org.kitteh.irc.client.library.util.Mask;
+import org.kitteh.irc.client.library.util.MaskIndex;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the ActorProvider's compact user and channel tracking.
+ */
+public class ActorProviderTest {
+    /**
+     * Tests that hosts and idents are shared and masks are built on request.
+     */
+    @Test
+    public void testUserDeduplication() {
+        ActorProvider provider = new ActorProvider(new FakeClient());
+        ActorProvider.IRCUser one = (ActorProvider.IRCUser) provider.getActor("One!" + new String("~ident") + '@' + new String("cloak.example"));
+        ActorProvider.IRCUser two = (ActorProvider.IRCUser) provider.getActor("Two!" + new String("~ident") + '@' + new String("cloak.example"));
+        User snapshotOne = one.snapshot();
+        User snapshotTwo = two.snapshot();
+        Assert.assertSame(snapshotOne.getHost(), snapshotTwo.getHost());
+        Assert.assertSame(snapshotOne.getUserString(), snapshotTwo.getUserString());
+        Assert.assertEquals("One!~ident@cloak.example", snapshotOne.getName());
+        Assert.assertEquals("One", snapshotOne.getNick());
+
+        one.setHost("other.example");
+        Assert.assertEquals("One!~ident@other.example", one.getName());
+        Assert.assertEquals("One!~ident@other.example", one.snapshot().getName());
+        Assert.assertEquals("One!~ident@cloak.example", snapshotOne.getName());
+    }
+
+    /**
+     * Tests channel user modes surviving the packed representation.
+     */
+    @Test
+    public void testChannelUserModes() {
+        FakeClient client = new FakeClient();
+        ActorProvider provider = new ActorProvider(client);
+        List<ChannelUserMode> modes = client.getServerInfo().getChannelUserModes();
+        ChannelUserMode op = modes.get(0);
+        ChannelUserMode voice = modes.get(1);
+        ActorProvider.IRCChannel channel = provider.getChannel("#kitteh");
+        provider.trackChannel(channel);
+        channel.trackUser((ActorProvider.IRCUser) provider.getActor("One!a@b"), new HashSet<>(Arrays.asList(voice, op)));
+        channel.trackUser((ActorProvider.IRCUser) provider.getActor("Two!a@b"), Collections.emptySet());
+        channel.trackUserModeAdd("Two", voice);
+
+        Channel snapshot = channel.snapshot();
+        Assert.assertEquals(Arrays.asList(op, voice), Arrays.asList(snapshot.getUserModes("one").get().toArray()));
+        Assert.assertEquals(Collections.singleton(voice), snapshot.getUserModes("Two").get());
+
+        channel.trackUserModeRemove("One", op);
+        channel.trackUserModeRemove("Two", voice);
+        snapshot = channel.snapshot();
+        Assert.assertEquals(Collections.singleton(voice), snapshot.getUserModes("One").get());
+        Assert.assertTrue(snapshot.getUserModes("Two").get().isEmpty());
+    }
+
+    /**
+     * Tests the mode info index being shared by snapshots until the list
+     * changes, rather than rebuilt whenever users come and go.
+     */
+    @Test
+    public void testModeInfoIndexReuse() {
+        FakeClient client = new FakeClient();
+        ActorProvider provider = new ActorProvider(client);
+        ChannelMode ban = client.getServerInfo().getChannelModes().stream().filter(mode -> mode.getChar() == 'b').findFirst().get();
+        ActorProvider.IRCChannel channel = provider.getChannel("#kitteh");
+        provider.trackChannel(channel);
+        channel.trackMode(ban, true);
+        channel.setModeInfoList('b', Collections.singletonList(this.getModeInfo(ban, "*!*@cat.example")));
+
+        MaskIndex<ModeInfo> index = channel.snapshot().getModeInfoIndex(ban).get();
+        Assert.assertEquals(1, index.getMatches("kitteh", "meow", "cat.example").size());
+        channel.trackUser((ActorProvider.IRCUser) provider.getActor("Joiner!a@b"), Collections.emptySet());
+        Assert.assertSame(index, channel.snapshot().getModeInfoIndex(ban).get());
+
+        channel.trackModeInfo(true, this.getModeInfo(ban, "*!*@dog.example"));
+        MaskIndex<ModeInfo> updated = channel.snapshot().getModeInfoIndex(ban).get();
+        Assert.assertNotSame(index, updated);
+        Assert.assertEquals(2, updated.size());
+    }
+
+    private ModeInfo getModeInfo(ChannelMode mode, String mask) {
+        ModeInfo info = Mockito.mock(ModeInfo.class);
+        Mockito.when(info.getMode()).thenReturn(mode);
+        Mockito.when(info.getMask()).thenReturn(Mask.fromString(mask));
+        return info;
+    }
+
+    /**
+     * Tests snapshot reuse and staleness by version.
+     */
+    @Test
+    public void testSnapshotVersions() {
+        ActorProvider provider = new ActorProvider(new FakeClient());
+        ActorProvider.IRCUser user = (ActorProvider.IRCUser) provider.getActor("One!a@b");
+        provider.trackUser(user);
+        User first = user.snapshot();
+        Assert.assertSame(first, user.snapshot());
+        Assert.assertFalse(first.isStale());
+
+        user.setAway(true);
+        Assert.assertTrue(first.isStale());
+        User second = user.snapshot();
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(second.isAway());
+        Assert.assertFalse(second.isStale());
+    }
+
+    /**
+     * Tests readers building snapshots while the processing thread writes.
+     */
+    @Test
+    public void testConcurrentSnapshots() throws Exception {
+        ActorProvider provider = new ActorProvider(new FakeClient());
+        ActorProvider.IRCChannel channel = provider.getChannel("#kitteh");
+        provider.trackChannel(channel);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        channel.snapshot().getUsers();
+                    }
+                } catch (Throwable thrown) {
+                    failure.set(thrown);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 0; i < 2000; i++) {
+            channel.trackUser((ActorProvider.IRCUser) provider.getActor("User" + i + "!a@b"), Collections.emptySet());
+            if ((i % 3) == 0) {
+                channel.trackUserPart("User" + (i / 2));
+            }
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertNull(failure.get());
+        Channel snapshot = channel.snapshot();
+        Assert.assertFalse(snapshot.isStale());
+        Assert.assertSame(snapshot, channel.snapshot());
+        Assert.assertEquals(snapshot.getNicknames().size(), snapshot.getUsers().size());
+    }
+
+    /**
+     * Tests the cached channel set and queries served from live state.
+     */
+    @Test
+    public void testChannelQueries() {
+        ActorProvider provider = new ActorProvider(new FakeClient());
+        ActorProvider.IRCChannel kitteh = provider.getChannel("#kitteh");
+        ActorProvider.IRCChannel meow = provider.getChannel("#meow");
+        provider.trackChannel(kitteh);
+        provider.trackChannel(meow);
+        ActorProvider.IRCUser user = (ActorProvider.IRCUser) provider.getActor("One!a@b");
+        kitteh.trackUser(user, Collections.emptySet());
+
+        Set<Channel> channels = provider.getTrackedChannelSnapshots();
+        Assert.assertEquals(2, channels.size());
+        Assert.assertSame(channels, provider.getTrackedChannelSnapshots());
+
+        Assert.assertEquals(1, provider.getMemberCount("#KITTEH"));
+        Assert.assertEquals(0, provider.getMemberCount("#meow"));
+        Assert.assertEquals(-1, provider.getMemberCount("#absent"));
+        Assert.assertTrue(provider.isInChannel("#kitteh", "one"));
+        Assert.assertFalse(provider.isInChannel("#meow", "One"));
+        Assert.assertEquals(Collections.singleton("#kitteh"), provider.getChannelNames("One"));
+
+        meow.trackUser(user, Collections.emptySet());
+        Set<Channel> updated = provider.getTrackedChannelSnapshots();
+        Assert.assertNotSame(channels, updated);
+        Assert.assertTrue(updated.contains(meow.snapshot()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("#kitteh", "#meow")), provider.getChannelNames("One"));
+        Assert.assertEquals(provider.getChannelNames("One"), user.snapshot().getChannels());
+    }
+}
@@ -0,0 +1,186 @@
+package org.kitteh.irc.client.library.implementation;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitteh.irc.client.library.element.MessageTag;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.event.client.ClientBatchEvent;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Tests the BatchHandler.
+ */
+public class BatchHandlerTest {
+    private InternalClient client;
+    private ManagerEvent eventManager;
+    private Listener<Exception> exceptionListener;
+    private BatchHandler handler;
+    private List<String> processed;
+
+    /**
+     * Sets up a handler fed by a minimal line processor.
+     */
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        this.client = Mockito.mock(InternalClient.class);
+        this.eventManager = Mockito.mock(ManagerEvent.class);
+        this.exceptionListener = Mockito.mock(Listener.class);
+        Mockito.when(this.client.getEventManager()).thenReturn(this.eventManager);
+        Mockito.when(this.client.getExceptionListener()).thenReturn(this.exceptionListener);
+        this.handler = new BatchHandler(this.client, this::feed);
+        this.processed = new ArrayList<>();
+    }
+
+    /**
+     * Tests a chathistory batch arriving as one event without its members
+     * being processed, and a netsplit batch whose members are processed
+     * after its event.
+     */
+    @Test
+    public void testChathistory() {
+        final int lineCount = 100;
+        this.feed(":server BATCH +hist chathistory Kitteh");
+        for (int i = 0; i < lineCount; i++) {
+            this.feed("@batch=hist :cat!~c@host PRIVMSG Kitteh :meow " + i);
+        }
+        this.feed(":server BATCH -hist");
+        Assert.assertTrue(this.processed.isEmpty());
+
+        this.feed(":server BATCH +split netsplit a b");
+        this.feed("@batch=split :purr!~p@host QUIT :a b");
+        this.feed("@batch=split :hiss!~h@host QUIT :a b");
+        Assert.assertTrue(this.processed.isEmpty());
+        this.feed(":server BATCH -split");
+        Assert.assertEquals(Arrays.asList("@batch=split :purr!~p@host QUIT :a b", "@batch=split :hiss!~h@host QUIT :a b"), this.processed);
+
+        List<ClientBatchEvent> events = this.getEvents();
+        Assert.assertEquals(2, events.size());
+        ClientBatchEvent history = events.get(0);
+        Assert.assertEquals("hist", history.getReferenceId());
+        Assert.assertEquals("chathistory", history.getType());
+        Assert.assertEquals(Collections.singletonList("Kitteh"), history.getParameters());
+        Assert.assertEquals(lineCount, history.getMessages().size());
+        Assert.assertFalse(history.isProcessingMessages());
+        Assert.assertTrue(events.get(1).isProcessingMessages());
+    }
+
+    /**
+     * Tests a nested batch being held by its enclosing batch, so it opens
+     * and closes in order when the enclosing batch is processed, and the
+     * enclosing event includes it.
+     */
+    @Test
+    public void testNested() {
+        this.feed(":server BATCH +outer netsplit a b");
+        this.feed("@batch=outer :server BATCH +inner netjoin a b");
+        this.feed("@batch=inner :kitteh!~k@host JOIN #kitteh");
+        this.feed("@batch=outer :purr!~p@host QUIT :a b");
+        this.feed("@batch=outer :server BATCH -inner");
+        this.feed("@batch=outer :hiss!~h@host QUIT :a b");
+        Assert.assertTrue(this.processed.isEmpty());
+        this.feed(":server BATCH -outer");
+
+        // The inner batch is processed as a unit where it closes
+        Assert.assertEquals(Arrays.asList("@batch=outer :purr!~p@host QUIT :a b", "@batch=inner :kitteh!~k@host JOIN #kitteh", "@batch=outer :hiss!~h@host QUIT :a b"), this.processed);
+        List<ClientBatchEvent> events = this.getEvents();
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("outer", events.get(0).getReferenceId());
+        Assert.assertEquals(5, events.get(0).getMessages().size());
+        Assert.assertEquals("inner", events.get(1).getReferenceId());
+        Assert.assertEquals(1, events.get(1).getMessages().size());
+    }
+
+    /**
+     * Tests a nested batch whose closing line isn't tagged.
+     */
+    @Test
+    public void testNestedUntaggedClose() {
+        this.feed(":server BATCH +outer example");
+        this.feed("@batch=outer :server BATCH +inner example");
+        this.feed("@batch=inner :kitteh!~k@host PRIVMSG #kitteh :meow");
+        this.feed(":server BATCH -inner");
+        this.feed("@batch=outer :purr!~p@host PRIVMSG #kitteh :purr");
+        this.feed(":server BATCH -outer");
+
+        Assert.assertEquals(Arrays.asList("@batch=inner :kitteh!~k@host PRIVMSG #kitteh :meow", "@batch=outer :purr!~p@host PRIVMSG #kitteh :purr"), this.processed);
+        Assert.assertEquals(2, this.getEvents().size());
+    }
+
+    /**
+     * Tests unclosed batches being given up on once too many are open.
+     */
+    @Test
+    public void testOpenLimit() {
+        this.feed(":server BATCH +first example");
+        this.feed("@batch=first :kitteh!~k@host PRIVMSG #kitteh :meow");
+        for (int i = 1; i < BatchHandler.MAX_OPEN_BATCHES; i++) {
+            this.feed(":server BATCH +b" + i + " example");
+        }
+        Assert.assertTrue(this.processed.isEmpty());
+        this.feed(":server BATCH +last example");
+        Assert.assertEquals(Collections.singletonList("@batch=first :kitteh!~k@host PRIVMSG #kitteh :meow"), this.processed);
+        Mockito.verify(this.exceptionListener, Mockito.times(1)).queue(Mockito.any());
+    }
+
+    /**
+     * Tests an unclosed batch being given up on once it holds too much.
+     */
+    @Test
+    public void testHeldLimit() {
+        this.feed(":server BATCH +flood example");
+        for (int i = 0; i < BatchHandler.MAX_HELD_MESSAGES; i++) {
+            this.feed("@batch=flood :kitteh!~k@host PRIVMSG #kitteh :" + i);
+        }
+        Assert.assertTrue(this.processed.isEmpty());
+        this.feed("@batch=flood :kitteh!~k@host PRIVMSG #kitteh :more");
+        Assert.assertEquals(BatchHandler.MAX_HELD_MESSAGES + 1, this.processed.size());
+        this.feed("@batch=flood :kitteh!~k@host PRIVMSG #kitteh :after");
+        Assert.assertEquals(BatchHandler.MAX_HELD_MESSAGES + 2, this.processed.size());
+    }
+
+    private List<ClientBatchEvent> getEvents() {
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(this.eventManager, Mockito.atLeastOnce()).callEvent(captor.capture());
+        return captor.getAllValues().stream().filter(ClientBatchEvent.class::isInstance).map(ClientBatchEvent.class::cast).collect(Collectors.toList());
+    }
+
+    // A cut down IRCClient#handleLine, only understanding batch tags
+    private void feed(String line) {
+        List<MessageTag> tags = new ArrayList<>();
+        String rest = line;
+        if (line.startsWith("@batch=")) {
+            MessageTag tag = Mockito.mock(MessageTag.class);
+            Mockito.when(tag.getName()).thenReturn("batch");
+            Mockito.when(tag.getValue()).thenReturn(Optional.of(line.substring(7, line.indexOf(' '))));
+            tags.add(tag);
+            rest = line.substring(line.indexOf(' ') + 1);
+        }
+        List<String> split = Arrays.asList(rest.split(" "));
+        String command = split.get(1);
+        List<String> args = split.subList(2, split.size());
+        ServerMessage message = new IRCServerMessage(line, tags);
+        if ((!tags.isEmpty() || "BATCH".equals(command)) && this.handler.collect(message, command, args)) {
+            return;
+        }
+        if ("BATCH".equals(command)) {
+            String referenceId = args.get(0).substring(1);
+            if (args.get(0).charAt(0) == '+') {
+                this.handler.open(message, referenceId, args.get(1), args.subList(2, args.size()));
+            } else {
+                this.handler.close(message, referenceId);
+            }
+        } else {
+            this.processed.add(line);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.kitteh.irc.client.library.event.client.ClientReceiveCommandEvent;
 import org.kitteh.irc.client.library.event.user.UserHostnameChangeEvent;
 import org.kitteh.irc.client.library.event.user.UserUserStringChangeEvent;
 import org.kitteh.irc.client.library.exception.KittehServerMessageException;
+import org.kitteh.irc.client.library.feature.CaseMapping;
 import org.kitteh.irc.client.library.feature.EventManager;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
@@ -135,6 +136,10 @@ public class CHGHOSTTest {
 
         final ActorProvider actorProviderMock = Mockito.mock(ActorProvider.class);
         Mockito.when(internalClient.getActorProvider()).thenReturn(actorProviderMock);
+        final IRCServerInfo serverInfoMock = Mockito.mock(IRCServerInfo.class);
+        Mockito.when(serverInfoMock.getCaseMapping()).thenReturn(CaseMapping.ASCII);
+        Mockito.when(internalClient.getServerInfo()).thenReturn(serverInfoMock);
+        Mockito.when(internalClient.getWhoisManager()).thenReturn(new ManagerWhois(internalClient));
 
         ActorProvider.IRCUser ircUser = Mockito.mock(ActorProvider.IRCUser.class);
         Mockito.when(ircUser.getNick()).thenReturn("Kitteh");
@@ -0,0 +1,164 @@
+package org.kitteh.irc.client.library.implementation;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitteh.irc.client.library.element.CapabilityState;
+import org.kitteh.irc.client.library.feature.CaseMapping;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests the ChannelInfoScheduler.
+ */
+public class ChannelInfoSchedulerTest {
+    private InternalClient client;
+    private ActorProvider actorProvider;
+    private ManagerCapability capabilityManager;
+    private ChannelInfoScheduler scheduler;
+
+    /**
+     * Sets up a client with a real actor provider.
+     */
+    @Before
+    public void before() {
+        this.client = Mockito.mock(InternalClient.class);
+        IRCServerInfo serverInfo = Mockito.mock(IRCServerInfo.class);
+        Mockito.when(serverInfo.getCaseMapping()).thenReturn(CaseMapping.ASCII);
+        Mockito.when(serverInfo.getTargetLimits()).thenReturn(new HashMap<>());
+        Mockito.when(serverInfo.isValidChannel(Mockito.anyString())).thenAnswer(invocation -> ((String) invocation.getArguments()[0]).startsWith("#"));
+        Mockito.when(this.client.getServerInfo()).thenReturn(serverInfo);
+        this.actorProvider = new ActorProvider(this.client);
+        Mockito.when(this.client.getActorProvider()).thenReturn(this.actorProvider);
+        this.capabilityManager = new ManagerCapability(this.client);
+        Mockito.when(this.client.getCapabilityManager()).thenReturn(this.capabilityManager);
+        this.scheduler = new ChannelInfoScheduler(this.client);
+    }
+
+    /**
+     * Tests queries being sent a couple at a time, MODE first.
+     */
+    @Test
+    public void testOutstandingLimit() {
+        ActorProvider.IRCChannel first = this.join("#first", "Kitteh!k@host");
+        ActorProvider.IRCChannel second = this.join("#second", "Kitteh!k@host");
+        this.scheduler.namesComplete(first);
+        this.scheduler.namesComplete(second);
+        Mockito.verify(this.client).sendRawLine("MODE #first");
+        Mockito.verify(this.client).sendRawLine("MODE #second");
+        Mockito.verify(this.client, Mockito.times(2)).sendRawLine(Mockito.anyString());
+
+        this.scheduler.modeComplete("#first");
+        Mockito.verify(this.client).sendRawLine("WHO #first");
+        this.scheduler.whoComplete("#first");
+        this.scheduler.modeComplete("#second");
+        Mockito.verify(this.client).sendRawLine("WHO #second");
+    }
+
+    /**
+     * Tests a channel asked about jumping the queue, and each channel being
+     * queried exactly once.
+     */
+    @Test
+    public void testPrioritize() {
+        final int channelCount = 20;
+        List<String> sent = new ArrayList<>();
+        Mockito.doAnswer(invocation -> sent.add((String) invocation.getArguments()[0])).when(this.client).sendRawLine(Mockito.anyString());
+        for (int i = 0; i < channelCount; i++) {
+            this.scheduler.namesComplete(this.join("#kicl" + i, "Kitteh!k@host"));
+        }
+        this.scheduler.prioritize("#kicl12");
+        for (int answered = 0; answered < (2 * channelCount); answered++) {
+            Assert.assertTrue("Queries stalled", sent.size() > answered);
+            Assert.assertTrue("Too many outstanding", sent.size() <= (answered + 2));
+            String query = sent.get(answered);
+            String channel = query.substring(query.indexOf(' ') + 1);
+            if (query.startsWith("MODE")) {
+                this.scheduler.modeComplete(channel);
+            } else {
+                this.scheduler.whoComplete(channel);
+            }
+        }
+        Assert.assertEquals(2 * channelCount, sent.size());
+        Assert.assertEquals(sent.size(), sent.stream().distinct().count());
+        Assert.assertTrue(sent.indexOf("MODE #kicl12") < 4);
+        Assert.assertTrue(sent.indexOf("WHO #kicl12") < 5);
+    }
+
+    /**
+     * Tests WHO being skipped for channels whose members' details are
+     * already known when NAMES completes.
+     */
+    @Test
+    public void testWhoSkippedWithKnownDetails() {
+        this.setCapabilities("multi-prefix", "away-notify", "account-notify", "extended-join", "userhost-in-names");
+        ActorProvider.IRCChannel channel = this.join("#first", "Kitteh!k@host");
+        this.actorProvider.getUser("Kitteh").setHasDetails();
+        this.scheduler.namesComplete(channel);
+        this.scheduler.modeComplete("#first");
+        Mockito.verify(this.client).sendRawLine("MODE #first");
+        Mockito.verify(this.client, Mockito.never()).sendRawLine("WHO #first");
+        Assert.assertTrue(channel.snapshot().hasCompleteUserData());
+    }
+
+    /**
+     * Tests WHO being skipped for a channel whose members' details arrived
+     * from an earlier channel's WHO.
+     */
+    @Test
+    public void testWhoSkippedAfterEarlierWho() {
+        this.setCapabilities("multi-prefix", "away-notify", "account-notify", "extended-join", "userhost-in-names");
+        ActorProvider.IRCChannel first = this.join("#first", "Kitteh!k@host", "Cat!meow@host");
+        ActorProvider.IRCChannel second = this.join("#second", "Kitteh!k@host", "Cat!meow@host");
+        ActorProvider.IRCChannel third = this.join("#third", "Kitteh!k@host", "Dog!woof@host");
+        this.scheduler.namesComplete(first);
+        this.scheduler.namesComplete(second);
+        this.scheduler.namesComplete(third);
+        this.scheduler.modeComplete("#first");
+        this.scheduler.modeComplete("#second");
+        this.scheduler.modeComplete("#third");
+        Mockito.verify(this.client).sendRawLine("WHO #first");
+
+        // WHOX replies for #first
+        Stream.of("Kitteh", "Cat").forEach(nick -> this.actorProvider.getUser(nick).setHasDetails());
+        this.scheduler.whoComplete("#first");
+        Mockito.verify(this.client, Mockito.never()).sendRawLine("WHO #second");
+        Mockito.verify(this.client).sendRawLine("WHO #third");
+        Assert.assertTrue(second.snapshot().hasCompleteUserData());
+        Assert.assertFalse(third.snapshot().hasCompleteUserData());
+    }
+
+    /**
+     * Tests WHO not being skipped without the capabilities keeping user
+     * details current.
+     */
+    @Test
+    public void testWhoNotSkippedWithoutCapabilities() {
+        ActorProvider.IRCChannel channel = this.join("#first", "Kitteh!k@host");
+        this.actorProvider.getUser("Kitteh").setHasDetails();
+        this.scheduler.namesComplete(channel);
+        this.scheduler.modeComplete("#first");
+        Mockito.verify(this.client).sendRawLine("WHO #first");
+    }
+
+    private ActorProvider.IRCChannel join(String name, String... members) {
+        ActorProvider.IRCChannel channel = this.actorProvider.getChannel(name);
+        this.actorProvider.trackChannel(channel);
+        for (String member : members) {
+            channel.trackUser((ActorProvider.IRCUser) this.actorProvider.getActor(member), Collections.emptySet());
+        }
+        this.scheduler.joined(name);
+        return channel;
+    }
+
+    private void setCapabilities(String... capabilities) {
+        List<CapabilityState> states = Stream.of(capabilities).map(capability -> new ManagerCapability.IRCCapabilityState(this.client, capability)).collect(Collectors.toList());
+        this.capabilityManager.setCapabilities(states);
+    }
+}
@@ -1,22 +1,35 @@
 package org.kitteh.irc.client.library.implementation;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.kitteh.irc.client.library.element.ISupportParameter;
+import org.kitteh.irc.client.library.element.WhoisData;
+import org.kitteh.irc.client.library.event.channel.ChannelJoinEvent;
 import org.kitteh.irc.client.library.event.client.ClientConnectedEvent;
 import org.kitteh.irc.client.library.event.client.ClientReceiveCommandEvent;
 import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
+import org.kitteh.irc.client.library.event.user.NetjoinEvent;
+import org.kitteh.irc.client.library.event.user.NetsplitEvent;
+import org.kitteh.irc.client.library.event.user.UserQuitEvent;
 import org.kitteh.irc.client.library.event.user.WallopsEvent;
 import org.kitteh.irc.client.library.exception.KittehServerMessageException;
 import org.kitteh.irc.client.library.feature.CaseMapping;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
 import org.kitteh.irc.client.library.util.StringUtil;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mockito;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 /**
@@ -36,7 +49,7 @@ public class EventListenerTest {
     public void before() {
         this.client = Mockito.mock(InternalClient.class);
         this.actorProvider = new ActorProvider(this.client);
-        this.eventManager = Mockito.spy(new ManagerEvent(this.client));
+        this.eventManager = Mockito.spy(new ManagerEvent(this.client, EventDispatchRuntime.getDefault(), false));
         this.eventManager.registerEventListener(new EventListener(this.client));
         this.exceptionListener = Mockito.mock(Listener.class);
         this.serverInfo = Mockito.mock(IRCServerInfo.class);
@@ -45,6 +58,8 @@ public class EventListenerTest {
         Mockito.when(this.client.getExceptionListener()).thenReturn(this.exceptionListener);
         Mockito.when(this.serverInfo.getCaseMapping()).thenReturn(CaseMapping.ASCII);
         Mockito.when(this.client.getISupportManager()).thenReturn(new ManagerISupport(this.client));
+        Mockito.when(this.client.getWhoisManager()).thenReturn(new ManagerWhois(this.client));
+        Mockito.when(this.client.getMonitorManager()).thenReturn(new ManagerMonitor(this.client));
     }
 
     // BEGIN TODO - not have this be stolen from IRCClient
@@ -205,6 +220,190 @@ public class EventListenerTest {
         Mockito.verify(this.exceptionListener, Mockito.times(1)).queue(Mockito.argThat(this.exception(KittehServerMessageException.class, "MOTD message of incorrect length")));
     }
 
+    /**
+     * Tests WHOIS lookups sharing replies, interleaving and being cached.
+     */
+    @Test
+    public void testWhoisManager() {
+        Mockito.when(this.client.getNick()).thenReturn("Kitteh");
+        ManagerWhois whoisManager = this.client.getWhoisManager();
+        CompletableFuture<Optional<WhoisData>> meow = whoisManager.getWhois("Meow");
+        Assert.assertSame(meow, whoisManager.getWhois("MEOW"));
+        CompletableFuture<Optional<WhoisData>> purr = whoisManager.getWhois("Purr");
+        CompletableFuture<Optional<WhoisData>> hiss = whoisManager.getWhois("Hiss");
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("WHOIS Meow");
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("WHOIS Purr");
+
+        this.fireLine(":irc.network 311 Kitteh Meow meow cat.house * :Meow Cat");
+        this.fireLine(":irc.network 311 Kitteh Purr purr lap.house * :Purr Cat");
+        this.fireLine(":irc.network 330 Kitteh Meow meowacct :is logged in as");
+        this.fireLine(":irc.network 318 Kitteh Purr :End of /WHOIS list.");
+        this.fireLine(":irc.network 401 Kitteh Hiss :No such nick/channel");
+        this.fireLine(":irc.network 318 Kitteh Meow :End of /WHOIS list.");
+        this.fireLine(":irc.network 318 Kitteh Hiss :End of /WHOIS list.");
+
+        Assert.assertEquals("cat.house", meow.join().get().getHost());
+        Assert.assertEquals("meowacct", meow.join().get().getAccount().get());
+        Assert.assertEquals("lap.house", purr.join().get().getHost());
+        Assert.assertFalse(purr.join().get().getAccount().isPresent());
+        Assert.assertFalse(hiss.join().isPresent());
+
+        Assert.assertSame(meow.join().get(), whoisManager.getWhois("meow").join().get());
+        Mockito.verify(this.client, Mockito.never()).sendRawLine("WHOIS meow");
+        Assert.assertFalse(whoisManager.getCachedWhois("Hiss").isPresent());
+
+        this.fireLine(":Meow!meow@cat.house NICK Woof");
+        Assert.assertFalse(whoisManager.getCachedWhois("Meow").isPresent());
+        Assert.assertTrue(whoisManager.getCachedWhois("Purr").isPresent());
+        this.fireLine(":Purr!purr@lap.house ACCOUNT purracct");
+        Assert.assertFalse(whoisManager.getCachedWhois("Purr").isPresent());
+
+        whoisManager.setTimeToLive(Duration.ZERO);
+        whoisManager.getWhois("Purr");
+        this.fireLine(":irc.network 311 Kitteh Purr purr lap.house * :Purr Cat");
+        this.fireLine(":irc.network 318 Kitteh Purr :End of /WHOIS list.");
+        Assert.assertFalse(whoisManager.getCachedWhois("Purr").isPresent());
+    }
+
+    @Test
+    public void testWhoisManagerLifetime() {
+        Mockito.when(this.client.getNick()).thenReturn("Kitteh");
+        ManagerWhois whoisManager = this.client.getWhoisManager();
+        CompletableFuture<Optional<WhoisData>> lost = whoisManager.getWhois("Meow");
+        whoisManager.expire(System.nanoTime() + ManagerWhois.REQUEST_TIMEOUT_NANOS);
+        Assert.assertTrue(lost.isCompletedExceptionally());
+        whoisManager.getWhois("Meow");
+        Mockito.verify(this.client, Mockito.times(2)).sendRawLine("WHOIS Meow");
+
+        this.fireLine(":irc.network 311 Kitteh Meow meow cat.house * :Meow Cat");
+        this.fireLine(":irc.network 318 Kitteh Meow :End of /WHOIS list.");
+        Assert.assertTrue(whoisManager.getCachedWhois("Meow").isPresent());
+        CompletableFuture<Optional<WhoisData>> purr = whoisManager.getWhois("Purr");
+        whoisManager.disconnected();
+        Assert.assertTrue(purr.isCancelled());
+        Assert.assertFalse(whoisManager.getCachedWhois("Meow").isPresent());
+    }
+
+    /**
+     * Tests the MONITOR list following the nicks wanted within the limit.
+     */
+    @Test
+    public void testMonitorManager() {
+        Mockito.when(this.serverInfo.getMonitorLimit()).thenReturn(3);
+        ManagerMonitor monitorManager = this.client.getMonitorManager();
+        monitorManager.addNick("Meow");
+        monitorManager.addNicks(Arrays.asList("Purr", "Hiss", "meow"));
+        Mockito.verify(this.client, Mockito.never()).sendRawLine(Mockito.anyString());
+
+        this.fireLine(":irc.network 376 Kitteh :End of /MOTD command.");
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("MONITOR + Meow,Purr,Hiss");
+        this.fireLine(":irc.network 376 Kitteh :End of /MOTD command.");
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine(Mockito.anyString());
+
+        monitorManager.addNick("Boss", 5);
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("MONITOR - Hiss");
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("MONITOR + Boss");
+        Assert.assertEquals(Collections.singleton("Hiss"), monitorManager.getOverflowNicks());
+
+        this.fireLine(":irc.network 730 Kitteh :Meow!meow@cat.house,Purr!purr@lap.house");
+        this.fireLine(":irc.network 731 Kitteh :Purr");
+        Assert.assertTrue(monitorManager.isOnline("MEOW"));
+        Assert.assertFalse(monitorManager.isOnline("Purr"));
+        Assert.assertFalse(monitorManager.isOnline("Hiss"));
+        Assert.assertEquals(Collections.singleton("Meow"), monitorManager.getOnlineNicks());
+
+        monitorManager.removeNick("meow");
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("MONITOR - Meow");
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("MONITOR + Hiss");
+        Assert.assertFalse(monitorManager.isOnline("Meow"));
+        Assert.assertTrue(monitorManager.getOverflowNicks().isEmpty());
+
+        this.fireLine(":irc.network 734 Kitteh 2 Hiss :Monitor list is full.");
+        Assert.assertEquals(Collections.singleton("Hiss"), monitorManager.getOverflowNicks());
+
+        // Reconnecting sends everything again, packed into full lines
+        Mockito.when(this.serverInfo.getMonitorLimit()).thenReturn(Integer.MAX_VALUE);
+        monitorManager.disconnected();
+        List<String> nicks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            nicks.add(String.format("Kitten%04d", i));
+        }
+        monitorManager.addNicks(nicks);
+        Mockito.reset(this.client);
+        Mockito.when(this.client.getServerInfo()).thenReturn(this.serverInfo);
+        Mockito.when(this.client.getMonitorManager()).thenReturn(monitorManager);
+        this.fireLine(":irc.network 422 Kitteh :MOTD File is missing");
+        ArgumentCaptor<String> lines = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(this.client, Mockito.times(3)).sendRawLine(lines.capture());
+        Assert.assertTrue(lines.getAllValues().get(0).startsWith("MONITOR + Boss,Purr,Hiss,Kitten0000,"));
+        int monitored = 0;
+        for (String line : lines.getAllValues()) {
+            Assert.assertTrue(line.length() <= 510);
+            monitored += line.substring(10).split(",").length;
+        }
+        Assert.assertEquals(103, monitored);
+    }
+
+    @Test
+    public void testMonitorListFull() {
+        Mockito.when(this.serverInfo.getMonitorLimit()).thenReturn(3);
+        ManagerMonitor monitorManager = this.client.getMonitorManager();
+        monitorManager.addNicks(Arrays.asList("Low", "Lower"));
+        this.fireLine(":irc.network 376 Kitteh :End of /MOTD command.");
+        monitorManager.addNick("High", 10);
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("MONITOR + High");
+
+        // The server's real limit is lower, so the high priority nick displaces a lower one
+        this.fireLine(":irc.network 734 Kitteh 2 High :Monitor list is full.");
+        Mockito.verify(this.client, Mockito.times(1)).sendRawLine("MONITOR - Lower");
+        Mockito.verify(this.client, Mockito.times(2)).sendRawLine("MONITOR + High");
+        Assert.assertEquals(Collections.singleton("Lower"), monitorManager.getOverflowNicks());
+
+        // Refusals at the same limit don't trigger resending
+        this.fireLine(":irc.network 734 Kitteh 2 High :Monitor list is full.");
+        Mockito.verify(this.client, Mockito.times(2)).sendRawLine("MONITOR + High");
+    }
+
+    /**
+     * Tests a netsplit and netjoin burst being batched into one event each
+     * instead of one event per line.
+     */
+    @Test
+    public void testNetsplit() {
+        final int userCount = 50;
+        Mockito.when(this.client.getActorProvider()).thenReturn(this.actorProvider);
+        Mockito.when(this.client.getNick()).thenReturn("Kitteh");
+        Mockito.when(this.serverInfo.isValidChannel(Mockito.anyString())).thenAnswer(invocation -> ((String) invocation.getArguments()[0]).startsWith("#"));
+        ActorProvider.IRCChannel channel = this.actorProvider.getChannel("#kicl");
+        this.actorProvider.trackChannel(channel);
+        channel.trackUser((ActorProvider.IRCUser) this.actorProvider.getActor("Kitteh!k@kitteh.test"), Collections.emptySet());
+        for (int i = 0; i < userCount; i++) {
+            this.fireLine(":Cat" + i + "!meow@kitteh.test JOIN #kicl");
+        }
+        Mockito.verify(this.eventManager, Mockito.times(userCount)).callEvent(Mockito.argThat(this.match(ChannelJoinEvent.class)));
+
+        for (int i = 0; i < userCount; i++) {
+            this.fireLine(":Cat" + i + "!meow@kitteh.test QUIT :hub.kitteh.test leaf.kitteh.test");
+        }
+        Mockito.verify(this.eventManager, Mockito.never()).callEvent(Mockito.argThat(this.match(NetsplitEvent.class)));
+        this.fireLine(":irc.kitteh.test PING :meow");
+        Mockito.verify(this.eventManager, Mockito.times(1)).callEvent(Mockito.argThat(this.match(NetsplitEvent.class, event -> event.getUsers().size() == userCount, event -> "leaf.kitteh.test".equals(event.getSplitServer()))));
+        Mockito.verify(this.eventManager, Mockito.never()).callEvent(Mockito.argThat(this.match(UserQuitEvent.class)));
+        Assert.assertEquals(1, channel.snapshot().getUsers().size());
+
+        for (int i = 0; i < userCount; i++) {
+            this.fireLine(":Cat" + i + "!meow@kitteh.test JOIN #kicl");
+        }
+        this.fireLine(":irc.kitteh.test PING :meow");
+        Mockito.verify(this.eventManager, Mockito.times(1)).callEvent(Mockito.argThat(this.match(NetjoinEvent.class, event -> event.getUsers().size() == userCount)));
+        Mockito.verify(this.eventManager, Mockito.times(userCount)).callEvent(Mockito.argThat(this.match(ChannelJoinEvent.class)));
+        Assert.assertEquals(userCount + 1, channel.snapshot().getUsers().size());
+
+        // Without a split server pair, a quit is handled alone
+        this.fireLine(":Cat0!meow@kitteh.test QUIT :Quit: purr");
+        Mockito.verify(this.eventManager, Mockito.times(1)).callEvent(Mockito.argThat(this.match(UserQuitEvent.class)));
+    }
+
     @Test
     public void testWALLOPS() {
         this.fireLine(":irc.network WALLOPS :Meow meow");
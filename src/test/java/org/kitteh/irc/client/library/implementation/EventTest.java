@@ -1,9 +1,26 @@
 package org.kitteh.irc.client.library.implementation;
 
+import net.engio.mbassy.listener.Enveloped;
 import net.engio.mbassy.listener.Handler;
+import net.engio.mbassy.listener.Invoke;
+import net.engio.mbassy.subscription.MessageEnvelope;
 import org.junit.Assert;
 import org.junit.Test;
+import org.kitteh.irc.client.library.element.Actor;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.event.client.ClientReceiveCommandEvent;
+import org.kitteh.irc.client.library.event.client.ClientReceiveNumericEvent;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
 import org.kitteh.irc.client.library.feature.EventManager;
+import org.kitteh.irc.client.library.feature.filter.CommandFilter;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Confirm an event listener can be registered and an event fired.
@@ -13,6 +30,19 @@ public class EventTest {
         private boolean success = false;
     }
 
+    private class AsyncEvent {
+        private final CompletableFuture<String> thread = new CompletableFuture<>();
+    }
+
+    public static class CountingListener {
+        private int count;
+
+        @Handler
+        public void event(Event event) {
+            this.count++;
+        }
+    }
+
     /**
      * Tests ability to register and fire an event.
      */
@@ -26,6 +56,158 @@ public class EventTest {
         Assert.assertTrue("Failed to register and fire an event", event.success);
     }
 
+    /**
+     * Tests clients sharing a runtime, each only reaching its own listeners.
+     */
+    @Test
+    public void testSharedRuntime() throws Exception {
+        EventDispatchRuntime runtime = new EventDispatchRuntime("Test");
+        ManagerEvent one = new ManagerEvent(new FakeClient(), runtime, false);
+        ManagerEvent two = new ManagerEvent(new FakeClient(), runtime, false);
+        CountingListener listenerOne = new CountingListener();
+        CountingListener listenerTwo = new CountingListener();
+        one.registerEventListener(listenerOne);
+        int classes = runtime.getListenerClassCount();
+        two.registerEventListener(listenerTwo);
+        two.registerEventListener(this);
+        Assert.assertEquals(classes + 1, runtime.getListenerClassCount());
+
+        one.callEvent(new Event());
+        one.callEvent(new Event());
+        two.callEvent(new Event());
+        Assert.assertEquals(2, listenerOne.count);
+        Assert.assertEquals(1, listenerTwo.count);
+
+        AsyncEvent event = new AsyncEvent();
+        two.callEvent(event);
+        Assert.assertTrue(event.thread.get(5, TimeUnit.SECONDS).startsWith("Test Event Handler"));
+    }
+
+    /**
+     * Tests typed handler ordering, hierarchy and unregistering.
+     */
+    @Test
+    public void testTypedHandlers() {
+        EventManager manager = new FakeClient().getEventManager();
+        List<String> calls = new ArrayList<>();
+        manager.registerEventListener(new Object() {
+            @Handler
+            public void event(Event event) {
+                calls.add("annotated");
+            }
+        });
+        manager.on(Event.class, event -> calls.add("zero"));
+        EventManager.Registration high = manager.on(Event.class, 10, event -> calls.add("ten"));
+        manager.on(Object.class, -1, event -> calls.add("object"));
+        manager.on(String.class, event -> calls.add("string"));
+
+        manager.callEvent(new Event());
+        Assert.assertEquals(Arrays.asList("annotated", "ten", "zero", "object"), calls);
+
+        calls.clear();
+        high.unregister();
+        high.unregister();
+        manager.callEvent(new Event());
+        Assert.assertEquals(Arrays.asList("annotated", "zero", "object"), calls);
+    }
+
+    /**
+     * Tests typed handlers keyed by command and numeric.
+     */
+    @Test
+    public void testKeyedHandlers() {
+        FakeClient client = new FakeClient();
+        EventManager manager = client.getEventManager();
+        List<String> calls = new ArrayList<>();
+        manager.onCommand("privmsg", event -> calls.add("privmsg " + event.getCommand()));
+        manager.onCommand("NOTICE", 5, event -> calls.add("notice"));
+        manager.onNumeric(1, event -> calls.add("001"));
+        manager.on(ClientReceiveCommandEvent.class, -5, event -> calls.add("any"));
+
+        manager.callEvent(this.command(client, "PRIVMSG"));
+        manager.callEvent(this.command(client, "NOTICE"));
+        manager.callEvent(this.command(client, "JOIN"));
+        manager.callEvent(new ClientReceiveNumericEvent(client, Mockito.mock(ServerMessage.class), this.actor(client), "001", 1, Collections.emptyList()));
+        manager.callEvent(new ClientReceiveNumericEvent(client, Mockito.mock(ServerMessage.class), this.actor(client), "002", 2, Collections.emptyList()));
+        Assert.assertEquals(Arrays.asList("privmsg PRIVMSG", "any", "notice", "any", "any", "001"), calls);
+    }
+
+    /**
+     * Tests direct dispatch ordering, filters, async offload and rejection
+     * of unsupported handlers.
+     */
+    @Test
+    public void testDirectDispatch() throws Exception {
+        FakeClient client = new FakeClient();
+        ManagerEvent manager = new ManagerEvent(client, new EventDispatchRuntime("Direct"), true);
+        List<String> calls = new ArrayList<>();
+        Object listener = new Object() {
+            @Handler(priority = 1)
+            public void high(ClientReceiveCommandEvent event) {
+                calls.add("high " + Thread.currentThread().getName());
+            }
+
+            @CommandFilter("JOIN")
+            @Handler(priority = 5)
+            public void join(ClientReceiveCommandEvent event) {
+                calls.add("join");
+            }
+
+            @Handler
+            public void any(Object event) {
+                calls.add("any");
+            }
+        };
+        manager.registerEventListener(listener);
+        manager.registerEventListener(this);
+        manager.on(ClientReceiveCommandEvent.class, event -> calls.add("typed"));
+
+        String thread = Thread.currentThread().getName();
+        manager.callEvent(this.command(client, "PRIVMSG"));
+        manager.callEvent(this.command(client, "JOIN"));
+        Assert.assertEquals(Arrays.asList("high " + thread, "any", "typed", "join", "high " + thread, "any", "typed"), calls);
+
+        AsyncEvent event = new AsyncEvent();
+        manager.callEvent(event);
+        Assert.assertTrue(event.thread.get(5, TimeUnit.SECONDS).startsWith("Direct Event Handler"));
+
+        calls.clear();
+        manager.unregisterEventListener(listener);
+        manager.callEvent(this.command(client, "JOIN"));
+        Assert.assertEquals(Collections.singletonList("typed"), calls);
+
+        try {
+            manager.registerEventListener(new Object() {
+                @Enveloped(messages = Event.class)
+                @Handler
+                public void enveloped(MessageEnvelope envelope) {
+                }
+            });
+            Assert.fail("Enveloped handler accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private Actor actor(FakeClient client) {
+        Actor actor = Mockito.mock(Actor.class);
+        Mockito.when(actor.getClient()).thenReturn(client);
+        return actor;
+    }
+
+    private ClientReceiveCommandEvent command(FakeClient client, String command) {
+        return new ClientReceiveCommandEvent(client, Mockito.mock(ServerMessage.class), this.actor(client), command, Collections.emptyList());
+    }
+
+    /**
+     * A test method for listening to an event asynchronously.
+     *
+     * @param e the test event
+     */
+    @Handler(delivery = Invoke.Asynchronously)
+    public void asyncEventHandler(AsyncEvent e) {
+        e.thread.complete(Thread.currentThread().getName());
+    }
+
     /**
      * A test method for listening to an event.
      *
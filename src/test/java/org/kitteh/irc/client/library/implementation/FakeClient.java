@@ -3,35 +3,48 @@ package org.kitteh.irc.client.library.implementation;
 import org.kitteh.irc.client.library.Client;
 import org.kitteh.irc.client.library.element.Channel;
 import org.kitteh.irc.client.library.element.MessageReceiver;
+import org.kitteh.irc.client.library.element.ServerMessage;
 import org.kitteh.irc.client.library.element.User;
 import org.kitteh.irc.client.library.element.mode.ModeStatusList;
 import org.kitteh.irc.client.library.element.mode.UserMode;
+import org.kitteh.irc.client.library.event.helper.ClientReceiveServerMessageEvent;
 import org.kitteh.irc.client.library.feature.AuthManager;
+import org.kitteh.irc.client.library.feature.EventDispatchRuntime;
 import org.kitteh.irc.client.library.feature.EventManager;
+import org.kitteh.irc.client.library.feature.Lag;
+import org.kitteh.irc.client.library.feature.ListenerChannel;
 import org.kitteh.irc.client.library.feature.defaultmessage.DefaultMessageMap;
 import org.kitteh.irc.client.library.feature.defaultmessage.SimpleDefaultMessageMap;
 import org.kitteh.irc.client.library.feature.sending.MessageSendingQueue;
 import org.kitteh.irc.client.library.feature.sts.STSMachine;
 import org.kitteh.irc.client.library.util.Cutter;
 import org.kitteh.irc.client.library.util.Pair;
+import org.kitteh.irc.client.library.util.TrafficLog;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 class FakeClient extends InternalClient {
     private final AuthManager authManager = new ManagerAuth(this);
     private final ManagerCapability capabilityManager = new ManagerCapability(this);
     private final Config config = new Config();
-    private final EventManager eventManager = new ManagerEvent(this);
-    private final Listener<Exception> listenerException = new Listener<>("Test", null);
-    private final Listener<String> listenerInput = new Listener<>("Test", null);
-    private final Listener<String> listenerOutput = new Listener<>("Test", null);
+    private final EventManager eventManager = new ManagerEvent(this, EventDispatchRuntime.getDefault(), false);
+    private final ManagerMonitor monitorManager = new ManagerMonitor(this);
+    private final ManagerWhois whoisManager = new ManagerWhois(this);
+    private final Listener<Exception> listenerException = new Listener<>(ListenerChannel.getDefault(), null);
+    private final Listener<String> listenerInput = new Listener<>(ListenerChannel.getDefault(), null);
+    private final Listener<String> listenerOutput = new Listener<>(ListenerChannel.getDefault(), null);
     private Cutter messageCutter = new Cutter.DefaultWordCutter();
     private final ManagerMessageTag messageTagManager = new ManagerMessageTag(this);
     private final IRCServerInfo serverInfo = new IRCServerInfo(this);
@@ -77,6 +90,11 @@ class FakeClient extends InternalClient {
 
     }
 
+    @Override
+    void recordTraffic(@Nonnull TrafficLog.Direction direction, @Nonnull String line) {
+
+    }
+
     @Override
     boolean isSSL() {
         return false;
@@ -136,6 +154,18 @@ class FakeClient extends InternalClient {
         return null;
     }
 
+    @Nonnull
+    @Override
+    public ManagerWhois getWhoisManager() {
+        return this.whoisManager;
+    }
+
+    @Nonnull
+    @Override
+    public Optional<Lag> getLag() {
+        return Optional.empty();
+    }
+
     @Nonnull
     @Override
     public Optional<STSMachine> getSTSMachine() {
@@ -192,9 +222,15 @@ class FakeClient extends InternalClient {
         return null;
     }
 
+    @Nonnull
     @Override
-    void ping() {
+    BatchHandler getBatchHandler() {
+        return null;
+    }
 
+    @Override
+    boolean keepAlive() {
+        return true;
     }
 
     @Override
@@ -230,12 +266,35 @@ class FakeClient extends InternalClient {
         return Optional.empty();
     }
 
+    @Nonnull
+    @Override
+    public OptionalInt getChannelMemberCount(@Nonnull String name) {
+        return OptionalInt.empty();
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getChannelNames() {
+        return Collections.emptySet();
+    }
+
     @Nonnull
     @Override
     public Set<Channel> getChannels() {
         return Collections.emptySet();
     }
 
+    @Nonnull
+    @Override
+    public Set<String> getUserChannelNames(@Nonnull String nick) {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public boolean isInChannel(@Nonnull String channel, @Nonnull String nick) {
+        return false;
+    }
+
     @Nonnull
     public DefaultMessageMap getDefaultMessageMap() {
         return this.defaultMessageMap;
@@ -259,6 +318,12 @@ class FakeClient extends InternalClient {
         return this.messageTagManager;
     }
 
+    @Nonnull
+    @Override
+    public ManagerMonitor getMonitorManager() {
+        return this.monitorManager;
+    }
+
     @Nonnull
     @Override
     public String getName() {
@@ -354,11 +419,37 @@ class FakeClient extends InternalClient {
 
     }
 
+    @Override
+    public void sendMessage(@Nonnull Collection<String> targets, @Nonnull String message) {
+
+    }
+
+    @Override
+    public void sendNotice(@Nonnull Collection<String> targets, @Nonnull String message) {
+
+    }
+
+    @Override
+    public void sendMultiLineMessage(@Nonnull Collection<String> targets, @Nonnull String message, @Nonnull Cutter cutter) {
+
+    }
+
+    @Override
+    public void sendMultiLineNotice(@Nonnull Collection<String> targets, @Nonnull String message, @Nonnull Cutter cutter) {
+
+    }
+
     @Override
     public void sendRawLine(@Nonnull String message) {
 
     }
 
+    @Nonnull
+    @Override
+    public CompletableFuture<List<ServerMessage>> sendRawLineWithResponse(@Nonnull String message, @Nonnull Predicate<ClientReceiveServerMessageEvent> isResponse, @Nonnull Predicate<ClientReceiveServerMessageEvent> isLastResponse) {
+        return new CompletableFuture<>();
+    }
+
     @Override
     public void sendRawLineAvoidingDuplication(@Nonnull String message) {
 
@@ -0,0 +1,236 @@
+package org.kitteh.irc.client.library.implementation;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.feature.sending.MessageSendingQueue;
+import org.kitteh.irc.client.library.util.Pair;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Tests the lines IRCClient queues, with a client that never connects.
+ */
+public class IRCClientTest {
+    /**
+     * Records queued lines instead of sending them.
+     */
+    private static final class RecordingQueue implements MessageSendingQueue {
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void beginSending(@Nonnull Consumer<String> consumer) {
+        }
+
+        @Override
+        public boolean contains(@Nonnull String message) {
+            return this.lines.contains(message);
+        }
+
+        @Nonnull
+        @Override
+        public Optional<Consumer<String>> getConsumer() {
+            return Optional.empty();
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void queue(@Nonnull String message) {
+            this.lines.add(message);
+        }
+
+        @Nonnull
+        @Override
+        public Queue<String> shutdown() {
+            return new LinkedList<>();
+        }
+    }
+
+    private final RecordingQueue queue = new RecordingQueue();
+    private IRCClient client;
+
+    /**
+     * Creates a client queueing to the recorder.
+     */
+    @Before
+    public void before() {
+        Config config = new Config();
+        config.set(Config.MESSAGE_DELAY, (Function<Client, MessageSendingQueue>) client -> this.queue);
+        this.client = new IRCClient(config);
+    }
+
+    /**
+     * Shuts the client down.
+     */
+    @After
+    public void after() {
+        this.client.shutdown();
+    }
+
+    /**
+     * Joins hundreds of channels, including keyed ones, checking they are
+     * packed into few JOIN lines within the line length and TARGMAX, with
+     * keys lined up with their channels.
+     */
+    @Test
+    public void testJoinPacking() {
+        final int channelCount = 400;
+        this.setISupport("CHANTYPES=#&", "TARGMAX=JOIN:,PRIVMSG:4");
+        this.client.startSending();
+        String[] channels = new String[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            channels[i] = "#kicl-channel-" + i;
+        }
+        this.client.addChannel(channels);
+        this.client.addKeyProtectedChannel(new Pair<>("&keyed1", "meow"), new Pair<>("&plain", null), new Pair<>("&keyed2", "purr"));
+        List<String> joinLines = this.getLines("JOIN ");
+        Assert.assertTrue("Too many JOIN lines: " + joinLines.size(), joinLines.size() <= 16);
+        Assert.assertEquals(Arrays.asList(channels), joinLines.subList(0, joinLines.size() - 1).stream().flatMap(line -> Arrays.stream(line.substring(5).split(","))).collect(Collectors.toList()));
+        String[] keyed = joinLines.get(joinLines.size() - 1).split(" ");
+        Assert.assertEquals(3, keyed.length);
+        List<String> targets = Arrays.asList(keyed[1].split(","));
+        List<String> keys = Arrays.asList(keyed[2].split(","));
+        Assert.assertEquals(3, targets.size());
+        Assert.assertEquals(2, keys.size());
+        Assert.assertEquals(keys.indexOf("meow"), targets.indexOf("&keyed1"));
+        Assert.assertEquals(keys.indexOf("purr"), targets.indexOf("&keyed2"));
+    }
+
+    /**
+     * Checks TARGMAX limits the channels per JOIN line.
+     */
+    @Test
+    public void testJoinTargetLimit() {
+        this.setISupport("TARGMAX=JOIN:3");
+        this.client.startSending();
+        this.client.addChannel("#a", "#b", "#c", "#d", "#e");
+        Assert.assertEquals(Arrays.asList("JOIN #a,#b,#c", "JOIN #d,#e"), this.getLines("JOIN "));
+    }
+
+    /**
+     * Sends single-target lines, checking targets and messages are validated
+     * and multi-line sends leave room for the client's own mask.
+     */
+    @Test
+    public void testSingleTargetSend() {
+        for (String target : Arrays.asList("Pu rr", "Purr\r", "Purr\0")) {
+            try {
+                this.client.sendMessage(target, "Meow");
+                Assert.fail("Accepted target " + target);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            this.client.sendNotice("Purr", "Meow\nQUIT");
+            Assert.fail("Accepted message with LF");
+        } catch (IllegalArgumentException expected) {
+        }
+        this.client.sendMessage("Purr", "Meow");
+        this.client.sendCTCPMessage("Purr", "VERSION");
+        String message = String.join(" ", Collections.nCopies(300, "purr"));
+        this.client.sendMultiLineMessage("Purr", message);
+        List<String> lines = this.getLines("PRIVMSG Purr :").stream().map(line -> line.substring(14)).collect(Collectors.toList());
+        Assert.assertEquals("Meow", lines.get(0));
+        Assert.assertEquals("\u0001VERSION\u0001", lines.get(1));
+        Assert.assertEquals(message, String.join(" ", lines.subList(2, lines.size())));
+        // Room is always left for at least Kitteh!u@h
+        lines.subList(2, lines.size()).forEach(line -> Assert.assertTrue("Line too long", line.length() <= (505 - "Kitteh!u@h".length() - "Purr".length() - "PRIVMSG".length())));
+        Assert.assertTrue(this.getLines("QUIT").isEmpty());
+    }
+
+    /**
+     * Broadcasts to many channels, checking targets are packed per TARGMAX
+     * and the line length limit.
+     */
+    @Test
+    public void testBroadcast() {
+        final int targetCount = 200;
+        this.setISupport("TARGMAX=PRIVMSG:4,NOTICE:");
+        List<String> targets = this.getBroadcastTargets(targetCount);
+        this.client.sendMessage(targets, "Meow");
+        String notice = String.join(" ", Collections.nCopies(200, "purr"));
+        this.client.sendMultiLineNotice(targets, notice);
+        this.queue.lines.forEach(line -> Assert.assertTrue("Line too long", line.length() <= 510));
+        List<String> messages = this.getLines("PRIVMSG");
+        List<String> notices = this.getLines("NOTICE");
+        Assert.assertEquals(targetCount / 4, messages.size());
+        Assert.assertEquals(targets, messages.stream().flatMap(line -> Arrays.stream(line.split(" ")[1].split(","))).collect(Collectors.toList()));
+        Assert.assertTrue("Too many NOTICE lines: " + notices.size(), notices.size() < (targetCount / 2));
+        Map<String, List<String>> noticesByTarget = new HashMap<>();
+        for (String line : notices) {
+            for (String target : line.split(" ")[1].split(",")) {
+                noticesByTarget.computeIfAbsent(target, k -> new ArrayList<>()).add(line.substring(line.indexOf(" :") + 2));
+            }
+        }
+        Assert.assertEquals(targetCount, noticesByTarget.size());
+        noticesByTarget.values().forEach(parts -> Assert.assertEquals(notice, String.join(" ", parts)));
+    }
+
+    /**
+     * Broadcasts a multi-byte message, checking lines are packed within
+     * the line length in bytes rather than characters.
+     */
+    @Test
+    public void testMultiByteBroadcast() {
+        this.setISupport("TARGMAX=NOTICE:");
+        List<String> targets = this.getBroadcastTargets(50);
+        String notice = String.join(" ", Collections.nCopies(200, "猫猫"));
+        this.client.sendMultiLineNotice(targets, notice);
+        this.queue.lines.forEach(line -> Assert.assertTrue("Line too long", line.getBytes(StandardCharsets.UTF_8).length <= 510));
+        Map<String, List<String>> noticesByTarget = new HashMap<>();
+        for (String line : this.getLines("NOTICE")) {
+            for (String target : line.split(" ")[1].split(",")) {
+                noticesByTarget.computeIfAbsent(target, k -> new ArrayList<>()).add(line.substring(line.indexOf(" :") + 2));
+            }
+        }
+        Assert.assertEquals(50, noticesByTarget.size());
+        noticesByTarget.values().forEach(parts -> Assert.assertEquals(notice, String.join(" ", parts)));
+    }
+
+    /**
+     * Checks a broadcast is sent one target per line without TARGMAX.
+     */
+    @Test
+    public void testBroadcastWithoutTargetLimits() {
+        this.client.sendNotice(this.getBroadcastTargets(10), "Hiss");
+        List<String> notices = this.getLines("NOTICE");
+        Assert.assertEquals(10, notices.size());
+        notices.forEach(line -> Assert.assertTrue(line, line.startsWith("NOTICE #kicl-broadcast-") && line.endsWith(" :Hiss") && !line.contains(",")));
+    }
+
+    private List<String> getBroadcastTargets(int count) {
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            targets.add("#kicl-broadcast-" + i);
+        }
+        return targets;
+    }
+
+    private List<String> getLines(String prefix) {
+        return this.queue.lines.stream().filter(line -> line.startsWith(prefix)).collect(Collectors.toList());
+    }
+
+    private void setISupport(String... parameters) {
+        for (String parameter : parameters) {
+            this.client.getServerInfo().addISupportParameter(this.client.getISupportManager().getParameter(parameter));
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.kitteh.irc.client.library.Client;
 import org.kitteh.irc.client.library.element.ISupportParameter;
 import org.kitteh.irc.client.library.element.mode.ChannelMode;
 import org.kitteh.irc.client.library.feature.CaseMapping;
+import org.kitteh.irc.client.library.feature.ListenerChannel;
 import org.kitteh.irc.client.library.util.TriFunction;
 import org.mockito.Mockito;
 
@@ -224,6 +225,31 @@ public class ISupportManagerTest {
         this.verifyException(manager);
     }
 
+    /**
+     * Tests targmax.
+     */
+    @Test
+    public void targetMax() {
+        ManagerISupport manager = this.getManager();
+        ISupportParameter param = manager.getParameter(ISupportParameter.TargMax.NAME + "=JOIN:,privmsg:4,WHOIS:1");
+        Assert.assertTrue(ISupportParameter.TargMax.class.isAssignableFrom(param.getClass()));
+        ISupportParameter.TargMax limit = (ISupportParameter.TargMax) param;
+        Assert.assertEquals(3, limit.getLimits().size());
+        Assert.assertEquals(Integer.MAX_VALUE, limit.getLimits().get("JOIN").intValue());
+        Assert.assertEquals(4, limit.getLimits().get("PRIVMSG").intValue());
+        Assert.assertEquals(1, limit.getLimits().get("WHOIS").intValue());
+    }
+
+    /**
+     * Tests targmax.
+     */
+    @Test
+    public void targetMaxFailValueInt() {
+        ManagerISupport manager = this.getManager();
+        Assert.assertFalse(ISupportParameter.TargMax.class.isAssignableFrom(manager.getParameter(ISupportParameter.TargMax.NAME + "=JOIN:MEOW").getClass()));
+        this.verifyException(manager);
+    }
+
     /**
      * Tests whox.
      */
@@ -308,7 +334,7 @@ public class ISupportManagerTest {
 
     private ManagerISupport getManager() {
         InternalClient client = Mockito.mock(InternalClient.class);
-        Mockito.when(client.getExceptionListener()).thenReturn(new Listener<>("Client", null));
+        Mockito.when(client.getExceptionListener()).thenReturn(new Listener<>(ListenerChannel.getDefault(), null));
         return new ManagerISupport(client);
     }
 }
@@ -0,0 +1,82 @@
+package org.kitteh.irc.client.library.implementation;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitteh.irc.client.library.feature.Lag;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the LagTracker.
+ */
+public class LagTrackerTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Tests pinging when idle and matching the PONG.
+     */
+    @Test
+    public void testMeasure() {
+        LagTracker tracker = new LagTracker();
+        tracker.reset(0);
+        Assert.assertFalse(tracker.isPingDue(SECOND));
+        tracker.onInput(":server NOTICE * :hi", 5 * SECOND);
+        Assert.assertFalse(tracker.isPingDue(15 * SECOND));
+        Assert.assertTrue(tracker.isPingDue(20 * SECOND));
+
+        tracker.pingSent("MEOW.1", 20 * SECOND);
+        Assert.assertFalse(tracker.isPingDue(40 * SECOND));
+        Assert.assertNull(tracker.onInput(":server PONG server :MEOW.0", 21 * SECOND));
+        Assert.assertNull(tracker.onInput(":server PRIVMSG #c :MEOW.1", 21 * SECOND));
+        Lag lag = tracker.onInput(":server PONG server :MEOW.1", 22 * SECOND);
+        Assert.assertNotNull(lag);
+        Assert.assertEquals(Duration.ofSeconds(2), lag.getCurrent());
+        Assert.assertEquals(Duration.ofSeconds(2), lag.getAverage());
+        Assert.assertEquals(Duration.ofSeconds(2), lag.getMax());
+        Assert.assertEquals(1, lag.getSamples());
+        Assert.assertSame(lag, tracker.getLag());
+
+        // Busy connections still get measured
+        for (long t = 23; t < 80; t++) {
+            tracker.onInput(":server NOTICE * :busy", t * SECOND);
+            Assert.assertEquals(t >= 80, tracker.isPingDue(t * SECOND));
+        }
+        Assert.assertTrue(tracker.isPingDue(80 * SECOND));
+        tracker.pingSent("PURR.2", 80 * SECOND);
+        lag = tracker.onInput(":server PONG server PURR.2", 80 * SECOND + (SECOND / 2));
+        Assert.assertNotNull(lag);
+        Assert.assertEquals(Duration.ofMillis(500), lag.getCurrent());
+        Assert.assertEquals(Duration.ofNanos(2 * SECOND - ((3 * SECOND / 2) / 8)), lag.getAverage());
+        Assert.assertEquals(Duration.ofSeconds(2), lag.getMax());
+        Assert.assertEquals(2, lag.getSamples());
+
+        tracker.reset(100 * SECOND);
+        Assert.assertNull(tracker.getLag());
+    }
+
+    /**
+     * Tests the timeout adapting to observed lag.
+     */
+    @Test
+    public void testTimeout() {
+        LagTracker tracker = new LagTracker();
+        tracker.reset(0);
+        Assert.assertFalse(tracker.isTimedOut(1000 * SECOND));
+        tracker.pingSent("HISS.1", 15 * SECOND);
+        Assert.assertEquals(LagTracker.MIN_TIMEOUT_NANOS, tracker.getTimeoutNanos());
+        Assert.assertFalse(tracker.isTimedOut(25 * SECOND));
+        Assert.assertTrue(tracker.isTimedOut(26 * SECOND));
+
+        tracker.pingSent("HISS.2", 30 * SECOND);
+        tracker.onInput(":server PONG server :HISS.2", 34 * SECOND);
+        Assert.assertEquals(20 * SECOND, tracker.getTimeoutNanos());
+        tracker.pingSent("HISS.3", 50 * SECOND);
+        Assert.assertFalse(tracker.isTimedOut(70 * SECOND));
+        Assert.assertTrue(tracker.isTimedOut(71 * SECOND));
+
+        tracker.pingSent("HISS.4", 80 * SECOND);
+        tracker.onInput(":server PONG server :HISS.4", 280 * SECOND);
+        Assert.assertEquals(LagTracker.MAX_TIMEOUT_NANOS, tracker.getTimeoutNanos());
+    }
+}
@@ -0,0 +1,160 @@
+package org.kitteh.irc.client.library.implementation;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitteh.irc.client.library.element.MessageTag;
+import org.kitteh.irc.client.library.element.ServerMessage;
+import org.kitteh.irc.client.library.event.helper.ClientReceiveServerMessageEvent;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests the ResponseTracker.
+ */
+public class ResponseTrackerTest {
+    /**
+     * Tests ordered matching skipping past requests a reply isn't for.
+     */
+    @Test
+    public void testOrdered() throws Exception {
+        ResponseTracker tracker = new ResponseTracker(this.getClient());
+        CompletableFuture<List<ServerMessage>> first = tracker.send("WHOIS kitteh", event -> event.getParameters().contains("kitteh"), event -> "318".equals(event.getCommand()));
+        CompletableFuture<List<ServerMessage>> second = tracker.send("WHOIS purr", event -> event.getParameters().contains("purr"), event -> "318".equals(event.getCommand()));
+
+        tracker.offer(this.getEvent("311", "me", "purr"));
+        tracker.offer(this.getEvent("318", "me", "purr"));
+        Assert.assertFalse(first.isDone());
+        Assert.assertEquals(2, second.get().size());
+        tracker.offer(this.getEvent("318", "me", "kitteh"));
+        Assert.assertEquals(1, first.get().size());
+    }
+
+    /**
+     * Tests a throwing predicate failing only its own request.
+     */
+    @Test
+    public void testBrokenPredicate() throws Exception {
+        ResponseTracker tracker = new ResponseTracker(this.getClient());
+        CompletableFuture<List<ServerMessage>> broken = tracker.send("WHOIS kitteh", event -> {
+            throw new IllegalStateException("Meow");
+        }, event -> true);
+        CompletableFuture<List<ServerMessage>> working = tracker.send("WHOIS purr", event -> true, event -> true);
+
+        tracker.offer(this.getEvent("318", "me", "purr"));
+        Assert.assertTrue(broken.isCompletedExceptionally());
+        try {
+            broken.get();
+            Assert.fail("Broken request completed");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(1, working.get().size());
+    }
+
+    /**
+     * Tests labeled requests answered out of order, each collecting the
+     * members of its labeled batch.
+     */
+    @Test
+    public void testLabeled() throws Exception {
+        InternalClient client = this.getClient();
+        client.getCapabilityManager().setCapabilities(Collections.singletonList(new ManagerCapability.IRCCapabilityState(client, "labeled-response")));
+        List<String> sent = new ArrayList<>();
+        Mockito.doAnswer(invocation -> sent.add((String) invocation.getArguments()[0])).when(client).sendRawLine(Mockito.anyString());
+        ResponseTracker tracker = new ResponseTracker(client);
+        List<CompletableFuture<List<ServerMessage>>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            futures.add(tracker.send("WHOIS Cat" + i, event -> false, event -> false));
+        }
+        Assert.assertEquals(2, sent.size());
+        for (int i = 1; i >= 0; i--) {
+            String label = sent.get(i).substring("@label=".length(), sent.get(i).indexOf(' '));
+            tracker.offer(this.getEvent(this.getMessage("label", label), "BATCH", "+b" + i, "labeled-response"));
+            tracker.offerBatchMember(this.getMessage("batch", "b" + i));
+            tracker.offerBatchMember(this.getMessage("batch", "b" + i));
+            Assert.assertFalse(futures.get(i).isDone());
+            tracker.offer(this.getEvent(this.getMessage(null, null), "BATCH", "-b" + i));
+        }
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(sent.get(i).endsWith(" WHOIS Cat" + i));
+            Assert.assertEquals(2, futures.get(i).get().size());
+        }
+    }
+
+    /**
+     * Tests a request whose reply never arrives failing instead of holding
+     * onto replies meant for later requests.
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        ResponseTracker tracker = new ResponseTracker(this.getClient());
+        CompletableFuture<List<ServerMessage>> stuck = tracker.send("MODE #kitteh +o ghost", event -> "MODE".equals(event.getCommand()), event -> true);
+        Assert.assertFalse(stuck.isDone());
+        tracker.expire(System.nanoTime() + ResponseTracker.REQUEST_TIMEOUT_NANOS);
+        Assert.assertTrue(stuck.isCompletedExceptionally());
+        try {
+            stuck.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        tracker = new ResponseTracker(this.getClient(), 0);
+        stuck = tracker.send("MODE #kitteh +o ghost", event -> "MODE".equals(event.getCommand()), event -> false);
+        CompletableFuture<List<ServerMessage>> next = tracker.send("MODE #kitteh +o purr", event -> "MODE".equals(event.getCommand()), event -> true);
+        // Both have expired by the next offer, so neither takes the echo
+        tracker.offer(this.getEvent("MODE", "#kitteh", "+o", "purr"));
+        Assert.assertTrue(stuck.isCompletedExceptionally());
+        Assert.assertTrue(next.isCompletedExceptionally());
+    }
+
+    /**
+     * Tests outstanding requests being cancelled on reset.
+     */
+    @Test
+    public void testReset() {
+        ResponseTracker tracker = new ResponseTracker(this.getClient());
+        CompletableFuture<List<ServerMessage>> future = tracker.send("MODE #kitteh", event -> true, event -> true);
+        tracker.reset();
+        Assert.assertTrue(future.isCancelled());
+    }
+
+    private InternalClient getClient() {
+        InternalClient client = Mockito.mock(InternalClient.class);
+        Mockito.when(client.getCapabilityManager()).thenReturn(new ManagerCapability(client));
+        return client;
+    }
+
+    private ServerMessage getMessage(String tagName, String tagValue) {
+        List<MessageTag> tags = new ArrayList<>();
+        if (tagName != null) {
+            MessageTag tag = Mockito.mock(MessageTag.class);
+            Mockito.when(tag.getName()).thenReturn(tagName);
+            Mockito.when(tag.getValue()).thenReturn(Optional.of(tagValue));
+            tags.add(tag);
+        }
+        ServerMessage message = Mockito.mock(ServerMessage.class);
+        Mockito.when(message.getTags()).thenReturn(tags);
+        return message;
+    }
+
+    private ClientReceiveServerMessageEvent getEvent(String command, String... parameters) {
+        return this.getEvent(this.getMessage(null, null), command, parameters);
+    }
+
+    private ClientReceiveServerMessageEvent getEvent(ServerMessage message, String command, String... parameters) {
+        ClientReceiveServerMessageEvent event = Mockito.mock(ClientReceiveServerMessageEvent.class);
+        Mockito.when(event.getServerMessage()).thenReturn(message);
+        Mockito.when(event.getCommand()).thenReturn(command);
+        Mockito.when(event.getParameters()).thenReturn(Arrays.asList(parameters));
+        return event;
+    }
+}
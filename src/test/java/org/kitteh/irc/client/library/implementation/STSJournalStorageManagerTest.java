@@ -0,0 +1,148 @@
+package org.kitteh.irc.client.library.implementation;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kitteh.irc.client.library.feature.sts.STSJournalStorageManager;
+import org.kitteh.irc.client.library.feature.sts.STSPolicy;
+import org.kitteh.irc.client.library.util.STSUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Tests the STSJournalStorageManager.
+ */
+public class STSJournalStorageManagerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Checks basic storage and lookup.
+     */
+    @Test
+    public void testSimpleOperations() throws IOException {
+        Path path = this.temporaryFolder.getRoot().toPath().resolve("sts.journal");
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            sut.addEntry("kitteh.org", 500, this.getPolicy());
+            Assert.assertTrue(sut.hasEntry("kitteh.org"));
+            Optional<STSPolicy> policy = sut.getEntry("kitteh.org");
+            Assert.assertTrue(policy.isPresent());
+            Assert.assertEquals("6697", policy.get().getOptions().get(STSPolicy.POLICY_OPTION_KEY_PORT));
+            Assert.assertTrue(policy.get().getFlags().contains("cats"));
+            sut.removeEntry("kitteh.org");
+            sut.removeEntry("kitteh.org");
+            Assert.assertFalse(sut.hasEntry("kitteh.org"));
+        }
+    }
+
+    /**
+     * Checks that changes survive reloading, including removals.
+     */
+    @Test
+    public void testReloading() throws IOException {
+        Path path = this.temporaryFolder.getRoot().toPath().resolve("sts.journal");
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            sut.addEntry("kitteh.org", 500, this.getPolicy());
+            sut.addEntry("example.com", 500, this.getPolicy());
+            sut.removeEntry("example.com");
+        }
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            Assert.assertTrue(sut.hasEntry("kitteh.org"));
+            Assert.assertFalse(sut.hasEntry("example.com"));
+        }
+    }
+
+    /**
+     * Checks that expired entries vanish without being removed.
+     */
+    @Test
+    public void testExpiry() throws InterruptedException {
+        Path path = this.temporaryFolder.getRoot().toPath().resolve("sts.journal");
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            sut.addEntry("kitteh.org", 0, this.getPolicy());
+            sut.addEntry("example.com", 500, this.getPolicy());
+            Thread.sleep(20);
+            Assert.assertFalse(sut.hasEntry("kitteh.org"));
+            Assert.assertTrue(sut.hasEntry("example.com"));
+        }
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            Assert.assertFalse(sut.hasEntry("kitteh.org"));
+            Assert.assertTrue(sut.hasEntry("example.com"));
+        }
+    }
+
+    /**
+     * Checks that a journal of mostly stale records gets compacted.
+     */
+    @Test
+    public void testCompaction() throws IOException {
+        Path path = this.temporaryFolder.getRoot().toPath().resolve("sts.journal");
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            for (int i = 0; i < 1000; i++) {
+                sut.addEntry("kitteh.org", 500 + i, this.getPolicy());
+            }
+            sut.flush();
+            Assert.assertTrue(Files.readAllLines(path, StandardCharsets.UTF_8).size() < 100);
+            Assert.assertFalse(Files.exists(path.resolveSibling("sts.journal.tmp")));
+        }
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            Assert.assertEquals("1499", sut.getEntry("kitteh.org").get().getOptions().get(STSPolicy.POLICY_OPTION_KEY_DURATION));
+        }
+    }
+
+    /**
+     * Checks that torn and damaged records are skipped, and that the
+     * journal is repaired so later records are not lost behind them.
+     */
+    @Test
+    public void testTornRecord() throws IOException {
+        Path path = this.temporaryFolder.getRoot().toPath().resolve("sts.journal");
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            sut.addEntry("kitteh.org", 500, this.getPolicy());
+        }
+        String record = Files.readAllLines(path, StandardCharsets.UTF_8).get(1);
+        String damaged = record.replace("kitteh.org", "kitteh.net").replace("6697", "6698") + '\n';
+        String torn = "+\texample.com\t" + (System.currentTimeMillis() + 500000) + "\tport=66";
+        Files.write(path, (damaged + torn).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            Assert.assertTrue(sut.hasEntry("kitteh.org"));
+            Assert.assertFalse(sut.hasEntry("kitteh.net"));
+            Assert.assertFalse(sut.hasEntry("example.com"));
+            sut.addEntry("kitteh.net", 500, this.getPolicy());
+        }
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            Assert.assertTrue(sut.hasEntry("kitteh.org"));
+            Assert.assertTrue(sut.hasEntry("kitteh.net"));
+            Assert.assertFalse(sut.hasEntry("example.com"));
+        }
+    }
+
+    /**
+     * Checks that replacing and removing entries does not disturb the
+     * expiry of others.
+     */
+    @Test
+    public void testReplacedExpiry() throws InterruptedException {
+        Path path = this.temporaryFolder.getRoot().toPath().resolve("sts.journal");
+        try (STSJournalStorageManager sut = new STSJournalStorageManager(path)) {
+            sut.addEntry("kitteh.org", 0, this.getPolicy());
+            sut.addEntry("kitteh.org", 500, this.getPolicy());
+            sut.addEntry("example.com", 0, this.getPolicy());
+            sut.removeEntry("example.com");
+            sut.addEntry("example.com", 500, this.getPolicy());
+            Thread.sleep(20);
+            Assert.assertTrue(sut.hasEntry("kitteh.org"));
+            Assert.assertTrue(sut.hasEntry("example.com"));
+        }
+    }
+
+    private STSPolicy getPolicy() {
+        return STSUtil.getSTSPolicyFromString(",", STSPolicy.POLICY_OPTION_KEY_PORT + "=6697,cats");
+    }
+}
@@ -3,7 +3,12 @@ package org.kitteh.irc.client.library.util;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Tests {@link Cutter.DefaultWordCutter}.
@@ -72,4 +77,79 @@ public class CutterTest {
         List<String> output = new Cutter.DefaultWordCutter().split("                     ", 3);
         Assert.assertEquals(0, output.size());
     }
+
+    /**
+     * Tests sizes are measured in UTF-8 bytes.
+     */
+    @Test
+    public void cutMultibyte() {
+        List<String> output = new Cutter.DefaultWordCutter().split("\u732b\u732b\u732b \u732b\u732b\u732b", 10);
+        Assert.assertEquals(2, output.size());
+        Assert.assertEquals("\u732b\u732b\u732b", output.get(0));
+        Assert.assertEquals("\u732b\u732b\u732b", output.get(1));
+        output = new Cutter.DefaultWordCutter().split(String.join("", Collections.nCopies(100, "\u732b")), 10);
+        Assert.assertEquals(34, output.size());
+        for (String line : output.subList(0, 33)) {
+            Assert.assertEquals(9, line.getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    /**
+     * Tests surrogate pairs and combining marks are kept whole.
+     */
+    @Test
+    public void cutClusters() {
+        String cat = "\ud83d\udc31";
+        List<String> output = new Cutter.DefaultWordCutter().split(cat + cat + cat, 6);
+        Assert.assertEquals(3, output.size());
+        output.forEach(line -> Assert.assertEquals(cat, line));
+        String accented = "e\u0301";
+        output = new Cutter.DefaultWordCutter().split(accented + accented + accented, 4);
+        Assert.assertEquals(3, output.size());
+        output.forEach(line -> Assert.assertEquals(accented, line));
+        output = new Cutter.DefaultWordCutter().split(cat, 2);
+        Assert.assertEquals(Collections.singletonList(cat), output);
+    }
+
+    /**
+     * Tests fragments are handed over as offsets into the message.
+     */
+    @Test
+    public void cutOffsets() {
+        String message = "Meow meow mreow";
+        List<String> output = new ArrayList<>();
+        new Cutter.DefaultWordCutter().cut(message, 10, (string, start, end) -> {
+            Assert.assertSame(message, string);
+            output.add(string.substring(start, end));
+        });
+        Assert.assertEquals(Arrays.asList("Meow meow", "mreow"), output);
+        List<String> streamed = new ArrayList<>();
+        new Cutter.DefaultWordCutter().split(message, 10, streamed::add);
+        Assert.assertEquals(output, streamed);
+    }
+
+    /**
+     * Tests the cuts always fit for assorted text.
+     */
+    @Test
+    public void cutFits() {
+        Random random = new Random(42);
+        String[] pieces = {"a", "meow", " ", "\u00e9", "\u732b", "\ud83d\udc31", "e\u0301", "\u2764\ufe0f"};
+        for (int i = 0; i < 200; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = random.nextInt(200); j > 0; j--) {
+                builder.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String message = builder.toString();
+            int size = 6 + random.nextInt(60); // No cluster is longer than 6 bytes
+            StringBuilder joined = new StringBuilder();
+            for (String line : new Cutter.DefaultWordCutter().split(message, size)) {
+                Assert.assertTrue(line.getBytes(StandardCharsets.UTF_8).length <= size);
+                Assert.assertFalse(Character.isLowSurrogate(line.charAt(0)));
+                Assert.assertNotEquals(Character.NON_SPACING_MARK, Character.getType(line.charAt(0)));
+                joined.append(line);
+            }
+            Assert.assertEquals(message.replace(" ", ""), joined.toString().replace(" ", ""));
+        }
+    }
 }
@@ -0,0 +1,129 @@
+package org.kitteh.irc.client.library.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests the FormatCodec.
+ */
+public class FormatCodecTest {
+    /**
+     * Tests stripping every kind of code.
+     */
+    @Test
+    public void strip() {
+        String input = Format.BOLD + "a" + Format.ITALIC + "b" + Format.STRIKETHROUGH + "c" + Format.MONOSPACE + "d" + Format.UNDERLINE + Format.REVERSE + "e" + Format.RESET +
+                Format.RED.withBackground(Format.BLUE) + "f" + Format.HEX_COLOR_CHAR + "FF00aa,00FF00g" + Format.HEX_COLOR_CHAR + "h" + Format.COLOR_CHAR + "i";
+        Assert.assertEquals("abcdefghi", FormatCodec.strip(input));
+        Assert.assertEquals("abcdefghi", Format.stripAll(input));
+    }
+
+    /**
+     * Tests that plain input is handed back without copying.
+     */
+    @Test
+    public void stripPlain() {
+        String input = "meow, purr";
+        Assert.assertSame(input, FormatCodec.strip(input));
+        Assert.assertSame(input, Format.stripColor(input));
+    }
+
+    /**
+     * Tests ambiguous color codes.
+     */
+    @Test
+    public void stripColorEdges() {
+        Assert.assertEquals("123", Format.stripColor(Format.COLOR_CHAR + "04123"));
+        Assert.assertEquals(",", Format.stripColor(Format.COLOR_CHAR + "4,"));
+        Assert.assertEquals(",x", Format.stripColor(Format.COLOR_CHAR + "4,x"));
+        Assert.assertEquals("5", Format.stripColor(Format.COLOR_CHAR + "4,125"));
+        Assert.assertEquals(",5", Format.stripColor(Format.COLOR_CHAR + ",5"));
+        Assert.assertEquals("FF00", Format.stripColor(Format.HEX_COLOR_CHAR + "FF00"));
+        Assert.assertEquals(",FF", Format.stripColor(Format.HEX_COLOR_CHAR + "000000,FF"));
+        Assert.assertEquals(Format.ITALIC + "x", Format.stripColor(Format.ITALIC + "x" + Format.HEX_COLOR_CHAR + "abcdef"));
+        Assert.assertEquals(Format.GREEN + "x", Format.stripFormatting(Format.ITALIC.toString() + Format.GREEN + Format.STRIKETHROUGH + "x" + Format.MONOSPACE));
+    }
+
+    /**
+     * Tests splitting into styled spans.
+     */
+    @Test
+    public void tokenize() {
+        String input = "plain" + Format.BOLD + "bold" + Format.RED.withBackground(Format.BLUE) + Format.BOLD + "red" + Format.ITALIC + Format.HEX_COLOR_CHAR + "00FF00" + "hex" + Format.RESET + "end";
+        List<FormatCodec.Span> spans = FormatCodec.tokenize(input);
+        Assert.assertEquals(5, spans.size());
+
+        Assert.assertEquals("plain", spans.get(0).getText());
+        Assert.assertTrue(spans.get(0).getStyle().isPlain());
+
+        Assert.assertEquals("bold", spans.get(1).getText());
+        Assert.assertTrue(spans.get(1).getStyle().isBold());
+        Assert.assertEquals(-1, spans.get(1).getStyle().getForeground());
+
+        FormatCodec.Style red = spans.get(2).getStyle();
+        Assert.assertEquals("red", spans.get(2).getText());
+        Assert.assertFalse(red.isBold());
+        Assert.assertEquals(Format.RED.getColorChar(), red.getForeground());
+        Assert.assertEquals(Format.BLUE.getColorChar(), red.getBackground());
+
+        FormatCodec.Style hex = spans.get(3).getStyle();
+        Assert.assertEquals("hex", spans.get(3).getText());
+        Assert.assertTrue(hex.isItalic());
+        Assert.assertEquals(-1, hex.getForeground());
+        Assert.assertEquals(0x00FF00, hex.getHexForeground());
+        Assert.assertEquals(Format.BLUE.getColorChar(), hex.getBackground());
+
+        Assert.assertEquals("end", spans.get(4).getText());
+        Assert.assertSame(FormatCodec.Style.PLAIN, spans.get(4).getStyle());
+        Assert.assertEquals(input.length(), spans.get(4).getEnd());
+    }
+
+    /**
+     * Tests that building and reading back agree.
+     */
+    @Test
+    public void roundTrip() {
+        FormatCodec.Builder builder = FormatCodec.builder();
+        for (int run = 0; run < 2; run++) {
+            builder.clear().bold().append("a").color(Format.GREEN).append(",1").strikethrough().hexColor(0xABCDEF, 0x010203).append(",2").reset().append('z');
+            String built = builder.toString();
+            Assert.assertEquals("a,1,2z", FormatCodec.strip(built));
+
+            List<FormatCodec.Span> spans = FormatCodec.tokenize(built);
+            Assert.assertEquals(4, spans.size());
+            Assert.assertEquals(",1", spans.get(1).getText());
+            Assert.assertEquals(Format.GREEN.getColorChar(), spans.get(1).getStyle().getForeground());
+            Assert.assertEquals(-1, spans.get(1).getStyle().getBackground());
+            Assert.assertTrue(spans.get(2).getStyle().isStrikethrough());
+            Assert.assertEquals(0xABCDEF, spans.get(2).getStyle().getHexForeground());
+            Assert.assertEquals(0x010203, spans.get(2).getStyle().getHexBackground());
+        }
+    }
+
+    /**
+     * Tests that a digit after clearing colors isn't read as a color.
+     */
+    @Test
+    public void roundTripClearColor() {
+        String built = FormatCodec.builder().color(Format.RED).append("red").clearColor().append("5 apples").toString();
+        Assert.assertEquals("red5 apples", FormatCodec.strip(built));
+        Assert.assertEquals("red5 apples", Format.stripAll(built));
+
+        List<FormatCodec.Span> spans = FormatCodec.tokenize(built);
+        Assert.assertEquals(2, spans.size());
+        Assert.assertEquals("red", spans.get(0).getText());
+        Assert.assertEquals(Format.RED.getColorChar(), spans.get(0).getStyle().getForeground());
+        Assert.assertEquals("5 apples", spans.get(1).getText());
+        Assert.assertEquals(-1, spans.get(1).getStyle().getForeground());
+    }
+
+    /**
+     * Tests builder rejection of bad colors.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void builderBadHex() {
+        FormatCodec.builder().hexColor(0x1000000);
+    }
+}
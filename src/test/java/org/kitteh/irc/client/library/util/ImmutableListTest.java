@@ -0,0 +1,75 @@
+package org.kitteh.irc.client.library.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests the ImmutableList.
+ */
+public class ImmutableListTest {
+    /**
+     * Tests that immutable lists are shared rather than copied.
+     */
+    @Test
+    public void copyOfShares() {
+        ImmutableList<String> list = ImmutableList.of("a", "b");
+        Assert.assertSame(list, ImmutableList.copyOf(list));
+        Assert.assertSame(ImmutableList.of(), ImmutableList.copyOf(new ArrayList<String>()));
+    }
+
+    /**
+     * Tests that the list is detached from its source.
+     */
+    @Test
+    public void copyOfDetaches() {
+        String[] array = {"a", "b", "c"};
+        List<String> fromArray = ImmutableList.of(array);
+        array[0] = "z";
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), fromArray);
+
+        List<String> source = new ArrayList<>(Arrays.asList("x", "y"));
+        List<String> fromList = ImmutableList.copyOf(source);
+        source.clear();
+        Assert.assertEquals(Arrays.asList("x", "y"), fromList);
+        Assert.assertEquals(Collections.singletonList("x"), ImmutableList.of("x"));
+        Assert.assertEquals(Arrays.asList("x", "y").hashCode(), fromList.hashCode());
+    }
+
+    /**
+     * Tests that modification fails.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiable() {
+        ImmutableList.of("a").add("b");
+    }
+
+    /**
+     * Tests that null elements are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void nullElement() {
+        ImmutableList.copyOf(Arrays.asList("a", null));
+    }
+
+    /**
+     * Tests that null elements are rejected from any collection.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void nullSetElement() {
+        ImmutableList.copyOf(new HashSet<>(Arrays.asList("a", null)));
+    }
+
+    /**
+     * Tests that null elements are rejected when passed individually.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void nullVarargsElement() {
+        ImmutableList.of("a", null);
+    }
+}
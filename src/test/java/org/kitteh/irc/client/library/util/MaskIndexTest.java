@@ -0,0 +1,57 @@
+package org.kitteh.irc.client.library.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitteh.irc.client.library.feature.CaseMapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Tests the MaskIndex.
+ */
+public class MaskIndexTest {
+    /**
+     * Tests each kind of indexed mask.
+     */
+    @Test
+    public void matches() {
+        List<Mask> masks = Arrays.asList("*!*@Cat.example.com", "*!*@*.example.com", "*!*@192.168.*", "Kitteh!*@*", "*!*b*@*", "$a:kitteh", "*!*@*.example.org", "~q:*!*@cat.example.com").stream().map(Mask::fromString).collect(Collectors.toList());
+        MaskIndex<Mask> index = MaskIndex.of(masks, CaseMapping.RFC1459);
+        Assert.assertEquals(8, index.size());
+        Assert.assertEquals(Arrays.asList(masks.get(5), masks.get(7)), index.getUnindexed());
+        Assert.assertEquals(Arrays.asList(masks.get(0), masks.get(1)), index.getMatches("cat", "meow", "cat.EXAMPLE.com"));
+        Assert.assertEquals(Arrays.asList(masks.get(2), masks.get(3), masks.get(4)), index.getMatches("kitteh", "bird", "192.168.0.1"));
+        Assert.assertEquals(Collections.emptyList(), index.getMatches("dog", "woof", "example.com"));
+    }
+
+    /**
+     * Tests the index against testing every mask.
+     */
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(1234);
+        String[] parts = {"a", "b", "ab", "*", "?", "a*", "*b", "*.b", "a.*", "a?b", "[", "{"};
+        List<Mask> masks = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            masks.add(Mask.fromString(pick(random, parts) + '!' + pick(random, parts) + '@' + pick(random, parts) + pick(random, parts) + pick(random, parts)));
+        }
+        MaskIndex<Mask> index = MaskIndex.of(masks, CaseMapping.RFC1459);
+        String[] literals = {"a", "b", "A", "B", ".", "{", "["};
+        for (int i = 0; i < 500; i++) {
+            String nick = pick(random, literals) + pick(random, literals);
+            String user = pick(random, literals) + pick(random, literals);
+            String host = pick(random, literals) + pick(random, literals) + pick(random, literals) + pick(random, literals);
+            List<Mask> expected = masks.stream().filter(mask -> mask.matches(nick, user, host, CaseMapping.RFC1459)).collect(Collectors.toList());
+            Assert.assertEquals(nick + '!' + user + '@' + host, expected, index.getMatches(nick, user, host));
+        }
+    }
+
+    private static String pick(Random random, String[] options) {
+        return options[random.nextInt(options.length)];
+    }
+}
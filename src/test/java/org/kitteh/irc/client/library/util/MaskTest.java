@@ -0,0 +1,65 @@
+package org.kitteh.irc.client.library.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitteh.irc.client.library.feature.CaseMapping;
+
+import java.util.Arrays;
+
+/**
+ * Tests Mask matching.
+ */
+public class MaskTest {
+    /**
+     * Tests wildcard matching.
+     */
+    @Test
+    public void wildcards() {
+        Assert.assertTrue(Mask.fromString("*!*@*").matches("kitteh!meow@example.com", CaseMapping.RFC1459));
+        Assert.assertTrue(Mask.fromString("kit?eh!*@*.example.com").matches("kitteh!meow@cat.example.com", CaseMapping.RFC1459));
+        Assert.assertFalse(Mask.fromString("kit?eh!*@*.example.com").matches("kiteh!meow@cat.example.com", CaseMapping.RFC1459));
+        Assert.assertFalse(Mask.fromString("*!*@*.example.com").matches("kitteh!meow@example.com", CaseMapping.RFC1459));
+        Assert.assertTrue(Mask.fromString("*!*@*a*b*c").matches("kitteh!meow@aXbbXc", CaseMapping.RFC1459));
+        Assert.assertFalse(Mask.fromString("*!*@*a*b*c").matches("kitteh!meow@aXbcX", CaseMapping.RFC1459));
+        Assert.assertTrue(Mask.fromString("*!m*w@*").matches("kitteh", "meow", "host", CaseMapping.RFC1459));
+        Assert.assertFalse(Mask.fromString("*!m*w@*").matches("kitteh", "meows", "host", CaseMapping.RFC1459));
+    }
+
+    /**
+     * Tests case mapping awareness.
+     */
+    @Test
+    public void caseMapping() {
+        Mask mask = Mask.fromString("Kit[teh]!*@*");
+        Assert.assertTrue(mask.matches("kit{teh}!a@b", CaseMapping.RFC1459));
+        Assert.assertFalse(mask.matches("kit{teh}!a@b", CaseMapping.ASCII));
+        Assert.assertTrue(mask.matches("KIT[TEH]!a@b", CaseMapping.ASCII));
+    }
+
+    /**
+     * Tests masks not of the nick!user@host form.
+     */
+    @Test
+    public void nonHostmask() {
+        Mask mask = Mask.fromString("$a:kitteh");
+        Assert.assertFalse(mask.isHostmask());
+        Assert.assertEquals("$a:kitteh", mask.getHostPart());
+        Assert.assertTrue(Mask.fromString("*@host").matches("nick", "user", "host", CaseMapping.RFC1459));
+        Assert.assertEquals("host", Mask.fromString("n!u@host").getHostPart());
+        Assert.assertEquals("n", Mask.fromString("n!u@host").getNickPart());
+    }
+
+    /**
+     * Tests extbans containing a hostmask not being taken as one.
+     */
+    @Test
+    public void extban() {
+        for (String extban : Arrays.asList("~q:*!*@host", "m:nick!user@host", "$x:nick!user@host#gecos", "~nick!user@host")) {
+            Mask mask = Mask.fromString(extban);
+            Assert.assertFalse(extban, mask.isHostmask());
+            Assert.assertEquals(extban, mask.getHostPart());
+            Assert.assertFalse(extban, mask.matches("nick", "user", "host", CaseMapping.RFC1459));
+        }
+        Assert.assertTrue(Mask.fromString("*!*@2001:db8::1").isHostmask());
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Tests the StringUtil class.
@@ -75,6 +76,16 @@ public class StringUtilTest {
         StringUtil.makeRainbow("Someday we'll find it, the rainbow test coverage, the coders, the users, and me.", new Format[]{Format.UNDERLINE});
     }
 
+    /**
+     * Measures UTF-8 lengths without encoding.
+     */
+    @Test
+    public void utf8Length() {
+        for (String string : new String[]{"", "#kitteh", "caf\u00e9", "\u732b", "\ud83d\udc31 meow"}) {
+            Assert.assertEquals(string, string.getBytes(StandardCharsets.UTF_8).length, StringUtil.utf8Length(string));
+        }
+    }
+
     /**
      * Tests the private constructor.
      *
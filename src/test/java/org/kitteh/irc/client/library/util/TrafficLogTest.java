@@ -0,0 +1,127 @@
+package org.kitteh.irc.client.library.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the TrafficLog.
+ */
+public class TrafficLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes lines and reads them back in order.
+     *
+     * @throws IOException if the temporary file fails
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        Path path = this.folder.newFile().toPath();
+        try (TrafficLog.Writer writer = TrafficLog.write(path)) {
+            writer.append(TrafficLog.Direction.OUTPUT, "NICK Kitteh");
+            writer.append(TrafficLog.Direction.INPUT, ":irc.kitteh.test 001 Kitteh :Welcome éè 🐱");
+            writer.append(TrafficLog.Direction.INPUT, "");
+        }
+        TrafficLog.Reader reader = TrafficLog.read(path);
+        List<TrafficLog.Entry> entries = new ArrayList<>();
+        reader.forEach(entries::add);
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals(TrafficLog.Direction.OUTPUT, entries.get(0).getDirection());
+        Assert.assertEquals("NICK Kitteh", entries.get(0).getLine());
+        Assert.assertEquals(TrafficLog.Direction.INPUT, entries.get(1).getDirection());
+        Assert.assertEquals(":irc.kitteh.test 001 Kitteh :Welcome éè 🐱", entries.get(1).getLine());
+        Assert.assertEquals("", entries.get(2).getLine());
+        Assert.assertTrue(entries.get(1).getTime(TimeUnit.MICROSECONDS) >= entries.get(0).getTime(TimeUnit.MICROSECONDS));
+        Assert.assertTrue(reader.getStartTime() <= System.currentTimeMillis());
+    }
+
+    /**
+     * Writes enough to cross into a second mapped region.
+     *
+     * @throws IOException if the temporary file fails
+     */
+    @Test
+    public void largeLog() throws IOException {
+        Path path = this.folder.newFile().toPath();
+        char[] chars = new char[500];
+        Arrays.fill(chars, 'a');
+        String line = new String(chars);
+        int count = 5000;
+        try (TrafficLog.Writer writer = TrafficLog.write(path)) {
+            for (int i = 0; i < count; i++) {
+                writer.append(TrafficLog.Direction.INPUT, i + line);
+            }
+        }
+        int i = 0;
+        for (TrafficLog.Entry entry : TrafficLog.read(path)) {
+            Assert.assertEquals(i++ + line, entry.getLine());
+        }
+        Assert.assertEquals(count, i);
+    }
+
+    /**
+     * Reads a log whose last record was cut short.
+     *
+     * @throws IOException if the temporary file fails
+     */
+    @Test
+    public void truncated() throws IOException {
+        Path path = this.folder.newFile().toPath();
+        try (TrafficLog.Writer writer = TrafficLog.write(path)) {
+            writer.append(TrafficLog.Direction.INPUT, "PING :meow");
+            writer.append(TrafficLog.Direction.INPUT, "PING :purr");
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 2));
+        List<TrafficLog.Entry> entries = new ArrayList<>();
+        TrafficLog.read(path).forEach(entries::add);
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals("PING :meow", entries.get(0).getLine());
+    }
+
+    /**
+     * Reads a log whose last record was torn, left partly written over the
+     * zeroed tail of the mapped region.
+     *
+     * @throws IOException if the temporary file fails
+     */
+    @Test
+    public void torn() throws IOException {
+        Path path = this.folder.newFile().toPath();
+        try (TrafficLog.Writer writer = TrafficLog.write(path)) {
+            writer.append(TrafficLog.Direction.INPUT, "PING :meow");
+            writer.append(TrafficLog.Direction.INPUT, "PING :purr");
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        bytes = Arrays.copyOf(bytes, bytes.length + 64);
+        Arrays.fill(bytes, bytes.length - 64 - 5, bytes.length, (byte) 0);
+        Files.write(path, bytes);
+        List<TrafficLog.Entry> entries = new ArrayList<>();
+        TrafficLog.read(path).forEach(entries::add);
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals("PING :meow", entries.get(0).getLine());
+    }
+
+    /**
+     * Rejects a file that isn't a log.
+     *
+     * @throws IOException if the temporary file fails
+     */
+    @Test(expected = IOException.class)
+    public void notALog() throws IOException {
+        Path path = this.folder.newFile().toPath();
+        Files.write(path, "Meow meow meow meow meow".getBytes());
+        TrafficLog.read(path);
+    }
+}